@@ -6,6 +6,17 @@ plugins {
     java
 }
 
+// JMH benchmarks live in their own source set (src/jmh/java) so they never end up in the application jar
+val jmh: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+configurations {
+    named(jmh.implementationConfigurationName) { extendsFrom(configurations.implementation.get()) }
+    named(jmh.runtimeOnlyConfigurationName) { extendsFrom(configurations.runtimeOnly.get()) }
+}
+
 repositories {
     // Use Maven Central for resolving dependencies.
     mavenCentral()
@@ -23,6 +34,12 @@ dependencies {
     implementation("io.temporal:temporal-sdk:1.25.1")
     implementation("io.github.cdimascio:java-dotenv:5.2.2")
 
+    // Add dependency for parsing JSONL identity import files
+    implementation("com.google.code.gson:gson:2.10.1")
+
+    // Add HdrHistogram for latency percentiles in the load generator
+    implementation("org.hdrhistogram:HdrHistogram:2.1.12")
+
     // Add dependencies for 509c3 cert generation for the mTLS Auth example
     implementation("org.bouncycastle:bcprov-jdk18on:1.76")
     implementation("org.bouncycastle:bcpkix-jdk18on:1.76")
@@ -30,6 +47,10 @@ dependencies {
     // Add SLF4J and Logback dependencies
     implementation("org.slf4j:slf4j-api:1.7.32")
     implementation("ch.qos.logback:logback-classic:1.2.6")
+
+    // Add JMH for the benchmarks in src/jmh
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:1.37")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.37")
 }
 
 // Apply a specific Java toolchain to ease working on different environments.
@@ -47,4 +68,54 @@ application {
 tasks.named<Test>("test") {
     // Use JUnit Platform for unit tests.
     useJUnitPlatform()
-}
\ No newline at end of file
+}
+
+// Run the JMH benchmarks, e.g. ./gradlew jmh or ./gradlew jmh -Pjmh.includes=CaCert -Pjmh.args="-f 1 -wi 2 -i 3"
+// Results are written to build/reports/jmh/results.json
+tasks.register<JavaExec>("jmh") {
+    group = "benchmark"
+    description = "Runs the JMH benchmarks in src/jmh."
+    classpath = jmh.runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    val resultsFile = layout.buildDirectory.file("reports/jmh/results.json")
+    outputs.upToDateWhen { false }
+    doFirst { resultsFile.get().asFile.parentFile.mkdirs() }
+    args(listOf("-rf", "json", "-rff", resultsFile.get().asFile.absolutePath))
+    (project.findProperty("jmh.args") as String?)?.let { args(it.split(" ").filter(String::isNotBlank)) }
+    (project.findProperty("jmh.includes") as String?)?.let { args(it) }
+}
+
+// Drive the demo clients against the in-process fake CloudService, e.g.
+// ./gradlew loadTest -Pargs="--workload=MIXED --rate=200 --duration=30s --resource-exhausted=0.01"
+tasks.register<JavaExec>("loadTest") {
+    group = "verification"
+    description = "Runs the load generator against an in-memory CloudService."
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("org.example.LoadGenerator")
+    (project.findProperty("args") as String?)?.let { args(it.split(" ").filter(String::isNotBlank)) }
+}
+
+// Per-phase provisioning latency from a flight recording, e.g.
+// ./gradlew provisioningProfile -Pargs="provisioning.jfr --slowest=10"
+tasks.register<JavaExec>("provisioningProfile") {
+    group = "application"
+    description = "Summarizes provisioning phases recorded with Java Flight Recorder."
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("org.example.ProvisioningProfile")
+    (project.findProperty("args") as String?)?.let { args(it.split(" ").filter(String::isNotBlank)) }
+}
+
+// Time from launching the demo to its first Cloud API call, one fresh JVM per run, e.g.
+// ./gradlew startupBenchmark -Pargs="--runs=10 --commands=printNamespaces,createMTLSNamespace --cds"
+tasks.register<JavaExec>("startupBenchmark") {
+    group = "benchmark"
+    description = "Measures time to first RPC of demo commands against the fake CloudService."
+    classpath = jmh.runtimeClasspath
+    mainClass.set("org.example.StartupBenchmark")
+    // the demo runs from jars, as installed by installDist, without JMH and the benchmark resources;
+    // class data sharing (--cds) only archives classes loaded from jars
+    val demoClasspath = files(tasks.jar) + configurations.runtimeClasspath.get()
+    dependsOn(tasks.jar)
+    doFirst { systemProperty("startup.classpath", demoClasspath.asPath) }
+    (project.findProperty("args") as String?)?.let { args(it.split(" ").filter(String::isNotBlank)) }
+}
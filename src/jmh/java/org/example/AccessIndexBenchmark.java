@@ -0,0 +1,85 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.temporal.api.cloud.identity.v1.NamespaceAccess;
+import io.temporal.api.cloud.identity.v1.User;
+
+/**
+ * "Who can touch namespace X" over {@code users} users, each with access to 5 of 500 namespaces:
+ * from the {@link AccessIndex}, and by scanning every user's {@code Access} as a caller of
+ * GetUsers would have to. {@code reindexOneUser} is the incremental update after a user changes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccessIndexBenchmark {
+
+    private static final int NAMESPACES = 500;
+
+    @Param({"10000"})
+    public int users;
+
+    private List<User> userList;
+    private AccessIndex index;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        userList = new ArrayList<>(users);
+        index = new AccessIndex();
+        for (int i = 0; i < users; i++) {
+            Map<String, String> grants = new LinkedHashMap<>();
+            for (int j = 0; j < 5; j++) {
+                grants.put("ns-" + ((i + j * 97) % NAMESPACES) + ".acct", j == 0 ? "admin" : "read");
+            }
+            User user = User.newBuilder().setId("user-" + i)
+                .setSpec(SimpleCloudApiIdentityClient.userSpec("user" + i + "@example.com", grants, "developer")).build();
+            userList.add(user);
+            index.putUser(user);
+        }
+    }
+
+    @Benchmark
+    public Map<AccessIndex.Principal, String> indexLookup() {
+        return index.whoCanAccess("ns-" + (next++ % NAMESPACES) + ".acct");
+    }
+
+    @Benchmark
+    public Map<String, String> scanAccess() {
+        String namespace = "ns-" + (next++ % NAMESPACES) + ".acct";
+        Map<String, String> result = new LinkedHashMap<>();
+        for (User user : userList) {
+            NamespaceAccess access = user.getSpec().getAccess().getNamespaceAccessesMap().get(namespace);
+            if (access != null) {
+                result.put(user.getSpec().getEmail(), access.getPermission());
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    public void reindexOneUser() {
+        index.putUser(userList.get(next++ % users));
+    }
+}
@@ -0,0 +1,86 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.temporal.api.cloud.cloudservice.v1.CreateUserRequest;
+import io.temporal.api.cloud.operation.v1.AsyncOperation;
+
+/**
+ * 50 confirmed user creates against the in-process fake, whose async operations take
+ * {@code operationMillis} to finish. {@code blockPerCall} waits for each operation before sending
+ * the next create. {@code pipelined} sends all creates first and then waits for the tracker to
+ * confirm them together.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AsyncOperationTrackerBenchmark {
+
+    @Param({"20", "100"})
+    public long operationMillis;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private FakeCloudServer server;
+    private AsyncOperationTracker tracker;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        server = new FakeCloudServer(new InMemoryCloudService("bench", Duration.ZERO, Duration.ofMillis(operationMillis)));
+        tracker = new AsyncOperationTracker(16, Duration.ofMillis(10), Duration.ofMillis(500), Duration.ofMinutes(1));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        tracker.close();
+        server.close();
+    }
+
+    private AsyncOperation createUser() {
+        String email = "bench" + sequence.incrementAndGet() + "@example.com";
+        return server.getClient().getCloudServiceStubs().blockingStub()
+            .createUser(CreateUserRequest.newBuilder().setSpec(SimpleCloudApiIdentityClient.userSpec(email, Map.of(), "read")).build())
+            .getAsyncOperation();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(50)
+    public void blockPerCall() {
+        for (int i = 0; i < 50; i++) {
+            tracker.track(server.getClient(), createUser()).join();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(50)
+    public void pipelined() {
+        List<CompletableFuture<AsyncOperation>> futures = new ArrayList<>(50);
+        for (int i = 0; i < 50; i++) {
+            futures.add(tracker.track(server.getClient(), createUser()));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+    }
+}
@@ -0,0 +1,92 @@
+package org.example;
+
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of appending one CA to an existing accepted_client_ca bundle, as the bundle grows with
+ * every rotation: the original decode/concatenate/re-encode helper, a full CaBundle parse, and
+ * appending to a CaBundle that is already parsed (what repeated rotations of one namespace do).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CaBundleConcatBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int existingCerts;
+
+    private String bundle;
+    private X509Certificate newCert;
+    private String newCertPem;
+    private CaBundle parsed;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        try (CaCertFactory factory = new CaCertFactory(CaCertFactory.KeyAlgorithm.EC_P256, 4)) {
+            CaBundle initial = CaBundle.empty();
+            for (int i = 0; i < existingCerts; i++) {
+                initial.add(factory.issue("bundle" + i));
+            }
+            bundle = initial.toBase64();
+            newCert = factory.issue("rotated");
+            newCertPem = CaCertFactory.toBase64Pem(newCert);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // appending grows the bundle, so every call starts from the same parsed state
+    @Setup(Level.Invocation)
+    public void parseBundle() throws Exception {
+        parsed = CaBundle.parse(bundle);
+    }
+
+    @Benchmark
+    public String concatCAString() {
+        return concat(bundle, newCertPem);
+    }
+
+    @Benchmark
+    public String caBundleParseAndAppend() throws Exception {
+        CaBundle b = CaBundle.parse(bundle);
+        b.removeExpired(Instant.now());
+        b.add(newCert);
+        return b.toBase64();
+    }
+
+    @Benchmark
+    public String caBundleAppendParsed() {
+        parsed.removeExpired(Instant.now());
+        parsed.add(newCert);
+        return parsed.toBase64();
+    }
+
+    // the byte-concatenation rotateNamespaceMTLSCert used before CaBundle, kept as the baseline
+    static String concat(String caStr1, String caStr2) {
+        byte[] decodedBytes1 = Base64.getDecoder().decode(caStr1);
+        byte[] decodedBytes2 = Base64.getDecoder().decode(caStr2);
+        byte[] concatenatedBytes = new byte[decodedBytes1.length + decodedBytes2.length];
+        System.arraycopy(decodedBytes1, 0, concatenatedBytes, 0, decodedBytes1.length);
+        System.arraycopy(decodedBytes2, 0, concatenatedBytes, decodedBytes1.length, decodedBytes2.length);
+        return Base64.getEncoder().encodeToString(concatenatedBytes);
+    }
+}
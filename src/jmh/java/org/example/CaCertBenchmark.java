@@ -0,0 +1,60 @@
+package org.example;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of issuing a CA the way createCACertAsString does.
+ *
+ * <p>{@code poolSize=0} runs without a pool or filler thread, which is the old behaviour of a fresh
+ * key pair on every call. A pooled factory measures the steady state when the background filler
+ * keeps up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CaCertBenchmark {
+
+    @Param({"RSA_2048", "EC_P256"})
+    public CaCertFactory.KeyAlgorithm algorithm;
+
+    @Param({"0", "1", "64"})
+    public int poolSize;
+
+    private CaCertFactory factory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws InterruptedException {
+        factory = new CaCertFactory(algorithm, poolSize);
+        // let the filler populate the pool before measuring
+        while (factory.available() < poolSize) {
+            Thread.sleep(10);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        factory.close();
+    }
+
+    @Benchmark
+    public String issueBase64Pem() throws Exception {
+        return factory.issueBase64Pem("benchCA");
+    }
+}
@@ -0,0 +1,81 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end create + poll-until-active flows against the in-process fake CloudService.
+ *
+ * <p>{@code activationMillis} is how long the fake takes to move a namespace from activating to
+ * active, so the numbers show how much latency the poller adds on top of it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CreatePollBenchmark {
+
+    @Param({"0", "100"})
+    public long activationMillis;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private FakeCloudServer server;
+    // createAPIKeyNamespace waits on the poller inside nsClient
+    private SimpleCloudApiNamespaceClient nsClient;
+    // bulkProvision50 hands this poller to its provisioner
+    private NamespaceStatusPoller poller;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        server = new FakeCloudServer(new InMemoryCloudService("bench", Duration.ofMillis(activationMillis)));
+        nsClient = new SimpleCloudApiNamespaceClient();
+        poller = new NamespaceStatusPoller(2, Duration.ofMillis(10), Duration.ofMillis(500), Duration.ofMinutes(1));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        nsClient.close();
+        poller.close();
+        server.close();
+    }
+
+    @Benchmark
+    public void createAPIKeyNamespace() {
+        String name = "bench" + sequence.incrementAndGet();
+        nsClient.createAPIKeyNamespace(server.getClient(), name, name + ".bench");
+    }
+
+    // 50 namespaces through the bulk provisioner, 16 RPCs in flight
+    @Benchmark
+    @OperationsPerInvocation(50)
+    public BulkNamespaceProvisioner.Summary bulkProvision50() {
+        List<BulkNamespaceProvisioner.Request> requests = new ArrayList<>(50);
+        for (int i = 0; i < 50; i++) {
+            String name = "bulk" + sequence.incrementAndGet();
+            requests.add(new BulkNamespaceProvisioner.Request(name + ".bench", SimpleCloudApiNamespaceClient.apiKeyNamespaceSpec(name)));
+        }
+        try (BulkNamespaceProvisioner provisioner = new BulkNamespaceProvisioner(server.getClient(), 16, poller, new CloudResourceCache())) {
+            return provisioner.provision(requests).getSummary().join();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.temporal.api.cloud.cloudservice.v1.CloudServiceGrpc;
+import io.temporal.api.cloud.cloudservice.v1.CreateNamespaceRequest;
+import io.temporal.api.cloud.cloudservice.v1.GetNamespaceRequest;
+import io.temporal.api.cloud.cloudservice.v1.GetNamespaceResponse;
+
+/**
+ * GetNamespace against the in-process fake with log-normal latency: a 2ms median and a 40ms p99.
+ * Sampling mode reports the percentiles; compare p99 with {@code hedged} true and false. With
+ * hedging, reads slower than the recent p95 are sent again, within the default budget of one
+ * hedge per ten reads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class HedgedReadBenchmark {
+
+    @Param({"false", "true"})
+    public boolean hedged;
+
+    private FaultInjectionInterceptor faults;
+    private HedgingClientInterceptor hedging;
+    private FakeCloudServer server;
+    private CloudServiceGrpc.CloudServiceBlockingStub stub;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        faults = new FaultInjectionInterceptor(FaultInjectionInterceptor.LatencyModel.logNormal(Duration.ofMillis(2), Duration.ofMillis(40)));
+        hedging = new HedgingClientInterceptor();
+        server = new FakeCloudServer(new InMemoryCloudService("bench", Duration.ZERO), hedged ? List.of(hedging) : List.of(), faults);
+        stub = server.getClient().getCloudServiceStubs().blockingStub();
+        stub.createNamespace(CreateNamespaceRequest.newBuilder()
+            .setSpec(SimpleCloudApiNamespaceClient.apiKeyNamespaceSpec("bench")).build());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.println("hedging: " + hedging);
+        server.close();
+        hedging.close();
+        faults.close();
+    }
+
+    @Benchmark
+    public GetNamespaceResponse getNamespace() {
+        return stub.getNamespace(GetNamespaceRequest.newBuilder().setNamespace("bench.bench").build());
+    }
+}
@@ -0,0 +1,120 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.temporal.api.cloud.identity.v1.AccountAccess;
+import io.temporal.api.cloud.identity.v1.Access;
+import io.temporal.api.cloud.identity.v1.NamespaceAccess;
+import io.temporal.api.cloud.identity.v1.User;
+import io.temporal.api.cloud.identity.v1.UserSpec;
+import io.temporal.api.cloud.namespace.v1.ApiKeyAuthSpec;
+import io.temporal.api.cloud.namespace.v1.Namespace;
+import io.temporal.api.cloud.namespace.v1.NamespaceSpec;
+
+/**
+ * Offline queries over an {@link InventorySnapshot} of {@code users} users and a tenth as many
+ * namespaces. {@code openAndLookup} is a fresh process answering one question: map the file, read
+ * the index and parse one record. {@code scanRecords} is the same question without the index,
+ * parsing records one by one until the user is found, as a plain length-delimited file would need.
+ * {@code syncOneChange} is an incremental sync in which one user has a new resource version.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InventorySnapshotBenchmark {
+
+    @Param({"1000", "20000"})
+    public int users;
+
+    private Path dir;
+    private Path file;
+    private List<Namespace> namespaceList;
+    private List<User> userList;
+    private String lastEmail;
+    private int version;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("inventory-benchmark");
+        file = dir.resolve("inventory.bin");
+        namespaceList = new ArrayList<>();
+        for (int i = 0; i < users / 10; i++) {
+            namespaceList.add(Namespace.newBuilder().setNamespace("ns-" + i + ".acct").setResourceVersion("1").setState("active")
+                .setSpec(NamespaceSpec.newBuilder().setName("ns-" + i).addRegions("aws-us-east-1").setRetentionDays(30)
+                    .setApiKeyAuth(ApiKeyAuthSpec.newBuilder().setEnabled(true)))
+                .build());
+        }
+        userList = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            userList.add(User.newBuilder().setId("user-" + i).setResourceVersion("1").setState("active")
+                .setSpec(UserSpec.newBuilder().setEmail("user" + i + "@example.com").setAccess(Access.newBuilder()
+                    .setAccountAccess(AccountAccess.newBuilder().setRole("developer"))
+                    .putNamespaceAccesses("ns-" + (i % namespaceList.size()) + ".acct", NamespaceAccess.newBuilder().setPermission("write").build())))
+                .build());
+        }
+        lastEmail = "user" + (users - 1) + "@example.com";
+        InventorySnapshot.sync(file, namespaceList, userList, List.of());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (var files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                Files.delete(p);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    @Benchmark
+    public User openAndLookup() throws IOException {
+        return InventorySnapshot.open(file).userByEmail(lastEmail).orElseThrow();
+    }
+
+    @Benchmark
+    public User scanRecords() throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            in.skipNBytes(8);
+            for (int i = 0; i < namespaceList.size(); i++) {
+                Namespace.parseDelimitedFrom(in);
+            }
+            while (true) {
+                User user = User.parseDelimitedFrom(in);
+                if (user.getSpec().getEmail().equals(lastEmail)) {
+                    return user;
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public InventorySnapshot.SyncResult syncOneChange() throws IOException {
+        // alternate the version of one user so every call has exactly one change to write
+        List<User> listing = new ArrayList<>(userList);
+        listing.set(0, userList.get(0).toBuilder().setResourceVersion("v" + (++version)).build());
+        return InventorySnapshot.sync(file, namespaceList, listing, List.of());
+    }
+}
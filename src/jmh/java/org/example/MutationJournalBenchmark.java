@@ -0,0 +1,139 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Costs of journaling a bulk job, and what it saves on a restart.
+ *
+ * <p>{@code journalIntents} writes 1,024 intents, waiting for each window of {@code inFlight}
+ * to be durable before starting the next, the way the importer waits before sending. With
+ * {@code inFlight=1} every intent pays its own {@code force}. With 64 they share one.
+ *
+ * <p>{@code freshImport} imports 10,000 service accounts with a new journal. {@code resumedImport}
+ * imports the same file with a journal in which an earlier run already finished 9,000 of them,
+ * as after a crash 90% of the way through.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+public class MutationJournalBenchmark {
+
+    private static final int RECORDS = 10_000;
+    private static final int DONE_BEFORE_CRASH = 9_000;
+
+    @Param({"1", "64"})
+    public int inFlight;
+
+    private Path dir;
+    private Path importFile;
+    private Path crashedJournal;
+    private Path journalFile;
+    private FakeCloudServer server;
+    private AsyncOperationTracker tracker;
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("journal-benchmark");
+        List<String> lines = new ArrayList<>(RECORDS);
+        for (int i = 0; i < RECORDS; i++) {
+            lines.add("{\"type\":\"service-account\",\"name\":\"sa" + i + "\",\"accountRole\":\"read\"}");
+        }
+        importFile = Files.write(dir.resolve("identities.jsonl"), lines);
+        server = new FakeCloudServer(new InMemoryCloudService("bench", Duration.ZERO, Duration.ZERO));
+        tracker = new AsyncOperationTracker(64, Duration.ofMillis(1), Duration.ofMillis(50), Duration.ofMinutes(1));
+
+        // the state a crashed run leaves behind: the first 9,000 records done
+        crashedJournal = dir.resolve("crashed.journal");
+        try (MutationJournal journal = MutationJournal.open(crashedJournal)) {
+            new IdentityImporter(server.getClient(), new CloudResourceCache(), new AccessIndex(), tracker, journal, inFlight)
+                .importFile(Files.write(dir.resolve("first.jsonl"), lines.subList(0, DONE_BEFORE_CRASH)), r -> { });
+        }
+        journalFile = dir.resolve("run.journal");
+    }
+
+    @Setup(Level.Invocation)
+    public void resetJournal() throws IOException {
+        Files.deleteIfExists(journalFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        tracker.close();
+        server.close();
+        try (var files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                Files.delete(p);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 2, time = 1)
+    @Measurement(iterations = 3, time = 1)
+    @OperationsPerInvocation(1024)
+    public void journalIntents() throws IOException {
+        try (MutationJournal journal = MutationJournal.open(journalFile)) {
+            List<CompletableFuture<Void>> window = new ArrayList<>(inFlight);
+            for (int i = 0; i < 1024; i++) {
+                window.add(journal.intend("sa:bench" + (sequence++), "op-" + sequence));
+                if (window.size() == inFlight) {
+                    CompletableFuture.allOf(window.toArray(new CompletableFuture<?>[0])).join();
+                    window.clear();
+                }
+            }
+            CompletableFuture.allOf(window.toArray(new CompletableFuture<?>[0])).join();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public IdentityImporter.Summary freshImport() throws IOException {
+        return importWith(journalFile);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public IdentityImporter.Summary resumedImport() throws IOException {
+        Files.copy(crashedJournal, journalFile, StandardCopyOption.REPLACE_EXISTING);
+        return importWith(journalFile);
+    }
+
+    private IdentityImporter.Summary importWith(Path journalPath) throws IOException {
+        try (MutationJournal journal = MutationJournal.open(journalPath)) {
+            return new IdentityImporter(server.getClient(), new CloudResourceCache(), new AccessIndex(), tracker, journal, inFlight)
+                .importFile(importFile, r -> { });
+        }
+    }
+}
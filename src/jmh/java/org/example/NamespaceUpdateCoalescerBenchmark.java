@@ -0,0 +1,97 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.temporal.api.cloud.cloudservice.v1.CreateNamespaceRequest;
+import io.temporal.api.cloud.cloudservice.v1.GetNamespaceRequest;
+import io.temporal.api.cloud.cloudservice.v1.UpdateNamespaceRequest;
+import io.temporal.api.cloud.namespace.v1.Namespace;
+import io.temporal.api.cloud.namespace.v1.NamespaceSpec;
+
+/**
+ * A burst of 20 changes to one namespace against the in-process fake, half of which set a field
+ * to the value it already has. {@code perChange} reads the namespace and sends an UpdateNamespace
+ * for every change, as rotateNamespaceMTLSCert used to: 40 RPCs. {@code coalesced} hands the
+ * changes to a {@link NamespaceUpdateCoalescer} with a 5ms window: one read and at most one
+ * update. Both finish with the same spec.
+ *
+ * <p>The fake answers in microseconds, so here {@code coalesced} mostly measures its window. What
+ * it saves is 38 of the 40 RPCs, and each of those is a round trip to the real API and a chance to
+ * lose a version race with another writer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NamespaceUpdateCoalescerBenchmark {
+
+    private static final String NAMESPACE = "bench.bench";
+    private static final int CHANGES = 20;
+
+    private FakeCloudServer server;
+    private NamespaceUpdateCoalescer coalescer;
+    private int round;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        server = new FakeCloudServer(new InMemoryCloudService("bench", Duration.ZERO));
+        server.getClient().getCloudServiceStubs().blockingStub().createNamespace(CreateNamespaceRequest.newBuilder()
+            .setSpec(SimpleCloudApiNamespaceClient.apiKeyNamespaceSpec("bench")).build());
+        coalescer = new NamespaceUpdateCoalescer(new CloudResourceCache(), Duration.ofMillis(5), 5);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        coalescer.close();
+        server.close();
+    }
+
+    // even changes repeat the retention the namespace already has, odd ones move it on
+    private NamespaceSpec change(NamespaceSpec spec, int i) {
+        return spec.toBuilder().setRetentionDays(i % 2 == 0 ? spec.getRetentionDays() : 30 + (round + i) % 60).build();
+    }
+
+    @Benchmark
+    public void perChange() {
+        round++;
+        for (int i = 0; i < CHANGES; i++) {
+            Namespace current = server.getClient().getCloudServiceStubs().blockingStub()
+                .getNamespace(GetNamespaceRequest.newBuilder().setNamespace(NAMESPACE).build()).getNamespace();
+            server.getClient().getCloudServiceStubs().blockingStub().updateNamespace(UpdateNamespaceRequest.newBuilder()
+                .setNamespace(NAMESPACE)
+                .setSpec(change(current.getSpec(), i))
+                .setResourceVersion(current.getResourceVersion())
+                .build());
+        }
+    }
+
+    @Benchmark
+    public NamespaceUpdateCoalescer.Result coalesced() {
+        round++;
+        List<CompletableFuture<NamespaceUpdateCoalescer.Result>> futures = new ArrayList<>(CHANGES);
+        for (int i = 0; i < CHANGES; i++) {
+            int n = i;
+            futures.add(coalescer.submit(server.getClient(), NAMESPACE, spec -> change(spec, n)));
+        }
+        return futures.get(CHANGES - 1).join();
+    }
+}
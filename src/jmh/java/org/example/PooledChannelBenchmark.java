@@ -0,0 +1,86 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.temporal.api.cloud.cloudservice.v1.CloudServiceGrpc;
+import io.temporal.api.cloud.cloudservice.v1.GetNamespacesRequest;
+import io.temporal.client.CloudOperationsClient;
+
+/**
+ * Time for a burst of concurrent GetNamespaces calls against the fake served on a localhost port,
+ * with {@link PooledChannel}s of different sizes. The server allows {@code streamsPerConnection}
+ * concurrent calls per connection and answers each after {@code latencyMillis}, so one connection queues most of
+ * the burst while a pool spreads it out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PooledChannelBenchmark {
+
+    @Param({"1", "4", "8"})
+    public int channels;
+
+    @Param({"ROUND_ROBIN", "LEAST_LOADED"})
+    public PooledChannel.Selection selection;
+
+    @Param({"16"})
+    public int streamsPerConnection;
+
+    @Param({"256"})
+    public int burst;
+
+    @Param({"5"})
+    public int latencyMillis;
+
+    private FakeCloudServer server;
+    private PooledChannel pool;
+    private CloudOperationsClient client;
+    private CloudServiceGrpc.CloudServiceFutureStub stub;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        server = FakeCloudServer.onLocalPort(new InMemoryCloudService(), streamsPerConnection, List.of(),
+            new FaultInjectionInterceptor(FaultInjectionInterceptor.LatencyModel.fixed(Duration.ofMillis(latencyMillis))));
+        pool = new PooledChannel(channels, selection, () -> PooledChannel.newNettyChannel(
+            server.getTarget(), true, PooledChannel.DEFAULT_KEEPALIVE_TIME, PooledChannel.DEFAULT_KEEPALIVE_TIMEOUT));
+        pool.warmUp(Duration.ofSeconds(5));
+        client = server.newClient(pool);
+        stub = client.getCloudServiceStubs().futureStub();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.getCloudServiceStubs().shutdownNow();
+        pool.shutdownNow();
+        server.close();
+    }
+
+    @Benchmark
+    public void fanOut() {
+        CompletableFuture<?>[] calls = new CompletableFuture<?>[burst];
+        for (int i = 0; i < burst; i++) {
+            calls[i] = CloudFutures.toCompletable(stub.getNamespaces(GetNamespacesRequest.getDefaultInstance()));
+        }
+        CompletableFuture.allOf(calls).join();
+    }
+}
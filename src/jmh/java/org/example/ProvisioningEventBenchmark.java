@@ -0,0 +1,61 @@
+package org.example;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jdk.jfr.Recording;
+
+/**
+ * What timing one provisioning phase with a {@link ProvisioningEvent} costs, with no flight
+ * recording running and with one recording the event. Either way it is small next to the
+ * milliseconds to minutes of the phases being timed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class ProvisioningEventBenchmark {
+
+    @Param({"false", "true"})
+    public boolean recording;
+
+    private Recording jfr;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if (recording) {
+            jfr = new Recording();
+            jfr.enable(ProvisioningEvent.NAME);
+            jfr.start();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (jfr != null) {
+            jfr.close();
+        }
+    }
+
+    @Benchmark
+    public ProvisioningEvent beginAndEnd() {
+        ProvisioningEvent event = ProvisioningEvent.begin(ProvisioningEvent.Phase.POLL_ATTEMPT, "bench.acct").attempt(1);
+        event.end("ok");
+        return event;
+    }
+}
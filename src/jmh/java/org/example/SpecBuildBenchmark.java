@@ -0,0 +1,62 @@
+package org.example;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.temporal.api.cloud.identity.v1.Access;
+import io.temporal.api.cloud.identity.v1.UserSpec;
+import io.temporal.api.cloud.namespace.v1.NamespaceSpec;
+
+/**
+ * Cost of building the NamespaceSpec and Access messages the clients send on every create.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpecBuildBenchmark {
+
+    @Param({"1", "50"})
+    public int namespacePermissions;
+
+    private Map<String, String> permissions;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        permissions = new LinkedHashMap<>();
+        for (int i = 0; i < namespacePermissions; i++) {
+            permissions.put("testns" + i + ".ksfop", i % 2 == 0 ? "admin" : "read");
+        }
+    }
+
+    @Benchmark
+    public NamespaceSpec apiKeyNamespaceSpec() {
+        return SimpleCloudApiNamespaceClient.apiKeyNamespaceSpec("testns4");
+    }
+
+    @Benchmark
+    public Access access() {
+        return SimpleCloudApiIdentityClient.access(permissions, "developer");
+    }
+
+    @Benchmark
+    public UserSpec userSpec() {
+        return SimpleCloudApiIdentityClient.userSpec("testuser@example.com", permissions, "developer");
+    }
+}
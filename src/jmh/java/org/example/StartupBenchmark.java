@@ -0,0 +1,131 @@
+package org.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+
+/**
+ * Time from launching the demo to its first Cloud API call, per command.
+ *
+ * <p>Startup cost is paid once per JVM, so this is not a JMH benchmark: each run starts a fresh
+ * {@code java} process with {@link SimpleCloudApiDemo} and one command, pointed at the fake
+ * CloudService on a localhost port through {@code TEMPORAL_CLOUD_API_TARGET}. The fake notes when
+ * the first call arrives. Time to first RPC is measured from just before the process is launched,
+ * so it includes JVM startup, class loading and everything the demo sets up before the command's
+ * first call; total is until the process exits.
+ *
+ * <p>{@code --cds} first runs the demo once to dump the classes it loaded into an AppCDS archive,
+ * then maps that archive in every measured run. Most of the startup cost is loading and verifying
+ * the gRPC, Netty and protobuf classes, which the archive skips. {@code --jvm-args} passes other
+ * JVM options, separated by spaces.
+ *
+ * <pre>
+ * ./gradlew startupBenchmark -Pargs="--runs=10 --commands=printNamespaces,printUsers,createMTLSNamespace --cds"
+ * </pre>
+ */
+public final class StartupBenchmark {
+
+    private static final List<String> DEFAULT_COMMANDS = List.of("printNamespaces", "printUsers", "createAPIKeyNamespace", "createMTLSNamespace");
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(kv[0], kv.length > 1 ? kv[1] : "true");
+        }
+        int runs = Integer.parseInt(options.getOrDefault("runs", "10"));
+        List<String> commands = options.containsKey("commands") ? Arrays.asList(options.get("commands").split(",")) : DEFAULT_COMMANDS;
+        String javaOptions = options.getOrDefault("jvm-args", "");
+        String classpath = System.getProperty("startup.classpath", System.getProperty("java.class.path"));
+
+        AtomicLong firstCall = new AtomicLong();
+        ServerInterceptor firstCallRecorder = new ServerInterceptor() {
+            @Override
+            public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+                firstCall.compareAndSet(0, System.nanoTime());
+                return next.startCall(call, headers);
+            }
+        };
+
+        System.out.printf("%-28s %6s %12s %12s %12s %12s%n", "command", "runs", "first RPC", "min", "max", "total");
+        try (FakeCloudServer server = FakeCloudServer.onLocalPort(new InMemoryCloudService(), 100, List.of(), firstCallRecorder)) {
+            if (options.containsKey("cds")) {
+                // one training run of the first command writes the archive, every measured run maps it
+                Path archive = Files.createTempFile("startup-benchmark", ".jsa");
+                Files.delete(archive);
+                launch(server, classpath, jvmArgs("-XX:ArchiveClassesAtExit=" + archive, javaOptions), commands.get(0));
+                javaOptions = "-XX:SharedArchiveFile=" + archive + " " + javaOptions;
+            }
+            for (String command : commands) {
+                List<Long> toFirstCall = new ArrayList<>();
+                List<Long> total = new ArrayList<>();
+                for (int i = 0; i < runs; i++) {
+                    firstCall.set(0);
+                    long start = System.nanoTime();
+                    launch(server, classpath, jvmArgs(javaOptions), command);
+                    long end = System.nanoTime();
+                    if (firstCall.get() == 0) {
+                        throw new IllegalStateException(command + " exited without calling the Cloud API");
+                    }
+                    toFirstCall.add(firstCall.get() - start);
+                    total.add(end - start);
+                }
+                Collections.sort(toFirstCall);
+                Collections.sort(total);
+                System.out.printf("%-28s %6d %10dms %10dms %10dms %10dms%n", command, runs, millis(median(toFirstCall)),
+                    millis(toFirstCall.get(0)), millis(toFirstCall.get(runs - 1)), millis(median(total)));
+            }
+        }
+    }
+
+    // runs the demo with one command against the fake and waits for it to exit; its output goes to a log file
+    private static void launch(FakeCloudServer server, String classpath, List<String> jvmArgs, String command) throws IOException, InterruptedException {
+        List<String> commandLine = new ArrayList<>();
+        commandLine.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        commandLine.addAll(jvmArgs);
+        commandLine.addAll(List.of("-cp", classpath, SimpleCloudApiDemo.class.getName(), command));
+        ProcessBuilder builder = new ProcessBuilder(commandLine)
+            .redirectErrorStream(true)
+            .redirectOutput(ProcessBuilder.Redirect.appendTo(new File(System.getProperty("java.io.tmpdir"), "startup-benchmark.log")));
+        builder.environment().put("TEMPORAL_CLOUD_API_TARGET", server.getTarget());
+        builder.environment().put("TEMPORAL_CLOUD_API_INSECURE", "true");
+        builder.environment().put("TEMPORAL_CLIENT_CLOUD_API_KEY", "startup-benchmark");
+        builder.environment().put("TEMPORAL_CLIENT_CLOUD_API_VERSION", "v0.0.0");
+        Process process = builder.start();
+        if (!process.waitFor(60, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            throw new IllegalStateException(command + " did not exit within 60s");
+        }
+    }
+
+    private static List<String> jvmArgs(String... options) {
+        List<String> args = new ArrayList<>();
+        for (String option : options) {
+            Arrays.stream(option.split(" ")).filter(s -> !s.isBlank()).forEach(args::add);
+        }
+        return args;
+    }
+
+    private static long median(List<Long> sorted) {
+        return sorted.get(sorted.size() / 2);
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
@@ -0,0 +1,87 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * What {@link ApiKeyRotationScheduler} pays between rotations with {@code keys} API keys tracked,
+ * their expiries spread over 90 days and a one-minute tick. Each key that comes due is tracked
+ * again 90 days later, so about one key in 1,300 expires per tick.
+ *
+ * <p>{@code wheelTick} is one tick of the {@link TimingWheel}, which looks at one bucket.
+ * {@code scanTick} is the same check done by scanning every key's expiry, as a periodic job
+ * without the wheel would. {@code wheelTrackAndCancel} is re-tracking one key, as after a rotation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class TimingWheelBenchmark {
+
+    private static final long TICK_MILLIS = Duration.ofMinutes(1).toMillis();
+    private static final long SPREAD_MILLIS = Duration.ofDays(90).toMillis();
+
+    @Param({"100000"})
+    public int keys;
+
+    private TimingWheel<Integer> wheel;
+    private long[] expiries;
+    private long now;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        wheel = new TimingWheel<>(Duration.ofMillis(TICK_MILLIS), 1024, 0);
+        expiries = new long[keys];
+        for (int i = 0; i < keys; i++) {
+            expiries[i] = ThreadLocalRandom.current().nextLong(SPREAD_MILLIS);
+            wheel.schedule(i, expiries[i]);
+        }
+    }
+
+    // keys that come due are tracked again a lifetime later, as after a rotation, so the wheel stays full
+    @Benchmark
+    public List<Integer> wheelTick() {
+        now += TICK_MILLIS;
+        List<Integer> due = wheel.advance(now);
+        for (Integer key : due) {
+            wheel.schedule(key, now + SPREAD_MILLIS);
+        }
+        return due;
+    }
+
+    @Benchmark
+    public List<Integer> scanTick() {
+        now += TICK_MILLIS;
+        List<Integer> due = new ArrayList<>();
+        for (int i = 0; i < expiries.length; i++) {
+            if (expiries[i] <= now) {
+                due.add(i);
+                expiries[i] = now + SPREAD_MILLIS;
+            }
+        }
+        return due;
+    }
+
+    @Benchmark
+    public boolean wheelTrackAndCancel() {
+        return wheel.schedule(-1, SPREAD_MILLIS * 3).cancel();
+    }
+}
@@ -0,0 +1,350 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.temporal.api.cloud.identity.v1.Access;
+import io.temporal.api.cloud.identity.v1.NamespaceAccess;
+import io.temporal.api.cloud.identity.v1.ServiceAccount;
+import io.temporal.api.cloud.identity.v1.ServiceAccountSpec;
+import io.temporal.api.cloud.identity.v1.User;
+import io.temporal.api.cloud.identity.v1.UserSpec;
+import io.temporal.client.CloudOperationsClient;
+
+/**
+ * Answers "who can touch namespace X" and "who has account role R" without scanning every
+ * user's and service account's {@link Access}.
+ *
+ * <p>Namespace names, principals and permission/role strings are each interned once into dense
+ * int ids. For every namespace there is one {@link BitSet} of principal ids per permission, and
+ * one per account role, so a lookup walks only the set bits and a namespace with thousands of
+ * grants costs a few bits per principal. Each principal also remembers its own role and
+ * namespaces, so a changed identity is re-indexed by clearing just its old bits.
+ *
+ * <p>{@link #build} fills the index by streaming the identity lists page by page, so the full
+ * lists are never held in memory. The identity client and the importer then keep it current with
+ * {@link #putUser} and {@link #putServiceAccount} after each create. Lookups and updates may run
+ * concurrently.
+ */
+public final class AccessIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(AccessIndex.class);
+
+    public enum PrincipalKind { USER, SERVICE_ACCOUNT }
+
+    /** A user or service account; the name is the user's email or the service account's name. */
+    public static final class Principal {
+        private final PrincipalKind kind;
+        private final String id;
+        private final String name;
+
+        Principal(PrincipalKind kind, String id, String name) {
+            this.kind = kind;
+            this.id = id;
+            this.name = name;
+        }
+
+        public PrincipalKind getKind() {
+            return kind;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Principal && ((Principal) o).kind == kind && ((Principal) o).id.equals(id);
+        }
+
+        @Override
+        public int hashCode() {
+            return kind.hashCode() * 31 + id.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return (kind == PrincipalKind.USER ? "user " : "service account ") + name + " (" + id + ")";
+        }
+    }
+
+    // maps strings to dense ints and back; ids are never reused, so they can index arrays and bit sets
+    private static final class Interner {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int intern(String value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = values.size();
+                ids.put(value, id);
+                values.add(value);
+            }
+            return id;
+        }
+
+        int find(String value) {
+            return ids.getOrDefault(value, -1);
+        }
+
+        String get(int id) {
+            return values.get(id);
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+
+    // what one principal is currently indexed under, so an update can clear exactly those bits
+    private static final class Grants {
+        final Principal principal;
+        final int role;
+        final int[] namespaces;
+        final int[] permissions;
+
+        Grants(Principal principal, int role, int[] namespaces, int[] permissions) {
+            this.principal = principal;
+            this.role = role;
+            this.namespaces = namespaces;
+            this.permissions = permissions;
+        }
+    }
+
+    private static final int NO_ROLE = -1;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Interner namespaces = new Interner();
+    private final Interner principalKeys = new Interner();
+    // permissions and account roles share one small dictionary: "admin", "write", "read", "developer", ...
+    private final Interner permissions = new Interner();
+    private final List<Grants> principals = new ArrayList<>();
+    // byNamespace[namespace][permission] = principals with that permission on the namespace
+    private final List<List<BitSet>> byNamespace = new ArrayList<>();
+    private final List<BitSet> byRole = new ArrayList<>();
+
+    /** Streams every user and service account of the account into a new index. */
+    public static AccessIndex build(CloudOperationsClient client, int pageSize) {
+        AccessIndex index = new AccessIndex();
+        index.load(client, pageSize);
+        return index;
+    }
+
+    /** Streams every user and service account into this index, replacing what it had for them. */
+    public void load(CloudOperationsClient client, int pageSize) {
+        long start = System.nanoTime();
+        for (Iterator<User> users = CloudPager.users(client, pageSize); users.hasNext(); ) {
+            putUser(users.next());
+        }
+        for (Iterator<ServiceAccount> serviceAccounts = CloudPager.serviceAccounts(client, pageSize); serviceAccounts.hasNext(); ) {
+            putServiceAccount(serviceAccounts.next());
+        }
+        logger.info("Loaded access index in " + (System.nanoTime() - start) / 1_000_000 + "ms: " + this);
+    }
+
+    public void putUser(User user) {
+        putUser(user.getId(), user.getSpec());
+    }
+
+    /** Indexes a user as created or updated by this client, without reading it back. */
+    public void putUser(String userId, UserSpec spec) {
+        put(new Principal(PrincipalKind.USER, userId, spec.getEmail()), spec.getAccess());
+    }
+
+    public void putServiceAccount(ServiceAccount serviceAccount) {
+        putServiceAccount(serviceAccount.getId(), serviceAccount.getSpec());
+    }
+
+    public void putServiceAccount(String serviceAccountId, ServiceAccountSpec spec) {
+        put(new Principal(PrincipalKind.SERVICE_ACCOUNT, serviceAccountId, spec.getName()), spec.getAccess());
+    }
+
+    public void removeUser(String userId) {
+        remove(PrincipalKind.USER, userId);
+    }
+
+    public void removeServiceAccount(String serviceAccountId) {
+        remove(PrincipalKind.SERVICE_ACCOUNT, serviceAccountId);
+    }
+
+    private void put(Principal principal, Access access) {
+        lock.writeLock().lock();
+        try {
+            int id = principalKeys.intern(key(principal.kind, principal.id));
+            if (id < principals.size()) {
+                clear(id);
+            } else {
+                principals.add(null);
+            }
+            int role = access.getAccountAccess().getRole().isEmpty() ? NO_ROLE : permissions.intern(access.getAccountAccess().getRole());
+            if (role != NO_ROLE) {
+                bits(byRole, role).set(id);
+            }
+            Map<String, NamespaceAccess> grants = access.getNamespaceAccessesMap();
+            int[] namespaceIds = new int[grants.size()];
+            int[] permissionIds = new int[grants.size()];
+            int i = 0;
+            for (Map.Entry<String, NamespaceAccess> grant : grants.entrySet()) {
+                namespaceIds[i] = namespaces.intern(grant.getKey());
+                permissionIds[i] = permissions.intern(grant.getValue().getPermission());
+                while (byNamespace.size() <= namespaceIds[i]) {
+                    byNamespace.add(new ArrayList<>());
+                }
+                bits(byNamespace.get(namespaceIds[i]), permissionIds[i]).set(id);
+                i++;
+            }
+            principals.set(id, new Grants(principal, role, namespaceIds, permissionIds));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void remove(PrincipalKind kind, String principalId) {
+        lock.writeLock().lock();
+        try {
+            int id = principalKeys.find(key(kind, principalId));
+            if (id >= 0 && principals.get(id) != null) {
+                clear(id);
+                principals.set(id, null);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // removes a principal's bits; the caller holds the write lock
+    private void clear(int id) {
+        Grants old = principals.get(id);
+        if (old == null) {
+            return;
+        }
+        if (old.role != NO_ROLE) {
+            byRole.get(old.role).clear(id);
+        }
+        for (int i = 0; i < old.namespaces.length; i++) {
+            byNamespace.get(old.namespaces[i]).get(old.permissions[i]).clear(id);
+        }
+    }
+
+    private static BitSet bits(List<BitSet> sets, int index) {
+        while (sets.size() <= index) {
+            sets.add(new BitSet());
+        }
+        return sets.get(index);
+    }
+
+    /** Everyone with any permission on {@code namespace}, with that permission. */
+    public Map<Principal, String> whoCanAccess(String namespace) {
+        lock.readLock().lock();
+        try {
+            int ns = namespaces.find(namespace);
+            if (ns < 0 || ns >= byNamespace.size()) {
+                return Collections.emptyMap();
+            }
+            Map<Principal, String> result = new LinkedHashMap<>();
+            List<BitSet> byPermission = byNamespace.get(ns);
+            for (int permission = 0; permission < byPermission.size(); permission++) {
+                BitSet set = byPermission.get(permission);
+                for (int id = set.nextSetBit(0); id >= 0; id = set.nextSetBit(id + 1)) {
+                    result.put(principals.get(id).principal, permissions.get(permission));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Everyone with exactly {@code permission} on {@code namespace}, e.g. "admin". */
+    public List<Principal> withPermission(String namespace, String permission) {
+        lock.readLock().lock();
+        try {
+            int ns = namespaces.find(namespace);
+            int p = permissions.find(permission);
+            if (ns < 0 || ns >= byNamespace.size() || p < 0 || p >= byNamespace.get(ns).size()) {
+                return Collections.emptyList();
+            }
+            return toPrincipals(byNamespace.get(ns).get(p));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Everyone whose account role is {@code role}, e.g. "admin" or "developer". */
+    public List<Principal> withRole(String role) {
+        lock.readLock().lock();
+        try {
+            int r = permissions.find(role);
+            return r < 0 || r >= byRole.size() ? Collections.emptyList() : toPrincipals(byRole.get(r));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** The namespaces a principal has access to, with its permission on each. */
+    public Map<String, String> namespacesOf(PrincipalKind kind, String principalId) {
+        lock.readLock().lock();
+        try {
+            int id = principalKeys.find(key(kind, principalId));
+            Grants grants = id < 0 ? null : principals.get(id);
+            if (grants == null) {
+                return Collections.emptyMap();
+            }
+            Map<String, String> result = new LinkedHashMap<>();
+            for (int i = 0; i < grants.namespaces.length; i++) {
+                result.put(namespaces.get(grants.namespaces[i]), permissions.get(grants.permissions[i]));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // the caller holds the read lock
+    private List<Principal> toPrincipals(BitSet set) {
+        List<Principal> result = new ArrayList<>(set.cardinality());
+        for (int id = set.nextSetBit(0); id >= 0; id = set.nextSetBit(id + 1)) {
+            result.add(principals.get(id).principal);
+        }
+        return result;
+    }
+
+    public int principalCount() {
+        lock.readLock().lock();
+        try {
+            return (int) principals.stream().filter(g -> g != null).count();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static String key(PrincipalKind kind, String id) {
+        return (kind == PrincipalKind.USER ? "u:" : "s:") + id;
+    }
+
+    @Override
+    public String toString() {
+        lock.readLock().lock();
+        try {
+            return "AccessIndex[principals=" + principalCount() + ", namespaces=" + namespaces.size()
+                + ", permissions=" + permissions.size() + "]";
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.example;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Concurrency limit that adapts to the server using additive-increase/multiplicative-decrease.
+ *
+ * <p>Each successful call raises the limit by {@code 1/limit}, so the limit grows by about one
+ * per round of calls. A throttled call multiplies it by {@code backoffRatio}. Calls that fail for
+ * any other reason leave it as it is. Calls beyond the
+ * current limit are queued and started in arrival order as permits free up, like
+ * {@link AsyncLimiter}, and no threads are parked. As with {@link TokenBucket}, the limit shrinks
+ * at most once per decrease window.
+ */
+final class AimdLimiter {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final Queue<Runnable> queued = new ArrayDeque<>();
+    private double limit;
+    private int inFlight;
+    private long lastDecreaseNanos = System.nanoTime() - TokenBucket.DECREASE_WINDOW_NANOS;
+
+    AimdLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio) {
+        if (minLimit < 1 || initialLimit < minLimit || maxLimit < initialLimit) {
+            throw new IllegalArgumentException("need 1 <= minLimit <= initialLimit <= maxLimit");
+        }
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+    }
+
+    /** Runs {@code task} now if a permit is free, otherwise once one is. The task must later call {@link #release}. */
+    void acquire(Runnable task) {
+        boolean runNow;
+        synchronized (this) {
+            runNow = inFlight < (int) limit;
+            if (runNow) {
+                inFlight++;
+            } else {
+                queued.add(task);
+            }
+        }
+        if (runNow) {
+            task.run();
+        }
+    }
+
+    /** Returns the permit of a call that succeeded ({@code throttled} false) or was throttled, and adjusts the limit. */
+    void release(boolean throttled) {
+        release(throttled ? -1 : 1);
+    }
+
+    /**
+     * Returns a permit without touching the limit, for calls that say nothing about the server's
+     * capacity: cancelled, timed out, unavailable, or failed for some other reason.
+     */
+    void release() {
+        release(0);
+    }
+
+    private void release(int signal) {
+        Queue<Runnable> ready = new ArrayDeque<>();
+        synchronized (this) {
+            inFlight--;
+            long now = System.nanoTime();
+            if (signal < 0) {
+                if (now - lastDecreaseNanos >= TokenBucket.DECREASE_WINDOW_NANOS) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    lastDecreaseNanos = now;
+                }
+            } else if (signal > 0) {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            // a larger limit can free more than one queued call at once
+            while (inFlight < (int) limit && !queued.isEmpty()) {
+                inFlight++;
+                ready.add(queued.poll());
+            }
+        }
+        ready.forEach(Runnable::run);
+    }
+
+    synchronized int limit() {
+        return (int) limit;
+    }
+
+    synchronized int inFlight() {
+        return inFlight;
+    }
+
+    synchronized int queued() {
+        return queued.size();
+    }
+}
@@ -0,0 +1,353 @@
+package org.example;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.protobuf.Timestamp;
+
+import io.temporal.api.cloud.cloudservice.v1.CreateApiKeyRequest;
+import io.temporal.api.cloud.identity.v1.ApiKey;
+import io.temporal.api.cloud.identity.v1.ApiKeySpec;
+import io.temporal.client.CloudOperationsClient;
+
+/**
+ * Replaces API keys before they expire.
+ *
+ * <p>Every tracked key sits on a {@link TimingWheel} at its expiry time minus
+ * {@code rotateBefore}. Tracking a key and forgetting it are O(1), and between rotations the only
+ * work is one wheel tick per {@code tick}, which looks at a single bucket. Nothing ever scans
+ * all keys, so tracking 100,000 keys costs a few megabytes and no CPU to speak of.
+ *
+ * <p>Keys that come due are queued and replaced in batches of at most {@code batchSize}, one
+ * batch every {@code batchInterval}. A burst of keys created on the same day therefore does not
+ * turn into a burst of CreateApiKey calls. The replacement copies the old key's spec with a new
+ * expiry {@code keyLifetime} from now. It is handed to the listener together with its token,
+ * because the token is only returned once, and is then tracked in turn. The old key is left to
+ * expire, so its owner has until then to switch. A failed create is tried again ten ticks later.
+ *
+ * <p>Because the old key stays active, loading the keys again would find it in the rotation
+ * window once more. So the scheduler remembers the latest expiry seen for each owner and display
+ * name, and a due key is skipped if a newer key with the same owner and name expires after it.
+ * Rotation waits while {@link #load} is running, so a replacement later in the listing is seen
+ * before the key it replaced is considered.
+ */
+public final class ApiKeyRotationScheduler implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ApiKeyRotationScheduler.class);
+
+    private static final Duration DEFAULT_ROTATE_BEFORE = Duration.ofDays(7);
+    private static final Duration DEFAULT_TICK = Duration.ofMinutes(1);
+    private static final int DEFAULT_BATCH_SIZE = 20;
+    private static final Duration DEFAULT_BATCH_INTERVAL = Duration.ofSeconds(1);
+    private static final int WHEEL_BUCKETS = 1024;
+
+    /** One replaced key. The token of the new key is only available here. */
+    public static final class Rotation {
+        private final ApiKey oldKey;
+        private final String newKeyId;
+        private final String token;
+        private final Instant newExpiry;
+
+        Rotation(ApiKey oldKey, String newKeyId, String token, Instant newExpiry) {
+            this.oldKey = oldKey;
+            this.newKeyId = newKeyId;
+            this.token = token;
+            this.newExpiry = newExpiry;
+        }
+
+        public ApiKey getOldKey() {
+            return oldKey;
+        }
+
+        public String getNewKeyId() {
+            return newKeyId;
+        }
+
+        public String getToken() {
+            return token;
+        }
+
+        public Instant getNewExpiry() {
+            return newExpiry;
+        }
+
+        @Override
+        public String toString() {
+            // never the token
+            return "API key " + oldKey.getSpec().getDisplayName() + " (" + oldKey.getId() + ") of " + oldKey.getSpec().getOwnerId()
+                + " replaced by " + newKeyId + ", expires " + newExpiry;
+        }
+    }
+
+    private final CloudOperationsClient client;
+    private final long rotateBeforeMillis;
+    private final Duration keyLifetime;
+    private final long tickMillis;
+    private final int batchSize;
+    private final long batchIntervalMillis;
+    private final Consumer<Rotation> listener;
+    private final ScheduledExecutorService scheduler;
+
+    // everything below is guarded by this
+    private final TimingWheel<ApiKey> wheel;
+    private final Map<String, TimingWheel.Timeout<ApiKey>> byKeyId = new HashMap<>();
+    private final Queue<ApiKey> due = new ArrayDeque<>();
+    // latest expiry seen per owner and display name, to recognise keys that were already replaced
+    private final Map<String, Long> latestExpiry = new HashMap<>();
+    private final List<CompletableFuture<Void>> idleWaiters = new ArrayList<>();
+    private boolean batchScheduled;
+    private long lastBatchNanos;
+    private int loading;
+    private int inFlight;
+    private long rotated;
+    private long superseded;
+    private long failed;
+
+    public ApiKeyRotationScheduler(CloudOperationsClient client, Consumer<Rotation> listener) {
+        this(client, DEFAULT_ROTATE_BEFORE, SimpleCloudApiIdentityClient.API_KEY_LIFETIME, DEFAULT_BATCH_SIZE, DEFAULT_BATCH_INTERVAL, listener);
+    }
+
+    public ApiKeyRotationScheduler(CloudOperationsClient client, Duration rotateBefore, Duration keyLifetime, int batchSize,
+                                   Duration batchInterval, Consumer<Rotation> listener) {
+        this(client, rotateBefore, keyLifetime, batchSize, batchInterval, DEFAULT_TICK, listener);
+    }
+
+    ApiKeyRotationScheduler(CloudOperationsClient client, Duration rotateBefore, Duration keyLifetime, int batchSize,
+                            Duration batchInterval, Duration tick, Consumer<Rotation> listener) {
+        this.client = client;
+        this.rotateBeforeMillis = rotateBefore.toMillis();
+        this.keyLifetime = keyLifetime;
+        this.tickMillis = tick.toMillis();
+        this.batchSize = batchSize;
+        this.batchIntervalMillis = batchInterval.toMillis();
+        this.lastBatchNanos = System.nanoTime() - batchInterval.toNanos();
+        this.listener = listener;
+        this.wheel = new TimingWheel<>(tick, WHEEL_BUCKETS, System.currentTimeMillis());
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "api-key-rotation");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduleTick();
+    }
+
+    /** Streams every API key of the account into the scheduler and returns how many are tracked. */
+    public int load(int pageSize) {
+        long start = System.nanoTime();
+        int count = 0;
+        synchronized (this) {
+            loading++;
+        }
+        try {
+            for (Iterator<ApiKey> keys = CloudPager.apiKeys(client, pageSize); keys.hasNext(); ) {
+                if (track(keys.next())) {
+                    count++;
+                }
+            }
+        } finally {
+            synchronized (this) {
+                loading--;
+                scheduleBatchIfDue();
+            }
+        }
+        logger.info("Tracking " + count + " API keys for rotation, loaded in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+        return count;
+    }
+
+    /**
+     * Tracks a key, replacing what was tracked under its id. Returns false for keys that are
+     * disabled or never expire, which are not rotated.
+     */
+    public synchronized boolean track(ApiKey key) {
+        untrack(key.getId());
+        if (key.getSpec().getDisabled() || !key.getSpec().hasExpiryTime()) {
+            return false;
+        }
+        long expiry = toMillis(key.getSpec().getExpiryTime());
+        latestExpiry.merge(identity(key), expiry, Math::max);
+        long rotateAt = expiry - rotateBeforeMillis;
+        byKeyId.put(key.getId(), wheel.schedule(key, rotateAt));
+        return true;
+    }
+
+    /** Tracks a key this client just created, without reading it back. */
+    public boolean track(String keyId, ApiKeySpec spec) {
+        return track(ApiKey.newBuilder().setId(keyId).setSpec(spec).build());
+    }
+
+    /** Stops tracking a key, e.g. one that was deleted; a no-op for unknown ids. */
+    public synchronized void untrack(String keyId) {
+        TimingWheel.Timeout<ApiKey> timeout = byKeyId.remove(keyId);
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * Queues every key that is due now, without waiting for the next tick, and returns a future
+     * that completes once they and any earlier ones have been replaced or have failed. Keys due
+     * within the current tick are included, so a key may be rotated up to one tick early.
+     */
+    public CompletableFuture<Void> rotateDue() {
+        CompletableFuture<Void> idle = new CompletableFuture<>();
+        scheduler.execute(() -> {
+            synchronized (this) {
+                advance(System.currentTimeMillis() + tickMillis);
+                idleWaiters.add(idle);
+                completeIfIdle();
+            }
+        });
+        return idle;
+    }
+
+    public synchronized int trackedCount() {
+        return wheel.size();
+    }
+
+    public synchronized long rotatedCount() {
+        return rotated;
+    }
+
+    /** Due keys that were skipped because a newer key with the same owner and name already existed. */
+    public synchronized long supersededCount() {
+        return superseded;
+    }
+
+    public synchronized long failedCount() {
+        return failed;
+    }
+
+    private void scheduleTick() {
+        long delay;
+        synchronized (this) {
+            delay = Math.max(0, wheel.nextTickMillis() - System.currentTimeMillis());
+        }
+        scheduler.schedule(() -> {
+            synchronized (this) {
+                advance(System.currentTimeMillis());
+            }
+            scheduleTick();
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    // the caller holds the lock
+    private void advance(long nowMillis) {
+        for (ApiKey key : wheel.advance(nowMillis)) {
+            byKeyId.remove(key.getId());
+            due.add(key);
+        }
+        scheduleBatchIfDue();
+    }
+
+    // the caller holds the lock
+    private void scheduleBatchIfDue() {
+        if (!due.isEmpty() && !batchScheduled && loading == 0) {
+            batchScheduled = true;
+            // the queue may have run dry since the last batch; it still counts towards the interval
+            long wait = lastBatchNanos + TimeUnit.MILLISECONDS.toNanos(batchIntervalMillis) - System.nanoTime();
+            scheduler.schedule(this::sendBatch, Math.max(0, wait), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void sendBatch() {
+        List<ApiKey> batch = new ArrayList<>(batchSize);
+        int queued;
+        synchronized (this) {
+            while (batch.size() < batchSize && !due.isEmpty()) {
+                ApiKey key = due.poll();
+                if (latestExpiry.getOrDefault(identity(key), 0L) > toMillis(key.getSpec().getExpiryTime())) {
+                    superseded++;
+                    logger.debug("API key " + key.getId() + " was already replaced, not rotating it again");
+                    continue;
+                }
+                batch.add(key);
+            }
+            inFlight += batch.size();
+            if (!batch.isEmpty()) {
+                lastBatchNanos = System.nanoTime();
+            }
+            queued = due.size();
+            batchScheduled = queued > 0;
+            if (batchScheduled) {
+                // the rate limit: the next batch waits batchInterval no matter how fast this one goes
+                scheduler.schedule(this::sendBatch, batchIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+            // a batch of only replaced keys sends nothing, so nothing else would report idle
+            completeIfIdle();
+        }
+        if (!batch.isEmpty()) {
+            logger.info("Rotating " + batch.size() + " API keys, " + queued + " more queued");
+        }
+        batch.forEach(this::rotate);
+    }
+
+    private void rotate(ApiKey oldKey) {
+        Instant expiry = Instant.now().plus(keyLifetime);
+        ApiKeySpec spec = oldKey.getSpec().toBuilder()
+            .setExpiryTime(Timestamp.newBuilder().setSeconds(expiry.getEpochSecond()).setNanos(expiry.getNano()))
+            .build();
+        CloudFutures.toCompletable(client
+                .getCloudServiceStubs()
+                .futureStub()
+                .createApiKey(CreateApiKeyRequest.newBuilder().setSpec(spec).build()))
+            .whenComplete((resp, error) -> {
+                synchronized (this) {
+                    inFlight--;
+                    if (error == null) {
+                        rotated++;
+                        track(resp.getKeyId(), spec);
+                    } else {
+                        failed++;
+                        logger.warn("Unable to rotate API key " + oldKey.getId() + ", retrying later: " + CloudFutures.unwrap(error).getMessage());
+                        byKeyId.put(oldKey.getId(), wheel.schedule(oldKey, System.currentTimeMillis() + 10 * tickMillis));
+                    }
+                    completeIfIdle();
+                }
+                if (error == null) {
+                    listener.accept(new Rotation(oldKey, resp.getKeyId(), resp.getToken(), expiry));
+                }
+            });
+    }
+
+    // the caller holds the lock
+    private void completeIfIdle() {
+        if (due.isEmpty() && inFlight == 0) {
+            idleWaiters.forEach(w -> w.complete(null));
+            idleWaiters.clear();
+        }
+    }
+
+    private static String identity(ApiKey key) {
+        return key.getSpec().getOwnerId() + '\n' + key.getSpec().getDisplayName();
+    }
+
+    private static long toMillis(Timestamp timestamp) {
+        return timestamp.getSeconds() * 1000 + timestamp.getNanos() / 1_000_000;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ApiKeyRotationScheduler[tracked=" + wheel.size() + ", queued=" + due.size() + ", inFlight=" + inFlight
+            + ", rotated=" + rotated + ", superseded=" + superseded + ", failed=" + failed + "]";
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
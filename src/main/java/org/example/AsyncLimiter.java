@@ -0,0 +1,98 @@
+package org.example;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Caps the number of asynchronous calls in flight without parking any threads.
+ *
+ * <p>Calls beyond the limit are queued and started, in submission order, as earlier calls finish.
+ * A queued call is started by the thread that freed its permit, often a gRPC callback thread, so
+ * {@code call} should only start the work and not block. One thread at a time starts queued calls
+ * in a loop, so calls that complete right away don't nest and can't overflow the stack.
+ */
+final class AsyncLimiter {
+
+    private final int maxInFlight;
+    private final Queue<Runnable> queued = new ArrayDeque<>();
+    private int inFlight;
+    // true while some thread is in drain(); others only queue their call or return their permit
+    private boolean draining;
+
+    AsyncLimiter(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1: " + maxInFlight);
+        }
+        this.maxInFlight = maxInFlight;
+    }
+
+    <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable start = () -> {
+            CompletableFuture<T> started;
+            try {
+                started = call.get();
+            } catch (RuntimeException e) {
+                started = CompletableFuture.failedFuture(e);
+            }
+            started.whenComplete((value, error) -> {
+                release();
+                if (error != null) {
+                    result.completeExceptionally(CloudFutures.unwrap(error));
+                } else {
+                    result.complete(value);
+                }
+            });
+        };
+
+        boolean drain;
+        synchronized (this) {
+            queued.add(start);
+            drain = !draining;
+            draining = true;
+        }
+        if (drain) {
+            drain();
+        }
+        return result;
+    }
+
+    synchronized int inFlight() {
+        return inFlight;
+    }
+
+    synchronized int queued() {
+        return queued.size();
+    }
+
+    private void release() {
+        synchronized (this) {
+            inFlight--;
+            if (draining) {
+                // the draining thread picks up the freed permit when its current start returns
+                return;
+            }
+            draining = true;
+        }
+        drain();
+    }
+
+    // starts queued calls while there are permits; a call that completes at once only frees its
+    // permit for the next turn of the loop instead of starting the next call inside this one
+    private void drain() {
+        while (true) {
+            Runnable next;
+            synchronized (this) {
+                if (queued.isEmpty() || inFlight >= maxInFlight) {
+                    draining = false;
+                    return;
+                }
+                next = queued.poll();
+                inFlight++;
+            }
+            next.run();
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.grpc.Status;
+import io.temporal.api.cloud.cloudservice.v1.GetAsyncOperationRequest;
+import io.temporal.api.cloud.operation.v1.AsyncOperation;
+import io.temporal.client.CloudOperationsClient;
+
+/**
+ * Waits for the {@link AsyncOperation}s returned by mutating calls, such as CreateUser,
+ * CreateServiceAccount and CreateApiKey, to finish.
+ *
+ * <p>{@link #track} registers an operation and returns a future that completes with the final
+ * operation once it is {@code fulfilled}, or fails once it is {@code failed} or {@code cancelled}.
+ * Every tracked operation shares one scheduler thread. Each wake-up takes all operations that are
+ * due and sends their GetAsyncOperation calls together on the future stub, at most
+ * {@code maxInFlight} at a time, so thousands of operations cost one timer and no parked threads.
+ * The Cloud API has no batch GetAsyncOperation, so a batch is a burst of concurrent calls.
+ *
+ * <p>The next check of an operation follows the server's {@code check_duration} hint when it
+ * sends one, clamped to {@code [minDelay, maxDelay]}. Otherwise the delay backs off exponentially
+ * with jitter. Operations that finish quickly are seen quickly, and slow ones are not polled
+ * more often than needed.
+ */
+public final class AsyncOperationTracker implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncOperationTracker.class);
+
+    private static final Duration DEFAULT_MIN_DELAY = Duration.ofMillis(100);
+    private static final Duration DEFAULT_MAX_DELAY = Duration.ofSeconds(10);
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofMinutes(30);
+    private static final int DEFAULT_MAX_IN_FLIGHT = 32;
+
+    // one tracked operation; due and attempt are only touched under the tracker's lock or by its one in-flight poll
+    private static final class Tracked {
+        final CloudOperationsClient client;
+        final String id;
+        final CompletableFuture<AsyncOperation> done = new CompletableFuture<>();
+        final long startNanos = System.nanoTime();
+        long dueNanos;
+        int attempt;
+
+        Tracked(CloudOperationsClient client, String id) {
+            this.client = client;
+            this.id = id;
+        }
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private final AsyncLimiter limiter;
+    private final long minDelayNanos;
+    private final long maxDelayNanos;
+    private final long timeoutNanos;
+    private final ConcurrentMap<String, Tracked> tracked = new ConcurrentHashMap<>();
+    private final PriorityQueue<Tracked> due = new PriorityQueue<>((a, b) -> Long.compare(a.dueNanos, b.dueNanos));
+    private ScheduledFuture<?> wakeUp;
+    private long wakeUpNanos = Long.MAX_VALUE;
+    private final AtomicLong polls = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    public AsyncOperationTracker() {
+        this(DEFAULT_MAX_IN_FLIGHT, DEFAULT_MIN_DELAY, DEFAULT_MAX_DELAY, DEFAULT_TIMEOUT);
+    }
+
+    public AsyncOperationTracker(int maxInFlight, Duration minDelay, Duration maxDelay, Duration timeout) {
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "async-operation-tracker");
+            t.setDaemon(true);
+            return t;
+        });
+        this.limiter = new AsyncLimiter(maxInFlight);
+        this.minDelayNanos = minDelay.toNanos();
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.timeoutNanos = timeout.toNanos();
+    }
+
+    /**
+     * Returns a future for {@code operation} that completes once it has finished. An operation that
+     * is already finished completes right away, and tracking the same id twice returns the same future.
+     */
+    public CompletableFuture<AsyncOperation> track(CloudOperationsClient client, AsyncOperation operation) {
+        if (operation.getId().isEmpty()) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("async operation has no id"));
+        }
+        Tracked existing = tracked.get(operation.getId());
+        if (existing != null) {
+            return existing.done;
+        }
+        Tracked t = new Tracked(client, operation.getId());
+        if (finish(t, operation)) {
+            return t.done;
+        }
+        Tracked raced = tracked.putIfAbsent(t.id, t);
+        if (raced != null) {
+            return raced.done;
+        }
+        enqueue(t, nextDelayNanos(t, operation));
+        return t.done;
+    }
+
+    /** Tracks an operation known only by id, e.g. one read back from a journal. */
+    public CompletableFuture<AsyncOperation> track(CloudOperationsClient client, String operationId) {
+        return track(client, AsyncOperation.newBuilder().setId(operationId).build());
+    }
+
+    /** Number of operations that have not finished yet. */
+    public int pendingCount() {
+        return tracked.size();
+    }
+
+    private synchronized void enqueue(Tracked t, long delayNanos) {
+        t.dueNanos = System.nanoTime() + delayNanos;
+        due.add(t);
+        // one timer for everything: only re-arm it when this operation is due before the current wake-up
+        if (t.dueNanos < wakeUpNanos) {
+            if (wakeUp != null) {
+                wakeUp.cancel(false);
+            }
+            wakeUpNanos = t.dueNanos;
+            wakeUp = scheduler.schedule(this::pollDue, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void pollDue() {
+        List<Tracked> batch = new ArrayList<>();
+        synchronized (this) {
+            long now = System.nanoTime();
+            // operations due within the next few ms ride along, so close deadlines share a batch
+            long horizon = now + minDelayNanos / 4;
+            while (!due.isEmpty() && due.peek().dueNanos <= horizon) {
+                batch.add(due.poll());
+            }
+            wakeUp = null;
+            wakeUpNanos = Long.MAX_VALUE;
+            if (!due.isEmpty()) {
+                wakeUpNanos = due.peek().dueNanos;
+                wakeUp = scheduler.schedule(this::pollDue, Math.max(0, wakeUpNanos - now), TimeUnit.NANOSECONDS);
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.incrementAndGet();
+        }
+        for (Tracked t : batch) {
+            if (!t.done.isDone()) {
+                poll(t);
+            }
+        }
+    }
+
+    private void poll(Tracked t) {
+        polls.incrementAndGet();
+        t.attempt++;
+        int attempt = t.attempt;
+        limiter.submit(() -> {
+                ProvisioningEvent event = ProvisioningEvent.begin(ProvisioningEvent.Phase.POLL_ATTEMPT, t.id).attempt(attempt);
+                return CloudFutures.toCompletable(t.client
+                        .getCloudServiceStubs()
+                        .futureStub()
+                        .getAsyncOperation(GetAsyncOperationRequest.newBuilder().setAsyncOperationId(t.id).build()))
+                    .whenComplete((resp, error) -> event.end(error != null ? CloudFutures.statusCode(error).name() : resp.getAsyncOperation().getState()));
+            })
+            .whenComplete((resp, error) -> {
+                if (error != null) {
+                    if (!isRetryable(error)) {
+                        fail(t, CloudFutures.unwrap(error));
+                        return;
+                    }
+                    logger.debug("Async operation {} not readable yet ({}), continuing to poll", t.id, CloudFutures.statusCode(error));
+                    reschedule(t, Backoff.equalJitter(minDelayNanos, maxDelayNanos, t.attempt));
+                } else if (!finish(t, resp.getAsyncOperation())) {
+                    reschedule(t, nextDelayNanos(t, resp.getAsyncOperation()));
+                }
+            });
+    }
+
+    private void reschedule(Tracked t, long delayNanos) {
+        if (System.nanoTime() - t.startNanos > timeoutNanos) {
+            fail(t, new TimeoutException("Async operation " + t.id + " did not finish in time"));
+        } else {
+            enqueue(t, delayNanos);
+        }
+    }
+
+    // completes the future if the operation reached a final state
+    private boolean finish(Tracked t, AsyncOperation operation) {
+        switch (operation.getState().toLowerCase(Locale.ROOT)) {
+            case "fulfilled":
+                // untrack before completing, so pendingCount() is already right for whoever waits on the future
+                tracked.remove(t.id, t);
+                t.done.complete(operation);
+                return true;
+            case "failed":
+            case "cancelled":
+                fail(t, new IllegalStateException("Async operation " + t.id + " (" + operation.getOperationType()
+                    + ") is " + operation.getState() + (operation.getFailureReason().isEmpty() ? "" : ": " + operation.getFailureReason())));
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void fail(Tracked t, Throwable error) {
+        tracked.remove(t.id, t);
+        t.done.completeExceptionally(error);
+    }
+
+    private long nextDelayNanos(Tracked t, AsyncOperation operation) {
+        if (operation.hasCheckDuration()) {
+            long hint = TimeUnit.SECONDS.toNanos(operation.getCheckDuration().getSeconds()) + operation.getCheckDuration().getNanos();
+            return Math.max(minDelayNanos, Math.min(maxDelayNanos, hint));
+        }
+        return Backoff.equalJitter(minDelayNanos, maxDelayNanos, t.attempt);
+    }
+
+    private static boolean isRetryable(Throwable error) {
+        Status.Code code = CloudFutures.statusCode(error);
+        return code == Status.Code.NOT_FOUND
+            || code == Status.Code.UNAVAILABLE
+            || code == Status.Code.DEADLINE_EXCEEDED
+            || code == Status.Code.RESOURCE_EXHAUSTED;
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncOperationTracker[pending=" + tracked.size() + ", polls=" + polls.get() + ", batches=" + batches.get() + "]";
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        tracked.values().forEach(t -> t.done.cancel(false));
+    }
+}
@@ -0,0 +1,26 @@
+package org.example;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with "equal jitter", shared by the pollers and retry loops: the delay
+ * doubles with every attempt up to a maximum, half of it is fixed and the other half random. The
+ * fixed half keeps retries from coming back too soon, and the random half keeps many clients that
+ * failed together from retrying together.
+ */
+final class Backoff {
+
+    private Backoff() {
+    }
+
+    /**
+     * Delay before retry number {@code attempt}, counting from 0, in the unit of {@code initial}
+     * and {@code max}: between {@code initial / 2} and {@code initial} for attempt 0, and never
+     * more than {@code max}.
+     */
+    static long equalJitter(long initial, long max, int attempt) {
+        long delay = Math.min(max, initial << Math.min(attempt, 20));
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+}
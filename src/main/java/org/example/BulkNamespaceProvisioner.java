@@ -0,0 +1,227 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.temporal.api.cloud.cloudservice.v1.CreateNamespaceRequest;
+import io.temporal.api.cloud.namespace.v1.NamespaceSpec;
+import io.temporal.client.CloudOperationsClient;
+
+/**
+ * Provisions many namespaces at once on the future stub.
+ *
+ * <p>Every namespace runs the same GetNamespace, CreateNamespace, poll-until-active pipeline as
+ * {@link SimpleCloudApiNamespaceClient#createAPIKeyNamespace}, but the pipelines overlap and only
+ * {@code maxInFlight} RPCs are outstanding at any moment. No thread is blocked while a namespace
+ * is being created.
+ */
+public final class BulkNamespaceProvisioner implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkNamespaceProvisioner.class);
+
+    /** A namespace to provision: the full namespace id (name.account) and the spec to create it with. */
+    public static final class Request {
+        private final String namespace;
+        private final NamespaceSpec spec;
+
+        public Request(String namespace, NamespaceSpec spec) {
+            this.namespace = namespace;
+            this.spec = spec;
+        }
+
+        public String getNamespace() {
+            return namespace;
+        }
+
+        public NamespaceSpec getSpec() {
+            return spec;
+        }
+    }
+
+    public enum Outcome { CREATED, ALREADY_EXISTS, FAILED }
+
+    /** What happened to a single namespace. */
+    public static final class Result {
+        private final String namespace;
+        private final Outcome outcome;
+        private final Duration elapsed;
+        private final Throwable error;
+
+        Result(String namespace, Outcome outcome, Duration elapsed, Throwable error) {
+            this.namespace = namespace;
+            this.outcome = outcome;
+            this.elapsed = elapsed;
+            this.error = error;
+        }
+
+        public String getNamespace() {
+            return namespace;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        public Duration getElapsed() {
+            return elapsed;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return namespace + " " + outcome + " in " + elapsed.toMillis() + "ms"
+                + (error == null ? "" : " (" + error.getMessage() + ")");
+        }
+    }
+
+    /** Aggregate view over a finished bulk run. */
+    public static final class Summary {
+        private final List<Result> results;
+        private final Duration wallClock;
+
+        Summary(List<Result> results, Duration wallClock) {
+            this.results = results;
+            this.wallClock = wallClock;
+        }
+
+        public List<Result> getResults() {
+            return results;
+        }
+
+        public Duration getWallClock() {
+            return wallClock;
+        }
+
+        public long count(Outcome outcome) {
+            return results.stream().filter(r -> r.getOutcome() == outcome).count();
+        }
+
+        public double namespacesPerMinute() {
+            double minutes = Math.max(wallClock.toMillis(), 1) / 60_000.0;
+            return results.size() / minutes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d namespaces in %ds: %d created, %d already existed, %d failed (%.1f/min)",
+                results.size(), wallClock.getSeconds(), count(Outcome.CREATED), count(Outcome.ALREADY_EXISTS),
+                count(Outcome.FAILED), namespacesPerMinute());
+        }
+    }
+
+    /** Handle returned by {@link #provision}: one future per namespace plus the aggregate. */
+    public static final class BulkResult {
+        private final Map<String, CompletableFuture<Result>> perNamespace;
+        private final CompletableFuture<Summary> summary;
+
+        BulkResult(Map<String, CompletableFuture<Result>> perNamespace, CompletableFuture<Summary> summary) {
+            this.perNamespace = perNamespace;
+            this.summary = summary;
+        }
+
+        public Map<String, CompletableFuture<Result>> getPerNamespace() {
+            return perNamespace;
+        }
+
+        public CompletableFuture<Summary> getSummary() {
+            return summary;
+        }
+    }
+
+    private final CloudOperationsClient client;
+    private final AsyncLimiter limiter;
+    private final NamespaceStatusPoller poller;
+    private final CloudResourceCache cache;
+    private final boolean ownsPoller;
+
+    public BulkNamespaceProvisioner(CloudOperationsClient client, int maxInFlight) {
+        this(client, maxInFlight, new NamespaceStatusPoller(), new CloudResourceCache(), true);
+    }
+
+    // share an existing poller and cache so bulk and single-namespace creations are multiplexed onto the same threads
+    // and existence checks for namespaces seen before are answered from memory
+    public BulkNamespaceProvisioner(CloudOperationsClient client, int maxInFlight, NamespaceStatusPoller poller, CloudResourceCache cache) {
+        this(client, maxInFlight, poller, cache, false);
+    }
+
+    private BulkNamespaceProvisioner(CloudOperationsClient client, int maxInFlight, NamespaceStatusPoller poller, CloudResourceCache cache, boolean ownsPoller) {
+        this.client = client;
+        this.limiter = new AsyncLimiter(maxInFlight);
+        this.poller = poller;
+        this.cache = cache;
+        this.ownsPoller = ownsPoller;
+    }
+
+    public BulkResult provision(List<Request> requests) {
+        long start = System.nanoTime();
+        Map<String, CompletableFuture<Result>> perNamespace = new LinkedHashMap<>();
+        for (Request request : requests) {
+            perNamespace.put(request.getNamespace(), provisionOne(request));
+        }
+
+        List<CompletableFuture<Result>> futures = new ArrayList<>(perNamespace.values());
+        CompletableFuture<Summary> summary = CompletableFuture
+            .allOf(futures.toArray(new CompletableFuture<?>[0]))
+            .thenApply(ignored -> {
+                List<Result> results = new ArrayList<>(futures.size());
+                futures.forEach(f -> results.add(f.join()));
+                return new Summary(Collections.unmodifiableList(results), Duration.ofNanos(System.nanoTime() - start));
+            });
+        return new BulkResult(Collections.unmodifiableMap(perNamespace), summary);
+    }
+
+    private CompletableFuture<Result> provisionOne(Request request) {
+        String namespace = request.getNamespace();
+        long start = System.nanoTime();
+
+        // namespace creation is not idempotent, so check for the namespace first just like the single-namespace path
+        return limiter.submit(() -> ProvisioningEvent.time(ProvisioningEvent.Phase.EXISTENCE_CHECK, namespace,
+                () -> cache.getNamespaceAsync(client, namespace)))
+            .thenCompose(existing -> {
+                if (existing.isPresent()) {
+                    logger.info("Namespace already exists: " + namespace);
+                    return CompletableFuture.completedFuture(Outcome.ALREADY_EXISTS);
+                }
+                logger.info("Creating namespace: " + namespace);
+                return limiter.submit(() -> ProvisioningEvent.time(ProvisioningEvent.Phase.CREATE_RPC, namespace, () -> CloudFutures.toCompletable(client
+                        .getCloudServiceStubs()
+                        .futureStub()
+                        .createNamespace(CreateNamespaceRequest.newBuilder().setSpec(request.getSpec()).build()))))
+                    .thenCompose(created -> {
+                        cache.invalidateNamespace(namespace);
+                        return poller.awaitActive(client, namespace);
+                    })
+                    .thenApply(ns -> {
+                        cache.putNamespace(ns);
+                        return Outcome.CREATED;
+                    });
+            })
+            .handle((outcome, error) -> {
+                Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+                if (error != null) {
+                    Throwable cause = CloudFutures.unwrap(error);
+                    logger.error("Failed to provision namespace " + namespace + ": " + cause.getMessage());
+                    return new Result(namespace, Outcome.FAILED, elapsed, cause);
+                }
+                return new Result(namespace, outcome, elapsed, null);
+            });
+    }
+
+    @Override
+    public void close() {
+        if (ownsPoller) {
+            poller.close();
+        }
+    }
+}
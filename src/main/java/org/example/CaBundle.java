@@ -0,0 +1,259 @@
+package org.example;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * The CA certificates of a namespace's {@code accepted_client_ca}, parsed once and indexed.
+ *
+ * <p>{@code accepted_client_ca} is a base64 encoding of concatenated PEM blocks. This class parses
+ * it into certificates indexed by SHA-256 fingerprint and by subject, so duplicate checks are a
+ * hash lookup and expired or retired CAs can be dropped before the bundle is written back.
+ *
+ * <p>Serialization is incremental. The base64 text of everything already in the bundle is kept,
+ * together with the 0-2 trailing bytes that do not yet fill a 3-byte base64 group. Appending a CA
+ * then only encodes that CA, and the existing bundle is never decoded or re-encoded. Removing
+ * a CA rebuilds the encoding once, on the next {@link #toBase64()}.
+ *
+ * <p>Instances are not thread-safe.
+ */
+public final class CaBundle {
+
+    private static final String BEGIN = "-----BEGIN CERTIFICATE-----";
+    private static final String END = "-----END CERTIFICATE-----";
+
+    // a parsed certificate and the exact PEM block it is serialized as
+    private static final class Entry {
+        final X509Certificate certificate;
+        final String fingerprint;
+        final String subject;
+        final byte[] pem;
+
+        Entry(X509Certificate certificate, String fingerprint, byte[] pem) {
+            this.certificate = certificate;
+            this.fingerprint = fingerprint;
+            this.subject = certificate.getSubjectX500Principal().getName();
+            this.pem = pem;
+        }
+    }
+
+    // insertion order is the order the PEM blocks are written in
+    private final Map<String, Entry> byFingerprint = new LinkedHashMap<>();
+    private final Map<String, Set<String>> fingerprintsBySubject = new HashMap<>();
+
+    // base64 of every whole 3-byte group written so far, plus the bytes left over
+    private final StringBuilder encoded = new StringBuilder();
+    private byte[] remainder = new byte[0];
+    private boolean rebuildEncoding;
+    private String serialized;
+
+    private CaBundle() {
+    }
+
+    public static CaBundle empty() {
+        return new CaBundle();
+    }
+
+    /**
+     * Parses an {@code accepted_client_ca} value. Duplicate certificates are dropped, and anything
+     * outside {@code BEGIN/END CERTIFICATE} blocks is ignored.
+     */
+    public static CaBundle parse(String base64Bundle) throws GeneralSecurityException {
+        CaBundle bundle = new CaBundle();
+        if (base64Bundle != null && !base64Bundle.isEmpty()) {
+            bundle.addAll(base64Bundle);
+        }
+        return bundle;
+    }
+
+    /** Adds every certificate in a base64-encoded PEM string and returns how many were new. */
+    public int addAll(String base64Pem) throws GeneralSecurityException {
+        String text = new String(Base64.getMimeDecoder().decode(base64Pem), StandardCharsets.US_ASCII);
+        CertificateFactory factory = CertificateFactory.getInstance("X.509");
+        int added = 0;
+        int from = 0;
+        while (true) {
+            int begin = text.indexOf(BEGIN, from);
+            if (begin < 0) {
+                break;
+            }
+            int end = text.indexOf(END, begin);
+            if (end < 0) {
+                throw new GeneralSecurityException("Unterminated PEM certificate block at offset " + begin);
+            }
+            from = end + END.length();
+            byte[] pem = (text.substring(begin, from) + "\n").getBytes(StandardCharsets.US_ASCII);
+            X509Certificate certificate = (X509Certificate) factory.generateCertificate(new ByteArrayInputStream(pem));
+            if (add(certificate, fingerprint(certificate), pem)) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /** Adds {@code certificate} unless a certificate with the same fingerprint is already present. */
+    public boolean add(X509Certificate certificate) {
+        String fingerprint = fingerprint(certificate);
+        if (byFingerprint.containsKey(fingerprint)) {
+            return false;
+        }
+        return add(certificate, fingerprint, pem(certificate));
+    }
+
+    private boolean add(X509Certificate certificate, String fingerprint, byte[] pem) {
+        if (byFingerprint.containsKey(fingerprint)) {
+            return false;
+        }
+        Entry entry = new Entry(certificate, fingerprint, pem);
+        byFingerprint.put(fingerprint, entry);
+        fingerprintsBySubject.computeIfAbsent(entry.subject, s -> new LinkedHashSet<>()).add(fingerprint);
+        if (!rebuildEncoding) {
+            append(pem);
+        }
+        serialized = null;
+        return true;
+    }
+
+    public boolean contains(String fingerprint) {
+        return byFingerprint.containsKey(fingerprint);
+    }
+
+    public boolean contains(X509Certificate certificate) {
+        return contains(fingerprint(certificate));
+    }
+
+    public Optional<X509Certificate> get(String fingerprint) {
+        Entry entry = byFingerprint.get(fingerprint);
+        return entry == null ? Optional.empty() : Optional.of(entry.certificate);
+    }
+
+    /** Certificates whose subject, in RFC 2253 form, is {@code subject}. */
+    public List<X509Certificate> bySubject(String subject) {
+        List<X509Certificate> matches = new ArrayList<>();
+        for (String fingerprint : fingerprintsBySubject.getOrDefault(subject, Set.of())) {
+            matches.add(byFingerprint.get(fingerprint).certificate);
+        }
+        return matches;
+    }
+
+    public boolean remove(String fingerprint) {
+        Entry entry = byFingerprint.remove(fingerprint);
+        if (entry == null) {
+            return false;
+        }
+        unindex(entry);
+        return true;
+    }
+
+    /** Drops every certificate that is no longer valid at {@code now}, returning how many were removed. */
+    public int removeExpired(Instant now) {
+        return removeIf(c -> c.getNotAfter().toInstant().isBefore(now));
+    }
+
+    public int removeIf(Predicate<X509Certificate> filter) {
+        int removed = 0;
+        for (Iterator<Entry> it = byFingerprint.values().iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            if (filter.test(entry.certificate)) {
+                it.remove();
+                unindex(entry);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private void unindex(Entry entry) {
+        Set<String> sameSubject = fingerprintsBySubject.get(entry.subject);
+        sameSubject.remove(entry.fingerprint);
+        if (sameSubject.isEmpty()) {
+            fingerprintsBySubject.remove(entry.subject);
+        }
+        rebuildEncoding = true;
+        serialized = null;
+    }
+
+    public int size() {
+        return byFingerprint.size();
+    }
+
+    public List<X509Certificate> certificates() {
+        List<X509Certificate> certificates = new ArrayList<>(byFingerprint.size());
+        byFingerprint.values().forEach(e -> certificates.add(e.certificate));
+        return certificates;
+    }
+
+    /** The bundle in {@code accepted_client_ca} form: base64 of the concatenated PEM blocks. */
+    public String toBase64() {
+        if (serialized == null) {
+            if (rebuildEncoding) {
+                encoded.setLength(0);
+                remainder = new byte[0];
+                byFingerprint.values().forEach(e -> append(e.pem));
+                rebuildEncoding = false;
+            }
+            serialized = encoded + Base64.getEncoder().encodeToString(remainder);
+        }
+        return serialized;
+    }
+
+    private void append(byte[] pem) {
+        byte[] pending = remainder.length == 0 ? pem : concat(remainder, pem);
+        int whole = pending.length / 3 * 3;
+        // whole 3-byte groups encode to 4 characters each with no padding, so they can be appended as they are
+        encoded.append(Base64.getEncoder().encodeToString(whole == pending.length ? pending : Arrays.copyOf(pending, whole)));
+        remainder = Arrays.copyOfRange(pending, whole, pending.length);
+    }
+
+    // the same layout JcaPEMWriter produces (64 character lines), without going through BouncyCastle
+    private static byte[] pem(X509Certificate certificate) {
+        try {
+            String body = Base64.getMimeEncoder(64, new byte[] {'\n'}).encodeToString(certificate.getEncoded());
+            return (BEGIN + "\n" + body + "\n" + END + "\n").getBytes(StandardCharsets.US_ASCII);
+        } catch (java.security.cert.CertificateEncodingException e) {
+            throw new IllegalArgumentException("Unable to encode certificate", e);
+        }
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] joined = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, joined, a.length, b.length);
+        return joined;
+    }
+
+    /** Lower-case hex SHA-256 of the DER encoding, the fingerprint {@code openssl x509 -fingerprint -sha256} shows. */
+    public static String fingerprint(X509Certificate certificate) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(certificate.getEncoded()));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder("CaBundle[");
+        byFingerprint.values().forEach(e -> out.append(out.length() > 9 ? ", " : "")
+            .append(e.subject).append(" (").append(e.fingerprint, 0, 16).append(", expires ")
+            .append(e.certificate.getNotAfter().toInstant()).append(')'));
+        return out.append(']').toString();
+    }
+}
@@ -0,0 +1,260 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.stream.Collectors;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.asn1.x509.SubjectKeyIdentifier;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Issues self-signed CA certificates for mTLS namespaces.
+ *
+ * <p>Key generation is the expensive part of issuing a CA (hundreds of milliseconds for RSA-2048),
+ * so a daemon thread keeps a bounded pool of ready key pairs topped up in the background. Issuing
+ * a certificate is then a pool take plus a signing step. If the pool runs dry the caller generates
+ * a key pair itself rather than waiting on the filler.
+ */
+public final class CaCertFactory implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(CaCertFactory.class);
+
+    private static final int DEFAULT_POOL_SIZE = 8;
+    private static final long VALIDITY_MILLIS = 365 * 24 * 60 * 60 * 1000L; // 1 year validity
+
+    public enum KeyAlgorithm {
+        RSA_2048("RSA", "SHA256WithRSAEncryption"),
+        EC_P256("EC", "SHA256withECDSA");
+
+        private final String keyAlgorithm;
+        private final String signatureAlgorithm;
+
+        KeyAlgorithm(String keyAlgorithm, String signatureAlgorithm) {
+            this.keyAlgorithm = keyAlgorithm;
+            this.signatureAlgorithm = signatureAlgorithm;
+        }
+    }
+
+    // BouncyCastle is registered once per JVM, the first time any factory is created
+    private static final class Provider {
+        static final String NAME = BouncyCastleProvider.PROVIDER_NAME;
+
+        static {
+            if (Security.getProvider(NAME) == null) {
+                Security.addProvider(new BouncyCastleProvider());
+            }
+        }
+
+        static void ensureRegistered() {
+            // class initialization does the work
+        }
+    }
+
+    private static final class Shared {
+        static final CaCertFactory INSTANCE = new CaCertFactory(algorithmFromEnv(), DEFAULT_POOL_SIZE);
+    }
+
+    private final KeyAlgorithm algorithm;
+    private final SecureRandom random = new SecureRandom();
+    private final BlockingQueue<KeyPair> pool;
+    private final Thread filler;
+
+    /**
+     * Creates a factory that keeps up to {@code poolSize} key pairs ready. With a {@code poolSize} of
+     * 0 there is no pool and no filler thread, and every certificate gets a fresh key pair on the
+     * calling thread.
+     */
+    public CaCertFactory(KeyAlgorithm algorithm, int poolSize) {
+        if (poolSize < 0) {
+            throw new IllegalArgumentException("poolSize must not be negative: " + poolSize);
+        }
+        Provider.ensureRegistered();
+        this.algorithm = algorithm;
+        // an ArrayBlockingQueue needs a capacity of at least 1, but without a filler it stays empty
+        this.pool = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+        if (poolSize == 0) {
+            this.filler = null;
+            return;
+        }
+        this.filler = new Thread(this::fill, "ca-keypair-filler");
+        this.filler.setDaemon(true);
+        this.filler.setPriority(Thread.MIN_PRIORITY);
+        this.filler.start();
+    }
+
+    /**
+     * Process-wide factory. Uses RSA-2048 unless {@code TEMPORAL_CLOUD_CA_KEY_ALGORITHM=EC_P256} is set.
+     */
+    public static CaCertFactory shared() {
+        return Shared.INSTANCE;
+    }
+
+    public KeyAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /** Number of key pairs that are ready to be used right now. */
+    public int available() {
+        return pool.size();
+    }
+
+    public X509Certificate issue(String cn) throws GeneralSecurityException {
+        return issue(cn, cn);
+    }
+
+    /**
+     * Issues a CA for {@code resource}, the namespace that will trust it. The resource is only
+     * used to label the {@link ProvisioningEvent}s of the key generation and encoding.
+     */
+    public X509Certificate issue(String cn, String resource) throws GeneralSecurityException {
+        KeyPair keyPair = pool.poll();
+        if (keyPair == null) {
+            logger.debug("CA key pair pool is empty, generating a key pair on the calling thread");
+            keyPair = generateKeyPair(resource, cn);
+        }
+        return selfSign(cn, keyPair);
+    }
+
+    /** Issues a CA and returns it as a base64-encoded PEM string, the format accepted_client_ca expects. */
+    public String issueBase64Pem(String cn) throws GeneralSecurityException {
+        return issueBase64Pem(cn, cn);
+    }
+
+    /** Like {@link #issueBase64Pem(String)}, for the namespace {@code resource}. */
+    public String issueBase64Pem(String cn, String resource) throws GeneralSecurityException {
+        X509Certificate certificate = issue(cn, resource);
+        ProvisioningEvent event = ProvisioningEvent.begin(ProvisioningEvent.Phase.PEM_ENCODING, resource).commonName(cn);
+        String pem = toBase64Pem(certificate);
+        event.end("ok");
+        return pem;
+    }
+
+    /** Issues one CA per common name, signing and PEM-encoding them in parallel. */
+    public List<String> issueBase64Pems(List<String> cns) {
+        return cns.parallelStream()
+            .map(cn -> {
+                try {
+                    return issueBase64Pem(cn);
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException("Unable to issue CA " + cn, e);
+                }
+            })
+            .collect(Collectors.toList());
+    }
+
+    static String toBase64Pem(X509Certificate certificate) {
+        StringWriter stringWriter = new StringWriter(2048);
+        try (JcaPEMWriter pemWriter = new JcaPEMWriter(stringWriter)) {
+            pemWriter.writeObject(certificate);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Base64.getEncoder().encodeToString(stringWriter.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private X509Certificate selfSign(String cn, KeyPair keyPair) throws GeneralSecurityException {
+        // Create X500Name for the issuer and subject
+        X500Name issuer = new X500Name("CN=" + cn + ", O=My Organization");
+
+        Date notBefore = new Date();
+        Date notAfter = new Date(notBefore.getTime() + VALIDITY_MILLIS);
+
+        // certificates issued in the same millisecond must still get distinct serial numbers
+        BigInteger serialNumber = new BigInteger(64, random);
+
+        JcaX509v3CertificateBuilder certBuilder = new JcaX509v3CertificateBuilder(
+                issuer,
+                serialNumber,
+                notBefore,
+                notAfter,
+                issuer,
+                keyPair.getPublic()
+        );
+
+        try {
+            certBuilder.addExtension(Extension.basicConstraints, true, new BasicConstraints(true)); // CA: true
+            certBuilder.addExtension(Extension.keyUsage, true, new KeyUsage(KeyUsage.keyCertSign | KeyUsage.cRLSign));
+            certBuilder.addExtension(Extension.subjectKeyIdentifier, false, new SubjectKeyIdentifier(keyPair.getPublic().getEncoded()));
+
+            ContentSigner contentSigner = new JcaContentSignerBuilder(algorithm.signatureAlgorithm)
+                .setProvider(Provider.NAME)
+                .build(keyPair.getPrivate());
+            X509CertificateHolder certHolder = certBuilder.build(contentSigner);
+            return new JcaX509CertificateConverter().setProvider(Provider.NAME).getCertificate(certHolder);
+        } catch (IOException | OperatorCreationException e) {
+            throw new GeneralSecurityException("Unable to build CA certificate for " + cn, e);
+        }
+    }
+
+    // resource is who waits for the key: the namespace the CA is for, or "pool" for keys generated ahead of time
+    private KeyPair generateKeyPair(String resource, String cn) throws GeneralSecurityException {
+        ProvisioningEvent event = ProvisioningEvent.begin(ProvisioningEvent.Phase.KEY_GENERATION, resource).commonName(cn);
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(algorithm.keyAlgorithm, Provider.NAME);
+        if (algorithm == KeyAlgorithm.EC_P256) {
+            keyPairGenerator.initialize(new ECGenParameterSpec("secp256r1"), random);
+        } else {
+            keyPairGenerator.initialize(2048, random);
+        }
+        KeyPair keyPair = keyPairGenerator.generateKeyPair();
+        event.end(algorithm.name());
+        return keyPair;
+    }
+
+    private void fill() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                // put() blocks while the pool is full, so the filler is idle until someone takes a key
+                pool.put(generateKeyPair("pool", null));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (GeneralSecurityException e) {
+            logger.error("Stopping CA key pair pre-generation: " + e.getMessage());
+        }
+    }
+
+    private static KeyAlgorithm algorithmFromEnv() {
+        String configured = System.getenv("TEMPORAL_CLOUD_CA_KEY_ALGORITHM");
+        if (configured == null || configured.isEmpty()) {
+            return KeyAlgorithm.RSA_2048;
+        }
+        return KeyAlgorithm.valueOf(configured.toUpperCase(Locale.ROOT));
+    }
+
+    @Override
+    public void close() {
+        if (filler != null) {
+            filler.interrupt();
+        }
+        pool.clear();
+    }
+}
@@ -0,0 +1,29 @@
+package org.example;
+
+import io.temporal.client.CloudOperationsClient;
+
+// A namespace as seen through one client. A namespace name is only unique within an account, and
+// each client carries its own credentials, so work shared per namespace is shared per client too.
+final class ClientNamespace {
+    final CloudOperationsClient client;
+    final String namespace;
+
+    ClientNamespace(CloudOperationsClient client, String namespace) {
+        this.client = client;
+        this.namespace = namespace;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof ClientNamespace)) {
+            return false;
+        }
+        ClientNamespace other = (ClientNamespace) o;
+        return client == other.client && namespace.equals(other.namespace);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * System.identityHashCode(client) + namespace.hashCode();
+    }
+}
@@ -0,0 +1,65 @@
+package org.example;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+
+/**
+ * Small helpers for moving between the gRPC future stub and {@link CompletableFuture}.
+ */
+final class CloudFutures {
+
+    private CloudFutures() {
+    }
+
+    // bridge a future stub call into a CompletableFuture; cancelling the result cancels the RPC
+    static <T> CompletableFuture<T> toCompletable(ListenableFuture<T> future) {
+        CompletableFuture<T> result = new CompletableFuture<T>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                future.cancel(mayInterruptIfRunning);
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+        Futures.addCallback(future, new FutureCallback<T>() {
+            @Override
+            public void onSuccess(T value) {
+                result.complete(value);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }, MoreExecutors.directExecutor());
+        return result;
+    }
+
+    // strip the CompletionException/ExecutionException wrappers added by future composition
+    static Throwable unwrap(Throwable t) {
+        while ((t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null) {
+            t = t.getCause();
+        }
+        return t;
+    }
+
+    static Status.Code statusCode(Throwable t) {
+        Throwable cause = unwrap(t);
+        if (cause instanceof StatusRuntimeException) {
+            return ((StatusRuntimeException) cause).getStatus().getCode();
+        }
+        return Status.Code.UNKNOWN;
+    }
+
+    static boolean isNotFound(Throwable t) {
+        return statusCode(t) == Status.Code.NOT_FOUND;
+    }
+}
@@ -0,0 +1,171 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import io.temporal.api.cloud.cloudservice.v1.GetApiKeysRequest;
+import io.temporal.api.cloud.cloudservice.v1.GetNamespacesRequest;
+import io.temporal.api.cloud.cloudservice.v1.GetServiceAccountsRequest;
+import io.temporal.api.cloud.cloudservice.v1.GetUsersRequest;
+import io.temporal.api.cloud.identity.v1.ApiKey;
+import io.temporal.api.cloud.identity.v1.ServiceAccount;
+import io.temporal.api.cloud.identity.v1.User;
+import io.temporal.api.cloud.namespace.v1.Namespace;
+import io.temporal.client.CloudOperationsClient;
+
+/**
+ * Lazily walks a paginated Cloud API list call by following {@code next_page_token}.
+ *
+ * <p>As soon as page N arrives the request for page N+1 is sent on the future stub, so the
+ * network round-trip overlaps with the caller consuming page N. At most two pages are held in
+ * memory at any time, regardless of how many items the account has.
+ */
+final class CloudPager<T> implements Iterator<T> {
+
+    /** One page of results plus the token for the following page ("" when this is the last page). */
+    static final class Page<T> {
+        final List<T> items;
+        final String nextPageToken;
+
+        Page(List<T> items, String nextPageToken) {
+            this.items = items;
+            this.nextPageToken = nextPageToken;
+        }
+    }
+
+    /** Issues the list call for the given page token. */
+    interface PageFetcher<T> {
+        ListenableFuture<Page<T>> fetch(String pageToken);
+    }
+
+    private final PageFetcher<T> fetcher;
+    private Iterator<T> current = Collections.emptyIterator();
+    private ListenableFuture<Page<T>> pending;
+
+    CloudPager(PageFetcher<T> fetcher) {
+        this.fetcher = fetcher;
+        // kick off the first page right away so it is in flight before the first hasNext()
+        this.pending = fetcher.fetch("");
+    }
+
+    static CloudPager<Namespace> namespaces(CloudOperationsClient client, int pageSize) {
+        return new CloudPager<>(token -> page(
+            client.getCloudServiceStubs().futureStub().getNamespaces(
+                GetNamespacesRequest.newBuilder().setPageSize(pageSize).setPageToken(token).build()),
+            r -> new Page<>(r.getNamespacesList(), r.getNextPageToken())));
+    }
+
+    static CloudPager<User> users(CloudOperationsClient client, int pageSize) {
+        return new CloudPager<>(token -> page(
+            client.getCloudServiceStubs().futureStub().getUsers(
+                GetUsersRequest.newBuilder().setPageSize(pageSize).setPageToken(token).build()),
+            r -> new Page<>(r.getUsersList(), r.getNextPageToken())));
+    }
+
+    static CloudPager<ServiceAccount> serviceAccounts(CloudOperationsClient client, int pageSize) {
+        return new CloudPager<>(token -> page(
+            client.getCloudServiceStubs().futureStub().getServiceAccounts(
+                GetServiceAccountsRequest.newBuilder().setPageSize(pageSize).setPageToken(token).build()),
+            r -> new Page<>(r.getServiceAccountList(), r.getNextPageToken())));
+    }
+
+    static CloudPager<ApiKey> apiKeys(CloudOperationsClient client, int pageSize) {
+        return new CloudPager<>(token -> page(
+            client.getCloudServiceStubs().futureStub().getApiKeys(
+                GetApiKeysRequest.newBuilder().setPageSize(pageSize).setPageToken(token).build()),
+            r -> new Page<>(r.getApiKeysList(), r.getNextPageToken())));
+    }
+
+    // adapts a list response future into a Page future without hopping threads
+    static <R, T> ListenableFuture<Page<T>> page(ListenableFuture<R> response, Function<R, Page<T>> toPage) {
+        return Futures.transform(response, toPage::apply, MoreExecutors.directExecutor());
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (pending == null) {
+                return false;
+            }
+            Page<T> page = await(pending);
+            // prefetch the next page before handing out the items of this one
+            pending = page.nextPageToken.isEmpty() ? null : fetcher.fetch(page.nextPageToken);
+            current = page.items.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    /** Stops the walk and cancels the prefetch that may still be in flight. */
+    void cancel() {
+        if (pending != null) {
+            pending.cancel(true);
+            pending = null;
+        }
+        current = Collections.emptyIterator();
+    }
+
+    /**
+     * Collects every remaining item without blocking a thread: each page is requested from the
+     * callback of the previous one. Use this instead of iterating when composing futures.
+     */
+    CompletableFuture<List<T>> toListAsync() {
+        List<T> items = new ArrayList<>();
+        current.forEachRemaining(items::add);
+        current = Collections.emptyIterator();
+        ListenableFuture<Page<T>> next = pending;
+        pending = null;
+        return next == null ? CompletableFuture.completedFuture(items) : collect(next, items);
+    }
+
+    private CompletableFuture<List<T>> collect(ListenableFuture<Page<T>> page, List<T> items) {
+        return CloudFutures.toCompletable(page).thenCompose(p -> {
+            items.addAll(p.items);
+            return p.nextPageToken.isEmpty()
+                ? CompletableFuture.completedFuture(items)
+                : collect(fetcher.fetch(p.nextPageToken), items);
+        });
+    }
+
+    Stream<T> stream() {
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+            .onClose(this::cancel);
+    }
+
+    private static <P> P await(ListenableFuture<P> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            // surface gRPC errors exactly as the blocking stub would
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the next page", e);
+        }
+    }
+}
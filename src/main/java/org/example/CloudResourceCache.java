@@ -0,0 +1,294 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.temporal.api.cloud.cloudservice.v1.GetNamespaceRequest;
+import io.temporal.api.cloud.cloudservice.v1.GetServiceAccountRequest;
+import io.temporal.api.cloud.cloudservice.v1.GetUserRequest;
+import io.temporal.api.cloud.cloudservice.v1.GetUsersRequest;
+import io.temporal.api.cloud.identity.v1.ServiceAccount;
+import io.temporal.api.cloud.identity.v1.User;
+import io.temporal.api.cloud.namespace.v1.Namespace;
+import io.temporal.client.CloudOperationsClient;
+
+/**
+ * Read-through cache in front of the CloudService read RPCs.
+ *
+ * <p>Entries are bounded in number and expire after a TTL. Each entry remembers the
+ * {@code resource_version} it was read at, and a refresh with the same version keeps the existing
+ * entry, so warming from a list call never churns entries that did not change. A NOT_FOUND answer
+ * is cached too (for a much shorter time), which makes repeated "does this namespace exist?"
+ * checks free. Callers must invalidate after their own writes.
+ */
+public final class CloudResourceCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(CloudResourceCache.class);
+
+    private static final long DEFAULT_MAXIMUM_SIZE = 10_000;
+    private static final Duration DEFAULT_TTL = Duration.ofMinutes(5);
+    private static final Duration DEFAULT_NEGATIVE_TTL = Duration.ofSeconds(10);
+
+    // a cached read: either a value at a resource version, or a known-absent marker that expires early
+    private static final class Entry<T> {
+        final T value;
+        final String resourceVersion;
+        final long absentUntilNanos;
+
+        Entry(T value, String resourceVersion, long absentUntilNanos) {
+            this.value = value;
+            this.resourceVersion = resourceVersion;
+            this.absentUntilNanos = absentUntilNanos;
+        }
+
+        boolean isLive() {
+            return value != null || System.nanoTime() < absentUntilNanos;
+        }
+    }
+
+    private final Cache<String, Entry<Namespace>> namespaces;
+    private final Cache<String, Entry<User>> users;
+    private final Cache<String, Entry<ServiceAccount>> serviceAccounts;
+    // lower-cased email -> user id, so lookups by email can be answered from the user cache
+    private final Cache<String, String> userIdsByEmail;
+    private final long negativeTtlNanos;
+
+    public CloudResourceCache() {
+        this(DEFAULT_MAXIMUM_SIZE, DEFAULT_TTL, DEFAULT_NEGATIVE_TTL);
+    }
+
+    public CloudResourceCache(long maximumSize, Duration ttl, Duration negativeTtl) {
+        this.namespaces = newCache(maximumSize, ttl);
+        this.users = newCache(maximumSize, ttl);
+        this.serviceAccounts = newCache(maximumSize, ttl);
+        this.userIdsByEmail = newCache(maximumSize, ttl);
+        this.negativeTtlNanos = negativeTtl.toNanos();
+    }
+
+    private static <V> Cache<String, V> newCache(long maximumSize, Duration ttl) {
+        return CacheBuilder.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(ttl.toMillis(), TimeUnit.MILLISECONDS)
+            .recordStats()
+            .build();
+    }
+
+    // ---- namespaces ----
+
+    public Optional<Namespace> getNamespace(CloudOperationsClient client, String namespace) {
+        try {
+            return getNamespaceAsync(client, namespace).join();
+        } catch (CompletionException e) {
+            throw rethrow(e);
+        }
+    }
+
+    public CompletableFuture<Optional<Namespace>> getNamespaceAsync(CloudOperationsClient client, String namespace) {
+        Entry<Namespace> cached = namespaces.getIfPresent(namespace);
+        if (cached != null && cached.isLive()) {
+            return CompletableFuture.completedFuture(Optional.ofNullable(cached.value));
+        }
+        return CloudFutures.toCompletable(client
+                .getCloudServiceStubs()
+                .futureStub()
+                .getNamespace(GetNamespaceRequest.newBuilder().setNamespace(namespace).build()))
+            .handle((resp, error) -> {
+                if (error == null) {
+                    putNamespace(resp.getNamespace());
+                    return Optional.of(resp.getNamespace());
+                }
+                if (CloudFutures.isNotFound(error)) {
+                    namespaces.put(namespace, absent());
+                    return Optional.<Namespace>empty();
+                }
+                throw new CompletionException(CloudFutures.unwrap(error));
+            });
+    }
+
+    public boolean namespaceExists(CloudOperationsClient client, String namespace) {
+        return getNamespace(client, namespace).isPresent();
+    }
+
+    public void putNamespace(Namespace namespace) {
+        put(namespaces, namespace.getNamespace(), namespace, namespace.getResourceVersion());
+    }
+
+    public void invalidateNamespace(String namespace) {
+        namespaces.invalidate(namespace);
+    }
+
+    /** Loads every namespace in the account into the cache using paginated GetNamespaces calls. */
+    public int warmNamespaces(CloudOperationsClient client, int pageSize) {
+        int count = 0;
+        for (Iterator<Namespace> it = CloudPager.namespaces(client, pageSize); it.hasNext(); count++) {
+            putNamespace(it.next());
+        }
+        logger.info("Warmed namespace cache with " + count + " namespaces");
+        return count;
+    }
+
+    // ---- users ----
+
+    public Optional<User> getUser(CloudOperationsClient client, String userId) {
+        Entry<User> cached = users.getIfPresent(userId);
+        if (cached != null && cached.isLive()) {
+            return Optional.ofNullable(cached.value);
+        }
+        try {
+            User user = client
+                .getCloudServiceStubs()
+                .blockingStub()
+                .getUser(GetUserRequest.newBuilder().setUserId(userId).build())
+                .getUser();
+            putUser(user);
+            return Optional.of(user);
+        } catch (io.grpc.StatusRuntimeException e) {
+            if (!CloudFutures.isNotFound(e)) {
+                throw e;
+            }
+            users.put(userId, absent());
+            return Optional.empty();
+        }
+    }
+
+    public Optional<User> getUserByEmail(CloudOperationsClient client, String email) {
+        String userId = userIdsByEmail.getIfPresent(emailKey(email));
+        if (userId != null) {
+            Entry<User> cached = users.getIfPresent(userId);
+            if (cached != null && cached.isLive()) {
+                return Optional.ofNullable(cached.value);
+            }
+        }
+        // GetUsers supports filtering by email, which avoids paging through the whole account
+        Optional<User> match = Optional.empty();
+        for (User user : client
+                .getCloudServiceStubs()
+                .blockingStub()
+                .getUsers(GetUsersRequest.newBuilder().setEmail(email).build())
+                .getUsersList()) {
+            putUser(user);
+            if (user.getSpec().getEmail().equalsIgnoreCase(email)) {
+                match = Optional.of(user);
+            }
+        }
+        return match;
+    }
+
+    public void putUser(User user) {
+        put(users, user.getId(), user, user.getResourceVersion());
+        userIdsByEmail.put(emailKey(user.getSpec().getEmail()), user.getId());
+    }
+
+    public void invalidateUser(String userId) {
+        Entry<User> cached = users.getIfPresent(userId);
+        if (cached != null && cached.value != null) {
+            // the email may be about to change, and must not keep pointing at this user
+            userIdsByEmail.invalidate(emailKey(cached.value.getSpec().getEmail()));
+        }
+        users.invalidate(userId);
+    }
+
+    // emails are case-insensitive, as the Cloud API treats them
+    private static String emailKey(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+
+    public int warmUsers(CloudOperationsClient client, int pageSize) {
+        int count = 0;
+        for (Iterator<User> it = CloudPager.users(client, pageSize); it.hasNext(); count++) {
+            putUser(it.next());
+        }
+        logger.info("Warmed user cache with " + count + " users");
+        return count;
+    }
+
+    // ---- service accounts ----
+
+    public Optional<ServiceAccount> getServiceAccount(CloudOperationsClient client, String serviceAccountId) {
+        Entry<ServiceAccount> cached = serviceAccounts.getIfPresent(serviceAccountId);
+        if (cached != null && cached.isLive()) {
+            return Optional.ofNullable(cached.value);
+        }
+        try {
+            ServiceAccount sa = client
+                .getCloudServiceStubs()
+                .blockingStub()
+                .getServiceAccount(GetServiceAccountRequest.newBuilder().setServiceAccountId(serviceAccountId).build())
+                .getServiceAccount();
+            putServiceAccount(sa);
+            return Optional.of(sa);
+        } catch (io.grpc.StatusRuntimeException e) {
+            if (!CloudFutures.isNotFound(e)) {
+                throw e;
+            }
+            serviceAccounts.put(serviceAccountId, absent());
+            return Optional.empty();
+        }
+    }
+
+    public void putServiceAccount(ServiceAccount serviceAccount) {
+        put(serviceAccounts, serviceAccount.getId(), serviceAccount, serviceAccount.getResourceVersion());
+    }
+
+    public void invalidateServiceAccount(String serviceAccountId) {
+        serviceAccounts.invalidate(serviceAccountId);
+    }
+
+    public int warmServiceAccounts(CloudOperationsClient client, int pageSize) {
+        int count = 0;
+        for (Iterator<ServiceAccount> it = CloudPager.serviceAccounts(client, pageSize); it.hasNext(); count++) {
+            putServiceAccount(it.next());
+        }
+        logger.info("Warmed service account cache with " + count + " service accounts");
+        return count;
+    }
+
+    // ---- shared ----
+
+    public void invalidateAll() {
+        namespaces.invalidateAll();
+        users.invalidateAll();
+        serviceAccounts.invalidateAll();
+        userIdsByEmail.invalidateAll();
+    }
+
+    public CacheStats namespaceStats() {
+        return namespaces.stats();
+    }
+
+    @Override
+    public String toString() {
+        return "namespaces=" + namespaces.stats() + ", users=" + users.stats() + ", serviceAccounts=" + serviceAccounts.stats();
+    }
+
+    private static <T> void put(Cache<String, Entry<T>> cache, String key, T value, String resourceVersion) {
+        Entry<T> existing = cache.getIfPresent(key);
+        // same resource version means same content, so keep the entry we already have and just refresh its TTL
+        if (existing != null && existing.value != null && existing.resourceVersion.equals(resourceVersion)) {
+            cache.put(key, existing);
+            return;
+        }
+        cache.put(key, new Entry<>(value, resourceVersion, 0));
+    }
+
+    private <T> Entry<T> absent() {
+        return new Entry<>(null, "", System.nanoTime() + negativeTtlNanos);
+    }
+
+    private static RuntimeException rethrow(CompletionException e) {
+        Throwable cause = CloudFutures.unwrap(e);
+        return cause instanceof RuntimeException ? (RuntimeException) cause : e;
+    }
+}
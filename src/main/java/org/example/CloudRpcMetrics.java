@@ -0,0 +1,309 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpServer;
+
+import io.grpc.Status;
+
+/**
+ * Per-method metrics for Cloud API calls, filled in by {@link MetricsClientInterceptor}.
+ *
+ * <p>For every gRPC method it keeps an HdrHistogram of call latency, the number of calls in
+ * flight, a counter per status code and the request/response payload bytes. The numbers can be
+ * read three ways: as JMX MBeans under {@code org.example:type=CloudRpcMetrics,method=<Method>},
+ * as Prometheus text exposition from {@link #toPrometheusText()} or a local HTTP endpoint, and as
+ * a log-friendly table from {@link #summary()} sorted by p99 so the method driving tail latency
+ * is at the top.
+ */
+public final class CloudRpcMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(CloudRpcMetrics.class);
+
+    // latencies are recorded in microseconds, up to 10 minutes, with 3 significant digits
+    private static final long MAX_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(10);
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    /** JMX view of one method's metrics. */
+    public interface MethodMetricsMXBean {
+        String getMethod();
+
+        long getCount();
+
+        long getInFlight();
+
+        double getMeanMillis();
+
+        double getP50Millis();
+
+        double getP99Millis();
+
+        double getP999Millis();
+
+        double getMaxMillis();
+
+        long getRequestBytes();
+
+        long getResponseBytes();
+
+        Map<String, Long> getStatusCounts();
+    }
+
+    /** Metrics for a single gRPC method. */
+    public static final class MethodMetrics implements MethodMetricsMXBean {
+        private final String method;
+        private final Histogram latencyMicros = new ConcurrentHistogram(MAX_TRACKABLE_MICROS, 3);
+        private final AtomicLong inFlight = new AtomicLong();
+        private final Map<Status.Code, LongAdder> statusCounts = new EnumMap<>(Status.Code.class);
+        private final LongAdder requestBytes = new LongAdder();
+        private final LongAdder responseBytes = new LongAdder();
+
+        MethodMetrics(String method) {
+            this.method = method;
+            // pre-populate so the hot path never mutates the map
+            for (Status.Code code : Status.Code.values()) {
+                statusCounts.put(code, new LongAdder());
+            }
+        }
+
+        void started() {
+            inFlight.incrementAndGet();
+        }
+
+        void finished(long latencyNanos, Status.Code code) {
+            inFlight.decrementAndGet();
+            latencyMicros.recordValue(Math.min(latencyNanos / 1000, MAX_TRACKABLE_MICROS));
+            statusCounts.get(code).increment();
+        }
+
+        void requestBytes(int bytes) {
+            requestBytes.add(bytes);
+        }
+
+        void responseBytes(int bytes) {
+            responseBytes.add(bytes);
+        }
+
+        /** A consistent copy of the latency histogram, in microseconds. */
+        public Histogram latencySnapshot() {
+            return latencyMicros.copy();
+        }
+
+        @Override
+        public String getMethod() {
+            return method;
+        }
+
+        @Override
+        public long getCount() {
+            return latencyMicros.getTotalCount();
+        }
+
+        @Override
+        public long getInFlight() {
+            return inFlight.get();
+        }
+
+        @Override
+        public double getMeanMillis() {
+            return latencyMicros.getMean() / 1000.0;
+        }
+
+        @Override
+        public double getP50Millis() {
+            return latencyMicros.getValueAtPercentile(50) / 1000.0;
+        }
+
+        @Override
+        public double getP99Millis() {
+            return latencyMicros.getValueAtPercentile(99) / 1000.0;
+        }
+
+        @Override
+        public double getP999Millis() {
+            return latencyMicros.getValueAtPercentile(99.9) / 1000.0;
+        }
+
+        @Override
+        public double getMaxMillis() {
+            return latencyMicros.getMaxValue() / 1000.0;
+        }
+
+        @Override
+        public long getRequestBytes() {
+            return requestBytes.sum();
+        }
+
+        @Override
+        public long getResponseBytes() {
+            return responseBytes.sum();
+        }
+
+        @Override
+        public Map<String, Long> getStatusCounts() {
+            Map<String, Long> counts = new java.util.TreeMap<>();
+            statusCounts.forEach((code, count) -> {
+                long n = count.sum();
+                if (n > 0) {
+                    counts.put(code.name(), n);
+                }
+            });
+            return counts;
+        }
+    }
+
+    private final ConcurrentMap<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+    private final boolean registerMBeans;
+
+    public CloudRpcMetrics() {
+        this(false);
+    }
+
+    /** @param registerMBeans register each method's metrics with the platform MBean server, in the background, when first seen */
+    public CloudRpcMetrics(boolean registerMBeans) {
+        this.registerMBeans = registerMBeans;
+    }
+
+    /** Metrics for {@code method}, created on first use. */
+    public MethodMetrics method(String method) {
+        MethodMetrics existing = methods.get(method);
+        if (existing != null) {
+            return existing;
+        }
+        return methods.computeIfAbsent(method, m -> {
+            MethodMetrics created = new MethodMetrics(m);
+            if (registerMBeans) {
+                // starting the platform MBean server takes a few hundred ms, which would otherwise delay the first call
+                CompletableFuture.runAsync(() -> register(created));
+            }
+            return created;
+        });
+    }
+
+    public List<MethodMetrics> methods() {
+        return new ArrayList<>(methods.values());
+    }
+
+    private static void register(MethodMetrics metrics) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName("org.example:type=CloudRpcMetrics,method=" + ObjectName.quote(metrics.getMethod()));
+            if (!server.isRegistered(name)) {
+                server.registerMBean(metrics, name);
+            }
+        } catch (JMException e) {
+            logger.warn("Unable to register JMX metrics for " + metrics.getMethod() + ": " + e.getMessage());
+        }
+    }
+
+    /** Renders all metrics in the Prometheus text exposition format. */
+    public String toPrometheusText() {
+        StringBuilder out = new StringBuilder(4096);
+        List<MethodMetrics> sorted = methods();
+        sorted.sort(Comparator.comparing(MethodMetrics::getMethod));
+
+        out.append("# HELP cloud_rpc_latency_seconds Cloud API call latency.\n");
+        out.append("# TYPE cloud_rpc_latency_seconds summary\n");
+        for (MethodMetrics m : sorted) {
+            Histogram h = m.latencySnapshot();
+            for (double q : QUANTILES) {
+                out.append("cloud_rpc_latency_seconds{method=\"").append(m.getMethod())
+                    .append("\",quantile=\"").append(q).append("\"} ")
+                    .append(seconds(h.getValueAtPercentile(q * 100))).append('\n');
+            }
+            out.append("cloud_rpc_latency_seconds_sum{method=\"").append(m.getMethod()).append("\"} ")
+                .append(seconds((long) (h.getMean() * h.getTotalCount()))).append('\n');
+            out.append("cloud_rpc_latency_seconds_count{method=\"").append(m.getMethod()).append("\"} ")
+                .append(h.getTotalCount()).append('\n');
+        }
+
+        out.append("# HELP cloud_rpc_in_flight Cloud API calls currently in flight.\n");
+        out.append("# TYPE cloud_rpc_in_flight gauge\n");
+        for (MethodMetrics m : sorted) {
+            out.append("cloud_rpc_in_flight{method=\"").append(m.getMethod()).append("\"} ").append(m.getInFlight()).append('\n');
+        }
+
+        out.append("# HELP cloud_rpc_completed_total Cloud API calls completed, by status code.\n");
+        out.append("# TYPE cloud_rpc_completed_total counter\n");
+        for (MethodMetrics m : sorted) {
+            m.getStatusCounts().forEach((code, count) -> out.append("cloud_rpc_completed_total{method=\"")
+                .append(m.getMethod()).append("\",code=\"").append(code).append("\"} ").append(count).append('\n'));
+        }
+
+        out.append("# HELP cloud_rpc_request_bytes_total Serialized request payload bytes.\n");
+        out.append("# TYPE cloud_rpc_request_bytes_total counter\n");
+        for (MethodMetrics m : sorted) {
+            out.append("cloud_rpc_request_bytes_total{method=\"").append(m.getMethod()).append("\"} ").append(m.getRequestBytes()).append('\n');
+        }
+        out.append("# HELP cloud_rpc_response_bytes_total Serialized response payload bytes.\n");
+        out.append("# TYPE cloud_rpc_response_bytes_total counter\n");
+        for (MethodMetrics m : sorted) {
+            out.append("cloud_rpc_response_bytes_total{method=\"").append(m.getMethod()).append("\"} ").append(m.getResponseBytes()).append('\n');
+        }
+        return out.toString();
+    }
+
+    /**
+     * Serves {@link #toPrometheusText()} at {@code http://localhost:<port>/metrics}.
+     * Only the loopback interface is bound. Stop the returned server when done.
+     */
+    public HttpServer serveHttp(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = toPrometheusText().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.start();
+        logger.info("Serving Cloud API metrics on http://localhost:" + server.getAddress().getPort() + "/metrics");
+        return server;
+    }
+
+    /** One line per method, slowest p99 first. */
+    public String summary() {
+        List<MethodMetrics> sorted = methods();
+        sorted.sort(Comparator.comparingDouble(MethodMetrics::getP99Millis).reversed());
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "%-24s %8s %9s %9s %9s %9s %10s %10s  %s%n",
+            "method", "count", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "req B", "resp B", "status"));
+        for (MethodMetrics m : sorted) {
+            out.append(String.format(Locale.ROOT, "%-24s %8d %9.2f %9.2f %9.2f %9.2f %10d %10d  %s%n",
+                m.getMethod(), m.getCount(), m.getP50Millis(), m.getP99Millis(), m.getP999Millis(), m.getMaxMillis(),
+                m.getRequestBytes(), m.getResponseBytes(), m.getStatusCounts()));
+        }
+        return out.toString();
+    }
+
+    private static String seconds(long micros) {
+        return Double.toString(micros / 1_000_000.0);
+    }
+}
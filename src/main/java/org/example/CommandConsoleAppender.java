@@ -0,0 +1,22 @@
+package org.example;
+
+import ch.qos.logback.core.ConsoleAppender;
+
+/**
+ * Console appender that lets {@link CommandRunner} tell log lines apart from other output.
+ *
+ * <p>The logging pattern already puts the command from the MDC in every line, so while this
+ * appender writes, CommandRunner does not add its {@code [name]} prefix as well.
+ */
+public final class CommandConsoleAppender<E> extends ConsoleAppender<E> {
+
+    @Override
+    protected void subAppend(E event) {
+        CommandRunner.LOG_LINE.set(Boolean.TRUE);
+        try {
+            super.subAppend(event);
+        } finally {
+            CommandRunner.LOG_LINE.remove();
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package org.example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+/**
+ * Runs the demo's commands, either one after another or concurrently.
+ *
+ * <p>Each command says which resources it reads and which it writes, e.g.
+ * {@code namespace/testns4.ksfop} or {@code user/*}. In concurrent mode a command waits only for
+ * the earlier commands it conflicts with: both touch the same resource and at least one of them
+ * writes it. So {@code createMTLSNamespace rotateNamespaceMTLSCert} keeps its order, while
+ * {@code printUsers printServiceAccounts printNamespaces} all start at once. A resource ending in
+ * {@code *} covers every resource with that prefix.
+ *
+ * <p>Concurrent commands run on virtual threads when the JDK has them (Java 21+), and on a bounded
+ * pool of platform threads otherwise. The commands block on the Cloud API most of the time, so
+ * either way the threads mostly wait.
+ *
+ * <p>While a command runs, its name is in the logging MDC under {@code command}, so its log lines
+ * can be told apart. {@link MdcClientInterceptor} carries it over to the gRPC threads that
+ * complete the command's calls. In concurrent mode, lines it prints to {@code System.out} are
+ * prefixed with {@code [name]} as well. Lines written by {@link CommandConsoleAppender} already
+ * carry the name through the logging pattern and are left as they are.
+ */
+public final class CommandRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommandRunner.class);
+
+    static final String MDC_KEY = "command";
+    // set while CommandConsoleAppender writes a log line, which is tagged by the logging pattern already
+    static final ThreadLocal<Boolean> LOG_LINE = new ThreadLocal<>();
+    private static final int MAX_PLATFORM_THREADS = 16;
+
+    /** One command line argument and the resources it touches. */
+    public static final class Command {
+        private final String name;
+        private final Set<String> reads;
+        private final Set<String> writes;
+        private final Runnable action;
+
+        public Command(String name, Set<String> reads, Set<String> writes, Runnable action) {
+            this.name = name;
+            this.reads = reads;
+            this.writes = writes;
+            this.action = action;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /** True if the two commands must not overlap: one writes something the other reads or writes. */
+        boolean conflictsWith(Command other) {
+            return overlaps(writes, other.writes) || overlaps(writes, other.reads) || overlaps(reads, other.writes);
+        }
+
+        private static boolean overlaps(Set<String> a, Set<String> b) {
+            for (String x : a) {
+                for (String y : b) {
+                    if (covers(x, y) || covers(y, x)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private static boolean covers(String pattern, String resource) {
+            return pattern.endsWith("*") ? resource.startsWith(pattern.substring(0, pattern.length() - 1)) : pattern.equals(resource);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /** How one command went. */
+    public static final class CommandResult {
+        private final Command command;
+        private final Duration startOffset;
+        private final Duration elapsed;
+        private final Throwable error;
+
+        CommandResult(Command command, Duration startOffset, Duration elapsed, Throwable error) {
+            this.command = command;
+            this.startOffset = startOffset;
+            this.elapsed = elapsed;
+            this.error = error;
+        }
+
+        public Command getCommand() {
+            return command;
+        }
+
+        /** When the command started, relative to the start of the run. */
+        public Duration getStartOffset() {
+            return startOffset;
+        }
+
+        public Duration getElapsed() {
+            return elapsed;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+    }
+
+    /** Timing of a whole run: wall-clock time against the time the commands took added up. */
+    public static final class Report {
+        private final List<CommandResult> results;
+        private final Duration wallClock;
+        private final String executor;
+
+        Report(List<CommandResult> results, Duration wallClock, String executor) {
+            this.results = results;
+            this.wallClock = wallClock;
+            this.executor = executor;
+        }
+
+        public List<CommandResult> getResults() {
+            return results;
+        }
+
+        public Duration getWallClock() {
+            return wallClock;
+        }
+
+        public Duration getSummed() {
+            return results.stream().map(CommandResult::getElapsed).reduce(Duration.ZERO, Duration::plus);
+        }
+
+        public long failures() {
+            return results.stream().filter(r -> r.getError() != null).count();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder(String.format("%-40s %10s %10s  %s%n", "command", "start", "elapsed", "status"));
+            for (CommandResult r : results) {
+                out.append(String.format("%-40s %8dms %8dms  %s%n", r.getCommand().getName(), r.getStartOffset().toMillis(),
+                    r.getElapsed().toMillis(), r.getError() == null ? "ok" : "failed: " + r.getError()));
+            }
+            long summed = getSummed().toMillis();
+            return out.append(String.format("wall clock %dms, commands summed %dms (%.1fx) on %s",
+                wallClock.toMillis(), summed, summed / (double) Math.max(1, wallClock.toMillis()), executor)).toString();
+        }
+    }
+
+    private final boolean concurrent;
+
+    public CommandRunner(boolean concurrent) {
+        this.concurrent = concurrent;
+    }
+
+    public Report run(List<Command> commands) {
+        return concurrent ? runConcurrently(commands) : runSerially(commands);
+    }
+
+    private Report runSerially(List<Command> commands) {
+        long start = System.nanoTime();
+        List<CommandResult> results = new ArrayList<>();
+        for (Command command : commands) {
+            results.add(execute(command, start));
+        }
+        return new Report(Collections.unmodifiableList(results), Duration.ofNanos(System.nanoTime() - start), "the main thread");
+    }
+
+    private Report runConcurrently(List<Command> commands) {
+        long start = System.nanoTime();
+        ExecutorService virtual = newVirtualThreadExecutor();
+        ExecutorService executor = virtual != null ? virtual : newPlatformThreadPool(commands.size());
+        String description = virtual != null ? "virtual threads" : "a pool of " + Math.min(Math.max(1, commands.size()), MAX_PLATFORM_THREADS) + " threads";
+
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(new CommandPrefixingStream(stdout), false, StandardCharsets.UTF_8));
+        try {
+            List<CompletableFuture<CommandResult>> futures = new ArrayList<>();
+            for (int i = 0; i < commands.size(); i++) {
+                Command command = commands.get(i);
+                // wait for every earlier command this one conflicts with; the rest of the order does not matter
+                List<CompletableFuture<CommandResult>> before = new ArrayList<>();
+                for (int j = 0; j < i; j++) {
+                    if (command.conflictsWith(commands.get(j))) {
+                        before.add(futures.get(j));
+                    }
+                }
+                futures.add(CompletableFuture.allOf(before.toArray(new CompletableFuture<?>[0]))
+                    .thenApplyAsync(ignored -> execute(command, start), executor));
+            }
+            List<CommandResult> results = new ArrayList<>(futures.size());
+            futures.forEach(f -> results.add(f.join()));
+            return new Report(Collections.unmodifiableList(results), Duration.ofNanos(System.nanoTime() - start), description);
+        } finally {
+            System.out.flush();
+            System.setOut(stdout);
+            executor.shutdown();
+        }
+    }
+
+    private static CommandResult execute(Command command, long runStart) {
+        long start = System.nanoTime();
+        MDC.put(MDC_KEY, command.getName());
+        try {
+            command.action.run();
+            return new CommandResult(command, Duration.ofNanos(start - runStart), Duration.ofNanos(System.nanoTime() - start), null);
+        } catch (RuntimeException e) {
+            logger.error("Command " + command.getName() + " failed: " + e.getMessage());
+            return new CommandResult(command, Duration.ofNanos(start - runStart), Duration.ofNanos(System.nanoTime() - start), e);
+        } finally {
+            // a last line without a newline is written now, while the MDC still names this command
+            System.out.flush();
+            MDC.remove(MDC_KEY);
+        }
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() is only there on Java 21+, and the build targets 17
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newPlatformThreadPool(int commands) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.min(Math.max(1, commands), MAX_PLATFORM_THREADS), r -> {
+            Thread t = new Thread(r, "command-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // Collects what each thread prints into whole lines and writes every line in one piece, prefixed
+    // with the command the thread is running, so output of concurrent commands is not interleaved mid-line
+    private static final class CommandPrefixingStream extends OutputStream {
+        private final PrintStream out;
+        private final ThreadLocal<ByteArrayOutputStream> line = ThreadLocal.withInitial(ByteArrayOutputStream::new);
+
+        CommandPrefixingStream(PrintStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) {
+            ByteArrayOutputStream buffer = line.get();
+            buffer.write(b);
+            if (b == '\n') {
+                writeLine(buffer);
+            }
+        }
+
+        @Override
+        public void flush() {
+            ByteArrayOutputStream buffer = line.get();
+            if (buffer.size() > 0) {
+                writeLine(buffer);
+            }
+            out.flush();
+        }
+
+        private void writeLine(ByteArrayOutputStream buffer) {
+            String command = MDC.get(MDC_KEY);
+            // logback's console appender writes through System.out too, and its lines already carry the tag from the MDC
+            boolean tagged = command == null || Boolean.TRUE.equals(LOG_LINE.get());
+            byte[] prefix = tagged ? new byte[0] : ("[" + command + "] ").getBytes(StandardCharsets.UTF_8);
+            synchronized (out) {
+                out.write(prefix, 0, prefix.length);
+                out.write(buffer.toByteArray(), 0, buffer.size());
+            }
+            buffer.reset();
+        }
+    }
+}
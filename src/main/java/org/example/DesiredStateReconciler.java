@@ -0,0 +1,731 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.google.protobuf.util.JsonFormat;
+
+import io.temporal.api.cloud.cloudservice.v1.CreateApiKeyRequest;
+import io.temporal.api.cloud.cloudservice.v1.CreateNamespaceRequest;
+import io.temporal.api.cloud.cloudservice.v1.CreateServiceAccountRequest;
+import io.temporal.api.cloud.cloudservice.v1.CreateUserRequest;
+import io.temporal.api.cloud.cloudservice.v1.GetNamespaceRequest;
+import io.temporal.api.cloud.cloudservice.v1.UpdateApiKeyRequest;
+import io.temporal.api.cloud.cloudservice.v1.UpdateServiceAccountRequest;
+import io.temporal.api.cloud.cloudservice.v1.UpdateUserRequest;
+import io.temporal.api.cloud.identity.v1.Access;
+import io.temporal.api.cloud.identity.v1.ApiKey;
+import io.temporal.api.cloud.identity.v1.ApiKeySpec;
+import io.temporal.api.cloud.identity.v1.ServiceAccount;
+import io.temporal.api.cloud.identity.v1.ServiceAccountSpec;
+import io.temporal.api.cloud.identity.v1.User;
+import io.temporal.api.cloud.identity.v1.UserSpec;
+import io.temporal.api.cloud.namespace.v1.Namespace;
+import io.temporal.api.cloud.namespace.v1.NamespaceSpec;
+import io.temporal.client.CloudOperationsClient;
+
+/**
+ * Brings an account in line with a desired-state file instead of running commands one by one.
+ *
+ * <p>Reconciling is two steps. {@link #plan} reads the current namespaces, users, service accounts
+ * and API keys in parallel and works out the smallest set of creates and updates: a resource that
+ * does not exist is created, and one that exists is only updated if the desired spec, laid over the
+ * current one with {@link ProtoDiff#overlay}, actually changes it. Namespace updates are sent
+ * through a {@link NamespaceUpdateCoalescer}, which lays the desired fields over the spec the
+ * namespace has at that moment and retries version conflicts. {@link #apply} then runs those
+ * operations as a dependency graph. A user or service account waits for the namespaces its
+ * {@code NamespaceAccess} entries refer to that are being created, and an API key waits for the
+ * service account that owns it. A create only counts as done once its async operation has
+ * finished, as reported by an {@link AsyncOperationTracker}, and every create carries its own
+ * {@code async_operation_id}, so a replayed create does not make a second resource. Everything else runs concurrently, with at most
+ * {@code maxInFlight} RPCs outstanding, as in {@link BulkNamespaceProvisioner}. If an operation
+ * fails, the operations that depend on it are skipped.
+ *
+ * <p>Against an account that already matches the file, the plan is empty and only read RPCs are
+ * issued.
+ *
+ * <p>The file is JSON. Specs use the proto3 JSON names of the Cloud API messages, and fields left
+ * out keep whatever value the server has:
+ * <pre>{@code
+ * {
+ *   "namespaces": [{"namespace": "ns1.acct", "spec": {"regions": ["aws-us-east-1"], "retentionDays": 30,
+ *                                                     "apiKeyAuth": {"enabled": true}}}],
+ *   "users": [{"email": "a@b.com", "access": {"accountAccess": {"role": "developer"},
+ *                                             "namespaceAccesses": {"ns1.acct": {"permission": "admin"}}}}],
+ *   "serviceAccounts": [{"name": "ci", "access": {"accountAccess": {"role": "read"}}}],
+ *   "apiKeys": [{"ownerServiceAccount": "ci", "displayName": "ci-key", "expiryTime": "2030-01-01T00:00:00Z"}]
+ * }
+ * }</pre>
+ * A namespace spec without a {@code name} takes the part of the namespace id before the account
+ * suffix. An API key either names its owner directly with {@code ownerId}/{@code ownerType} or
+ * refers to a service account by name with {@code ownerServiceAccount}.
+ */
+public final class DesiredStateReconciler implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(DesiredStateReconciler.class);
+
+    private static final int PAGE_SIZE = 100;
+    private static final String SERVICE_ACCOUNT_OWNER = "service-account";
+
+    public enum Kind { NAMESPACE, USER, SERVICE_ACCOUNT, API_KEY }
+
+    public enum Action { CREATE, UPDATE }
+
+    public enum Outcome { APPLIED, SKIPPED, FAILED }
+
+    /** The parsed desired-state file. */
+    public static final class DesiredState {
+        private final Map<String, NamespaceSpec> namespaces;
+        private final List<UserSpec> users;
+        private final List<ServiceAccountSpec> serviceAccounts;
+        private final List<DesiredApiKey> apiKeys;
+
+        DesiredState(Map<String, NamespaceSpec> namespaces, List<UserSpec> users, List<ServiceAccountSpec> serviceAccounts, List<DesiredApiKey> apiKeys) {
+            this.namespaces = namespaces;
+            this.users = users;
+            this.serviceAccounts = serviceAccounts;
+            this.apiKeys = apiKeys;
+        }
+
+        public static DesiredState load(Path file) throws IOException {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                return parse(reader);
+            }
+        }
+
+        public static DesiredState parse(Reader reader) throws IOException {
+            JsonObject root;
+            try {
+                root = JsonParser.parseReader(reader).getAsJsonObject();
+            } catch (JsonParseException | IllegalStateException e) {
+                throw new IOException("Desired state is not a JSON object: " + e.getMessage(), e);
+            }
+
+            Map<String, NamespaceSpec> namespaces = new LinkedHashMap<>();
+            for (JsonElement element : array(root, "namespaces")) {
+                JsonObject entry = element.getAsJsonObject();
+                String namespace = entry.get("namespace").getAsString();
+                NamespaceSpec.Builder spec = NamespaceSpec.newBuilder();
+                merge(entry.has("spec") ? entry.get("spec") : new JsonObject(), spec);
+                if (spec.getName().isEmpty()) {
+                    int dot = namespace.lastIndexOf('.');
+                    spec.setName(dot < 0 ? namespace : namespace.substring(0, dot));
+                }
+                namespaces.put(namespace, spec.build());
+            }
+            List<UserSpec> users = new ArrayList<>();
+            for (JsonElement element : array(root, "users")) {
+                UserSpec.Builder spec = UserSpec.newBuilder();
+                merge(element, spec);
+                users.add(spec.build());
+            }
+            List<ServiceAccountSpec> serviceAccounts = new ArrayList<>();
+            for (JsonElement element : array(root, "serviceAccounts")) {
+                ServiceAccountSpec.Builder spec = ServiceAccountSpec.newBuilder();
+                merge(element, spec);
+                serviceAccounts.add(spec.build());
+            }
+            List<DesiredApiKey> apiKeys = new ArrayList<>();
+            for (JsonElement element : array(root, "apiKeys")) {
+                JsonObject entry = element.getAsJsonObject().deepCopy();
+                JsonElement owner = entry.remove("ownerServiceAccount");
+                ApiKeySpec.Builder spec = ApiKeySpec.newBuilder();
+                merge(entry, spec);
+                apiKeys.add(new DesiredApiKey(spec.build(), owner == null ? null : owner.getAsString()));
+            }
+            return new DesiredState(namespaces, users, serviceAccounts, apiKeys);
+        }
+
+        private static JsonArray array(JsonObject root, String name) {
+            return root.has(name) ? root.getAsJsonArray(name) : new JsonArray();
+        }
+
+        private static void merge(JsonElement json, Message.Builder builder) throws IOException {
+            try {
+                JsonFormat.parser().merge(json.toString(), builder);
+            } catch (InvalidProtocolBufferException e) {
+                throw new IOException("Invalid " + builder.getDescriptorForType().getName() + ": " + e.getMessage(), e);
+            }
+        }
+
+        public int size() {
+            return namespaces.size() + users.size() + serviceAccounts.size() + apiKeys.size();
+        }
+    }
+
+    // an API key whose owner may be a service account that only exists once the plan has run
+    static final class DesiredApiKey {
+        final ApiKeySpec spec;
+        final String ownerServiceAccount;
+
+        DesiredApiKey(ApiKeySpec spec, String ownerServiceAccount) {
+            this.spec = spec;
+            this.ownerServiceAccount = ownerServiceAccount;
+        }
+    }
+
+    /** One create or update in a {@link Plan}. */
+    public static final class Operation {
+        private final Kind kind;
+        private final String key;
+        private final Action action;
+        private final List<String> changedFields;
+        private final List<Operation> dependencies;
+        private final Supplier<CompletableFuture<Void>> apply;
+
+        Operation(Kind kind, String key, Action action, List<String> changedFields, List<Operation> dependencies, Supplier<CompletableFuture<Void>> apply) {
+            this.kind = kind;
+            this.key = key;
+            this.action = action;
+            this.changedFields = changedFields;
+            this.dependencies = dependencies;
+            this.apply = apply;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public Action getAction() {
+            return action;
+        }
+
+        /** Spec fields an update changes; empty for a create. */
+        public List<String> getChangedFields() {
+            return changedFields;
+        }
+
+        public List<Operation> getDependencies() {
+            return dependencies;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder().append(action).append(' ').append(kind).append(' ').append(key);
+            if (!changedFields.isEmpty()) {
+                out.append(" ").append(changedFields);
+            }
+            if (!dependencies.isEmpty()) {
+                out.append(" after");
+                dependencies.forEach(d -> out.append(' ').append(d.getKey()));
+            }
+            return out.toString();
+        }
+    }
+
+    /** The operations needed to reach the desired state, in dependency order. */
+    public static final class Plan {
+        private final List<Operation> operations;
+        private final int resources;
+        private final Duration readTime;
+
+        Plan(List<Operation> operations, int resources, Duration readTime) {
+            this.operations = operations;
+            this.resources = resources;
+            this.readTime = readTime;
+        }
+
+        public List<Operation> getOperations() {
+            return operations;
+        }
+
+        public boolean isEmpty() {
+            return operations.isEmpty();
+        }
+
+        public Duration getReadTime() {
+            return readTime;
+        }
+
+        public long count(Action action) {
+            return operations.stream().filter(o -> o.getAction() == action).count();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder(String.format("%d desired resources read in %dms: %d to create, %d to update, %d unchanged",
+                resources, readTime.toMillis(), count(Action.CREATE), count(Action.UPDATE), resources - operations.size()));
+            operations.forEach(o -> out.append("\n  ").append(o));
+            return out.toString();
+        }
+    }
+
+    /** What happened to a single operation. */
+    public static final class Result {
+        private final Operation operation;
+        private final Outcome outcome;
+        private final Duration elapsed;
+        private final Throwable error;
+
+        Result(Operation operation, Outcome outcome, Duration elapsed, Throwable error) {
+            this.operation = operation;
+            this.outcome = outcome;
+            this.elapsed = elapsed;
+            this.error = error;
+        }
+
+        public Operation getOperation() {
+            return operation;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        public Duration getElapsed() {
+            return elapsed;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return operation.getAction() + " " + operation.getKind() + " " + operation.getKey() + " " + outcome
+                + " in " + elapsed.toMillis() + "ms" + (error == null ? "" : " (" + error.getMessage() + ")");
+        }
+    }
+
+    /** Aggregate view over an applied plan. */
+    public static final class Summary {
+        private final Plan plan;
+        private final List<Result> results;
+        private final Duration wallClock;
+
+        Summary(Plan plan, List<Result> results, Duration wallClock) {
+            this.plan = plan;
+            this.results = results;
+            this.wallClock = wallClock;
+        }
+
+        public Plan getPlan() {
+            return plan;
+        }
+
+        public List<Result> getResults() {
+            return results;
+        }
+
+        public Duration getWallClock() {
+            return wallClock;
+        }
+
+        public long count(Outcome outcome) {
+            return results.stream().filter(r -> r.getOutcome() == outcome).count();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d operations in %dms after %dms of reads: %d applied, %d skipped, %d failed",
+                results.size(), wallClock.toMillis(), plan.getReadTime().toMillis(),
+                count(Outcome.APPLIED), count(Outcome.SKIPPED), count(Outcome.FAILED));
+        }
+    }
+
+    // everything plan() read, keyed the way the desired state refers to it
+    private static final class CurrentState {
+        final Map<String, Namespace> namespaces = new HashMap<>();
+        final Map<String, User> usersByEmail = new HashMap<>();
+        final Map<String, ServiceAccount> serviceAccountsByName = new HashMap<>();
+        final Map<String, ApiKey> apiKeysByOwnerAndName = new HashMap<>();
+    }
+
+    private final CloudOperationsClient client;
+    private final AsyncLimiter limiter;
+    private final NamespaceStatusPoller poller;
+    private final CloudResourceCache cache;
+    private final NamespaceUpdateCoalescer updates;
+    private final AsyncOperationTracker tracker = new AsyncOperationTracker();
+    private final boolean ownsPoller;
+    private final boolean ownsUpdates;
+
+    public DesiredStateReconciler(CloudOperationsClient client, int maxInFlight) {
+        this(client, maxInFlight, new NamespaceStatusPoller(), new CloudResourceCache(), true);
+    }
+
+    public DesiredStateReconciler(CloudOperationsClient client, int maxInFlight, NamespaceStatusPoller poller, CloudResourceCache cache) {
+        this(client, maxInFlight, poller, cache, false);
+    }
+
+    // share the poller, cache and namespace update pipeline of the demo clients, like BulkNamespaceProvisioner
+    public DesiredStateReconciler(CloudOperationsClient client, int maxInFlight, NamespaceStatusPoller poller, CloudResourceCache cache,
+                                  NamespaceUpdateCoalescer updates) {
+        this(client, maxInFlight, poller, cache, updates, false, false);
+    }
+
+    private DesiredStateReconciler(CloudOperationsClient client, int maxInFlight, NamespaceStatusPoller poller, CloudResourceCache cache, boolean ownsPoller) {
+        this(client, maxInFlight, poller, cache, new NamespaceUpdateCoalescer(cache), ownsPoller, true);
+    }
+
+    private DesiredStateReconciler(CloudOperationsClient client, int maxInFlight, NamespaceStatusPoller poller, CloudResourceCache cache,
+                                   NamespaceUpdateCoalescer updates, boolean ownsPoller, boolean ownsUpdates) {
+        this.client = client;
+        this.limiter = new AsyncLimiter(maxInFlight);
+        this.poller = poller;
+        this.cache = cache;
+        this.updates = updates;
+        this.ownsPoller = ownsPoller;
+        this.ownsUpdates = ownsUpdates;
+    }
+
+    /** Plans and applies in one go. */
+    public CompletableFuture<Summary> reconcile(DesiredState desired) {
+        return plan(desired).thenCompose(this::apply);
+    }
+
+    /** Reads the current state in parallel and works out what has to change. Issues only read RPCs. */
+    public CompletableFuture<Plan> plan(DesiredState desired) {
+        long start = System.nanoTime();
+        CurrentState current = new CurrentState();
+
+        // the namespaces are read one by one because the file names them; the identities are listed in full,
+        // since the Cloud API can only look them up by id and the file refers to them by email or name
+        List<CompletableFuture<Void>> reads = new ArrayList<>();
+        for (String namespace : desired.namespaces.keySet()) {
+            reads.add(readNamespace(namespace).thenAccept(found -> found.ifPresent(ns -> {
+                synchronized (current) {
+                    current.namespaces.put(namespace, ns);
+                }
+            })));
+        }
+        if (!desired.users.isEmpty()) {
+            reads.add(limiter.submit(() -> CloudPager.users(client, PAGE_SIZE).toListAsync()).thenAccept(users -> {
+                synchronized (current) {
+                    users.forEach(u -> current.usersByEmail.put(emailKey(u.getSpec().getEmail()), u));
+                }
+            }));
+        }
+        if (!desired.serviceAccounts.isEmpty() || !desired.apiKeys.isEmpty()) {
+            reads.add(limiter.submit(() -> CloudPager.serviceAccounts(client, PAGE_SIZE).toListAsync()).thenAccept(accounts -> {
+                synchronized (current) {
+                    accounts.forEach(sa -> current.serviceAccountsByName.put(sa.getSpec().getName(), sa));
+                }
+            }));
+        }
+        if (!desired.apiKeys.isEmpty()) {
+            reads.add(limiter.submit(() -> CloudPager.apiKeys(client, PAGE_SIZE).toListAsync()).thenAccept(keys -> {
+                synchronized (current) {
+                    keys.forEach(k -> current.apiKeysByOwnerAndName.put(apiKeyKey(k.getSpec().getOwnerId(), k.getSpec().getDisplayName()), k));
+                }
+            }));
+        }
+
+        return CompletableFuture.allOf(reads.toArray(new CompletableFuture<?>[0]))
+            .thenApply(ignored -> {
+                synchronized (current) {
+                    return diff(desired, current, Duration.ofNanos(System.nanoTime() - start));
+                }
+            });
+    }
+
+    /**
+     * Runs the operations of {@code plan}, each as soon as the operations it depends on have
+     * succeeded. The summary completes once every operation has been applied, skipped or failed.
+     */
+    public CompletableFuture<Summary> apply(Plan plan) {
+        long start = System.nanoTime();
+        Map<Operation, CompletableFuture<Void>> applied = new HashMap<>();
+        List<CompletableFuture<Result>> results = new ArrayList<>();
+        // the plan lists dependencies before their dependents, so every dependency is already in the map
+        for (Operation operation : plan.getOperations()) {
+            CompletableFuture<?>[] dependencies = operation.getDependencies().stream().map(applied::get).toArray(CompletableFuture<?>[]::new);
+            CompletableFuture<Void> ready = CompletableFuture.allOf(dependencies);
+            long[] startedAt = new long[1];
+            CompletableFuture<Void> done = ready.thenCompose(ignored -> {
+                startedAt[0] = System.nanoTime();
+                logger.info("Applying " + operation);
+                return operation.apply.get();
+            });
+            applied.put(operation, done);
+            results.add(done.handle((ignored, error) -> {
+                if (error == null) {
+                    return new Result(operation, Outcome.APPLIED, Duration.ofNanos(System.nanoTime() - startedAt[0]), null);
+                }
+                Throwable cause = CloudFutures.unwrap(error);
+                if (ready.isCompletedExceptionally()) {
+                    logger.warn("Skipping " + operation + " because a dependency failed");
+                    return new Result(operation, Outcome.SKIPPED, Duration.ZERO, cause);
+                }
+                logger.error("Failed to apply " + operation + ": " + cause.getMessage());
+                return new Result(operation, Outcome.FAILED, Duration.ofNanos(System.nanoTime() - startedAt[0]), cause);
+            }));
+        }
+
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]))
+            .thenApply(ignored -> {
+                List<Result> done = new ArrayList<>(results.size());
+                results.forEach(f -> done.add(f.join()));
+                return new Summary(plan, Collections.unmodifiableList(done), Duration.ofNanos(System.nanoTime() - start));
+            });
+    }
+
+    private Plan diff(DesiredState desired, CurrentState current, Duration readTime) {
+        List<Operation> operations = new ArrayList<>();
+
+        // namespaces first: identities may depend on the ones being created
+        Map<String, Operation> namespaceCreates = new HashMap<>();
+        desired.namespaces.forEach((namespace, spec) -> {
+            Namespace existing = current.namespaces.get(namespace);
+            if (existing == null) {
+                Operation create = new Operation(Kind.NAMESPACE, namespace, Action.CREATE, List.of(), List.of(),
+                    () -> createNamespace(namespace, spec));
+                namespaceCreates.put(namespace, create);
+                operations.add(create);
+                return;
+            }
+            NamespaceSpec merged = ProtoDiff.overlay(existing.getSpec(), spec);
+            if (!merged.equals(existing.getSpec())) {
+                operations.add(new Operation(Kind.NAMESPACE, namespace, Action.UPDATE, ProtoDiff.changedFields(existing.getSpec(), merged), List.of(),
+                    () -> updateNamespace(namespace, spec)));
+            }
+        });
+
+        for (UserSpec spec : desired.users) {
+            String email = emailKey(spec.getEmail());
+            User existing = current.usersByEmail.get(email);
+            List<Operation> dependencies = namespaceDependencies(spec.getAccess(), namespaceCreates);
+            if (existing == null) {
+                operations.add(new Operation(Kind.USER, email, Action.CREATE, List.of(), dependencies, () -> createUser(spec)));
+                continue;
+            }
+            // a difference in case alone is not a change, since the email identifies the user
+            UserSpec merged = ProtoDiff.overlay(existing.getSpec(), spec.toBuilder().setEmail(existing.getSpec().getEmail()).build());
+            if (!merged.equals(existing.getSpec())) {
+                operations.add(new Operation(Kind.USER, email, Action.UPDATE, ProtoDiff.changedFields(existing.getSpec(), merged), dependencies,
+                    () -> updateUser(existing, merged)));
+            }
+        }
+
+        // ids of service accounts by name; creates add theirs as they complete, for the API keys that wait on them
+        Map<String, String> serviceAccountIds = new ConcurrentHashMap<>();
+        current.serviceAccountsByName.forEach((name, sa) -> serviceAccountIds.put(name, sa.getId()));
+        Map<String, Operation> serviceAccountCreates = new HashMap<>();
+        for (ServiceAccountSpec spec : desired.serviceAccounts) {
+            ServiceAccount existing = current.serviceAccountsByName.get(spec.getName());
+            List<Operation> dependencies = namespaceDependencies(spec.getAccess(), namespaceCreates);
+            if (existing == null) {
+                Operation create = new Operation(Kind.SERVICE_ACCOUNT, spec.getName(), Action.CREATE, List.of(), dependencies,
+                    () -> createServiceAccount(spec, serviceAccountIds));
+                serviceAccountCreates.put(spec.getName(), create);
+                operations.add(create);
+                continue;
+            }
+            ServiceAccountSpec merged = ProtoDiff.overlay(existing.getSpec(), spec);
+            if (!merged.equals(existing.getSpec())) {
+                operations.add(new Operation(Kind.SERVICE_ACCOUNT, spec.getName(), Action.UPDATE, ProtoDiff.changedFields(existing.getSpec(), merged),
+                    dependencies, () -> updateServiceAccount(existing, merged)));
+            }
+        }
+
+        for (DesiredApiKey key : desired.apiKeys) {
+            ApiKeySpec spec = key.spec;
+            String owner = key.ownerServiceAccount;
+            if (owner != null) {
+                Operation ownerCreate = serviceAccountCreates.get(owner);
+                if (ownerCreate != null) {
+                    // the owner does not exist yet, so neither can the key
+                    ApiKeySpec unresolved = spec;
+                    operations.add(new Operation(Kind.API_KEY, owner + "/" + spec.getDisplayName(), Action.CREATE, List.of(), List.of(ownerCreate),
+                        () -> createApiKey(unresolved.toBuilder().setOwnerId(serviceAccountIds.get(owner)).setOwnerType(SERVICE_ACCOUNT_OWNER).build())));
+                    continue;
+                }
+                String ownerId = serviceAccountIds.get(owner);
+                if (ownerId == null) {
+                    throw new CompletionException(new IllegalArgumentException(
+                        "API key " + spec.getDisplayName() + " is owned by unknown service account " + owner));
+                }
+                spec = spec.toBuilder().setOwnerId(ownerId).setOwnerType(SERVICE_ACCOUNT_OWNER).build();
+            }
+            ApiKeySpec resolved = spec;
+            String name = (owner != null ? owner : resolved.getOwnerId()) + "/" + resolved.getDisplayName();
+            ApiKey existing = current.apiKeysByOwnerAndName.get(apiKeyKey(resolved.getOwnerId(), resolved.getDisplayName()));
+            if (existing == null) {
+                operations.add(new Operation(Kind.API_KEY, name, Action.CREATE, List.of(), List.of(), () -> createApiKey(resolved)));
+                continue;
+            }
+            ApiKeySpec merged = ProtoDiff.overlay(existing.getSpec(), resolved);
+            if (!merged.equals(existing.getSpec())) {
+                operations.add(new Operation(Kind.API_KEY, name, Action.UPDATE, ProtoDiff.changedFields(existing.getSpec(), merged), List.of(),
+                    () -> updateApiKey(existing, merged)));
+            }
+        }
+
+        return new Plan(Collections.unmodifiableList(operations), desired.size(), readTime);
+    }
+
+    private static List<Operation> namespaceDependencies(Access access, Map<String, Operation> namespaceCreates) {
+        List<Operation> dependencies = new ArrayList<>();
+        for (String namespace : access.getNamespaceAccessesMap().keySet()) {
+            Operation create = namespaceCreates.get(namespace);
+            if (create != null) {
+                dependencies.add(create);
+            }
+        }
+        return dependencies;
+    }
+
+    private CompletableFuture<Optional<Namespace>> readNamespace(String namespace) {
+        return limiter.submit(() -> CloudFutures.toCompletable(client
+                .getCloudServiceStubs()
+                .futureStub()
+                .getNamespace(GetNamespaceRequest.newBuilder().setNamespace(namespace).build())))
+            .handle((response, error) -> {
+                if (error == null) {
+                    return Optional.of(response.getNamespace());
+                }
+                if (CloudFutures.isNotFound(error)) {
+                    return Optional.<Namespace>empty();
+                }
+                throw new CompletionException(CloudFutures.unwrap(error));
+            });
+    }
+
+    private CompletableFuture<Void> createNamespace(String namespace, NamespaceSpec spec) {
+        return limiter.submit(() -> ProvisioningEvent.time(ProvisioningEvent.Phase.CREATE_RPC, namespace, () -> CloudFutures.toCompletable(client
+                .getCloudServiceStubs()
+                .futureStub()
+                .createNamespace(CreateNamespaceRequest.newBuilder().setSpec(spec).setAsyncOperationId(newOperationId()).build()))))
+            .thenCompose(created -> {
+                cache.invalidateNamespace(namespace);
+                // identities can only be granted access to a namespace once it is active
+                return poller.awaitActive(client, namespace);
+            })
+            .thenAccept(cache::putNamespace);
+    }
+
+    // the desired fields are laid over whatever spec the namespace has when the update is sent, so
+    // a concurrent change to other fields is kept instead of being overwritten with the planned spec
+    private CompletableFuture<Void> updateNamespace(String namespace, NamespaceSpec desired) {
+        return limiter.submit(() -> updates.submit(client, namespace, current -> ProtoDiff.overlay(current, desired)))
+            .thenAccept(updated -> logger.info("Namespace " + updated));
+    }
+
+    private CompletableFuture<Void> createUser(UserSpec spec) {
+        return limiter.submit(() -> CloudFutures.toCompletable(client
+                .getCloudServiceStubs()
+                .futureStub()
+                .createUser(CreateUserRequest.newBuilder().setSpec(spec).setAsyncOperationId(newOperationId()).build())))
+            // operations that depend on the user start only once the user exists
+            .thenCompose(created -> tracker.track(client, created.getAsyncOperation()).thenAccept(done -> {
+                cache.invalidateUser(created.getUserId());
+                logger.info("User created with ID: " + created.getUserId());
+            }));
+    }
+
+    private CompletableFuture<Void> updateUser(User existing, UserSpec spec) {
+        return limiter.submit(() -> CloudFutures.toCompletable(client
+                .getCloudServiceStubs()
+                .futureStub()
+                .updateUser(UpdateUserRequest.newBuilder()
+                    .setUserId(existing.getId())
+                    .setSpec(spec)
+                    .setResourceVersion(existing.getResourceVersion())
+                    .build())))
+            .thenAccept(updated -> cache.invalidateUser(existing.getId()));
+    }
+
+    private CompletableFuture<Void> createServiceAccount(ServiceAccountSpec spec, Map<String, String> serviceAccountIds) {
+        return limiter.submit(() -> CloudFutures.toCompletable(client
+                .getCloudServiceStubs()
+                .futureStub()
+                .createServiceAccount(CreateServiceAccountRequest.newBuilder().setSpec(spec).setAsyncOperationId(newOperationId()).build())))
+            // API keys owned by the service account are created only once it exists
+            .thenCompose(created -> tracker.track(client, created.getAsyncOperation()).thenAccept(done -> {
+                serviceAccountIds.put(spec.getName(), created.getServiceAccountId());
+                cache.invalidateServiceAccount(created.getServiceAccountId());
+                logger.info("Service Account created with ID: " + created.getServiceAccountId());
+            }));
+    }
+
+    private CompletableFuture<Void> updateServiceAccount(ServiceAccount existing, ServiceAccountSpec spec) {
+        return limiter.submit(() -> CloudFutures.toCompletable(client
+                .getCloudServiceStubs()
+                .futureStub()
+                .updateServiceAccount(UpdateServiceAccountRequest.newBuilder()
+                    .setServiceAccountId(existing.getId())
+                    .setSpec(spec)
+                    .setResourceVersion(existing.getResourceVersion())
+                    .build())))
+            .thenAccept(updated -> cache.invalidateServiceAccount(existing.getId()));
+    }
+
+    private CompletableFuture<Void> createApiKey(ApiKeySpec spec) {
+        return limiter.submit(() -> CloudFutures.toCompletable(client
+                .getCloudServiceStubs()
+                .futureStub()
+                .createApiKey(CreateApiKeyRequest.newBuilder().setSpec(spec).setAsyncOperationId(newOperationId()).build())))
+            .thenCompose(created -> tracker.track(client, created.getAsyncOperation()).thenAccept(done -> {
+                logger.info("API Key " + spec.getDisplayName() + " created with ID: " + created.getKeyId());
+                System.out.println("API Key token for " + spec.getDisplayName() + " (store securely): " + created.getToken());
+            }));
+    }
+
+    private CompletableFuture<Void> updateApiKey(ApiKey existing, ApiKeySpec spec) {
+        return limiter.submit(() -> CloudFutures.toCompletable(client
+                .getCloudServiceStubs()
+                .futureStub()
+                .updateApiKey(UpdateApiKeyRequest.newBuilder()
+                    .setKeyId(existing.getId())
+                    .setSpec(spec)
+                    .setResourceVersion(existing.getResourceVersion())
+                    .build())))
+            .thenAccept(updated -> { });
+    }
+
+    // a create replayed with the same id, e.g. after a throttled attempt, is the same operation and not a second resource
+    private static String newOperationId() {
+        return UUID.randomUUID().toString();
+    }
+
+    // user creation is idempotent on the email address, case-insensitively
+    private static String emailKey(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+
+    private static String apiKeyKey(String ownerId, String displayName) {
+        return ownerId + "/" + displayName;
+    }
+
+    @Override
+    public void close() {
+        tracker.close();
+        if (ownsPoller) {
+            poller.close();
+        }
+        if (ownsUpdates) {
+            updates.close();
+        }
+    }
+}
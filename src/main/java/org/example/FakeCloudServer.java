@@ -0,0 +1,119 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import io.grpc.ClientInterceptor;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerInterceptors;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.temporal.client.CloudOperationsClient;
+import io.temporal.serviceclient.CloudServiceStubs;
+import io.temporal.serviceclient.CloudServiceStubsOptions;
+
+/**
+ * Runs an {@link InMemoryCloudService} on an in-process gRPC transport and hands out a
+ * {@link CloudOperationsClient} wired to it, so the demo clients can be exercised without
+ * network access or a Temporal Cloud account.
+ *
+ * <p>Server interceptors such as {@link FaultInjectionInterceptor} can be layered over the
+ * service to add latency and injected failures. {@link #onLocalPort} serves the same fake over
+ * localhost TCP instead, for measuring connection-level behaviour.
+ */
+public final class FakeCloudServer implements AutoCloseable {
+
+    private final InMemoryCloudService service;
+    private final Server server;
+    private final ManagedChannel channel;
+    private final List<ClientInterceptor> clientInterceptors;
+    private final CloudOperationsClient client;
+
+    public FakeCloudServer(InMemoryCloudService service, ServerInterceptor... interceptors) {
+        this(service, List.of(), interceptors);
+    }
+
+    /** Also installs {@code clientInterceptors} on the client stubs, e.g. a {@link MetricsClientInterceptor}. */
+    public FakeCloudServer(InMemoryCloudService service, List<ClientInterceptor> clientInterceptors, ServerInterceptor... interceptors) {
+        this(service, "fake-cloud-" + UUID.randomUUID(), clientInterceptors, interceptors);
+    }
+
+    private FakeCloudServer(InMemoryCloudService service, String name, List<ClientInterceptor> clientInterceptors, ServerInterceptor... interceptors) {
+        this(service, start(InProcessServerBuilder.forName(name), service, interceptors), InProcessChannelBuilder.forName(name).build(), clientInterceptors);
+    }
+
+    private FakeCloudServer(InMemoryCloudService service, Server server, ManagedChannel channel, List<ClientInterceptor> clientInterceptors) {
+        this.service = service;
+        this.server = server;
+        this.channel = channel;
+        this.clientInterceptors = clientInterceptors;
+        this.client = newClient(channel);
+    }
+
+    /**
+     * Serves the fake on a plaintext localhost TCP port instead of in-process, so client channels go
+     * through real HTTP/2 connections. {@code maxConcurrentCallsPerConnection} is the HTTP/2
+     * {@code MAX_CONCURRENT_STREAMS} the server advertises, to stand in for a connection's stream limit.
+     */
+    public static FakeCloudServer onLocalPort(InMemoryCloudService service, int maxConcurrentCallsPerConnection,
+                                              List<ClientInterceptor> clientInterceptors, ServerInterceptor... interceptors) {
+        Server server = start(NettyServerBuilder.forAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+            .maxConcurrentCallsPerConnection(maxConcurrentCallsPerConnection), service, interceptors);
+        ManagedChannel channel = NettyChannelBuilder.forAddress((InetSocketAddress) server.getListenSockets().get(0)).usePlaintext().build();
+        return new FakeCloudServer(service, server, channel, clientInterceptors);
+    }
+
+    private static Server start(ServerBuilder<?> builder, InMemoryCloudService service, ServerInterceptor... interceptors) {
+        try {
+            return builder.addService(ServerInterceptors.intercept(service, interceptors)).build().start();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A client over {@code channel}, with the same client interceptors as {@link #getClient()}. The
+     * caller owns the channel, e.g. a {@link PooledChannel} to {@link #getTarget()}.
+     */
+    public CloudOperationsClient newClient(ManagedChannel channel) {
+        CloudServiceStubsOptions.Builder options = CloudServiceStubsOptions.newBuilder().setChannel(channel);
+        clientInterceptors.forEach(options::addGrpcClientInterceptor);
+        return CloudOperationsClient.newInstance(CloudServiceStubs.newServiceStubs(options.build()));
+    }
+
+    /** {@code host:port} of a server started with {@link #onLocalPort}. */
+    public String getTarget() {
+        InetSocketAddress address = (InetSocketAddress) server.getListenSockets().get(0);
+        return address.getHostString() + ":" + address.getPort();
+    }
+
+    public InMemoryCloudService getService() {
+        return service;
+    }
+
+    public CloudOperationsClient getClient() {
+        return client;
+    }
+
+    @Override
+    public void close() {
+        client.getCloudServiceStubs().shutdownNow();
+        channel.shutdownNow();
+        server.shutdownNow();
+        try {
+            server.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
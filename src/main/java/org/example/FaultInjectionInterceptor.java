@@ -0,0 +1,166 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import io.grpc.ForwardingServerCall;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+/**
+ * Server-side interceptor that makes an {@link InMemoryCloudService} behave more like the real
+ * thing: every response is held back by a delay drawn from a {@link LatencyModel}, and a
+ * configurable fraction of calls fail with {@code RESOURCE_EXHAUSTED} or {@code UNAVAILABLE}
+ * before they reach the service. A server-side rate limit can also be set, and calls over it are
+ * rejected with {@code RESOURCE_EXHAUSTED} the way the real API throttles.
+ *
+ * <p>Delays are applied on a scheduler rather than by sleeping, so a slow response never holds a
+ * server thread and high concurrency does not change the latency distribution.
+ */
+public final class FaultInjectionInterceptor implements ServerInterceptor, AutoCloseable {
+
+    /** Source of simulated server latency, in nanoseconds. */
+    @FunctionalInterface
+    public interface LatencyModel {
+        long nextNanos();
+
+        static LatencyModel none() {
+            return () -> 0;
+        }
+
+        static LatencyModel fixed(Duration latency) {
+            long nanos = latency.toNanos();
+            return () -> nanos;
+        }
+
+        static LatencyModel uniform(Duration min, Duration max) {
+            long lo = min.toNanos();
+            long hi = max.toNanos();
+            return () -> lo + (long) (ThreadLocalRandom.current().nextDouble() * (hi - lo));
+        }
+
+        /**
+         * Log-normal latency with the given median and p99, which is a reasonable shape for a
+         * remote API: most calls cluster around the median with a long right tail.
+         */
+        static LatencyModel logNormal(Duration median, Duration p99) {
+            double mu = Math.log(median.toNanos());
+            // z-score of the 99th percentile of the standard normal distribution
+            double sigma = (Math.log(p99.toNanos()) - mu) / 2.326;
+            return () -> (long) Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian());
+        }
+    }
+
+    private final LatencyModel latency;
+    private final double resourceExhaustedRate;
+    private final double unavailableRate;
+    private final TokenBucket rateLimit;
+    private final ScheduledExecutorService scheduler;
+
+    public FaultInjectionInterceptor(LatencyModel latency) {
+        this(latency, 0, 0);
+    }
+
+    /**
+     * @param resourceExhaustedRate fraction of calls (0..1) rejected with RESOURCE_EXHAUSTED
+     * @param unavailableRate fraction of calls (0..1) rejected with UNAVAILABLE
+     */
+    public FaultInjectionInterceptor(LatencyModel latency, double resourceExhaustedRate, double unavailableRate) {
+        this(latency, resourceExhaustedRate, unavailableRate, 0);
+    }
+
+    /**
+     * @param rateLimitPerSecond calls per second the server accepts across all methods before
+     *     answering RESOURCE_EXHAUSTED; 0 means unlimited
+     */
+    public FaultInjectionInterceptor(LatencyModel latency, double resourceExhaustedRate, double unavailableRate, double rateLimitPerSecond) {
+        this.latency = latency;
+        this.resourceExhaustedRate = resourceExhaustedRate;
+        this.unavailableRate = unavailableRate;
+        // a one second burst, like a typical fixed-window limit
+        this.rateLimit = rateLimitPerSecond > 0 ? new TokenBucket(rateLimitPerSecond, rateLimitPerSecond) : null;
+        this.scheduler = Executors.newScheduledThreadPool(2, r -> {
+            Thread t = new Thread(r, "fake-cloud-latency");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        long delayNanos = Math.max(0, latency.nextNanos());
+        double roll = ThreadLocalRandom.current().nextDouble();
+        if (rateLimit != null && !rateLimit.tryAcquire()) {
+            reject(call, Status.RESOURCE_EXHAUSTED.withDescription("injected: request rate limit exceeded"), delayNanos);
+            return new ServerCall.Listener<ReqT>() {};
+        }
+        if (roll < resourceExhaustedRate) {
+            reject(call, Status.RESOURCE_EXHAUSTED.withDescription("injected: rate limit exceeded"), delayNanos);
+            return new ServerCall.Listener<ReqT>() {};
+        }
+        if (roll < resourceExhaustedRate + unavailableRate) {
+            reject(call, Status.UNAVAILABLE.withDescription("injected: service unavailable"), delayNanos);
+            return new ServerCall.Listener<ReqT>() {};
+        }
+        if (delayNanos == 0) {
+            return next.startCall(call, headers);
+        }
+        return next.startCall(new DelayedCall<>(call, System.nanoTime() + delayNanos), headers);
+    }
+
+    private <ReqT, RespT> void reject(ServerCall<ReqT, RespT> call, Status status, long delayNanos) {
+        scheduler.schedule(() -> call.close(status, new Metadata()), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // holds the response back until the sampled latency has elapsed; unary calls send headers,
+    // one message and close back to back, so deferring the whole sequence keeps the ordering intact
+    private final class DelayedCall<ReqT, RespT> extends ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT> {
+        private final long releaseAtNanos;
+        private Metadata responseHeaders;
+        private RespT message;
+
+        DelayedCall(ServerCall<ReqT, RespT> delegate, long releaseAtNanos) {
+            super(delegate);
+            this.releaseAtNanos = releaseAtNanos;
+        }
+
+        @Override
+        public synchronized void sendHeaders(Metadata headers) {
+            this.responseHeaders = headers;
+        }
+
+        @Override
+        public synchronized void sendMessage(RespT message) {
+            this.message = message;
+        }
+
+        @Override
+        public void close(Status status, Metadata trailers) {
+            long remaining = releaseAtNanos - System.nanoTime();
+            scheduler.schedule(() -> flush(status, trailers), Math.max(0, remaining), TimeUnit.NANOSECONDS);
+        }
+
+        private synchronized void flush(Status status, Metadata trailers) {
+            ServerCall<ReqT, RespT> call = delegate();
+            if (responseHeaders != null) {
+                call.sendHeaders(responseHeaders);
+            }
+            if (message != null) {
+                call.sendMessage(message);
+            }
+            call.close(status, trailers);
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,269 @@
+package org.example;
+
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.temporal.client.CloudOperationsClient;
+
+/**
+ * Adds one new CA to the {@code accepted_client_ca} of many mTLS namespaces at once.
+ *
+ * <p>Each namespace's bundle is parsed into a {@link CaBundle}, expired CAs are dropped and the
+ * new CA is appended. The change goes through a {@link NamespaceUpdateCoalescer}, like every other
+ * namespace update the demo makes, so the namespace keeps its existing spec and only
+ * {@code mtls_auth} changes. The coalescer guards the update with {@code resource_version}, and
+ * when someone else changed the namespace in between it applies the rotation again to the fresh
+ * spec. Namespaces that already trust the new CA are left alone, so an interrupted fleet rotation
+ * can simply be run again.
+ *
+ * <p>At most {@code maxInFlight} namespaces are being rotated at once, as in
+ * {@link BulkNamespaceProvisioner}.
+ */
+public final class FleetCertRotator {
+
+    private static final Logger logger = LoggerFactory.getLogger(FleetCertRotator.class);
+
+    public enum Outcome { ROTATED, UNCHANGED, SKIPPED, FAILED }
+
+    /** What happened to a single namespace. */
+    public static final class Result {
+        private final String namespace;
+        private final Outcome outcome;
+        private final Duration elapsed;
+        private final int attempts;
+        private final int expiredRemoved;
+        private final Throwable error;
+
+        Result(String namespace, Outcome outcome, Duration elapsed, int attempts, int expiredRemoved, Throwable error) {
+            this.namespace = namespace;
+            this.outcome = outcome;
+            this.elapsed = elapsed;
+            this.attempts = attempts;
+            this.expiredRemoved = expiredRemoved;
+            this.error = error;
+        }
+
+        public String getNamespace() {
+            return namespace;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        public Duration getElapsed() {
+            return elapsed;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        public int getExpiredRemoved() {
+            return expiredRemoved;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return namespace + " " + outcome + " in " + elapsed.toMillis() + "ms after " + attempts + " attempt(s)"
+                + (expiredRemoved == 0 ? "" : ", " + expiredRemoved + " expired CAs removed")
+                + (error == null ? "" : " (" + error.getMessage() + ")");
+        }
+    }
+
+    /** Progress reported after every namespace finishes. */
+    public static final class Progress {
+        private final int completed;
+        private final int total;
+        private final Result latest;
+
+        Progress(int completed, int total, Result latest) {
+            this.completed = completed;
+            this.total = total;
+            this.latest = latest;
+        }
+
+        public int getCompleted() {
+            return completed;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public Result getLatest() {
+            return latest;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + completed + "/" + total + "] " + latest;
+        }
+    }
+
+    /** Aggregate view over a finished fleet rotation. */
+    public static final class Summary {
+        private final List<Result> results;
+        private final Duration wallClock;
+
+        Summary(List<Result> results, Duration wallClock) {
+            this.results = results;
+            this.wallClock = wallClock;
+        }
+
+        public List<Result> getResults() {
+            return results;
+        }
+
+        public Duration getWallClock() {
+            return wallClock;
+        }
+
+        public long count(Outcome outcome) {
+            return results.stream().filter(r -> r.getOutcome() == outcome).count();
+        }
+
+        /** Per-namespace latency at {@code percentile} (0-100), nearest rank. */
+        public Duration latencyPercentile(double percentile) {
+            if (results.isEmpty()) {
+                return Duration.ZERO;
+            }
+            List<Duration> sorted = new ArrayList<>(results.size());
+            results.forEach(r -> sorted.add(r.getElapsed()));
+            Collections.sort(sorted);
+            int rank = (int) Math.ceil(percentile / 100.0 * sorted.size());
+            return sorted.get(Math.max(0, Math.min(sorted.size() - 1, rank - 1)));
+        }
+
+        public long retries() {
+            return results.stream().mapToLong(r -> Math.max(0, r.getAttempts() - 1)).sum();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d namespaces in %ds: %d rotated, %d unchanged, %d skipped, %d failed, %d version-conflict retries"
+                    + " (latency p50=%dms p99=%dms max=%dms)",
+                results.size(), wallClock.getSeconds(), count(Outcome.ROTATED), count(Outcome.UNCHANGED),
+                count(Outcome.SKIPPED), count(Outcome.FAILED), retries(),
+                latencyPercentile(50).toMillis(), latencyPercentile(99).toMillis(), latencyPercentile(100).toMillis());
+        }
+    }
+
+    /** Handle returned by {@link #rotate}: one future per namespace plus the aggregate. */
+    public static final class FleetResult {
+        private final Map<String, CompletableFuture<Result>> perNamespace;
+        private final CompletableFuture<Summary> summary;
+
+        FleetResult(Map<String, CompletableFuture<Result>> perNamespace, CompletableFuture<Summary> summary) {
+            this.perNamespace = perNamespace;
+            this.summary = summary;
+        }
+
+        public Map<String, CompletableFuture<Result>> getPerNamespace() {
+            return perNamespace;
+        }
+
+        public CompletableFuture<Summary> getSummary() {
+            return summary;
+        }
+    }
+
+    private final CloudOperationsClient client;
+    private final AsyncLimiter limiter;
+    private final NamespaceUpdateCoalescer updates;
+
+    public FleetCertRotator(CloudOperationsClient client, int maxInFlight, NamespaceUpdateCoalescer updates) {
+        this.client = client;
+        this.limiter = new AsyncLimiter(maxInFlight);
+        this.updates = updates;
+    }
+
+    /**
+     * Adds {@code newCa} to every namespace in {@code namespaces}. {@code progress} is called from
+     * gRPC threads as each namespace finishes and must not block.
+     */
+    public FleetResult rotate(List<String> namespaces, X509Certificate newCa, Consumer<Progress> progress) {
+        long start = System.nanoTime();
+        AtomicInteger completed = new AtomicInteger();
+        Map<String, CompletableFuture<Result>> perNamespace = new LinkedHashMap<>();
+        for (String namespace : namespaces) {
+            perNamespace.put(namespace, rotateOne(namespace, newCa)
+                .whenComplete((result, error) -> progress.accept(new Progress(completed.incrementAndGet(), namespaces.size(), result))));
+        }
+
+        List<CompletableFuture<Result>> futures = new ArrayList<>(perNamespace.values());
+        CompletableFuture<Summary> summary = CompletableFuture
+            .allOf(futures.toArray(new CompletableFuture<?>[0]))
+            .thenApply(ignored -> {
+                List<Result> results = new ArrayList<>(futures.size());
+                futures.forEach(f -> results.add(f.join()));
+                return new Summary(Collections.unmodifiableList(results), Duration.ofNanos(System.nanoTime() - start));
+            });
+        return new FleetResult(Collections.unmodifiableMap(perNamespace), summary);
+    }
+
+    private CompletableFuture<Result> rotateOne(String namespace, X509Certificate newCa) {
+        long start = System.nanoTime();
+        // what the change found the last time it was applied; a version conflict applies it again
+        boolean[] mtls = new boolean[1];
+        boolean[] changed = new boolean[1];
+        int[] expiredRemoved = new int[1];
+        return limiter.submit(() -> updates.submit(client, namespace, spec -> {
+                mtls[0] = spec.getMtlsAuth().getEnabled();
+                changed[0] = false;
+                expiredRemoved[0] = 0;
+                if (!mtls[0]) {
+                    // left as it is, so other changes batched with this one still go through
+                    return spec;
+                }
+                CaBundle bundle;
+                try {
+                    bundle = CaBundle.parse(spec.getMtlsAuth().getAcceptedClientCa());
+                } catch (GeneralSecurityException e) {
+                    throw new CompletionException(e);
+                }
+                expiredRemoved[0] = bundle.removeExpired(Instant.now());
+                changed[0] = bundle.add(newCa) || expiredRemoved[0] > 0;
+                if (!changed[0]) {
+                    return spec;
+                }
+                // keep every other field of the spec exactly as the server has it
+                return spec.toBuilder()
+                    .setMtlsAuth(spec.getMtlsAuth().toBuilder().setAcceptedClientCa(bundle.toBase64()))
+                    .build();
+            }))
+            .handle((update, error) -> {
+                Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+                if (error != null) {
+                    Throwable cause = CloudFutures.unwrap(error);
+                    logger.error("Failed to rotate CA on namespace " + namespace + ": " + cause.getMessage());
+                    return new Result(namespace, Outcome.FAILED, elapsed, 1, 0, cause);
+                }
+                if (!mtls[0]) {
+                    return new Result(namespace, Outcome.SKIPPED, elapsed, update.getAttempts(), 0, null);
+                }
+                // the batch may have been sent for someone else's change while this one found nothing to do
+                Outcome outcome = changed[0] && update.getOutcome() == NamespaceUpdateCoalescer.Outcome.UPDATED
+                    ? Outcome.ROTATED : Outcome.UNCHANGED;
+                return new Result(namespace, outcome, elapsed, update.getAttempts(), expiredRemoved[0], null);
+            });
+    }
+}
@@ -0,0 +1,383 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.Deadline;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+/**
+ * Client interceptor that bounds and hedges Cloud API reads.
+ *
+ * <p>A read is a unary {@code Get...} call. The SDK gives every call the stubs' rpcTimeout, 10
+ * seconds by default, which is long for reading a single resource. Reads therefore get the earlier
+ * of that deadline and their method's: 5 seconds for single resources and 10 for list pages by
+ * default. One stuck call then holds up an existence check or a poll loop for seconds rather than
+ * for the full rpcTimeout.
+ *
+ * <p>If a read has not been answered by the method's recent p95 latency, a second, identical
+ * request is sent. The first definitive answer wins and the other attempt is cancelled. An
+ * {@code UNAVAILABLE} answer from one attempt is only returned once the other has failed too.
+ *
+ * <p>Hedges are paid for out of a budget. Each read adds {@code hedgeBudget} tokens, up to a
+ * burst of 10, and a hedge takes one. With the default of 0.1, at most about one read in ten is
+ * sent twice, even when the whole API is slow. A hedge is also skipped if it could not be
+ * answered within the deadline. Until a method has seen 20 reads, its p95 is unknown and its reads
+ * are not hedged.
+ *
+ * <p>Mutations are passed through untouched and never sent twice.
+ *
+ * <p>Add it last with {@code CloudServiceStubsOptions.newBuilder().addGrpcClientInterceptor(...)},
+ * so that it is the outermost interceptor and every attempt is throttled and counted on its own.
+ */
+public final class HedgingClientInterceptor implements ClientInterceptor, AutoCloseable {
+
+    private static final Duration DEFAULT_READ_DEADLINE = Duration.ofSeconds(5);
+    // list pages can be large, so they get longer
+    private static final Map<String, Duration> DEFAULT_DEADLINES = Map.of(
+        "GetNamespaces", Duration.ofSeconds(10),
+        "GetUsers", Duration.ofSeconds(10),
+        "GetServiceAccounts", Duration.ofSeconds(10),
+        "GetApiKeys", Duration.ofSeconds(10));
+    private static final double DEFAULT_HEDGE_QUANTILE = 0.95;
+    private static final double DEFAULT_HEDGE_BUDGET = 0.1;
+    private static final double MAX_HEDGE_TOKENS = 10;
+    private static final int MIN_SAMPLES = 20;
+    private static final int WINDOW = 256;
+
+    // recent latencies of one method's reads and how its hedges went
+    private final class MethodStats {
+        private final long[] samples = new long[WINDOW];
+        private long count;
+        private long hedgeDelayNanos = -1;
+        final LongAdder reads = new LongAdder();
+        final LongAdder hedges = new LongAdder();
+        final LongAdder hedgesWon = new LongAdder();
+
+        synchronized void record(long nanos) {
+            samples[(int) (count++ % WINDOW)] = nanos;
+            // sorting 256 longs is cheap, but there is no need to do it on every read
+            if (count >= MIN_SAMPLES && (count % 16 == 0 || hedgeDelayNanos < 0)) {
+                long[] window = Arrays.copyOf(samples, (int) Math.min(count, WINDOW));
+                Arrays.sort(window);
+                hedgeDelayNanos = window[(int) Math.ceil(hedgeQuantile * window.length) - 1];
+            }
+        }
+
+        // -1 while there are too few samples
+        synchronized long hedgeDelayNanos() {
+            return hedgeDelayNanos;
+        }
+    }
+
+    private final Duration readDeadline;
+    private final Map<String, Duration> deadlines;
+    private final double hedgeQuantile;
+    private final double hedgeBudget;
+    private final ConcurrentMap<String, MethodStats> methods = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    // guarded by this
+    private double hedgeTokens = MAX_HEDGE_TOKENS;
+
+    public HedgingClientInterceptor() {
+        this(DEFAULT_READ_DEADLINE, DEFAULT_DEADLINES, DEFAULT_HEDGE_QUANTILE, DEFAULT_HEDGE_BUDGET);
+    }
+
+    /**
+     * @param readDeadline deadline for reads of methods not in {@code deadlines}; a call's own earlier deadline is kept
+     * @param deadlines deadline per bare method name, e.g. {@code GetNamespaces}
+     * @param hedgeQuantile latency quantile (0..1) of recent reads after which a read is hedged
+     * @param hedgeBudget hedges allowed per read, e.g. 0.1 for one in ten
+     */
+    public HedgingClientInterceptor(Duration readDeadline, Map<String, Duration> deadlines, double hedgeQuantile, double hedgeBudget) {
+        this.readDeadline = readDeadline;
+        this.deadlines = deadlines;
+        this.hedgeQuantile = hedgeQuantile;
+        this.hedgeBudget = hedgeBudget;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "cloud-api-hedge");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    static boolean isRead(MethodDescriptor<?, ?> method) {
+        return method.getType() == MethodDescriptor.MethodType.UNARY && method.getBareMethodName().startsWith("Get");
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+        if (!isRead(method)) {
+            return next.newCall(method, callOptions);
+        }
+        String name = method.getBareMethodName();
+        Deadline deadline = Deadline.after(deadlines.getOrDefault(name, readDeadline).toNanos(), TimeUnit.NANOSECONDS);
+        if (callOptions.getDeadline() != null) {
+            deadline = deadline.minimum(callOptions.getDeadline());
+        }
+        callOptions = callOptions.withDeadline(deadline);
+        return new HedgedCall<>(method, callOptions, next, methods.computeIfAbsent(name, m -> new MethodStats()));
+    }
+
+    public long readCount() {
+        return methods.values().stream().mapToLong(m -> m.reads.sum()).sum();
+    }
+
+    public long hedgeCount() {
+        return methods.values().stream().mapToLong(m -> m.hedges.sum()).sum();
+    }
+
+    /** Hedges that answered before the first attempt did. */
+    public long hedgeWonCount() {
+        return methods.values().stream().mapToLong(m -> m.hedgesWon.sum()).sum();
+    }
+
+    /** How long a read of {@code method} currently waits before it is hedged, or null if it is not hedged yet. */
+    public Duration hedgeDelay(String method) {
+        MethodStats stats = methods.get(method);
+        long nanos = stats == null ? -1 : stats.hedgeDelayNanos();
+        return nanos < 0 ? null : Duration.ofNanos(nanos);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder delays = new StringBuilder();
+        methods.forEach((method, stats) -> {
+            long nanos = stats.hedgeDelayNanos();
+            delays.append(delays.length() == 0 ? "" : ", ").append(method)
+                .append(nanos < 0 ? "=none" : String.format("=%.1fms", nanos / 1e6));
+        });
+        return "reads=" + readCount() + ", hedged=" + hedgeCount() + ", hedgesWon=" + hedgeWonCount() + ", hedgeDelays={" + delays + "}";
+    }
+
+    private synchronized void earnHedgeTokens() {
+        hedgeTokens = Math.min(MAX_HEDGE_TOKENS, hedgeTokens + hedgeBudget);
+    }
+
+    private synchronized boolean trySpendHedgeToken() {
+        if (hedgeTokens < 1) {
+            return false;
+        }
+        hedgeTokens -= 1;
+        return true;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    // A unary read that is only sent once halfClose() has delivered the complete request, so the
+    // same request can be sent again as a hedge. Each attempt is a fresh call on the underlying
+    // channel, and its response is buffered until we know whether it is the one the caller gets.
+    private final class HedgedCall<ReqT, RespT> extends ClientCall<ReqT, RespT> {
+        private final MethodDescriptor<ReqT, RespT> method;
+        private final CallOptions callOptions;
+        private final Channel next;
+        private final MethodStats stats;
+
+        private Listener<RespT> listener;
+        private Metadata headers;
+        private ReqT message;
+        private long startNanos;
+        // guarded by this
+        private int requested;
+        private final List<ClientCall<ReqT, RespT>> attempts = new ArrayList<>(2);
+        private int outstanding;
+        private ScheduledFuture<?> hedgeTimer;
+        private boolean cancelled;
+        private boolean closed;
+
+        HedgedCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next, MethodStats stats) {
+            this.method = method;
+            this.callOptions = callOptions;
+            this.next = next;
+            this.stats = stats;
+        }
+
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+            this.listener = responseListener;
+            this.headers = headers;
+        }
+
+        @Override
+        public void request(int numMessages) {
+            List<ClientCall<ReqT, RespT>> calls;
+            synchronized (this) {
+                requested += numMessages;
+                calls = new ArrayList<>(attempts);
+            }
+            calls.forEach(call -> call.request(numMessages));
+        }
+
+        @Override
+        public void sendMessage(ReqT message) {
+            this.message = message;
+        }
+
+        @Override
+        public void halfClose() {
+            startNanos = System.nanoTime();
+            stats.reads.increment();
+            earnHedgeTokens();
+            send(false);
+            long delayNanos = stats.hedgeDelayNanos();
+            if (delayNanos >= 0 && fitsDeadline(delayNanos)) {
+                synchronized (this) {
+                    if (!closed && !cancelled) {
+                        hedgeTimer = scheduler.schedule(this::hedge, delayNanos, TimeUnit.NANOSECONDS);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void cancel(String reason, Throwable cause) {
+            List<ClientCall<ReqT, RespT>> calls;
+            synchronized (this) {
+                if (cancelled || closed) {
+                    return;
+                }
+                cancelled = true;
+                cancelHedgeTimer();
+                calls = new ArrayList<>(attempts);
+            }
+            if (calls.isEmpty()) {
+                finish(Status.CANCELLED.withDescription(reason).withCause(cause), new Metadata(), null, null);
+            } else {
+                // the first attempt to close reports the cancellation
+                calls.forEach(call -> call.cancel(reason, cause));
+            }
+        }
+
+        @Override
+        public synchronized boolean isReady() {
+            return attempts.stream().anyMatch(ClientCall::isReady);
+        }
+
+        private void hedge() {
+            synchronized (this) {
+                if (closed || cancelled || outstanding == 0) {
+                    return;
+                }
+            }
+            if (!trySpendHedgeToken()) {
+                return;
+            }
+            stats.hedges.increment();
+            send(true);
+        }
+
+        private void send(boolean hedge) {
+            ClientCall<ReqT, RespT> call;
+            int toRequest;
+            synchronized (this) {
+                if (closed || cancelled) {
+                    return;
+                }
+                call = next.newCall(method, callOptions);
+                attempts.add(call);
+                outstanding++;
+                toRequest = requested;
+            }
+            Metadata attemptHeaders = new Metadata();
+            attemptHeaders.merge(headers);
+            call.start(new AttemptListener(call, hedge), attemptHeaders);
+            call.request(Math.max(1, toRequest));
+            call.sendMessage(message);
+            call.halfClose();
+        }
+
+        // the caller holds the lock
+        private void cancelHedgeTimer() {
+            if (hedgeTimer != null) {
+                hedgeTimer.cancel(false);
+            }
+        }
+
+        private boolean fitsDeadline(long delayNanos) {
+            Deadline deadline = callOptions.getDeadline();
+            return deadline == null || deadline.timeRemaining(TimeUnit.NANOSECONDS) > delayNanos;
+        }
+
+        private void finish(Status status, Metadata trailers, Metadata responseHeaders, RespT response) {
+            if (responseHeaders != null) {
+                listener.onHeaders(responseHeaders);
+            }
+            if (response != null) {
+                listener.onMessage(response);
+            }
+            listener.onClose(status, trailers);
+        }
+
+        private final class AttemptListener extends ClientCall.Listener<RespT> {
+            private final ClientCall<ReqT, RespT> call;
+            private final boolean hedge;
+            private Metadata responseHeaders;
+            private RespT response;
+
+            AttemptListener(ClientCall<ReqT, RespT> call, boolean hedge) {
+                this.call = call;
+                this.hedge = hedge;
+            }
+
+            @Override
+            public void onHeaders(Metadata headers) {
+                responseHeaders = headers;
+            }
+
+            @Override
+            public void onMessage(RespT message) {
+                response = message;
+            }
+
+            @Override
+            public void onClose(Status status, Metadata trailers) {
+                List<ClientCall<ReqT, RespT>> losers = new ArrayList<>();
+                synchronized (HedgedCall.this) {
+                    outstanding--;
+                    if (closed) {
+                        return;
+                    }
+                    // an unavailable attempt says nothing about the other one, which may still answer
+                    if (status.getCode() == Status.Code.UNAVAILABLE && outstanding > 0) {
+                        return;
+                    }
+                    closed = true;
+                    cancelHedgeTimer();
+                    for (ClientCall<ReqT, RespT> attempt : attempts) {
+                        if (attempt != call) {
+                            losers.add(attempt);
+                        }
+                    }
+                }
+                if (status.getCode() != Status.Code.CANCELLED) {
+                    // when the hedge wins, the first attempt took at least this long; that keeps the p95 honest
+                    stats.record(System.nanoTime() - startNanos);
+                }
+                if (hedge && status.isOk()) {
+                    stats.hedgesWon.increment();
+                }
+                losers.forEach(loser -> loser.cancel("another attempt of this hedged read answered first", null));
+                finish(status, trailers, responseHeaders, response);
+            }
+        }
+    }
+}
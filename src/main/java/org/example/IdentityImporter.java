@@ -0,0 +1,483 @@
+package org.example;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import io.temporal.api.cloud.cloudservice.v1.CreateServiceAccountRequest;
+import io.temporal.api.cloud.cloudservice.v1.CreateUserRequest;
+import io.temporal.api.cloud.cloudservice.v1.GetAsyncOperationRequest;
+import io.temporal.api.cloud.identity.v1.ServiceAccountSpec;
+import io.temporal.api.cloud.identity.v1.UserSpec;
+import io.temporal.api.cloud.operation.v1.AsyncOperation;
+import io.temporal.client.CloudOperationsClient;
+
+/**
+ * Streams users and service accounts from a CSV or JSONL file into the Cloud API.
+ *
+ * <p>The file is read one record at a time, and the reader blocks once {@code maxInFlight} creates
+ * are outstanding, so the records and calls held at once depend on {@code maxInFlight} and not on
+ * the size of the file. Records are deduplicated by user email (case-insensitive) or service
+ * account name, which keeps one short key per distinct identity for the whole import. A journal
+ * also keeps one entry per identity. Both grow with the file, by tens of bytes per identity.
+ *
+ * <p>With an {@link AsyncOperationTracker}, a record is only reported {@code CREATED} once its
+ * async operation is fulfilled. The in-flight limit still covers just the create calls, so the
+ * creates stay pipelined and the import waits for all outstanding operations at the end.
+ *
+ * <p>With a {@link MutationJournal}, every create is journaled before it is sent, and a run over
+ * the same file with the same journal picks up where an interrupted one stopped. Records the
+ * journal has as done are reported {@code RESUMED} without a call. Accepted ones are only
+ * awaited. Ones that were about to be sent are checked with GetAsyncOperation, and sent again
+ * with the same {@code async_operation_id} only if the server never saw them.
+ *
+ * <p>CSV files need a header row with the columns {@code type,identity,account_role,namespace_permissions},
+ * where {@code namespace_permissions} looks like {@code ns1.acct=admin;ns2.acct=read}.
+ * JSONL records look like
+ * {@code {"type":"user","email":"a@b.com","accountRole":"developer","namespaceAccesses":{"ns1.acct":"admin"}}}
+ * or use {@code "type":"service-account"} with {@code "name"} and an optional {@code "description"}.
+ */
+public final class IdentityImporter {
+
+    public enum Kind { USER, SERVICE_ACCOUNT }
+
+    // RESUMED: created by an earlier run of the same job, according to its journal
+    public enum Status { CREATED, DUPLICATE, INVALID, FAILED, RESUMED }
+
+    /** Outcome of one record in the import file. */
+    public static final class RecordResult {
+        private final long line;
+        private final String identity;
+        private final Status status;
+        private final String id;
+        private final String error;
+
+        RecordResult(long line, String identity, Status status, String id, String error) {
+            this.line = line;
+            this.identity = identity;
+            this.status = status;
+            this.id = id;
+            this.error = error;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public String getIdentity() {
+            return identity;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return "line " + line + " " + identity + ": " + status
+                + (id == null ? "" : " id=" + id)
+                + (error == null ? "" : " (" + error + ")");
+        }
+    }
+
+    /** Totals for a finished import. */
+    public static final class Summary {
+        private final AtomicLongArray counts;
+        private final Duration elapsed;
+
+        Summary(AtomicLongArray counts, Duration elapsed) {
+            this.counts = counts;
+            this.elapsed = elapsed;
+        }
+
+        public long count(Status status) {
+            return counts.get(status.ordinal());
+        }
+
+        public long total() {
+            long total = 0;
+            for (Status status : Status.values()) {
+                total += count(status);
+            }
+            return total;
+        }
+
+        public Duration getElapsed() {
+            return elapsed;
+        }
+
+        public double recordsPerSecond() {
+            return total() / Math.max(elapsed.toMillis() / 1000.0, 0.001);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d records in %dms: %d created, %d resumed, %d duplicates, %d invalid, %d failed (%.1f records/s)",
+                total(), elapsed.toMillis(), count(Status.CREATED), count(Status.RESUMED), count(Status.DUPLICATE), count(Status.INVALID),
+                count(Status.FAILED), recordsPerSecond());
+        }
+    }
+
+    // a parsed import record
+    static final class IdentityRecord {
+        final Kind kind;
+        final String identity;
+        final String accountRole;
+        final Map<String, String> namespacePermissions;
+        final String description;
+
+        IdentityRecord(Kind kind, String identity, String accountRole, Map<String, String> namespacePermissions, String description) {
+            this.kind = kind;
+            this.identity = identity;
+            this.accountRole = accountRole;
+            this.namespacePermissions = namespacePermissions;
+            this.description = description;
+        }
+
+        String dedupKey() {
+            // emails are case-insensitive, service account names are not
+            return kind == Kind.USER ? "user:" + identity.toLowerCase(Locale.ROOT) : "sa:" + identity;
+        }
+    }
+
+    private final CloudOperationsClient client;
+    private final CloudResourceCache cache;
+    private final AccessIndex accessIndex;
+    private final AsyncOperationTracker tracker;
+    private final MutationJournal journal;
+    private final int maxInFlight;
+
+    public IdentityImporter(CloudOperationsClient client, CloudResourceCache cache, int maxInFlight) {
+        this(client, cache, new AccessIndex(), maxInFlight);
+    }
+
+    /** Also adds every identity it creates to {@code accessIndex}. */
+    public IdentityImporter(CloudOperationsClient client, CloudResourceCache cache, AccessIndex accessIndex, int maxInFlight) {
+        this(client, cache, accessIndex, null, maxInFlight);
+    }
+
+    /** Also confirms every create with {@code tracker}; a null tracker reports records as soon as they are accepted. */
+    public IdentityImporter(CloudOperationsClient client, CloudResourceCache cache, AccessIndex accessIndex, AsyncOperationTracker tracker, int maxInFlight) {
+        this(client, cache, accessIndex, tracker, null, maxInFlight);
+    }
+
+    /**
+     * Also writes every create to {@code journal} before sending it, and resumes from what the
+     * journal recorded in earlier runs. A null journal imports every record as new.
+     */
+    public IdentityImporter(CloudOperationsClient client, CloudResourceCache cache, AccessIndex accessIndex, AsyncOperationTracker tracker,
+                            MutationJournal journal, int maxInFlight) {
+        this.client = client;
+        this.cache = cache;
+        this.accessIndex = accessIndex;
+        this.tracker = tracker;
+        this.journal = journal;
+        this.maxInFlight = maxInFlight;
+    }
+
+    // a create the server accepted, with the async operation that finishes it
+    private static final class Accepted {
+        final String id;
+        final AsyncOperation operation;
+        // accepted by an earlier run, found in the journal
+        final boolean resumed;
+
+        Accepted(String id, AsyncOperation operation, boolean resumed) {
+            this.id = id;
+            this.operation = operation;
+            this.resumed = resumed;
+        }
+    }
+
+    /** Imports a file, choosing CSV or JSONL by extension ({@code .jsonl}/{@code .ndjson} are JSONL). */
+    public Summary importFile(Path file, Consumer<RecordResult> listener) throws IOException {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        boolean jsonl = name.endsWith(".jsonl") || name.endsWith(".ndjson");
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importRecords(reader, jsonl, listener);
+        }
+    }
+
+    Summary importRecords(BufferedReader reader, boolean jsonl, Consumer<RecordResult> listener) throws IOException {
+        long start = System.nanoTime();
+        AtomicLongArray counts = new AtomicLongArray(Status.values().length);
+        Consumer<RecordResult> report = result -> {
+            counts.incrementAndGet(result.getStatus().ordinal());
+            listener.accept(result);
+        };
+        Set<String> seen = new HashSet<>();
+        Semaphore permits = new Semaphore(maxInFlight);
+        // released once per reported record, so the end of the import can wait for all of them
+        Semaphore reported = new Semaphore(0);
+        int submitted = 0;
+        List<String> header = null;
+
+        String line;
+        long lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            if (!jsonl && header == null) {
+                header = splitCsv(line);
+                continue;
+            }
+
+            IdentityRecord record;
+            try {
+                record = jsonl ? parseJson(line) : parseCsv(header, line);
+            } catch (RuntimeException e) {
+                report.accept(new RecordResult(lineNumber, line, Status.INVALID, null, e.getMessage()));
+                continue;
+            }
+            if (!seen.add(record.dedupKey())) {
+                report.accept(new RecordResult(lineNumber, record.identity, Status.DUPLICATE, null, null));
+                continue;
+            }
+
+            // block the reader, not the RPCs, when maxInFlight creates are already outstanding
+            permits.acquireUninterruptibly();
+            submitted++;
+            submit(lineNumber, record, permits::release).whenComplete((result, error) -> {
+                try {
+                    report.accept(result);
+                } finally {
+                    reported.release();
+                }
+            });
+        }
+
+        // wait for the tail of in-flight creates and, with a tracker, their async operations
+        reported.acquireUninterruptibly(submitted);
+        return new Summary(counts, Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    // calls accepted once the create call has returned, before its async operation is confirmed
+    private CompletableFuture<RecordResult> submit(long lineNumber, IdentityRecord record, Runnable accepted) {
+        String key = record.dedupKey();
+        MutationJournal.Entry prior = journal == null ? null : journal.get(key);
+        ProvisioningEvent timeToActive = ProvisioningEvent.begin(ProvisioningEvent.Phase.TIME_TO_ACTIVE, record.identity);
+        CompletableFuture<Accepted> created;
+        if (prior == null || prior.getState() == MutationJournal.State.FAILED) {
+            created = send(record, journal == null ? "" : UUID.randomUUID().toString());
+        } else if (prior.getState() == MutationJournal.State.DONE) {
+            accepted.run();
+            return CompletableFuture.completedFuture(new RecordResult(lineNumber, record.identity, Status.RESUMED, prior.getResourceId(), null));
+        } else if (prior.getState() == MutationJournal.State.ACCEPTED) {
+            created = CompletableFuture.completedFuture(
+                new Accepted(prior.getResourceId(), AsyncOperation.newBuilder().setId(prior.getOperationId()).build(), true));
+        } else {
+            // an earlier run crashed between writing the intent and hearing back: ask whether the server has the operation
+            created = findOperation(prior.getOperationId()).thenCompose(operation -> operation == null
+                ? send(record, prior.getOperationId())
+                : CompletableFuture.completedFuture(new Accepted(prior.getResourceId(), operation, true)));
+        }
+        created.whenComplete((a, error) -> accepted.run());
+        CompletableFuture<Accepted> confirmed = tracker == null
+            ? created
+            : created.thenCompose(a -> tracker.track(client, a.operation).thenApply(op -> a));
+        return confirmed.handle((a, error) -> {
+            timeToActive.end(error);
+            if (error == null) {
+                if (journal != null) {
+                    journal.done(key, a.id);
+                }
+                return new RecordResult(lineNumber, record.identity, a.resumed ? Status.RESUMED : Status.CREATED, a.id, null);
+            }
+            // only a definite failure is journaled; anything else stays as it was and is checked again on resume
+            if (journal != null && (CloudFutures.unwrap(error) instanceof IllegalStateException || isRejected(error))) {
+                journal.failed(key);
+            }
+            return new RecordResult(lineNumber, record.identity, Status.FAILED, null, CloudFutures.unwrap(error).getMessage());
+        });
+    }
+
+    // sends the create with operationId as its async_operation_id, after the journal has the intent on disk
+    private CompletableFuture<Accepted> send(IdentityRecord record, String operationId) {
+        String key = record.dedupKey();
+        CompletableFuture<Void> intended = journal == null ? CompletableFuture.completedFuture(null) : journal.intend(key, operationId);
+        CompletableFuture<Accepted> created;
+        if (record.kind == Kind.USER) {
+            UserSpec spec = SimpleCloudApiIdentityClient.userSpec(record.identity, record.namespacePermissions, record.accountRole);
+            created = intended.thenCompose(v -> ProvisioningEvent.time(ProvisioningEvent.Phase.CREATE_RPC, record.identity, () -> CloudFutures.toCompletable(client
+                    .getCloudServiceStubs()
+                    .futureStub()
+                    .createUser(CreateUserRequest.newBuilder().setSpec(spec).setAsyncOperationId(operationId).build()))))
+                .thenApply(resp -> {
+                    cache.invalidateUser(resp.getUserId());
+                    accessIndex.putUser(resp.getUserId(), spec);
+                    return new Accepted(resp.getUserId(), resp.getAsyncOperation(), false);
+                });
+        } else {
+            ServiceAccountSpec spec = SimpleCloudApiIdentityClient.serviceAccountSpec(record.identity, record.namespacePermissions, record.accountRole)
+                .toBuilder()
+                .setDescription(record.description)
+                .build();
+            created = intended.thenCompose(v -> ProvisioningEvent.time(ProvisioningEvent.Phase.CREATE_RPC, record.identity, () -> CloudFutures.toCompletable(client
+                    .getCloudServiceStubs()
+                    .futureStub()
+                    .createServiceAccount(CreateServiceAccountRequest.newBuilder().setSpec(spec).setAsyncOperationId(operationId).build()))))
+                .thenApply(resp -> {
+                    cache.invalidateServiceAccount(resp.getServiceAccountId());
+                    accessIndex.putServiceAccount(resp.getServiceAccountId(), spec);
+                    return new Accepted(resp.getServiceAccountId(), resp.getAsyncOperation(), false);
+                });
+        }
+        if (journal != null) {
+            created.thenAccept(a -> journal.accepted(key, a.operation.getId(), a.id));
+        }
+        return created;
+    }
+
+    // the operation if the server knows it, or null if it doesn't
+    private CompletableFuture<AsyncOperation> findOperation(String operationId) {
+        return CloudFutures.toCompletable(client
+                .getCloudServiceStubs()
+                .futureStub()
+                .getAsyncOperation(GetAsyncOperationRequest.newBuilder().setAsyncOperationId(operationId).build()))
+            .handle((resp, error) -> {
+                if (error == null) {
+                    return CompletableFuture.completedFuture(resp.getAsyncOperation());
+                }
+                return CloudFutures.isNotFound(error)
+                    ? CompletableFuture.<AsyncOperation>completedFuture(null)
+                    : CompletableFuture.<AsyncOperation>failedFuture(CloudFutures.unwrap(error));
+            })
+            .thenCompose(f -> f);
+    }
+
+    // the server answered and said no, so the create was not applied and can be sent again as new
+    private static boolean isRejected(Throwable error) {
+        io.grpc.Status.Code code = CloudFutures.statusCode(error);
+        return code != io.grpc.Status.Code.UNKNOWN
+            && code != io.grpc.Status.Code.UNAVAILABLE
+            && code != io.grpc.Status.Code.DEADLINE_EXCEEDED
+            && code != io.grpc.Status.Code.CANCELLED
+            && code != io.grpc.Status.Code.INTERNAL;
+    }
+
+    static IdentityRecord parseCsv(List<String> header, String line) {
+        List<String> values = splitCsv(line);
+        Map<String, String> row = new LinkedHashMap<>();
+        for (int i = 0; i < header.size() && i < values.size(); i++) {
+            row.put(header.get(i).trim().toLowerCase(Locale.ROOT), values.get(i).trim());
+        }
+        return newRecord(row.get("type"), row.get("identity"), row.get("account_role"),
+            parsePermissions(row.getOrDefault("namespace_permissions", "")), row.getOrDefault("description", ""));
+    }
+
+    static IdentityRecord parseJson(String line) {
+        JsonObject json;
+        try {
+            json = JsonParser.parseString(line).getAsJsonObject();
+        } catch (JsonParseException | IllegalStateException e) {
+            throw new IllegalArgumentException("not a JSON object");
+        }
+        String type = string(json, "type");
+        String identity = "user".equalsIgnoreCase(type) ? string(json, "email") : string(json, "name");
+        Map<String, String> permissions = new LinkedHashMap<>();
+        if (json.has("namespaceAccesses")) {
+            for (Map.Entry<String, JsonElement> e : json.getAsJsonObject("namespaceAccesses").entrySet()) {
+                permissions.put(e.getKey(), e.getValue().getAsString());
+            }
+        }
+        return newRecord(type, identity, string(json, "accountRole"), permissions, string(json, "description"));
+    }
+
+    private static IdentityRecord newRecord(String type, String identity, String accountRole, Map<String, String> permissions, String description) {
+        if (identity == null || identity.isEmpty()) {
+            throw new IllegalArgumentException("missing identity");
+        }
+        if (accountRole == null || accountRole.isEmpty()) {
+            throw new IllegalArgumentException("missing account role");
+        }
+        Kind kind;
+        if ("user".equalsIgnoreCase(type)) {
+            kind = Kind.USER;
+        } else if ("service-account".equalsIgnoreCase(type) || "service_account".equalsIgnoreCase(type)) {
+            kind = Kind.SERVICE_ACCOUNT;
+        } else {
+            throw new IllegalArgumentException("unknown type: " + type);
+        }
+        return new IdentityRecord(kind, identity, accountRole, permissions, description == null ? "" : description);
+    }
+
+    // "ns1=admin;ns2=read" -> {ns1: admin, ns2: read}
+    static Map<String, String> parsePermissions(String value) {
+        Map<String, String> permissions = new LinkedHashMap<>();
+        for (String pair : value.split(";")) {
+            if (pair.isBlank()) {
+                continue;
+            }
+            int eq = pair.indexOf('=');
+            if (eq <= 0 || eq == pair.length() - 1) {
+                throw new IllegalArgumentException("bad namespace permission: " + pair);
+            }
+            permissions.put(pair.substring(0, eq).trim(), pair.substring(eq + 1).trim());
+        }
+        return permissions;
+    }
+
+    // minimal RFC 4180 splitting: commas inside double quotes are kept, "" is an escaped quote
+    static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static String string(JsonObject json, String key) {
+        JsonElement value = json.get(key);
+        return value == null || value.isJsonNull() ? null : value.getAsString();
+    }
+}
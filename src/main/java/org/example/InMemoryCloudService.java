@@ -0,0 +1,507 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+
+import com.google.protobuf.Timestamp;
+
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import io.temporal.api.cloud.cloudservice.v1.CloudServiceGrpc;
+import io.temporal.api.cloud.cloudservice.v1.CreateApiKeyRequest;
+import io.temporal.api.cloud.cloudservice.v1.CreateApiKeyResponse;
+import io.temporal.api.cloud.cloudservice.v1.CreateNamespaceRequest;
+import io.temporal.api.cloud.cloudservice.v1.CreateNamespaceResponse;
+import io.temporal.api.cloud.cloudservice.v1.CreateServiceAccountRequest;
+import io.temporal.api.cloud.cloudservice.v1.CreateServiceAccountResponse;
+import io.temporal.api.cloud.cloudservice.v1.CreateUserRequest;
+import io.temporal.api.cloud.cloudservice.v1.CreateUserResponse;
+import io.temporal.api.cloud.cloudservice.v1.GetApiKeyRequest;
+import io.temporal.api.cloud.cloudservice.v1.GetApiKeyResponse;
+import io.temporal.api.cloud.cloudservice.v1.GetApiKeysRequest;
+import io.temporal.api.cloud.cloudservice.v1.GetApiKeysResponse;
+import io.temporal.api.cloud.cloudservice.v1.GetAsyncOperationRequest;
+import io.temporal.api.cloud.cloudservice.v1.GetAsyncOperationResponse;
+import io.temporal.api.cloud.cloudservice.v1.GetNamespaceRequest;
+import io.temporal.api.cloud.cloudservice.v1.GetNamespaceResponse;
+import io.temporal.api.cloud.cloudservice.v1.GetNamespacesRequest;
+import io.temporal.api.cloud.cloudservice.v1.GetNamespacesResponse;
+import io.temporal.api.cloud.cloudservice.v1.GetServiceAccountRequest;
+import io.temporal.api.cloud.cloudservice.v1.GetServiceAccountResponse;
+import io.temporal.api.cloud.cloudservice.v1.GetServiceAccountsRequest;
+import io.temporal.api.cloud.cloudservice.v1.GetServiceAccountsResponse;
+import io.temporal.api.cloud.cloudservice.v1.GetUserRequest;
+import io.temporal.api.cloud.cloudservice.v1.GetUserResponse;
+import io.temporal.api.cloud.cloudservice.v1.GetUsersRequest;
+import io.temporal.api.cloud.cloudservice.v1.GetUsersResponse;
+import io.temporal.api.cloud.cloudservice.v1.UpdateApiKeyRequest;
+import io.temporal.api.cloud.cloudservice.v1.UpdateApiKeyResponse;
+import io.temporal.api.cloud.cloudservice.v1.UpdateNamespaceRequest;
+import io.temporal.api.cloud.cloudservice.v1.UpdateNamespaceResponse;
+import io.temporal.api.cloud.cloudservice.v1.UpdateServiceAccountRequest;
+import io.temporal.api.cloud.cloudservice.v1.UpdateServiceAccountResponse;
+import io.temporal.api.cloud.cloudservice.v1.UpdateUserRequest;
+import io.temporal.api.cloud.cloudservice.v1.UpdateUserResponse;
+import io.temporal.api.cloud.identity.v1.ApiKey;
+import io.temporal.api.cloud.identity.v1.ServiceAccount;
+import io.temporal.api.cloud.identity.v1.User;
+import io.temporal.api.cloud.namespace.v1.Namespace;
+import io.temporal.api.cloud.operation.v1.AsyncOperation;
+
+/**
+ * In-memory stand-in for the Temporal Cloud CloudService, for benchmarks, tests and load tests.
+ *
+ * <p>Covers namespaces, users, service accounts, API keys and async operations. Every mutation
+ * returns an async operation that moves from {@code pending} to {@code in_progress} to
+ * {@code fulfilled}; the resource it created stays {@code activating} until then and reports
+ * {@code active} afterwards. Namespaces take {@code activationDelay} to activate, everything
+ * else takes {@code operationDelay}. Updates are checked against {@code resource_version} the
+ * same way the real service does. Nothing is persisted.
+ */
+public class InMemoryCloudService extends CloudServiceGrpc.CloudServiceImplBase {
+
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
+    private final String accountId;
+    private final Duration activationDelay;
+    private final Duration operationDelay;
+
+    // an entity plus the moment it becomes active; maps are sorted so page tokens are stable
+    private static final class Stored<T> {
+        final T value;
+        final long activeAtNanos;
+
+        Stored(T value, long activeAtNanos) {
+            this.value = value;
+            this.activeAtNanos = activeAtNanos;
+        }
+    }
+
+    private static final class StoredOperation {
+        final String type;
+        final Timestamp started;
+        final long startedNanos;
+        final long doneAtNanos;
+
+        StoredOperation(String type, long doneAtNanos) {
+            this.type = type;
+            this.started = now();
+            this.startedNanos = System.nanoTime();
+            this.doneAtNanos = doneAtNanos;
+        }
+    }
+
+    private final Map<String, Stored<Namespace>> namespaces = new ConcurrentSkipListMap<>();
+    private final Map<String, Stored<User>> users = new ConcurrentSkipListMap<>();
+    private final Map<String, Stored<ServiceAccount>> serviceAccounts = new ConcurrentSkipListMap<>();
+    private final Map<String, Stored<ApiKey>> apiKeys = new ConcurrentSkipListMap<>();
+    private final Map<String, StoredOperation> operations = new ConcurrentHashMap<>();
+    // user creation is idempotent on the email address, like the real service
+    private final Map<String, String> userIdsByEmail = new ConcurrentHashMap<>();
+
+    public InMemoryCloudService() {
+        this("ksfop", Duration.ZERO);
+    }
+
+    public InMemoryCloudService(String accountId, Duration activationDelay) {
+        this(accountId, activationDelay, Duration.ZERO);
+    }
+
+    public InMemoryCloudService(String accountId, Duration activationDelay, Duration operationDelay) {
+        this.accountId = accountId;
+        this.activationDelay = activationDelay;
+        this.operationDelay = operationDelay;
+    }
+
+    public String getAccountId() {
+        return accountId;
+    }
+
+    public int namespaceCount() {
+        return namespaces.size();
+    }
+
+    public int userCount() {
+        return users.size();
+    }
+
+    public int serviceAccountCount() {
+        return serviceAccounts.size();
+    }
+
+    public int apiKeyCount() {
+        return apiKeys.size();
+    }
+
+    // ---- namespaces ----
+
+    @Override
+    public void getNamespaces(GetNamespacesRequest request, StreamObserver<GetNamespacesResponse> responseObserver) {
+        List<Namespace> page = new ArrayList<>();
+        String next = page(namespaces, NAMESPACE_STATE, request.getPageSize(), request.getPageToken(),
+            ns -> request.getName().isEmpty() || ns.getSpec().getName().equals(request.getName()), page);
+        reply(responseObserver, GetNamespacesResponse.newBuilder().addAllNamespaces(page).setNextPageToken(next).build());
+    }
+
+    @Override
+    public void getNamespace(GetNamespaceRequest request, StreamObserver<GetNamespaceResponse> responseObserver) {
+        Namespace ns = current(namespaces, request.getNamespace(), NAMESPACE_STATE);
+        if (ns == null) {
+            notFound(responseObserver, "namespace", request.getNamespace());
+            return;
+        }
+        reply(responseObserver, GetNamespaceResponse.newBuilder().setNamespace(ns).build());
+    }
+
+    @Override
+    public void createNamespace(CreateNamespaceRequest request, StreamObserver<CreateNamespaceResponse> responseObserver) {
+        String id = request.getSpec().getName() + "." + accountId;
+        long activeAt = System.nanoTime() + activationDelay.toNanos();
+        String operationId = startOperation(request.getAsyncOperationId(), "create-namespace", activeAt);
+        Namespace ns = Namespace.newBuilder()
+            .setNamespace(id)
+            .setResourceVersion(newResourceVersion())
+            .setSpec(request.getSpec())
+            .setState("activating")
+            .setAsyncOperationId(operationId)
+            .setCreatedTime(now())
+            .build();
+        if (namespaces.putIfAbsent(id, new Stored<>(ns, activeAt)) != null) {
+            responseObserver.onError(Status.ALREADY_EXISTS.withDescription("namespace already exists: " + id).asRuntimeException());
+            return;
+        }
+        reply(responseObserver, CreateNamespaceResponse.newBuilder()
+            .setNamespace(id)
+            .setAsyncOperation(operation(operationId))
+            .build());
+    }
+
+    @Override
+    public void updateNamespace(UpdateNamespaceRequest request, StreamObserver<UpdateNamespaceResponse> responseObserver) {
+        String operationId = update(namespaces, request.getNamespace(), request.getResourceVersion(), request.getAsyncOperationId(),
+            "update-namespace", ns -> ns.toBuilder()
+                .setSpec(request.getSpec())
+                .setResourceVersion(newResourceVersion())
+                .setLastModifiedTime(now())
+                .build(), responseObserver);
+        if (operationId != null) {
+            reply(responseObserver, UpdateNamespaceResponse.newBuilder().setAsyncOperation(operation(operationId)).build());
+        }
+    }
+
+    // ---- users ----
+
+    @Override
+    public void getUsers(GetUsersRequest request, StreamObserver<GetUsersResponse> responseObserver) {
+        List<User> page = new ArrayList<>();
+        String next = page(users, USER_STATE, request.getPageSize(), request.getPageToken(),
+            u -> (request.getEmail().isEmpty() || u.getSpec().getEmail().equalsIgnoreCase(request.getEmail()))
+                && (request.getNamespace().isEmpty() || u.getSpec().getAccess().containsNamespaceAccesses(request.getNamespace())),
+            page);
+        reply(responseObserver, GetUsersResponse.newBuilder().addAllUsers(page).setNextPageToken(next).build());
+    }
+
+    @Override
+    public void getUser(GetUserRequest request, StreamObserver<GetUserResponse> responseObserver) {
+        User user = current(users, request.getUserId(), USER_STATE);
+        if (user == null) {
+            notFound(responseObserver, "user", request.getUserId());
+            return;
+        }
+        reply(responseObserver, GetUserResponse.newBuilder().setUser(user).build());
+    }
+
+    @Override
+    public void createUser(CreateUserRequest request, StreamObserver<CreateUserResponse> responseObserver) {
+        String email = request.getSpec().getEmail().toLowerCase(java.util.Locale.ROOT);
+        String id = userIdsByEmail.computeIfAbsent(email, e -> newId());
+        long activeAt = System.nanoTime() + operationDelay.toNanos();
+        String operationId = startOperation(request.getAsyncOperationId(), "create-user", activeAt);
+        users.computeIfAbsent(id, key -> new Stored<>(User.newBuilder()
+            .setId(id)
+            .setResourceVersion(newResourceVersion())
+            .setSpec(request.getSpec())
+            .setState("activating")
+            .setAsyncOperationId(operationId)
+            .setCreatedTime(now())
+            .build(), activeAt));
+        reply(responseObserver, CreateUserResponse.newBuilder().setUserId(id).setAsyncOperation(operation(operationId)).build());
+    }
+
+    @Override
+    public void updateUser(UpdateUserRequest request, StreamObserver<UpdateUserResponse> responseObserver) {
+        String operationId = update(users, request.getUserId(), request.getResourceVersion(), request.getAsyncOperationId(),
+            "update-user", u -> u.toBuilder()
+                .setSpec(request.getSpec())
+                .setResourceVersion(newResourceVersion())
+                .setLastModifiedTime(now())
+                .build(), responseObserver);
+        if (operationId != null) {
+            reply(responseObserver, UpdateUserResponse.newBuilder().setAsyncOperation(operation(operationId)).build());
+        }
+    }
+
+    // ---- service accounts ----
+
+    @Override
+    public void getServiceAccounts(GetServiceAccountsRequest request, StreamObserver<GetServiceAccountsResponse> responseObserver) {
+        List<ServiceAccount> page = new ArrayList<>();
+        String next = page(serviceAccounts, SERVICE_ACCOUNT_STATE, request.getPageSize(), request.getPageToken(), sa -> true, page);
+        reply(responseObserver, GetServiceAccountsResponse.newBuilder().addAllServiceAccount(page).setNextPageToken(next).build());
+    }
+
+    @Override
+    public void getServiceAccount(GetServiceAccountRequest request, StreamObserver<GetServiceAccountResponse> responseObserver) {
+        ServiceAccount sa = current(serviceAccounts, request.getServiceAccountId(), SERVICE_ACCOUNT_STATE);
+        if (sa == null) {
+            notFound(responseObserver, "service account", request.getServiceAccountId());
+            return;
+        }
+        reply(responseObserver, GetServiceAccountResponse.newBuilder().setServiceAccount(sa).build());
+    }
+
+    @Override
+    public void createServiceAccount(CreateServiceAccountRequest request, StreamObserver<CreateServiceAccountResponse> responseObserver) {
+        String id = newId();
+        long activeAt = System.nanoTime() + operationDelay.toNanos();
+        String operationId = startOperation(request.getAsyncOperationId(), "create-service-account", activeAt);
+        serviceAccounts.put(id, new Stored<>(ServiceAccount.newBuilder()
+            .setId(id)
+            .setResourceVersion(newResourceVersion())
+            .setSpec(request.getSpec())
+            .setState("activating")
+            .setAsyncOperationId(operationId)
+            .setCreatedTime(now())
+            .build(), activeAt));
+        reply(responseObserver, CreateServiceAccountResponse.newBuilder().setServiceAccountId(id).setAsyncOperation(operation(operationId)).build());
+    }
+
+    @Override
+    public void updateServiceAccount(UpdateServiceAccountRequest request, StreamObserver<UpdateServiceAccountResponse> responseObserver) {
+        String operationId = update(serviceAccounts, request.getServiceAccountId(), request.getResourceVersion(), request.getAsyncOperationId(),
+            "update-service-account", sa -> sa.toBuilder()
+                .setSpec(request.getSpec())
+                .setResourceVersion(newResourceVersion())
+                .setLastModifiedTime(now())
+                .build(), responseObserver);
+        if (operationId != null) {
+            reply(responseObserver, UpdateServiceAccountResponse.newBuilder().setAsyncOperation(operation(operationId)).build());
+        }
+    }
+
+    // ---- API keys ----
+
+    @Override
+    public void getApiKeys(GetApiKeysRequest request, StreamObserver<GetApiKeysResponse> responseObserver) {
+        List<ApiKey> page = new ArrayList<>();
+        String next = page(apiKeys, API_KEY_STATE, request.getPageSize(), request.getPageToken(),
+            k -> (request.getOwnerId().isEmpty() || k.getSpec().getOwnerId().equals(request.getOwnerId()))
+                && (request.getOwnerType().isEmpty() || k.getSpec().getOwnerType().equals(request.getOwnerType())),
+            page);
+        reply(responseObserver, GetApiKeysResponse.newBuilder().addAllApiKeys(page).setNextPageToken(next).build());
+    }
+
+    @Override
+    public void getApiKey(GetApiKeyRequest request, StreamObserver<GetApiKeyResponse> responseObserver) {
+        ApiKey key = current(apiKeys, request.getKeyId(), API_KEY_STATE);
+        if (key == null) {
+            notFound(responseObserver, "api key", request.getKeyId());
+            return;
+        }
+        reply(responseObserver, GetApiKeyResponse.newBuilder().setApiKey(key).build());
+    }
+
+    @Override
+    public void createApiKey(CreateApiKeyRequest request, StreamObserver<CreateApiKeyResponse> responseObserver) {
+        String id = newId();
+        long activeAt = System.nanoTime() + operationDelay.toNanos();
+        String operationId = startOperation(request.getAsyncOperationId(), "create-api-key", activeAt);
+        apiKeys.put(id, new Stored<>(ApiKey.newBuilder()
+            .setId(id)
+            .setResourceVersion(newResourceVersion())
+            .setSpec(request.getSpec())
+            .setState("activating")
+            .setAsyncOperationId(operationId)
+            .setCreatedTime(now())
+            .build(), activeAt));
+        reply(responseObserver, CreateApiKeyResponse.newBuilder()
+            .setKeyId(id)
+            .setToken("fake-token-" + UUID.randomUUID())
+            .setAsyncOperation(operation(operationId))
+            .build());
+    }
+
+    @Override
+    public void updateApiKey(UpdateApiKeyRequest request, StreamObserver<UpdateApiKeyResponse> responseObserver) {
+        String operationId = update(apiKeys, request.getKeyId(), request.getResourceVersion(), request.getAsyncOperationId(),
+            "update-api-key", k -> k.toBuilder()
+                .setSpec(request.getSpec())
+                .setResourceVersion(newResourceVersion())
+                .setLastModifiedTime(now())
+                .build(), responseObserver);
+        if (operationId != null) {
+            reply(responseObserver, UpdateApiKeyResponse.newBuilder().setAsyncOperation(operation(operationId)).build());
+        }
+    }
+
+    // ---- async operations ----
+
+    @Override
+    public void getAsyncOperation(GetAsyncOperationRequest request, StreamObserver<GetAsyncOperationResponse> responseObserver) {
+        if (!operations.containsKey(request.getAsyncOperationId())) {
+            notFound(responseObserver, "async operation", request.getAsyncOperationId());
+            return;
+        }
+        reply(responseObserver, GetAsyncOperationResponse.newBuilder().setAsyncOperation(operation(request.getAsyncOperationId())).build());
+    }
+
+    private String startOperation(String requestedId, String type, long doneAtNanos) {
+        String id = requestedId.isEmpty() ? newId() : requestedId;
+        operations.putIfAbsent(id, new StoredOperation(type, doneAtNanos));
+        return id;
+    }
+
+    // pending for the first half of the operation, in_progress for the second half, then fulfilled
+    private AsyncOperation operation(String id) {
+        StoredOperation op = operations.get(id);
+        long now = System.nanoTime();
+        String state;
+        if (now >= op.doneAtNanos) {
+            state = "fulfilled";
+        } else if (now >= op.startedNanos + (op.doneAtNanos - op.startedNanos) / 2) {
+            state = "in_progress";
+        } else {
+            state = "pending";
+        }
+        AsyncOperation.Builder builder = AsyncOperation.newBuilder()
+            .setId(id)
+            .setState(state)
+            .setOperationType(op.type)
+            .setStartedTime(op.started);
+        if (state.equals("fulfilled")) {
+            builder.setFinishedTime(now());
+        } else {
+            long remainingMillis = Math.max(1, (op.doneAtNanos - now) / 1_000_000);
+            builder.setCheckDuration(com.google.protobuf.Duration.newBuilder()
+                .setSeconds(remainingMillis / 1000)
+                .setNanos((int) (remainingMillis % 1000) * 1_000_000));
+        }
+        return builder.build();
+    }
+
+    // ---- shared helpers ----
+
+    private static final BiFunction<Namespace, String, Namespace> NAMESPACE_STATE = (ns, state) -> ns.toBuilder().setState(state).build();
+    private static final BiFunction<User, String, User> USER_STATE = (u, state) -> u.toBuilder().setState(state).build();
+    private static final BiFunction<ServiceAccount, String, ServiceAccount> SERVICE_ACCOUNT_STATE = (sa, state) -> sa.toBuilder().setState(state).build();
+    private static final BiFunction<ApiKey, String, ApiKey> API_KEY_STATE = (k, state) -> k.toBuilder().setState(state).build();
+
+    // resolves the state an entity is in right now, flipping activating -> active once its delay has passed
+    private static <T> T current(Map<String, Stored<T>> store, String id, BiFunction<T, String, T> withState) {
+        Stored<T> stored = store.get(id);
+        if (stored == null) {
+            return null;
+        }
+        if (System.nanoTime() < stored.activeAtNanos || !isActivating(stored.value)) {
+            return stored.value;
+        }
+        store.replace(id, stored, new Stored<>(withState.apply(stored.value, "active"), stored.activeAtNanos));
+        return store.get(id).value;
+    }
+
+    private static boolean isActivating(Object value) {
+        if (value instanceof Namespace) {
+            return ((Namespace) value).getState().equals("activating");
+        } else if (value instanceof User) {
+            return ((User) value).getState().equals("activating");
+        } else if (value instanceof ServiceAccount) {
+            return ((ServiceAccount) value).getState().equals("activating");
+        }
+        return ((ApiKey) value).getState().equals("activating");
+    }
+
+    private static <T> String page(Map<String, Stored<T>> store, BiFunction<T, String, T> withState, int requestedPageSize,
+                                   String pageToken, Predicate<T> filter, List<T> page) {
+        int pageSize = requestedPageSize > 0 ? requestedPageSize : DEFAULT_PAGE_SIZE;
+        // the page token is the last key of the previous page
+        Map<String, Stored<T>> remaining = pageToken.isEmpty()
+            ? store
+            : ((ConcurrentSkipListMap<String, Stored<T>>) store).tailMap(pageToken, false);
+        String lastKey = null;
+        for (String id : remaining.keySet()) {
+            T value = current(store, id, withState);
+            if (value == null || !filter.test(value)) {
+                continue;
+            }
+            if (page.size() == pageSize) {
+                return lastKey;
+            }
+            page.add(value);
+            lastKey = id;
+        }
+        return "";
+    }
+
+    // applies a resource-version-checked update; returns the async operation id, or null if an error was sent
+    private <T> String update(Map<String, Stored<T>> store, String id, String resourceVersion, String requestedOperationId,
+                              String type, java.util.function.UnaryOperator<T> change, StreamObserver<?> responseObserver) {
+        boolean[] conflict = new boolean[1];
+        Stored<T> updated = store.computeIfPresent(id, (key, stored) -> {
+            if (!resourceVersionOf(stored.value).equals(resourceVersion)) {
+                conflict[0] = true;
+                return stored;
+            }
+            return new Stored<>(change.apply(stored.value), stored.activeAtNanos);
+        });
+        if (updated == null) {
+            notFound(responseObserver, type.substring("update-".length()).replace('-', ' '), id);
+            return null;
+        }
+        if (conflict[0]) {
+            responseObserver.onError(Status.FAILED_PRECONDITION
+                .withDescription("resource version mismatch for " + id).asRuntimeException());
+            return null;
+        }
+        return startOperation(requestedOperationId, type, System.nanoTime() + operationDelay.toNanos());
+    }
+
+    private static String resourceVersionOf(Object value) {
+        if (value instanceof Namespace) {
+            return ((Namespace) value).getResourceVersion();
+        } else if (value instanceof User) {
+            return ((User) value).getResourceVersion();
+        } else if (value instanceof ServiceAccount) {
+            return ((ServiceAccount) value).getResourceVersion();
+        }
+        return ((ApiKey) value).getResourceVersion();
+    }
+
+    private static <T> void reply(StreamObserver<T> responseObserver, T response) {
+        responseObserver.onNext(response);
+        responseObserver.onCompleted();
+    }
+
+    private static void notFound(StreamObserver<?> responseObserver, String kind, String id) {
+        responseObserver.onError(Status.NOT_FOUND.withDescription(kind + " not found: " + id).asRuntimeException());
+    }
+
+    private static String newId() {
+        return UUID.randomUUID().toString().replace("-", "");
+    }
+
+    private static String newResourceVersion() {
+        return UUID.randomUUID().toString();
+    }
+
+    private static Timestamp now() {
+        long millis = System.currentTimeMillis();
+        return Timestamp.newBuilder().setSeconds(millis / 1000).setNanos((int) (millis % 1000) * 1_000_000).build();
+    }
+}
@@ -0,0 +1,523 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+
+import io.temporal.api.cloud.identity.v1.ServiceAccount;
+import io.temporal.api.cloud.identity.v1.User;
+import io.temporal.api.cloud.namespace.v1.Namespace;
+import io.temporal.client.CloudOperationsClient;
+
+/**
+ * The account's namespaces, users and service accounts in one local file, for offline queries.
+ *
+ * <p>The file holds length-delimited protobuf records, the same framing as
+ * {@code writeDelimitedTo}, followed by an index and a fixed-size footer:
+ *
+ * <pre>
+ * header  magic (int) | format version (int)
+ * records varint length | message bytes ...
+ * index   per entry: kind (byte) | id | name | resource_version | offset (long) | length (int)
+ * footer  index offset (long) | entry count (int) | magic (int)
+ * </pre>
+ *
+ * Strings in the index are a length (short) followed by UTF-8 bytes. The name is the namespace
+ * name, the user's email or the service account's name, so lookups by any of them only touch the
+ * index.
+ *
+ * <p>{@link #open} maps the file read-only and reads only the index; a record is parsed when it
+ * is asked for. {@link #sync} lists the account and compares each entity's {@code resource_version}
+ * with the index. Records that changed or are new are appended, and a new index and footer are
+ * written after them. Unchanged records stay where they are, and when nothing changed the file is
+ * not touched at all. The Cloud API has no "changed since" listing, so the list calls themselves
+ * are still made in full. Once superseded records take up more space than live ones, the file is
+ * compacted into a fresh copy that replaces it atomically, reusing the stored bytes of unchanged
+ * records rather than serializing them again.
+ */
+public final class InventorySnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(InventorySnapshot.class);
+
+    private static final int MAGIC = 0x54434931; // "TCI1"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int FOOTER_BYTES = 16;
+
+    public enum Kind { NAMESPACE, USER, SERVICE_ACCOUNT }
+
+    /** One record in the index: what it is, its version, and where its bytes are. */
+    public static final class Entry {
+        private final Kind kind;
+        private final String id;
+        private final String name;
+        private final String resourceVersion;
+        private final long offset;
+        private final int length;
+
+        Entry(Kind kind, String id, String name, String resourceVersion, long offset, int length) {
+            this.kind = kind;
+            this.id = id;
+            this.name = name;
+            this.resourceVersion = resourceVersion;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /** The namespace name, or the user or service account id. */
+        public String getId() {
+            return id;
+        }
+
+        /** The namespace name, the user's email or the service account's name. */
+        public String getName() {
+            return name;
+        }
+
+        public String getResourceVersion() {
+            return resourceVersion;
+        }
+
+        Entry at(long newOffset) {
+            return new Entry(kind, id, name, resourceVersion, newOffset, length);
+        }
+
+        @Override
+        public String toString() {
+            return kind + " " + name + " (" + id + ") @" + resourceVersion;
+        }
+    }
+
+    /** What a {@link #sync} did. */
+    public static final class SyncResult {
+        private final int unchanged;
+        private final int written;
+        private final int removed;
+        private final long bytesWritten;
+        private final boolean compacted;
+
+        SyncResult(int unchanged, int written, int removed, long bytesWritten, boolean compacted) {
+            this.unchanged = unchanged;
+            this.written = written;
+            this.removed = removed;
+            this.bytesWritten = bytesWritten;
+            this.compacted = compacted;
+        }
+
+        public int getUnchanged() {
+            return unchanged;
+        }
+
+        /** Records that were new or had a different resource version. */
+        public int getWritten() {
+            return written;
+        }
+
+        public int getRemoved() {
+            return removed;
+        }
+
+        /** Bytes written to the file, including the new index; 0 when nothing changed. */
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        public boolean isCompacted() {
+            return compacted;
+        }
+
+        @Override
+        public String toString() {
+            return "unchanged=" + unchanged + ", written=" + written + ", removed=" + removed
+                + ", bytesWritten=" + bytesWritten + (compacted ? ", compacted" : "");
+        }
+    }
+
+    private final Path file;
+    private final ByteBuffer data;
+    private final List<Entry> entries;
+    private final Map<Kind, Map<String, Entry>> byId = new EnumMap<>(Kind.class);
+    private final Map<Kind, Map<String, Entry>> byName = new EnumMap<>(Kind.class);
+
+    private InventorySnapshot(Path file, ByteBuffer data, List<Entry> entries) {
+        this.file = file;
+        this.data = data;
+        this.entries = Collections.unmodifiableList(entries);
+        for (Kind kind : Kind.values()) {
+            byId.put(kind, new HashMap<>());
+            byName.put(kind, new HashMap<>());
+        }
+        for (Entry e : entries) {
+            byId.get(e.kind).put(e.id, e);
+            byName.get(e.kind).put(e.kind == Kind.USER ? e.name.toLowerCase(Locale.ROOT) : e.name, e);
+        }
+    }
+
+    /** Maps {@code file} and reads its index. Records are parsed on demand. */
+    public static InventorySnapshot open(Path file) throws IOException {
+        MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to map: " + channel.size() + " bytes");
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            return new InventorySnapshot(file, data, readIndex(data));
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException(file + " is not a complete inventory snapshot", e);
+        }
+    }
+
+    private static List<Entry> readIndex(ByteBuffer data) throws IOException {
+        if (data.limit() < HEADER_BYTES + FOOTER_BYTES || data.getInt(0) != MAGIC || data.getInt(data.limit() - 4) != MAGIC) {
+            throw new IOException("missing header or footer");
+        }
+        if (data.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("unsupported format version " + data.getInt(4));
+        }
+        long indexOffset = data.getLong(data.limit() - FOOTER_BYTES);
+        int count = data.getInt(data.limit() - FOOTER_BYTES + 8);
+        ByteBuffer index = data.duplicate().position((int) indexOffset).limit(data.limit() - FOOTER_BYTES);
+        List<Entry> entries = new ArrayList<>(count);
+        Kind[] kinds = Kind.values();
+        for (int i = 0; i < count; i++) {
+            Kind kind = kinds[index.get()];
+            entries.add(new Entry(kind, readString(index), readString(index), readString(index), index.getLong(), index.getInt()));
+        }
+        return entries;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public List<Entry> entries() {
+        return entries;
+    }
+
+    public List<Entry> entries(Kind kind) {
+        return new ArrayList<>(byId.get(kind).values());
+    }
+
+    public Optional<Entry> entry(Kind kind, String id) {
+        return Optional.ofNullable(byId.get(kind).get(id));
+    }
+
+    public Optional<Namespace> namespace(String namespace) {
+        return Optional.ofNullable(byId.get(Kind.NAMESPACE).get(namespace)).map(e -> (Namespace) read(e));
+    }
+
+    public Optional<User> user(String userId) {
+        return Optional.ofNullable(byId.get(Kind.USER).get(userId)).map(e -> (User) read(e));
+    }
+
+    /** Emails are matched case-insensitively, as the Cloud API does. */
+    public Optional<User> userByEmail(String email) {
+        return Optional.ofNullable(byName.get(Kind.USER).get(email.toLowerCase(Locale.ROOT))).map(e -> (User) read(e));
+    }
+
+    public Optional<ServiceAccount> serviceAccount(String serviceAccountId) {
+        return Optional.ofNullable(byId.get(Kind.SERVICE_ACCOUNT).get(serviceAccountId)).map(e -> (ServiceAccount) read(e));
+    }
+
+    public Optional<ServiceAccount> serviceAccountByName(String name) {
+        return Optional.ofNullable(byName.get(Kind.SERVICE_ACCOUNT).get(name)).map(e -> (ServiceAccount) read(e));
+    }
+
+    /** Parses the record for {@code entry} straight from the mapped file. */
+    public Message read(Entry entry) {
+        ByteBuffer record = record(entry);
+        try {
+            switch (entry.kind) {
+                case NAMESPACE:
+                    return Namespace.parseFrom(record);
+                case USER:
+                    return User.parseFrom(record);
+                case SERVICE_ACCOUNT:
+                    return ServiceAccount.parseFrom(record);
+                default:
+                    throw new IllegalArgumentException("unknown kind " + entry.kind);
+            }
+        } catch (InvalidProtocolBufferException e) {
+            throw new IllegalStateException("Corrupt record for " + entry + " in " + file, e);
+        }
+    }
+
+    private ByteBuffer record(Entry entry) {
+        return data.duplicate().position((int) entry.offset).limit((int) entry.offset + entry.length).slice();
+    }
+
+    // bytes taken by records that are still in the index, with their length prefixes
+    private long liveBytes() {
+        long live = 0;
+        for (Entry e : entries) {
+            live += CodedOutputStream.computeUInt32SizeNoTag(e.length) + e.length;
+        }
+        return live;
+    }
+
+    @Override
+    public String toString() {
+        return "InventorySnapshot[" + file + ": " + byId.get(Kind.NAMESPACE).size() + " namespaces, "
+            + byId.get(Kind.USER).size() + " users, " + byId.get(Kind.SERVICE_ACCOUNT).size() + " service accounts]";
+    }
+
+    /**
+     * Brings {@code file} up to date with the account, creating it if needed. An unreadable file,
+     * e.g. one left behind by an interrupted sync, is replaced with a full snapshot.
+     */
+    public static SyncResult sync(CloudOperationsClient client, Path file, int pageSize) throws IOException {
+        // the three listings run at the same time
+        CompletableFuture<List<Namespace>> namespaces = CloudPager.namespaces(client, pageSize).toListAsync();
+        CompletableFuture<List<User>> users = CloudPager.users(client, pageSize).toListAsync();
+        CompletableFuture<List<ServiceAccount>> serviceAccounts = CloudPager.serviceAccounts(client, pageSize).toListAsync();
+        return sync(file, namespaces.join(), users.join(), serviceAccounts.join());
+    }
+
+    static SyncResult sync(Path file, List<Namespace> namespaces, List<User> users, List<ServiceAccount> serviceAccounts) throws IOException {
+        List<Message> current = new ArrayList<>(namespaces.size() + users.size() + serviceAccounts.size());
+        current.addAll(namespaces);
+        current.addAll(users);
+        current.addAll(serviceAccounts);
+
+        InventorySnapshot existing = null;
+        if (Files.exists(file)) {
+            try {
+                existing = open(file);
+            } catch (IOException e) {
+                logger.warn("Rewriting inventory snapshot " + file + ": " + e.getMessage());
+            }
+        }
+
+        // sort the listing into records to keep and records to (re)write
+        List<Entry> kept = new ArrayList<>();
+        List<Message> changed = new ArrayList<>();
+        for (Message m : current) {
+            Entry previous = existing == null ? null : existing.byId.get(kindOf(m)).get(idOf(m));
+            if (previous != null && previous.resourceVersion.equals(resourceVersionOf(m)) && !resourceVersionOf(m).isEmpty()) {
+                kept.add(previous);
+            } else {
+                changed.add(m);
+            }
+        }
+        int removed = existing == null ? 0 : existing.size() - kept.size();
+        if (existing != null && changed.isEmpty() && removed == 0) {
+            return new SyncResult(kept.size(), 0, 0, 0, false);
+        }
+
+        long changedBytes = 0;
+        for (Message m : changed) {
+            changedBytes += CodedOutputStream.computeUInt32SizeNoTag(m.getSerializedSize()) + m.getSerializedSize();
+        }
+        long oldRecordBytes = existing == null ? 0 : existing.data.getLong(existing.data.limit() - FOOTER_BYTES) - HEADER_BYTES;
+        long liveBytes = changedBytes;
+        for (Entry e : kept) {
+            liveBytes += CodedOutputStream.computeUInt32SizeNoTag(e.length) + e.length;
+        }
+        // appending would leave more dead records than live ones: write a compact copy instead
+        boolean compact = existing != null && oldRecordBytes + changedBytes > 2 * liveBytes;
+        SyncResult result = existing == null || compact
+            ? rewrite(file, existing, kept, changed, removed, compact)
+            : append(file, existing, kept, changed, removed);
+        logger.info("Synced inventory snapshot " + file + ": " + result);
+        return result;
+    }
+
+    // appends the changed records, a new index and a new footer; the old index becomes dead space
+    private static SyncResult append(Path file, InventorySnapshot existing, List<Entry> kept, List<Message> changed, int removed) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            long start = channel.size();
+            channel.position(start);
+            OutputStream out = Channels.newOutputStream(channel);
+            CountingWriter writer = new CountingWriter(out, start);
+            List<Entry> index = new ArrayList<>(kept);
+            for (Message m : changed) {
+                index.add(writer.writeRecord(m));
+            }
+            writer.writeIndexAndFooter(index);
+            channel.force(true);
+            return new SyncResult(kept.size(), changed.size(), removed, writer.position - start, false);
+        }
+    }
+
+    // writes a fresh file next to the old one, copying kept records byte for byte, then moves it over the old one
+    private static SyncResult rewrite(Path file, InventorySnapshot existing, List<Entry> kept, List<Message> changed, int removed, boolean compact) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            long written;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                CountingWriter writer = new CountingWriter(Channels.newOutputStream(channel), 0);
+                writer.writeHeader();
+                List<Entry> index = new ArrayList<>(kept.size() + changed.size());
+                for (Entry e : kept) {
+                    index.add(writer.copyRecord(existing, e));
+                }
+                for (Message m : changed) {
+                    index.add(writer.writeRecord(m));
+                }
+                writer.writeIndexAndFooter(index);
+                channel.force(true);
+                written = writer.position;
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return new SyncResult(kept.size(), changed.size(), removed, written, compact);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // buffers writes and keeps track of the file offset, which the index entries need
+    private static final class CountingWriter {
+        private final CodedOutputStream out;
+        private long position;
+
+        CountingWriter(OutputStream out, long position) {
+            this.out = CodedOutputStream.newInstance(out, 64 * 1024);
+            this.position = position;
+        }
+
+        void writeHeader() throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(FORMAT_VERSION);
+            header.flip();
+            out.write(header);
+            position += HEADER_BYTES;
+        }
+
+        Entry writeRecord(Message m) throws IOException {
+            int length = m.getSerializedSize();
+            out.writeUInt32NoTag(length);
+            position += CodedOutputStream.computeUInt32SizeNoTag(length);
+            Entry entry = new Entry(kindOf(m), idOf(m), nameOf(m), resourceVersionOf(m), position, length);
+            m.writeTo(out);
+            position += length;
+            return entry;
+        }
+
+        Entry copyRecord(InventorySnapshot from, Entry e) throws IOException {
+            out.writeUInt32NoTag(e.length);
+            position += CodedOutputStream.computeUInt32SizeNoTag(e.length);
+            Entry moved = e.at(position);
+            out.write(from.record(e));
+            position += e.length;
+            return moved;
+        }
+
+        void writeIndexAndFooter(List<Entry> index) throws IOException {
+            long indexOffset = position;
+            ByteBuffer buffer = ByteBuffer.allocate(256);
+            for (Entry e : index) {
+                buffer.clear();
+                byte[] id = e.id.getBytes(StandardCharsets.UTF_8);
+                byte[] name = e.name.getBytes(StandardCharsets.UTF_8);
+                byte[] version = e.resourceVersion.getBytes(StandardCharsets.UTF_8);
+                if (buffer.capacity() < 1 + 6 + id.length + name.length + version.length + 12) {
+                    buffer = ByteBuffer.allocate(1 + 6 + id.length + name.length + version.length + 12);
+                }
+                buffer.put((byte) e.kind.ordinal());
+                putString(buffer, id);
+                putString(buffer, name);
+                putString(buffer, version);
+                buffer.putLong(e.offset).putInt(e.length).flip();
+                position += buffer.remaining();
+                out.write(buffer);
+            }
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_BYTES).putLong(indexOffset).putInt(index.size()).putInt(MAGIC);
+            footer.flip();
+            out.write(footer);
+            position += FOOTER_BYTES;
+            out.flush();
+        }
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        if (value.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("index string too long: " + value.length + " bytes");
+        }
+        buffer.putShort((short) value.length).put(value);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] value = new byte[buffer.getShort()];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static Kind kindOf(Message m) {
+        if (m instanceof Namespace) {
+            return Kind.NAMESPACE;
+        } else if (m instanceof User) {
+            return Kind.USER;
+        } else if (m instanceof ServiceAccount) {
+            return Kind.SERVICE_ACCOUNT;
+        }
+        throw new IllegalArgumentException("not an inventory record: " + m.getDescriptorForType().getFullName());
+    }
+
+    private static String idOf(Message m) {
+        switch (kindOf(m)) {
+            case NAMESPACE:
+                return ((Namespace) m).getNamespace();
+            case USER:
+                return ((User) m).getId();
+            default:
+                return ((ServiceAccount) m).getId();
+        }
+    }
+
+    private static String nameOf(Message m) {
+        switch (kindOf(m)) {
+            case NAMESPACE:
+                return ((Namespace) m).getNamespace();
+            case USER:
+                return ((User) m).getSpec().getEmail();
+            default:
+                return ((ServiceAccount) m).getSpec().getName();
+        }
+    }
+
+    private static String resourceVersionOf(Message m) {
+        switch (kindOf(m)) {
+            case NAMESPACE:
+                return ((Namespace) m).getResourceVersion();
+            case USER:
+                return ((User) m).getResourceVersion();
+            default:
+                return ((ServiceAccount) m).getResourceVersion();
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package org.example;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import io.temporal.api.cloud.cloudservice.v1.CreateNamespaceRequest;
+import io.temporal.client.CloudOperationsClient;
+
+/**
+ * Drives the demo client classes against a {@link FakeCloudServer} at a fixed target rate and
+ * reports latency percentiles and achieved throughput.
+ *
+ * <p>The generator is open-loop: operation {@code i} is due at {@code start + i / rate}, whatever
+ * happened to earlier operations, and its latency is measured from that due time. A slow server
+ * therefore shows up as queueing delay in the percentiles instead of silently lowering the offered
+ * load (the "coordinated omission" problem of closed-loop benchmarks).
+ *
+ * <p>An operation only counts as completed once the resource is active. The demo clients log
+ * failures and carry on, so a namespace is created on the stubs directly and awaited on a
+ * {@link NamespaceStatusPoller}, and the identity clients' futures are waited for, so that every
+ * failure is counted as an error. The latency percentiles include failed operations.
+ *
+ * <p>Run it with {@code gradle loadTest -Pargs="--workload=MIXED --rate=200 --duration=30s"}.
+ * Options:
+ * <ul>
+ *   <li>{@code --workload} NAMESPACE_CREATE, USER_CREATE, SERVICE_ACCOUNT_CREATE, API_KEY_CREATE or MIXED</li>
+ *   <li>{@code --rate} target operations per second (default 100)</li>
+ *   <li>{@code --duration} run length, e.g. {@code 30s} or {@code 2m} (default 10s)</li>
+ *   <li>{@code --concurrency} worker threads calling the clients (default 64)</li>
+ *   <li>{@code --latency-median-ms} / {@code --latency-p99-ms} simulated server latency (default 20 / 200)</li>
+ *   <li>{@code --resource-exhausted} / {@code --unavailable} injected error rates, 0..1 (default 0)</li>
+ *   <li>{@code --server-rate-limit} calls per second the fake server accepts before throttling (default unlimited)</li>
+ *   <li>{@code --throttle} route calls through {@link ThrottlingClientInterceptor} so throttled calls are retried</li>
+ *   <li>{@code --activation-ms} / {@code --operation-ms} simulated async operation durations (default 0)</li>
+ * </ul>
+ */
+public final class LoadGenerator {
+
+    public enum Workload { NAMESPACE_CREATE, USER_CREATE, SERVICE_ACCOUNT_CREATE, API_KEY_CREATE, MIXED }
+
+    private static final Workload[] MIXED_WORKLOADS = {
+        Workload.NAMESPACE_CREATE, Workload.USER_CREATE, Workload.SERVICE_ACCOUNT_CREATE, Workload.API_KEY_CREATE
+    };
+
+    // latencies are recorded in microseconds, up to an hour, with 3 significant digits
+    private static final long MAX_TRACKABLE_MICROS = TimeUnit.HOURS.toMicros(1);
+
+    /** Results of one run. */
+    public static final class Report {
+        private final Workload workload;
+        private final double targetRate;
+        private final Histogram latencyMicros;
+        private final long completed;
+        private final long errors;
+        private final Duration elapsed;
+        private final Map<Workload, Long> completedByWorkload;
+
+        Report(Workload workload, double targetRate, Histogram latencyMicros, long completed, long errors,
+               Duration elapsed, Map<Workload, Long> completedByWorkload) {
+            this.workload = workload;
+            this.targetRate = targetRate;
+            this.latencyMicros = latencyMicros;
+            this.completed = completed;
+            this.errors = errors;
+            this.elapsed = elapsed;
+            this.completedByWorkload = completedByWorkload;
+        }
+
+        public Histogram getLatencyMicros() {
+            return latencyMicros;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public double achievedRate() {
+            return completed / Math.max(elapsed.toNanos() / 1e9, 1e-9);
+        }
+
+        public double percentileMillis(double percentile) {
+            return latencyMicros.getValueAtPercentile(percentile) / 1000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                "%s: %d ops completed, %d failed in %.1fs, target %.1f ops/s, achieved %.1f ops/s, "
+                    + "latency p50=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms %s",
+                workload, completed, errors, elapsed.toMillis() / 1000.0, targetRate, achievedRate(),
+                percentileMillis(50), percentileMillis(99), percentileMillis(99.9),
+                latencyMicros.getMaxValue() / 1000.0, completedByWorkload);
+        }
+    }
+
+    private final CloudOperationsClient client;
+    private final SimpleCloudApiIdentityClient identityClient;
+    private final String accountId;
+    private final AtomicLong sequence = new AtomicLong();
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+
+    public LoadGenerator(CloudOperationsClient client, String accountId) {
+        CloudResourceCache cache = new CloudResourceCache();
+        this.client = client;
+        this.identityClient = new SimpleCloudApiIdentityClient(cache);
+        this.accountId = accountId;
+    }
+
+    /**
+     * Runs {@code workload} at {@code ratePerSecond} for {@code duration} using {@code concurrency}
+     * worker threads, then waits for the operations still in flight.
+     */
+    public Report run(Workload workload, double ratePerSecond, Duration duration, int concurrency) throws InterruptedException {
+        Recorder recorder = new Recorder(MAX_TRACKABLE_MICROS, 3);
+        AtomicLong completed = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        NamespaceStatusPoller poller = new NamespaceStatusPoller();
+        AtomicLongArray perWorkload = new AtomicLongArray(Workload.values().length);
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency, r -> {
+            Thread t = new Thread(r, "load-generator");
+            t.setDaemon(true);
+            return t;
+        });
+
+        long intervalNanos = (long) (1e9 / ratePerSecond);
+        long total = (long) (ratePerSecond * duration.toNanos() / 1e9);
+        long start = System.nanoTime();
+        for (long i = 0; i < total; i++) {
+            long dueAt = start + i * intervalNanos;
+            long wait = dueAt - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            Workload next = workload == Workload.MIXED
+                ? MIXED_WORKLOADS[ThreadLocalRandom.current().nextInt(MIXED_WORKLOADS.length)]
+                : workload;
+            workers.execute(() -> {
+                try {
+                    execute(next, poller);
+                    completed.incrementAndGet();
+                    perWorkload.incrementAndGet(next.ordinal());
+                } catch (RuntimeException e) {
+                    errors.incrementAndGet();
+                } finally {
+                    // measured from when the operation was due, not from when a worker picked it up
+                    long micros = (System.nanoTime() - dueAt) / 1000;
+                    recorder.recordValue(Math.min(micros, MAX_TRACKABLE_MICROS));
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(10, TimeUnit.MINUTES);
+        poller.close();
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        Histogram histogram = recorder.getIntervalHistogram();
+        Map<Workload, Long> completedByWorkload = new java.util.EnumMap<>(Workload.class);
+        for (Workload w : Workload.values()) {
+            if (perWorkload.get(w.ordinal()) > 0) {
+                completedByWorkload.put(w, perWorkload.get(w.ordinal()));
+            }
+        }
+        return new Report(workload, ratePerSecond, histogram, completed.get(), errors.get(), elapsed,
+            Collections.unmodifiableMap(completedByWorkload));
+    }
+
+    // throws if any step fails, including waiting for the resource to become active
+    private void execute(Workload workload, NamespaceStatusPoller poller) {
+        String name = "load-" + runId + "-" + sequence.incrementAndGet();
+        switch (workload) {
+            case NAMESPACE_CREATE:
+                String namespace = name + "." + accountId;
+                client.getCloudServiceStubs().blockingStub().createNamespace(CreateNamespaceRequest.newBuilder()
+                    .setSpec(SimpleCloudApiNamespaceClient.apiKeyNamespaceSpec(name)).build());
+                poller.awaitActive(client, namespace).join();
+                break;
+            case USER_CREATE:
+                identityClient.createUser(client, name + "@example.com", Map.of(name + "." + accountId, "read"), "developer").join();
+                break;
+            case SERVICE_ACCOUNT_CREATE:
+                identityClient.createServiceAccount(client, name, Map.of(name + "." + accountId, "write"), "read").join();
+                break;
+            case API_KEY_CREATE:
+                identityClient.createAPIKey(client, name, "owner-" + runId, "service-account", name).join();
+                break;
+            default:
+                throw new IllegalArgumentException("not a single workload: " + workload);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = new java.util.HashMap<>();
+        for (String arg : args) {
+            String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(kv[0], kv.length > 1 ? kv[1] : "true");
+        }
+        Workload workload = Workload.valueOf(options.getOrDefault("workload", "MIXED").toUpperCase(Locale.ROOT));
+        double rate = Double.parseDouble(options.getOrDefault("rate", "100"));
+        Duration duration = parseDuration(options.getOrDefault("duration", "10s"));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "64"));
+        FaultInjectionInterceptor.LatencyModel latency = FaultInjectionInterceptor.LatencyModel.logNormal(
+            Duration.ofMillis(Long.parseLong(options.getOrDefault("latency-median-ms", "20"))),
+            Duration.ofMillis(Long.parseLong(options.getOrDefault("latency-p99-ms", "200"))));
+        double resourceExhausted = Double.parseDouble(options.getOrDefault("resource-exhausted", "0"));
+        double unavailable = Double.parseDouble(options.getOrDefault("unavailable", "0"));
+        double serverRateLimit = Double.parseDouble(options.getOrDefault("server-rate-limit", "0"));
+        boolean throttle = Boolean.parseBoolean(options.getOrDefault("throttle", "false"));
+        Duration activation = Duration.ofMillis(Long.parseLong(options.getOrDefault("activation-ms", "0")));
+        Duration operation = Duration.ofMillis(Long.parseLong(options.getOrDefault("operation-ms", "0")));
+
+        PrintStream report = System.out;
+        report.printf(Locale.ROOT, "Running %s at %.1f ops/s for %ss with %d workers%n",
+            workload, rate, duration.toMillis() / 1000.0, concurrency);
+
+        // the demo clients log every call; keep their output out of the measurement
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger("org.example")).setLevel(Level.ERROR);
+        PrintStream originalErr = System.err;
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        System.setOut(discard);
+        System.setErr(discard);
+
+        InMemoryCloudService service = new InMemoryCloudService("loadtest", activation, operation);
+        // per-RPC metrics show which call behind each client operation is responsible for its latency
+        CloudRpcMetrics metrics = new CloudRpcMetrics();
+        List<io.grpc.ClientInterceptor> clientInterceptors = new java.util.ArrayList<>();
+        clientInterceptors.add(new MetricsClientInterceptor(metrics));
+        ThrottlingClientInterceptor throttling = throttle ? new ThrottlingClientInterceptor() : null;
+        if (throttling != null) {
+            clientInterceptors.add(throttling);
+        }
+        try (FaultInjectionInterceptor faults = new FaultInjectionInterceptor(latency, resourceExhausted, unavailable, serverRateLimit);
+             FakeCloudServer server = new FakeCloudServer(service, clientInterceptors, faults)) {
+            Report result = new LoadGenerator(server.getClient(), service.getAccountId())
+                .run(workload, rate, duration, concurrency);
+            report.println(result);
+            report.print(metrics.summary());
+            if (throttling != null) {
+                report.println("Throttling: " + throttling);
+                throttling.close();
+            }
+        } finally {
+            System.setOut(report);
+            System.setErr(originalErr);
+        }
+        System.exit(0);
+    }
+
+    private static Duration parseDuration(String value) {
+        String v = value.trim().toLowerCase(Locale.ROOT);
+        if (v.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(v.substring(0, v.length() - 2)));
+        } else if (v.endsWith("s")) {
+            return Duration.ofSeconds(Long.parseLong(v.substring(0, v.length() - 1)));
+        } else if (v.endsWith("m")) {
+            return Duration.ofMinutes(Long.parseLong(v.substring(0, v.length() - 1)));
+        }
+        return Duration.ofSeconds(Long.parseLong(v));
+    }
+}
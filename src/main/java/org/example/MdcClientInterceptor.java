@@ -0,0 +1,81 @@
+package org.example;
+
+import java.util.Map;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+import org.slf4j.MDC;
+
+/**
+ * Client interceptor that carries the logging MDC of the thread that makes a call over to the
+ * gRPC threads that answer it. Code that runs when the call completes, such as future callbacks
+ * or a limiter starting the next queued call, then logs with the same {@code command} as the code
+ * that made the call.
+ *
+ * <p>Add it last, so it is the outermost interceptor and its listener runs around every callback.
+ */
+public final class MdcClientInterceptor implements ClientInterceptor {
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        return new ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT>(next.newCall(method, callOptions)) {
+            @Override
+            public void start(Listener<RespT> responseListener, Metadata headers) {
+                super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(responseListener) {
+                    @Override
+                    public void onHeaders(Metadata headers) {
+                        withContext(context, () -> super.onHeaders(headers));
+                    }
+
+                    @Override
+                    public void onMessage(RespT message) {
+                        withContext(context, () -> super.onMessage(message));
+                    }
+
+                    @Override
+                    public void onClose(Status status, Metadata trailers) {
+                        withContext(context, () -> super.onClose(status, trailers));
+                    }
+
+                    @Override
+                    public void onReady() {
+                        withContext(context, super::onReady);
+                    }
+                }, headers);
+            }
+        };
+    }
+
+    /** Returns a task that runs {@code task} with the MDC the calling thread has now. */
+    static Runnable withCurrentContext(Runnable task) {
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        return () -> withContext(context, task);
+    }
+
+    private static void withContext(Map<String, String> context, Runnable task) {
+        Map<String, String> previous = MDC.getCopyOfContextMap();
+        setContext(context);
+        try {
+            task.run();
+        } finally {
+            setContext(previous);
+        }
+    }
+
+    private static void setContext(Map<String, String> context) {
+        if (context == null) {
+            MDC.clear();
+        } else {
+            MDC.setContextMap(context);
+        }
+    }
+}
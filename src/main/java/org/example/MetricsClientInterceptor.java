@@ -0,0 +1,66 @@
+package org.example;
+
+import com.google.protobuf.MessageLite;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+/**
+ * Client interceptor that records every Cloud API call into {@link CloudRpcMetrics}: latency from
+ * {@code start} to {@code onClose}, in-flight count, final status code and serialized payload sizes.
+ *
+ * <p>Add it with {@code CloudServiceStubsOptions.newBuilder().addGrpcClientInterceptor(...)}.
+ */
+public final class MetricsClientInterceptor implements ClientInterceptor {
+
+    private final CloudRpcMetrics metrics;
+
+    public MetricsClientInterceptor(CloudRpcMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+        CloudRpcMetrics.MethodMetrics methodMetrics = metrics.method(method.getBareMethodName());
+        return new ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT>(next.newCall(method, callOptions)) {
+            private long startNanos;
+
+            @Override
+            public void start(Listener<RespT> responseListener, Metadata headers) {
+                startNanos = System.nanoTime();
+                methodMetrics.started();
+                super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(responseListener) {
+                    @Override
+                    public void onMessage(RespT message) {
+                        if (message instanceof MessageLite) {
+                            methodMetrics.responseBytes(((MessageLite) message).getSerializedSize());
+                        }
+                        super.onMessage(message);
+                    }
+
+                    @Override
+                    public void onClose(Status status, Metadata trailers) {
+                        methodMetrics.finished(System.nanoTime() - startNanos, status.getCode());
+                        super.onClose(status, trailers);
+                    }
+                }, headers);
+            }
+
+            @Override
+            public void sendMessage(ReqT message) {
+                if (message instanceof MessageLite) {
+                    // protobuf caches the serialized size, so the marshaller does not compute it again
+                    methodMetrics.requestBytes(((MessageLite) message).getSerializedSize());
+                }
+                super.sendMessage(message);
+            }
+        };
+    }
+}
@@ -0,0 +1,346 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append-only write-ahead log of the creates a bulk job sends, so a job that dies partway
+ * through can be run again and only do what is left.
+ *
+ * <p>Each mutation is identified by a key chosen by the job, such as {@code user:alice@example.com}.
+ * Before the create is sent, {@link #intend} records the key and the {@code async_operation_id}
+ * the request will carry, and the caller waits for that record to be on disk. {@link #accepted}
+ * and {@link #done} follow once the server has accepted the create and once its async operation
+ * has finished. {@link #open} replays an existing journal, and {@link #get} then tells a resumed
+ * job what happened to each key in earlier runs:
+ *
+ * <ul>
+ *   <li>{@code DONE}: nothing to do.</li>
+ *   <li>{@code ACCEPTED}: only the async operation needs to be awaited.</li>
+ *   <li>{@code INTENDED}: the create may or may not have reached the server. GetAsyncOperation
+ *       with the recorded id tells which. If the operation is unknown, the create is sent again
+ *       with the same id.</li>
+ *   <li>{@code FAILED}: send it again, with a new operation id.</li>
+ * </ul>
+ *
+ * <p>All records go through one writer thread. It takes every record queued since its last write,
+ * writes them with one {@code write} and makes them durable with one {@code force}, so a bulk job
+ * with many creates in flight pays for one fsync per group rather than per create. Each record is
+ * framed as {@code length (int) | payload | crc32 (int)}. A record torn by a crash fails its
+ * checksum, and it and anything after it are cut off when the journal is next opened.
+ */
+public final class MutationJournal implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(MutationJournal.class);
+
+    private static final int MAGIC = 0x544d4a31; // "TMJ1"
+    private static final int HEADER_BYTES = 4;
+    private static final int MAX_RECORD_BYTES = 64 * 1024;
+
+    public enum State { INTENDED, ACCEPTED, DONE, FAILED }
+
+    /** What the journal says about one key: its latest state and the ids recorded for it. */
+    public static final class Entry {
+        private final String key;
+        private final State state;
+        private final String operationId;
+        private final String resourceId;
+
+        Entry(String key, State state, String operationId, String resourceId) {
+            this.key = key;
+            this.state = state;
+            this.operationId = operationId;
+            this.resourceId = resourceId;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        /** The {@code async_operation_id} the create was sent with. */
+        public String getOperationId() {
+            return operationId;
+        }
+
+        /** The id of the created resource, or an empty string if the journal never saw the response. */
+        public String getResourceId() {
+            return resourceId;
+        }
+
+        @Override
+        public String toString() {
+            return key + ": " + state + " operation=" + operationId + (resourceId.isEmpty() ? "" : " id=" + resourceId);
+        }
+    }
+
+    // a record waiting for the writer; completed once the group it went out with has been forced
+    private static final class Pending {
+        final ByteBuffer bytes;
+        final CompletableFuture<Void> written = new CompletableFuture<>();
+
+        Pending(ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    private static final Pending CLOSE = new Pending(ByteBuffer.allocate(0));
+
+    private final Path file;
+    private final FileChannel channel;
+    private final Map<String, Entry> entries;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong forces = new AtomicLong();
+    private volatile IOException writeError;
+
+    private MutationJournal(Path file, FileChannel channel, Map<String, Entry> entries) {
+        this.file = file;
+        this.channel = channel;
+        this.entries = entries;
+        this.writer = new Thread(this::writeLoop, "mutation-journal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /** Opens a journal, creating it if needed, and replays what earlier runs recorded. */
+    public static MutationJournal open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            Map<String, Entry> entries = new HashMap<>();
+            if (channel.size() == 0) {
+                channel.write(ByteBuffer.allocate(HEADER_BYTES).putInt(0, MAGIC));
+                channel.force(true);
+            } else {
+                long end = replay(channel, entries);
+                if (end < channel.size()) {
+                    logger.warn("Cutting " + (channel.size() - end) + " bytes of incomplete records off " + file);
+                    channel.truncate(end);
+                    channel.force(true);
+                }
+                if (!entries.isEmpty()) {
+                    logger.info("Resuming from " + file + ": " + summarize(entries.values()));
+                }
+            }
+            channel.position(channel.size());
+            return new MutationJournal(file, channel, new ConcurrentHashMap<>(entries));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // reads records until the end or the first bad one, and returns where the good ones end
+    private static long replay(FileChannel channel, Map<String, Entry> entries) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        channel.read(header, 0);
+        if (header.position() < HEADER_BYTES || header.getInt(0) != MAGIC) {
+            throw new IOException("not a mutation journal");
+        }
+        long position = HEADER_BYTES;
+        ByteBuffer length = ByteBuffer.allocate(4);
+        CRC32 crc = new CRC32();
+        while (true) {
+            length.clear();
+            if (channel.read(length, position) < 4) {
+                return position;
+            }
+            int size = length.getInt(0);
+            if (size <= 0 || size > MAX_RECORD_BYTES) {
+                return position;
+            }
+            ByteBuffer record = ByteBuffer.allocate(size + 4);
+            while (record.hasRemaining() && channel.read(record, position + 4 + record.position()) > 0) {
+                // keep reading until the record is complete or the file ends
+            }
+            if (record.hasRemaining()) {
+                return position;
+            }
+            crc.reset();
+            crc.update(record.array(), 0, size);
+            if ((int) crc.getValue() != record.getInt(size)) {
+                return position;
+            }
+            record.clear().limit(size);
+            apply(entries, decode(record));
+            position += 4 + size + 4;
+        }
+    }
+
+    // the latest record decides the state; ids recorded earlier are kept unless a later record sets them
+    private static void apply(Map<String, Entry> entries, Entry record) {
+        entries.merge(record.key, record, (previous, latest) -> new Entry(latest.key, latest.state,
+            latest.operationId.isEmpty() ? previous.operationId : latest.operationId,
+            latest.resourceId.isEmpty() ? previous.resourceId : latest.resourceId));
+    }
+
+    /** What earlier runs, or this one, recorded for {@code key}, or null if nothing. */
+    public Entry get(String key) {
+        return entries.get(key);
+    }
+
+    /** Every key the journal knows, with its latest state. */
+    public Map<String, Entry> entries() {
+        return Collections.unmodifiableMap(entries);
+    }
+
+    /**
+     * Records that a create for {@code key} is about to be sent with {@code operationId}. Send it
+     * only once the returned future completes: by then the record is on disk.
+     */
+    public CompletableFuture<Void> intend(String key, String operationId) {
+        return append(new Entry(key, State.INTENDED, operationId, ""));
+    }
+
+    /** Records that the server accepted the create and returned {@code resourceId}. */
+    public CompletableFuture<Void> accepted(String key, String operationId, String resourceId) {
+        return append(new Entry(key, State.ACCEPTED, operationId, resourceId));
+    }
+
+    /** Records that the create's async operation finished. */
+    public CompletableFuture<Void> done(String key, String resourceId) {
+        return append(new Entry(key, State.DONE, "", resourceId));
+    }
+
+    /** Records that the create was rejected or its async operation failed; a resumed job sends it again. */
+    public CompletableFuture<Void> failed(String key) {
+        return append(new Entry(key, State.FAILED, "", ""));
+    }
+
+    private CompletableFuture<Void> append(Entry entry) {
+        if (writeError != null) {
+            return CompletableFuture.failedFuture(writeError);
+        }
+        Pending pending = new Pending(encode(entry));
+        apply(entries, entry);
+        queue.add(pending);
+        return pending.written;
+    }
+
+    private void writeLoop() {
+        List<Pending> group = new ArrayList<>();
+        boolean closing = false;
+        while (!closing) {
+            try {
+                group.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            // group commit: everything queued while the last force ran goes out with one write and one force
+            queue.drainTo(group);
+            closing = group.remove(CLOSE);
+            try {
+                if (writeError != null) {
+                    throw writeError;
+                }
+                ByteBuffer[] buffers = new ByteBuffer[group.size()];
+                for (int i = 0; i < buffers.length; i++) {
+                    buffers[i] = group.get(i).bytes;
+                }
+                long remaining = 0;
+                for (ByteBuffer b : buffers) {
+                    remaining += b.remaining();
+                }
+                while (remaining > 0) {
+                    remaining -= channel.write(buffers);
+                }
+                if (!group.isEmpty()) {
+                    channel.force(false);
+                    forces.incrementAndGet();
+                    records.addAndGet(group.size());
+                }
+                group.forEach(p -> p.written.complete(null));
+            } catch (IOException e) {
+                writeError = e;
+                group.forEach(p -> p.written.completeExceptionally(new UncheckedIOException("Unable to write to " + file, e)));
+            }
+            group.clear();
+        }
+    }
+
+    private static ByteBuffer encode(Entry entry) {
+        byte[] key = entry.key.getBytes(StandardCharsets.UTF_8);
+        byte[] operationId = entry.operationId.getBytes(StandardCharsets.UTF_8);
+        byte[] resourceId = entry.resourceId.getBytes(StandardCharsets.UTF_8);
+        int size = 1 + 3 * 2 + key.length + operationId.length + resourceId.length;
+        if (size > MAX_RECORD_BYTES) {
+            throw new IllegalArgumentException("journal record too large for " + entry.key);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(4 + size + 4);
+        buffer.putInt(size).put((byte) entry.state.ordinal());
+        putString(buffer, key);
+        putString(buffer, operationId);
+        putString(buffer, resourceId);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 4, size);
+        buffer.putInt((int) crc.getValue());
+        return buffer.flip();
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static Entry decode(ByteBuffer record) throws IOException {
+        int state = record.get();
+        if (state < 0 || state >= State.values().length) {
+            throw new IOException("unknown journal record state " + state);
+        }
+        return new Entry(getString(record), State.values()[state], getString(record), getString(record));
+    }
+
+    private static String getString(ByteBuffer record) {
+        byte[] bytes = new byte[record.getShort() & 0xffff];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String summarize(Iterable<Entry> entries) {
+        int[] counts = new int[State.values().length];
+        for (Entry e : entries) {
+            counts[e.state.ordinal()]++;
+        }
+        return counts[State.DONE.ordinal()] + " done, " + counts[State.ACCEPTED.ordinal()] + " accepted, "
+            + counts[State.INTENDED.ordinal()] + " intended, " + counts[State.FAILED.ordinal()] + " failed";
+    }
+
+    @Override
+    public String toString() {
+        return "MutationJournal[" + file + ": " + summarize(entries.values()) + ", records=" + records.get() + ", forces=" + forces.get() + "]";
+    }
+
+    /** Writes what is still queued and closes the file. */
+    @Override
+    public void close() throws IOException {
+        queue.add(CLOSE);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+}
@@ -0,0 +1,145 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.grpc.Status;
+import io.temporal.api.cloud.cloudservice.v1.GetNamespaceRequest;
+import io.temporal.api.cloud.namespace.v1.Namespace;
+import io.temporal.client.CloudOperationsClient;
+
+/**
+ * Waits for namespaces to become active without parking a thread per namespace.
+ *
+ * <p>Every pending namespace is just a scheduled task on a small shared scheduler. Each check is
+ * an async GetNamespace on the future stub, and the delay between checks grows exponentially
+ * (with jitter) from {@code initialDelay} up to {@code maxDelay}, so fast creations are noticed
+ * within a few hundred milliseconds while slow ones cost only a request every few seconds.
+ */
+public final class NamespaceStatusPoller implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(NamespaceStatusPoller.class);
+
+    private static final Duration DEFAULT_INITIAL_DELAY = Duration.ofMillis(250);
+    private static final Duration DEFAULT_MAX_DELAY = Duration.ofSeconds(15);
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofMinutes(30);
+
+    private final ScheduledExecutorService scheduler;
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+    private final long timeoutNanos;
+    // one poll loop per client and namespace
+    private final ConcurrentMap<ClientNamespace, CompletableFuture<Namespace>> pending = new ConcurrentHashMap<>();
+
+    public NamespaceStatusPoller() {
+        this(2, DEFAULT_INITIAL_DELAY, DEFAULT_MAX_DELAY, DEFAULT_TIMEOUT);
+    }
+
+    public NamespaceStatusPoller(int threads, Duration initialDelay, Duration maxDelay, Duration timeout) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.scheduler = Executors.newScheduledThreadPool(threads, r -> {
+            Thread t = new Thread(r, "namespace-poller-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.initialDelayMillis = initialDelay.toMillis();
+        this.maxDelayMillis = maxDelay.toMillis();
+        this.timeoutNanos = timeout.toNanos();
+    }
+
+    /**
+     * Returns a future that completes with the namespace once it reports the {@code active} state.
+     * Callers waiting on the same namespace through the same client share a single poll loop.
+     */
+    public CompletableFuture<Namespace> awaitActive(CloudOperationsClient client, String namespace) {
+        return pending.computeIfAbsent(new ClientNamespace(client, namespace), key -> {
+            CompletableFuture<Namespace> active = new CompletableFuture<>();
+            ProvisioningEvent timeToActive = ProvisioningEvent.begin(ProvisioningEvent.Phase.TIME_TO_ACTIVE, namespace);
+            active.whenComplete((r, e) -> {
+                pending.remove(key, active);
+                timeToActive.end(e);
+            });
+            schedule(client, namespace, active, 0, System.nanoTime());
+            return active;
+        });
+    }
+
+    /** Number of namespaces currently being polled. */
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    private void schedule(CloudOperationsClient client, String namespace, CompletableFuture<Namespace> active, int attempt, long startNanos) {
+        if (active.isDone()) {
+            return;
+        }
+        if (System.nanoTime() - startNanos > timeoutNanos) {
+            active.completeExceptionally(new TimeoutException("Namespace " + namespace + " did not become active in time"));
+            return;
+        }
+        // the next check logs with the MDC of whoever is waiting, e.g. the demo command
+        scheduler.schedule(MdcClientInterceptor.withCurrentContext(() -> poll(client, namespace, active, attempt, startNanos)),
+            nextDelayMillis(attempt), TimeUnit.MILLISECONDS);
+    }
+
+    private void poll(CloudOperationsClient client, String namespace, CompletableFuture<Namespace> active, int attempt, long startNanos) {
+        ProvisioningEvent event = ProvisioningEvent.begin(ProvisioningEvent.Phase.POLL_ATTEMPT, namespace).attempt(attempt + 1);
+        CloudFutures.toCompletable(client
+                .getCloudServiceStubs()
+                .futureStub()
+                .getNamespace(GetNamespaceRequest.newBuilder().setNamespace(namespace).build()))
+            .whenComplete((resp, error) -> {
+                event.end(error != null ? CloudFutures.statusCode(error).name() : resp.getNamespace().getState());
+                if (error != null) {
+                    if (!isRetryable(error)) {
+                        active.completeExceptionally(CloudFutures.unwrap(error));
+                        return;
+                    }
+                    logger.debug("Namespace {} not visible yet ({}), continuing to poll", namespace, CloudFutures.statusCode(error));
+                } else {
+                    Namespace ns = resp.getNamespace();
+                    String state = ns.getState().toLowerCase(Locale.ROOT);
+                    logger.info("Namespace: " + namespace + " is in State: " + ns.getState());
+                    if (state.equals("active")) {
+                        active.complete(ns);
+                        return;
+                    }
+                    if (state.endsWith("failed")) {
+                        active.completeExceptionally(new IllegalStateException("Namespace " + namespace + " is in State: " + ns.getState()));
+                        return;
+                    }
+                }
+                schedule(client, namespace, active, attempt + 1, startNanos);
+            });
+    }
+
+    long nextDelayMillis(int attempt) {
+        return Backoff.equalJitter(initialDelayMillis, maxDelayMillis, attempt);
+    }
+
+    private static boolean isRetryable(Throwable error) {
+        Status.Code code = CloudFutures.statusCode(error);
+        // a freshly created namespace can briefly be NOT_FOUND; transient server errors are retried too
+        return code == Status.Code.NOT_FOUND
+            || code == Status.Code.UNAVAILABLE
+            || code == Status.Code.DEADLINE_EXCEEDED
+            || code == Status.Code.RESOURCE_EXHAUSTED;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        pending.values().forEach(f -> f.cancel(false));
+    }
+}
@@ -0,0 +1,292 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.grpc.Status;
+import io.temporal.api.cloud.cloudservice.v1.UpdateNamespaceRequest;
+import io.temporal.api.cloud.namespace.v1.Namespace;
+import io.temporal.api.cloud.namespace.v1.NamespaceSpec;
+import io.temporal.api.cloud.operation.v1.AsyncOperation;
+import io.temporal.client.CloudOperationsClient;
+
+/**
+ * Merges namespace changes that arrive close together into one UpdateNamespace, and drops
+ * changes that would not change anything.
+ *
+ * <p>A change is a function from the namespace's current spec to the desired one, e.g. "add this
+ * CA" or "set retention to 30 days", rather than a finished spec. {@link #submit} collects the
+ * changes for a namespace for {@code window}. The batch then reads the namespace once, applies
+ * its changes in order, and compares the result with the current spec field by field. If no field
+ * differs, nothing is sent. Otherwise all changes go out in one UpdateNamespace with the resource
+ * version that was read. On a version conflict, the namespace is read again and the changes are
+ * applied again to the new spec, so nothing is lost and concurrent writers don't overwrite each
+ * other.
+ *
+ * <p>Only changes submitted through the same client share a batch, so every change is sent with
+ * the credentials of the client it was submitted with. Batches for the same namespace and client
+ * run one after another. Changes submitted while a batch is being
+ * sent start the next batch.
+ *
+ * <p>A change that throws fails only its own submitter. It is dropped from the batch, and the
+ * other changes are still sent.
+ */
+public final class NamespaceUpdateCoalescer implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(NamespaceUpdateCoalescer.class);
+
+    private static final Duration DEFAULT_WINDOW = Duration.ofMillis(50);
+    private static final int DEFAULT_MAX_ATTEMPTS = 5;
+    private static final long INITIAL_BACKOFF_MILLIS = 50;
+    private static final long MAX_BACKOFF_MILLIS = 2_000;
+
+    public enum Outcome { UPDATED, UNCHANGED }
+
+    /** What happened to a batch; every change that was sent in the batch gets the same result. */
+    public static final class Result {
+        private final String namespace;
+        private final Outcome outcome;
+        private final List<String> changedFields;
+        private final int changes;
+        private final int attempts;
+        private final AsyncOperation asyncOperation;
+
+        Result(String namespace, Outcome outcome, List<String> changedFields, int changes, int attempts, AsyncOperation asyncOperation) {
+            this.namespace = namespace;
+            this.outcome = outcome;
+            this.changedFields = changedFields;
+            this.changes = changes;
+            this.attempts = attempts;
+            this.asyncOperation = asyncOperation;
+        }
+
+        public String getNamespace() {
+            return namespace;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        /** Top-level NamespaceSpec fields the update changed; empty when nothing was sent. */
+        public List<String> getChangedFields() {
+            return changedFields;
+        }
+
+        /** How many submitted changes went into this batch, not counting ones that threw. */
+        public int getChanges() {
+            return changes;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        /** The update's async operation, or null when nothing was sent. */
+        public AsyncOperation getAsyncOperation() {
+            return asyncOperation;
+        }
+
+        @Override
+        public String toString() {
+            return namespace + ": " + outcome + " (" + changes + " changes"
+                + (changedFields.isEmpty() ? "" : ", fields " + changedFields)
+                + (attempts > 1 ? ", " + attempts + " attempts" : "") + ")";
+        }
+    }
+
+    // one submitted change and the future of the caller who submitted it
+    private static final class Change {
+        final UnaryOperator<NamespaceSpec> apply;
+        final CompletableFuture<Result> done = new CompletableFuture<>();
+
+        Change(UnaryOperator<NamespaceSpec> apply) {
+            this.apply = apply;
+        }
+    }
+
+    // changes collected for one namespace during one window
+    private static final class Batch {
+        final CloudOperationsClient client;
+        // only touched by submit while the batch is open, and by one attempt at a time after that
+        final List<Change> changes = new ArrayList<>();
+
+        Batch(CloudOperationsClient client) {
+            this.client = client;
+        }
+    }
+
+    private final CloudResourceCache cache;
+    private final long windowMillis;
+    private final int maxAttempts;
+    private final ScheduledExecutorService scheduler;
+    // guarded by this: the batch still collecting changes, and the last batch sent, per client and namespace
+    private final Map<ClientNamespace, Batch> open = new HashMap<>();
+    private final Map<ClientNamespace, CompletableFuture<Result>> sending = new HashMap<>();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong unchanged = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+
+    public NamespaceUpdateCoalescer(CloudResourceCache cache) {
+        this(cache, DEFAULT_WINDOW, DEFAULT_MAX_ATTEMPTS);
+    }
+
+    public NamespaceUpdateCoalescer(CloudResourceCache cache, Duration window, int maxAttempts) {
+        this.cache = cache;
+        this.windowMillis = window.toMillis();
+        this.maxAttempts = maxAttempts;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "namespace-update-coalescer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Queues {@code change} for {@code namespace}. The future completes once the batch it joined
+     * has been sent, or found to change nothing. It fails if the namespace is missing or the update
+     * keeps being rejected.
+     */
+    public synchronized CompletableFuture<Result> submit(CloudOperationsClient client, String namespace, UnaryOperator<NamespaceSpec> change) {
+        submitted.incrementAndGet();
+        ClientNamespace key = new ClientNamespace(client, namespace);
+        Batch batch = open.get(key);
+        if (batch == null) {
+            Batch created = new Batch(client);
+            open.put(key, created);
+            scheduler.schedule(() -> close(key, created), windowMillis, TimeUnit.MILLISECONDS);
+            batch = created;
+        }
+        Change submittedChange = new Change(change);
+        batch.changes.add(submittedChange);
+        return submittedChange.done;
+    }
+
+    // the window is over: stop collecting and send once the previous batch for the namespace is done
+    private synchronized void close(ClientNamespace key, Batch batch) {
+        open.remove(key, batch);
+        CompletableFuture<Result> previous = sending.getOrDefault(key, CompletableFuture.completedFuture(null));
+        CompletableFuture<Result> next = previous
+            .handle((r, e) -> null)
+            .thenCompose(ignored -> attempt(key.namespace, batch, 1));
+        sending.put(key, next);
+        next.whenComplete((result, error) -> {
+            synchronized (this) {
+                sending.remove(key, next);
+            }
+            for (Change change : batch.changes) {
+                if (error != null) {
+                    change.done.completeExceptionally(CloudFutures.unwrap(error));
+                } else {
+                    change.done.complete(result);
+                }
+            }
+        });
+    }
+
+    /** UpdateNamespace calls sent, including ones that lost a version race. */
+    public long updateCount() {
+        return updates.get();
+    }
+
+    /** Batches that turned out to change nothing and were dropped. */
+    public long unchangedCount() {
+        return unchanged.get();
+    }
+
+    public long conflictCount() {
+        return conflicts.get();
+    }
+
+    private CompletableFuture<Result> attempt(String namespace, Batch batch, int attempt) {
+        // the first read may come from the cache; a stale entry only costs one version conflict
+        return cache.getNamespaceAsync(batch.client, namespace)
+            .thenCompose(found -> {
+                Namespace current = found.orElseThrow(() ->
+                    new CompletionException(Status.NOT_FOUND.withDescription("namespace not found: " + namespace).asRuntimeException()));
+                NamespaceSpec desired = current.getSpec();
+                for (Iterator<Change> it = batch.changes.iterator(); it.hasNext(); ) {
+                    Change change = it.next();
+                    try {
+                        desired = change.apply.apply(desired);
+                    } catch (RuntimeException e) {
+                        // only the caller whose change it is fails; the others are still sent
+                        logger.warn("Dropping a change to " + namespace + " that failed: " + CloudFutures.unwrap(e));
+                        change.done.completeExceptionally(CloudFutures.unwrap(e));
+                        it.remove();
+                    }
+                }
+                List<String> changed = ProtoDiff.changedFields(current.getSpec(), desired);
+                if (changed.isEmpty()) {
+                    unchanged.incrementAndGet();
+                    return CompletableFuture.completedFuture(
+                        new Result(namespace, Outcome.UNCHANGED, Collections.emptyList(), batch.changes.size(), attempt, null));
+                }
+                updates.incrementAndGet();
+                ProvisioningEvent event = ProvisioningEvent.begin(ProvisioningEvent.Phase.UPDATE_RPC, namespace).attempt(attempt);
+                return CloudFutures.toCompletable(batch.client
+                        .getCloudServiceStubs()
+                        .futureStub()
+                        .updateNamespace(UpdateNamespaceRequest.newBuilder()
+                            .setNamespace(namespace)
+                            .setSpec(desired)
+                            .setResourceVersion(current.getResourceVersion())
+                            .build()))
+                    .handle((resp, error) -> {
+                        event.end(error);
+                        // whether it succeeded or lost a version race, the cached copy is now out of date
+                        cache.invalidateNamespace(namespace);
+                        if (error != null) {
+                            throw new CompletionException(CloudFutures.unwrap(error));
+                        }
+                        return new Result(namespace, Outcome.UPDATED, changed, batch.changes.size(), attempt, resp.getAsyncOperation());
+                    });
+            })
+            .handle((result, error) -> {
+                if (error == null) {
+                    return CompletableFuture.completedFuture(result);
+                }
+                if (isVersionConflict(error) && attempt < maxAttempts) {
+                    conflicts.incrementAndGet();
+                    long delay = Backoff.equalJitter(INITIAL_BACKOFF_MILLIS, MAX_BACKOFF_MILLIS, attempt - 1);
+                    logger.info("Resource version of " + namespace + " changed, applying " + batch.changes.size() + " changes again in " + delay + "ms");
+                    return CompletableFuture.supplyAsync(() -> null, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                        .thenCompose(ignored -> attempt(namespace, batch, attempt + 1));
+                }
+                return CompletableFuture.<Result>failedFuture(CloudFutures.unwrap(error));
+            })
+            .thenCompose(f -> f);
+    }
+
+    private static boolean isVersionConflict(Throwable error) {
+        Status.Code code = CloudFutures.statusCode(error);
+        return code == Status.Code.FAILED_PRECONDITION || code == Status.Code.ABORTED;
+    }
+
+    @Override
+    public String toString() {
+        return "NamespaceUpdateCoalescer[submitted=" + submitted.get() + ", updates=" + updates.get()
+            + ", unchanged=" + unchanged.get() + ", conflicts=" + conflicts.get() + "]";
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,263 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.ConnectivityState;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.temporal.serviceclient.CloudServiceStubsOptions;
+
+/**
+ * A {@link ManagedChannel} that spreads calls over several underlying channels, each with its own
+ * HTTP/2 connection.
+ *
+ * <p>One connection carries at most the server's {@code MAX_CONCURRENT_STREAMS} calls at a time,
+ * and further calls wait for a free stream. Under heavy fan-out, e.g. {@link BulkNamespaceProvisioner}
+ * or the {@link LoadGenerator}, a single channel becomes the bottleneck well before the Cloud API
+ * does. This pool is passed to {@code CloudServiceStubsOptions.Builder.setChannel}, so the SDK
+ * interceptors, the blocking and future stubs and every demo client keep working unchanged.
+ *
+ * <p>Each call goes to the next channel in turn ({@link Selection#ROUND_ROBIN}) or to the channel
+ * with the fewest calls in flight ({@link Selection#LEAST_LOADED}). {@link #warmUp} connects
+ * every channel up front, so the first RPC does not pay for DNS, TCP, TLS and the HTTP/2
+ * handshake.
+ */
+public final class PooledChannel extends ManagedChannel {
+
+    private static final Logger logger = LoggerFactory.getLogger(PooledChannel.class);
+
+    // the same keepalive the SDK uses for the channels it builds itself
+    static final Duration DEFAULT_KEEPALIVE_TIME = Duration.ofSeconds(30);
+    static final Duration DEFAULT_KEEPALIVE_TIMEOUT = Duration.ofSeconds(15);
+    // the Cloud API can return large list pages
+    private static final int MAX_INBOUND_MESSAGE_SIZE = 25 * 1024 * 1024;
+
+    public enum Selection { ROUND_ROBIN, LEAST_LOADED }
+
+    private final List<ManagedChannel> channels;
+    private final Selection selection;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicIntegerArray inFlight;
+    private final AtomicLongArray calls;
+
+    /** {@code size} channels from {@code channelFactory}; each should open its own connection. */
+    public PooledChannel(int size, Selection selection, Supplier<ManagedChannel> channelFactory) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be at least 1: " + size);
+        }
+        List<ManagedChannel> created = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            created.add(channelFactory.get());
+        }
+        this.channels = Collections.unmodifiableList(created);
+        this.selection = selection;
+        this.inFlight = new AtomicIntegerArray(size);
+        this.calls = new AtomicLongArray(size);
+    }
+
+    /** A pool of TLS channels to the Cloud API endpoint with the default keepalive. */
+    public static PooledChannel forCloud(int size, Selection selection) {
+        return forTarget(CloudServiceStubsOptions.DEFAULT_CLOUD_TARGET, false, size, selection);
+    }
+
+    /** A pool of channels to {@code target} with the default keepalive; {@code plaintext} is only for local servers. */
+    public static PooledChannel forTarget(String target, boolean plaintext, int size, Selection selection) {
+        return new PooledChannel(size, selection, () -> newNettyChannel(target, plaintext, DEFAULT_KEEPALIVE_TIME, DEFAULT_KEEPALIVE_TIMEOUT));
+    }
+
+    /**
+     * One channel to {@code target}. Keepalive pings are sent every {@code keepAliveTime} even while
+     * no call is active, so idle pooled connections are not dropped by load balancers between
+     * bursts, and a dead connection is noticed after {@code keepAliveTimeout}.
+     */
+    public static ManagedChannel newNettyChannel(String target, boolean plaintext, Duration keepAliveTime, Duration keepAliveTimeout) {
+        NettyChannelBuilder builder = NettyChannelBuilder.forTarget(target)
+            .keepAliveTime(keepAliveTime.toMillis(), TimeUnit.MILLISECONDS)
+            .keepAliveTimeout(keepAliveTimeout.toMillis(), TimeUnit.MILLISECONDS)
+            .keepAliveWithoutCalls(true)
+            .maxInboundMessageSize(MAX_INBOUND_MESSAGE_SIZE);
+        if (plaintext) {
+            builder.usePlaintext();
+        } else {
+            builder.useTransportSecurity();
+        }
+        return builder.build();
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions) {
+        int index = select();
+        calls.incrementAndGet(index);
+        return new CountingCall<>(channels.get(index).newCall(method, callOptions), index);
+    }
+
+    private int select() {
+        int start = Math.floorMod(next.getAndIncrement(), channels.size());
+        if (selection == Selection.ROUND_ROBIN) {
+            return start;
+        }
+        // scan from the round-robin position so that ties are spread out rather than all landing on channel 0
+        int best = start;
+        for (int i = 1; i < channels.size(); i++) {
+            int candidate = (start + i) % channels.size();
+            if (inFlight.get(candidate) < inFlight.get(best)) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Connects every channel and waits until each is {@code READY} or {@code timeout} passes.
+     * The channels connect in parallel, so this takes about one handshake. Returns how many are ready.
+     */
+    public int warmUp(Duration timeout) {
+        long start = System.nanoTime();
+        List<CompletableFuture<Boolean>> ready = new ArrayList<>(channels.size());
+        for (ManagedChannel channel : channels) {
+            CompletableFuture<Boolean> connected = new CompletableFuture<>();
+            awaitReady(channel, connected);
+            ready.add(connected.completeOnTimeout(false, timeout.toMillis(), TimeUnit.MILLISECONDS));
+        }
+        int count = 0;
+        for (CompletableFuture<Boolean> f : ready) {
+            count += f.join() ? 1 : 0;
+        }
+        logger.info("Warmed up " + count + "/" + channels.size() + " channels in " + Duration.ofNanos(System.nanoTime() - start).toMillis() + "ms");
+        return count;
+    }
+
+    private static void awaitReady(ManagedChannel channel, CompletableFuture<Boolean> connected) {
+        // getState(true) starts connecting an idle channel; re-check on every state change until READY
+        ConnectivityState state = channel.getState(true);
+        if (state == ConnectivityState.READY) {
+            connected.complete(true);
+        } else if (state == ConnectivityState.SHUTDOWN) {
+            connected.complete(false);
+        } else if (!connected.isDone()) {
+            channel.notifyWhenStateChanged(state, () -> awaitReady(channel, connected));
+        }
+    }
+
+    public int size() {
+        return channels.size();
+    }
+
+    /** Calls currently in flight on channel {@code index}. */
+    public int inFlight(int index) {
+        return inFlight.get(index);
+    }
+
+    /** Calls started on channel {@code index} since the pool was created. */
+    public long calls(int index) {
+        return calls.get(index);
+    }
+
+    /** READY if any channel is ready, otherwise the state of the first channel. */
+    @Override
+    public ConnectivityState getState(boolean requestConnection) {
+        ConnectivityState first = null;
+        for (ManagedChannel channel : channels) {
+            ConnectivityState state = channel.getState(requestConnection);
+            if (state == ConnectivityState.READY) {
+                return state;
+            }
+            first = first == null ? state : first;
+        }
+        return first;
+    }
+
+    @Override
+    public String authority() {
+        return channels.get(0).authority();
+    }
+
+    @Override
+    public ManagedChannel shutdown() {
+        channels.forEach(ManagedChannel::shutdown);
+        return this;
+    }
+
+    @Override
+    public ManagedChannel shutdownNow() {
+        channels.forEach(ManagedChannel::shutdownNow);
+        return this;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return channels.stream().allMatch(ManagedChannel::isShutdown);
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return channels.stream().allMatch(ManagedChannel::isTerminated);
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ManagedChannel channel : channels) {
+            if (!channel.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder("PooledChannel[").append(selection);
+        for (int i = 0; i < channels.size(); i++) {
+            out.append(i == 0 ? ": " : ", ").append(i).append('=').append(calls.get(i)).append(" calls/")
+                .append(inFlight.get(i)).append(" in flight");
+        }
+        return out.append(']').toString();
+    }
+
+    // keeps the per-channel in-flight count that LEAST_LOADED selects on
+    private final class CountingCall<ReqT, RespT> extends ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT> {
+        private final int index;
+
+        CountingCall(ClientCall<ReqT, RespT> delegate, int index) {
+            super(delegate);
+            this.index = index;
+        }
+
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+            inFlight.incrementAndGet(index);
+            try {
+                super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(responseListener) {
+                    @Override
+                    public void onClose(Status status, Metadata trailers) {
+                        inFlight.decrementAndGet(index);
+                        super.onClose(status, trailers);
+                    }
+                }, headers);
+            } catch (RuntimeException e) {
+                inFlight.decrementAndGet(index);
+                throw e;
+            }
+        }
+    }
+}
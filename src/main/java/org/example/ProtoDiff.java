@@ -0,0 +1,50 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Message;
+
+/**
+ * Field-level comparison of Cloud API specs, driven by the protobuf descriptors so it works for
+ * every spec type without per-type code.
+ */
+final class ProtoDiff {
+
+    private ProtoDiff() {
+    }
+
+    /**
+     * Returns {@code current} with every field that is set in {@code desired} replaced by the
+     * desired value. Fields that {@code desired} leaves at their default are kept as the server has
+     * them, so a desired-state file only has to mention what it cares about. Repeated, map and
+     * message fields are replaced as a whole.
+     */
+    @SuppressWarnings("unchecked")
+    static <M extends Message> M overlay(M current, M desired) {
+        Message.Builder merged = current.toBuilder();
+        // getAllFields() only returns fields that are set (non-default scalars, present messages, non-empty lists)
+        for (Map.Entry<FieldDescriptor, Object> field : desired.getAllFields().entrySet()) {
+            merged.setField(field.getKey(), field.getValue());
+        }
+        return (M) merged.build();
+    }
+
+    /** Names of the top-level fields whose values differ between {@code before} and {@code after}. */
+    static List<String> changedFields(Message before, Message after) {
+        List<String> changed = new ArrayList<>();
+        for (FieldDescriptor field : before.getDescriptorForType().getFields()) {
+            Object a = before.getField(field);
+            Object b = after.getField(field);
+            // map fields come back as lists of entries, and entry order is not significant
+            if (field.isMapField() ? !new HashSet<>((List<?>) a).equals(new HashSet<>((List<?>) b)) : !Objects.equals(a, b)) {
+                changed.add(field.getName());
+            }
+        }
+        return changed;
+    }
+}
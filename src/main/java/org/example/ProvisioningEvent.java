@@ -0,0 +1,130 @@
+package org.example;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import io.grpc.Status;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event for one phase of provisioning a namespace or an identity: generating
+ * a CA key, PEM-encoding the CA, checking whether the resource exists, the create or update RPC,
+ * one poll of its status, and the whole wait until it is active.
+ *
+ * <p>Every event carries the resource it belongs to: the namespace, the user's email, the service
+ * account's or API key's name, or the async operation id for operation polls. Certificate phases
+ * carry the namespace the CA is issued for, and the CA's common name in a field of their own. A
+ * key generated ahead of time by {@link CaCertFactory}'s pool has {@code pool} as its resource,
+ * and then did not hold anyone up.
+ *
+ * <p>The events cost next to nothing when no recording is running, so they are always on. Record
+ * them with {@code -XX:StartFlightRecording=filename=provisioning.jfr}, and summarize the file with
+ * {@link ProvisioningProfile}.
+ */
+@Name(ProvisioningEvent.NAME)
+@Label("Provisioning Phase")
+@Category({"Temporal Cloud", "Provisioning"})
+@Description("Time spent in one phase of provisioning a Temporal Cloud namespace or identity")
+@StackTrace(false)
+public final class ProvisioningEvent extends Event {
+
+    public static final String NAME = "org.example.Provisioning";
+
+    public enum Phase {
+        KEY_GENERATION,
+        PEM_ENCODING,
+        EXISTENCE_CHECK,
+        CREATE_RPC,
+        UPDATE_RPC,
+        POLL_ATTEMPT,
+        TIME_TO_ACTIVE
+    }
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Resource")
+    @Description("Namespace, principal or async operation id")
+    String resource;
+
+    @Label("CA Common Name")
+    @Description("Common name of the CA, for certificate phases")
+    String commonName;
+
+    @Label("Attempt")
+    int attempt;
+
+    @Label("Outcome")
+    String outcome;
+
+    private ProvisioningEvent() {
+    }
+
+    /** Starts timing {@code phase} for {@code resource}; finish it with one of the {@code end} methods. */
+    static ProvisioningEvent begin(Phase phase, String resource) {
+        ProvisioningEvent event = new ProvisioningEvent();
+        // the fields are only filled in if a recording wants the event
+        if (event.isEnabled()) {
+            event.phase = phase.name();
+            event.resource = resource;
+            event.begin();
+        }
+        return event;
+    }
+
+    ProvisioningEvent attempt(int attempt) {
+        this.attempt = attempt;
+        return this;
+    }
+
+    ProvisioningEvent commonName(String commonName) {
+        this.commonName = commonName;
+        return this;
+    }
+
+    /** Ends the phase with {@code outcome}, e.g. {@code ok}, {@code found} or a status code. */
+    void end(String outcome) {
+        end();
+        if (shouldCommit()) {
+            this.outcome = outcome;
+            commit();
+        }
+    }
+
+    /** Ends the phase with {@code ok}, or with the status code or exception type of {@code error}. */
+    void end(Throwable error) {
+        end(error == null ? "ok" : outcome(error));
+    }
+
+    /** Times a blocking {@code call}; an exception it throws is recorded as the outcome and rethrown. */
+    static <T> T timeBlocking(Phase phase, String resource, Supplier<T> call) {
+        ProvisioningEvent event = begin(phase, resource);
+        try {
+            T result = call.get();
+            event.end("ok");
+            return result;
+        } catch (RuntimeException e) {
+            event.end(e);
+            throw e;
+        }
+    }
+
+    /** Times an asynchronous {@code call} from when it is made until its future completes. */
+    static <T> CompletableFuture<T> time(Phase phase, String resource, Supplier<CompletableFuture<T>> call) {
+        ProvisioningEvent event = begin(phase, resource);
+        CompletableFuture<T> future = call.get();
+        future.whenComplete((r, error) -> event.end(error));
+        return future;
+    }
+
+    private static String outcome(Throwable error) {
+        Throwable cause = CloudFutures.unwrap(error);
+        Status.Code code = CloudFutures.statusCode(cause);
+        return code != Status.Code.UNKNOWN ? code.name() : cause.getClass().getSimpleName();
+    }
+}
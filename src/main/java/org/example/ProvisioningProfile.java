@@ -0,0 +1,214 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Offline summary of where provisioning time went, read from a Java Flight Recorder file with
+ * {@link ProvisioningEvent}s in it. It prints latency percentiles for each phase, then the slowest
+ * individual phases with the namespace or principal they belong to.
+ *
+ * <p>Record a run and summarize it:
+ * <pre>
+ * JAVA_OPTS="-XX:StartFlightRecording=filename=provisioning.jfr" build/install/&lt;project&gt;/bin/&lt;project&gt; createMTLSNamespace
+ * ./gradlew provisioningProfile -Pargs="provisioning.jfr --slowest=10"
+ * </pre>
+ *
+ * <p>Options:
+ * <ul>
+ *   <li>{@code --slowest} number of slowest phases to list (default 10)</li>
+ *   <li>{@code --resource} only count events of this namespace or principal</li>
+ * </ul>
+ */
+public final class ProvisioningProfile {
+
+    /** One recorded phase. */
+    public static final class Sample {
+        private final ProvisioningEvent.Phase phase;
+        private final String resource;
+        private final int attempt;
+        private final String outcome;
+        private final Duration duration;
+
+        Sample(ProvisioningEvent.Phase phase, String resource, int attempt, String outcome, Duration duration) {
+            this.phase = phase;
+            this.resource = resource;
+            this.attempt = attempt;
+            this.outcome = outcome;
+            this.duration = duration;
+        }
+
+        public ProvisioningEvent.Phase getPhase() {
+            return phase;
+        }
+
+        public String getResource() {
+            return resource;
+        }
+
+        public int getAttempt() {
+            return attempt;
+        }
+
+        public String getOutcome() {
+            return outcome;
+        }
+
+        public Duration getDuration() {
+            return duration;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%10.1fms  %-16s %s%s -> %s", duration.toNanos() / 1e6, phase, resource,
+                attempt > 0 ? " (attempt " + attempt + ")" : "", outcome);
+        }
+    }
+
+    /** Latency percentiles of one phase. */
+    public static final class PhaseStats {
+        private final ProvisioningEvent.Phase phase;
+        private final long[] sortedNanos;
+        private final Map<String, Long> outcomes;
+
+        PhaseStats(ProvisioningEvent.Phase phase, long[] sortedNanos, Map<String, Long> outcomes) {
+            this.phase = phase;
+            this.sortedNanos = sortedNanos;
+            this.outcomes = outcomes;
+        }
+
+        public ProvisioningEvent.Phase getPhase() {
+            return phase;
+        }
+
+        public int getCount() {
+            return sortedNanos.length;
+        }
+
+        /** Nearest-rank percentile, e.g. {@code percentile(99)}. */
+        public Duration percentile(double percent) {
+            int rank = (int) Math.ceil(percent / 100 * sortedNanos.length);
+            return Duration.ofNanos(sortedNanos[Math.max(0, Math.min(sortedNanos.length, rank) - 1)]);
+        }
+
+        public Duration getMax() {
+            return Duration.ofNanos(sortedNanos[sortedNanos.length - 1]);
+        }
+
+        public Duration getTotal() {
+            long total = 0;
+            for (long nanos : sortedNanos) {
+                total += nanos;
+            }
+            return Duration.ofNanos(total);
+        }
+
+        /** How many events ended with each outcome, e.g. {@code ok=12, NOT_FOUND=3}. */
+        public Map<String, Long> getOutcomes() {
+            return outcomes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-16s %7d %10.1f %10.1f %10.1f %10.1f %12.1f  %s", phase, getCount(),
+                millis(percentile(50)), millis(percentile(90)), millis(percentile(99)), millis(getMax()), millis(getTotal()), outcomes);
+        }
+
+        private static double millis(Duration d) {
+            return d.toNanos() / 1e6;
+        }
+    }
+
+    private ProvisioningProfile() {
+    }
+
+    /** Reads every {@link ProvisioningEvent} in {@code recording}; with a non-null {@code resource}, only that resource's. */
+    public static List<Sample> read(Path recording, String resource) throws IOException {
+        List<Sample> samples = new ArrayList<>();
+        try (RecordingFile file = new RecordingFile(recording)) {
+            while (file.hasMoreEvents()) {
+                RecordedEvent event = file.readEvent();
+                if (!event.getEventType().getName().equals(ProvisioningEvent.NAME)) {
+                    continue;
+                }
+                String eventResource = event.getString("resource");
+                if (resource != null && !resource.equals(eventResource)) {
+                    continue;
+                }
+                samples.add(new Sample(ProvisioningEvent.Phase.valueOf(event.getString("phase")), eventResource,
+                    event.getInt("attempt"), event.getString("outcome"), event.getDuration()));
+            }
+        }
+        return samples;
+    }
+
+    /** Per-phase statistics, in the order the phases happen. */
+    public static List<PhaseStats> summarize(List<Sample> samples) {
+        Map<ProvisioningEvent.Phase, List<Sample>> byPhase = new EnumMap<>(ProvisioningEvent.Phase.class);
+        for (Sample sample : samples) {
+            byPhase.computeIfAbsent(sample.phase, p -> new ArrayList<>()).add(sample);
+        }
+        List<PhaseStats> stats = new ArrayList<>();
+        byPhase.forEach((phase, list) -> {
+            long[] nanos = list.stream().mapToLong(s -> s.duration.toNanos()).sorted().toArray();
+            Map<String, Long> outcomes = new TreeMap<>();
+            list.forEach(s -> outcomes.merge(String.valueOf(s.outcome), 1L, Long::sum));
+            stats.add(new PhaseStats(phase, nanos, outcomes));
+        });
+        return stats;
+    }
+
+    /** The {@code n} longest phases, slowest first. */
+    public static List<Sample> slowest(List<Sample> samples, int n) {
+        return samples.stream()
+            .sorted(Comparator.comparing(Sample::getDuration).reversed())
+            .limit(n)
+            .collect(Collectors.toList());
+    }
+
+    public static void print(List<Sample> samples, int slowest, PrintStream out) {
+        out.printf(Locale.ROOT, "%-16s %7s %10s %10s %10s %10s %12s  %s%n", "phase", "count", "p50 ms", "p90 ms", "p99 ms", "max ms", "total ms", "outcomes");
+        for (PhaseStats stats : summarize(samples)) {
+            out.println(stats);
+        }
+        if (slowest > 0 && !samples.isEmpty()) {
+            out.println();
+            out.println("Slowest phases:");
+            slowest(samples, slowest).forEach(out::println);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        Path recording = null;
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                recording = Path.of(arg);
+                continue;
+            }
+            String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(kv[0], kv.length > 1 ? kv[1] : "true");
+        }
+        if (recording == null) {
+            System.err.println("Usage: ProvisioningProfile <recording.jfr> [--slowest=10] [--resource=<namespace or principal>]");
+            System.exit(2);
+        }
+        List<Sample> samples = read(recording, options.get("resource"));
+        System.out.println(samples.size() + " provisioning events in " + recording);
+        print(samples, Integer.parseInt(options.getOrDefault("slowest", "10")), System.out);
+    }
+}
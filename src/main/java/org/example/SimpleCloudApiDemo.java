@@ -3,11 +3,26 @@
  */
 package org.example;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Suppliers;
+import com.sun.net.httpserver.HttpServer;
+
 import io.temporal.client.CloudOperationsClient;
 import io.temporal.serviceclient.CloudServiceStubs;
 import io.temporal.serviceclient.CloudServiceStubsOptions;
@@ -20,6 +35,13 @@ public class SimpleCloudApiDemo {
 
         String apiKey = System.getenv("TEMPORAL_CLIENT_CLOUD_API_KEY");
         String apiVersion = System.getenv("TEMPORAL_CLIENT_CLOUD_API_VERSION");
+        // optional: serve Prometheus metrics for the Cloud API calls on this local port
+        String metricsPort = System.getenv("TEMPORAL_CLOUD_METRICS_PORT");
+        // optional: spread calls over this many connections instead of one, see PooledChannel
+        String channelCount = System.getenv("TEMPORAL_CLOUD_API_CHANNELS");
+        // optional: talk to another endpoint, e.g. a FakeCloudServer on a local port; INSECURE skips TLS for such servers
+        String target = System.getenv("TEMPORAL_CLOUD_API_TARGET");
+        boolean insecure = Boolean.parseBoolean(System.getenv("TEMPORAL_CLOUD_API_INSECURE"));
         String nsName = "testns4";
         String namespace = "testns4.ksfop";
         String nsNameMTLS = "testnsmtls4";
@@ -31,70 +53,308 @@ public class SimpleCloudApiDemo {
         String uType = "service-account";
         String dName = "new api created key";
         String svcAcct = "TestSA";
+        int bulkCount = 10;
+        int bulkMaxInFlight = 4;
 
         // This is a simple demo app that exercises the Temporal Cloud API. 
         // The intent of this demo app is to show how to use the Temporal Cloud API to create namespaces, users, and service accounts.
         // This is not a real application and should not be used in production.
 
-        logger.info("starting SimpleCloudApiDemo");
-        logger.info("creating a client connection using the experimental CloudOpsClient in the Java SDK");
-        // create a client connection using the experimental CloudOpsClient in the Java SDK
-        CloudOperationsClient client = CloudOperationsClient.newInstance(
-            CloudServiceStubs.newServiceStubs(
-                CloudServiceStubsOptions.newBuilder()
-                    .addApiKey(() -> apiKey)
-                    .setVersion(apiVersion)
-                    .build()));
-
-        // create a demo namespace client which encapsulates namespace demo methods
-        logger.info("create a demo namespace client which encapsulates namespace demo methods");
-        SimpleCloudApiNamespaceClient nsClient = new SimpleCloudApiNamespaceClient();
-        // create a demo identity client which encapsulates identity demo methods;
-        logger.info("create a demo identity client which encapsulates identiy demo methods");
-        SimpleCloudApiIdentityClient idClient = new SimpleCloudApiIdentityClient();
-
         // Parse command-line arguments
         if (args.length == 0) {
             logger.error("No arguments provided. Please specify which examples to run.");
             return;
         }
 
+        logger.info("starting SimpleCloudApiDemo");
+        String endpoint = target != null && !target.isEmpty() ? target : CloudServiceStubsOptions.DEFAULT_CLOUD_TARGET;
+        AtomicReference<PooledChannel> pool = new AtomicReference<>();
+        // the interceptors and the metrics server are created with the client; they are kept here so they can be stopped at the end
+        AtomicReference<CloudRpcMetrics> metrics = new AtomicReference<>();
+        AtomicReference<HttpServer> metricsServer = new AtomicReference<>();
+        AtomicReference<ThrottlingClientInterceptor> throttling = new AtomicReference<>();
+        AtomicReference<HedgingClientInterceptor> hedging = new AtomicReference<>();
+
+        // The client, the connection and the demo clients are only built when the first command needs them,
+        // so a run that fails on its arguments or only prints metrics does not pay for gRPC, Netty or TLS setup,
+        // nor start the threads of the interceptors below.
+        // The CA cert factory, and with it the BouncyCastle provider, is created by the first mTLS command.
+        Supplier<CloudOperationsClient> client = Suppliers.memoize(() -> {
+            // every Cloud API call is timed per method; the numbers are also visible in JConsole/VisualVM over JMX
+            metrics.set(new CloudRpcMetrics(true));
+            if (metricsPort != null && !metricsPort.isEmpty()) {
+                try {
+                    metricsServer.set(metrics.get().serveHttp(Integer.parseInt(metricsPort)));
+                } catch (IOException e) {
+                    logger.error("Unable to serve metrics on port " + metricsPort + ": " + e.getMessage());
+                }
+            }
+            // throttled calls are queued and retried, and the call rate adapts to the API's limits
+            throttling.set(new ThrottlingClientInterceptor());
+            // reads get a deadline, and a read slower than its method's recent p95 is sent a second time
+            hedging.set(new HedgingClientInterceptor());
+
+            logger.info("creating a client connection using the experimental CloudOpsClient in the Java SDK");
+            CloudServiceStubsOptions.Builder stubsOptions = CloudServiceStubsOptions.newBuilder()
+                .addApiKey(() -> apiKey)
+                .setVersion(apiVersion)
+                .addGrpcClientInterceptor(new MetricsClientInterceptor(metrics.get()))
+                .addGrpcClientInterceptor(throttling.get())
+                // added after the others so it is outside them: each hedge is throttled and counted like any other call
+                .addGrpcClientInterceptor(hedging.get())
+                // outermost, so callbacks of every call log with the command that made it
+                .addGrpcClientInterceptor(new MdcClientInterceptor());
+            if (channelCount != null && !channelCount.isEmpty()) {
+                // every connection is opened now, in parallel, so the first command does not pay for TLS and HTTP/2 setup
+                pool.set(PooledChannel.forTarget(endpoint, insecure, Integer.parseInt(channelCount), PooledChannel.Selection.LEAST_LOADED));
+                pool.get().warmUp(Duration.ofSeconds(10));
+                stubsOptions.setChannel(pool.get());
+            } else if (insecure) {
+                // the SDK always uses TLS for channels it builds itself
+                pool.set(PooledChannel.forTarget(endpoint, true, 1, PooledChannel.Selection.ROUND_ROBIN));
+                stubsOptions.setChannel(pool.get());
+            } else {
+                stubsOptions.setTarget(endpoint);
+            }
+            // create a client connection using the experimental CloudOpsClient in the Java SDK
+            return CloudOperationsClient.newInstance(CloudServiceStubs.newServiceStubs(stubsOptions.build()));
+        });
+
+        // both clients share one read-through cache so existence checks and reads are answered from memory
+        CloudResourceCache cache = new CloudResourceCache();
+        // create a demo namespace client which encapsulates namespace demo methods
+        // it is kept here too, so its poller and coalescer threads can be stopped at the end
+        AtomicReference<SimpleCloudApiNamespaceClient> namespaceClient = new AtomicReference<>();
+        Supplier<SimpleCloudApiNamespaceClient> nsClient = Suppliers.memoize(() -> {
+            logger.info("create a demo namespace client which encapsulates namespace demo methods");
+            namespaceClient.set(new SimpleCloudApiNamespaceClient(cache));
+            return namespaceClient.get();
+        });
+        // identities the demo creates are added to this index; whoCanAccess loads the rest of the account into it once
+        AccessIndex accessIndex = new AccessIndex();
+        Supplier<AccessIndex> loadedAccessIndex = Suppliers.memoize(() -> {
+            accessIndex.load(client.get(), SimpleCloudApiNamespaceClient.DEFAULT_PAGE_SIZE);
+            return accessIndex;
+        });
+        // create a demo identity client which encapsulates identity demo methods;
+        // it is kept here too, so its async operation tracker can be stopped at the end
+        AtomicReference<SimpleCloudApiIdentityClient> identityClient = new AtomicReference<>();
+        Supplier<SimpleCloudApiIdentityClient> idClient = Suppliers.memoize(() -> {
+            logger.info("create a demo identity client which encapsulates identiy demo methods");
+            identityClient.set(new SimpleCloudApiIdentityClient(cache, accessIndex));
+            return identityClient.get();
+        });
+
+        // --concurrent runs commands that do not touch the same resources at the same time
+        boolean concurrent = Arrays.asList(args).contains("--concurrent");
+        List<CommandRunner.Command> commands = new ArrayList<>();
         for (String arg : args) {
-            switch (arg) {
+            if (arg.startsWith("--")) {
+                continue;
+            }
+            // some commands take a value, e.g. importIdentities=users.csv
+            String[] commandAndValue = arg.split("=", 2);
+            String value = commandAndValue.length > 1 ? commandAndValue[1] : null;
+            // each command lists the resources it reads and writes, so the runner knows which commands depend on each other
+            switch (commandAndValue[0]) {
                 case "printNamespaces":
-                    nsClient.printNamespaces(client);
+                    commands.add(new CommandRunner.Command(arg, Set.of("namespace/*"), Set.of(), () ->
+                        nsClient.get().printNamespaces(client.get())));
+                    break;
+                case "printNamespacesNdjson":
+                    commands.add(new CommandRunner.Command(arg, Set.of("namespace/*"), Set.of(), () ->
+                        nsClient.get().printNamespacesAsNdjson(client.get(), SimpleCloudApiNamespaceClient.DEFAULT_PAGE_SIZE, System.out)));
                     break;
                 case "createAPIKeyNamespace":
                     // namespace ceration is not idempotent, so we need to check if the namespace already exists
-                    nsClient.createAPIKeyNamespace(client, nsName, namespace);
+                    commands.add(new CommandRunner.Command(arg, Set.of(), Set.of("namespace/" + namespace), () ->
+                        nsClient.get().createAPIKeyNamespace(client.get(), nsName, namespace)));
+                    break;
+                case "bulkCreateAPIKeyNamespaces":
+                    // provision bulkCount namespaces named testns4-<n> concurrently
+                    Map<String, String> bulkNamespaces = new LinkedHashMap<>();
+                    for (int i = 0; i < bulkCount; i++) {
+                        bulkNamespaces.put(nsName + "-" + i + ".ksfop", nsName + "-" + i);
+                    }
+                    commands.add(new CommandRunner.Command(arg, Set.of(), Set.of("namespace/" + nsName + "-*"), () ->
+                        nsClient.get().bulkCreateAPIKeyNamespaces(client.get(), bulkNamespaces, bulkMaxInFlight)));
                     break;
                 case "createMTLSNamespace":
                     // namespace ceration is not idempotent, so we need to check if the namespace already exists
-                    nsClient.createMTLSNamespace(client, nsNameMTLS, namespaceMTLS);
+                    commands.add(new CommandRunner.Command(arg, Set.of(), Set.of("namespace/" + namespaceMTLS), () ->
+                        nsClient.get().createMTLSNamespace(client.get(), nsNameMTLS, namespaceMTLS)));
                     break;
                 case "rotateNamespaceMTLSCert":
-                    nsClient.rotateNamespaceMTLSCert(client, nsNameMTLS, namespaceMTLS);
+                    commands.add(new CommandRunner.Command(arg, Set.of(), Set.of("namespace/" + namespaceMTLS), () ->
+                        nsClient.get().rotateNamespaceMTLSCert(client.get(), nsNameMTLS, namespaceMTLS)));
+                    break;
+                case "rotateFleetMTLSCerts": {
+                    // rotateFleetMTLSCerts rotates every mTLS namespace, rotateFleetMTLSCerts=a.acct,b.acct only the listed ones
+                    List<String> fleet = value == null ? List.of() : Arrays.asList(value.split(","));
+                    Set<String> rotated = new HashSet<>();
+                    fleet.forEach(ns -> rotated.add("namespace/" + ns));
+                    commands.add(new CommandRunner.Command(arg, Set.of(), fleet.isEmpty() ? Set.of("namespace/*") : rotated, () -> {
+                        try {
+                            nsClient.get().rotateFleetMTLSCerts(client.get(), fleet, "fleetCA" + System.currentTimeMillis(), bulkMaxInFlight);
+                        } catch (GeneralSecurityException e) {
+                            logger.error("Unable to issue the new CA: " + e.getMessage());
+                        }
+                    }));
+                    break;
+                }
+                case "reconcile":
+                case "planReconcile": {
+                    // reconcile=desired.json applies the file, planReconcile=desired.json only logs what would change
+                    if (value == null) {
+                        logger.error(commandAndValue[0] + " needs a file, e.g. reconcile=desired.json");
+                        break;
+                    }
+                    boolean dryRun = commandAndValue[0].equals("planReconcile");
+                    Set<String> everything = Set.of("namespace/*", "user/*", "service-account/*", "api-key/*");
+                    commands.add(new CommandRunner.Command(arg, everything, dryRun ? Set.of() : everything, () -> {
+                        try {
+                            nsClient.get().reconcile(client.get(), Paths.get(value), dryRun, bulkMaxInFlight);
+                        } catch (IOException e) {
+                            logger.error("Unable to read " + value + ": " + e.getMessage());
+                        }
+                    }));
+                    break;
+                }
+                case "warmCache":
+                    // load every namespace, user and service account so later commands in this run skip their reads
+                    commands.add(new CommandRunner.Command(arg, Set.of("namespace/*", "user/*", "service-account/*"), Set.of(), () -> {
+                        cache.warmNamespaces(client.get(), SimpleCloudApiNamespaceClient.DEFAULT_PAGE_SIZE);
+                        cache.warmUsers(client.get(), SimpleCloudApiNamespaceClient.DEFAULT_PAGE_SIZE);
+                        cache.warmServiceAccounts(client.get(), SimpleCloudApiNamespaceClient.DEFAULT_PAGE_SIZE);
+                        logger.info("Cache stats: " + cache);
+                    }));
+                    break;
+                case "syncInventory":
+                    // syncInventory=inventory.bin writes a local snapshot of the account, or brings an existing one up to date
+                    if (value == null) {
+                        logger.error("syncInventory needs a file, e.g. syncInventory=inventory.bin");
+                        break;
+                    }
+                    commands.add(new CommandRunner.Command(arg, Set.of("namespace/*", "user/*", "service-account/*"), Set.of("file/" + value), () -> {
+                        try {
+                            logger.info("Inventory sync: " + InventorySnapshot.sync(client.get(), Paths.get(value), SimpleCloudApiNamespaceClient.DEFAULT_PAGE_SIZE));
+                        } catch (IOException e) {
+                            logger.error("Unable to write " + value + ": " + e.getMessage());
+                        }
+                    }));
+                    break;
+                case "printInventory":
+                    // printInventory=inventory.bin lists the snapshot without calling the Cloud API
+                    if (value == null) {
+                        logger.error("printInventory needs a file, e.g. printInventory=inventory.bin");
+                        break;
+                    }
+                    commands.add(new CommandRunner.Command(arg, Set.of("file/" + value), Set.of(), () -> {
+                        try {
+                            InventorySnapshot snapshot = InventorySnapshot.open(Paths.get(value));
+                            logger.info(snapshot.toString());
+                            snapshot.entries().forEach(System.out::println);
+                        } catch (IOException e) {
+                            logger.error("Unable to read " + value + ": " + e.getMessage());
+                        }
+                    }));
                     break;
                 case "printUsers":
-                    idClient.printUsers(client);
+                    commands.add(new CommandRunner.Command(arg, Set.of("user/*"), Set.of(), () ->
+                        idClient.get().printUsers(client.get())));
                     break;
                 case "printServiceAccounts":
-                    idClient.printServiceAccounts(client);
+                    commands.add(new CommandRunner.Command(arg, Set.of("service-account/*"), Set.of(), () ->
+                        idClient.get().printServiceAccounts(client.get())));
+                    break;
+                case "whoCanAccess":
+                    // whoCanAccess=testns4.ksfop lists every user and service account with a permission on the namespace
+                    if (value == null) {
+                        logger.error("whoCanAccess needs a namespace, e.g. whoCanAccess=" + namespace);
+                        break;
+                    }
+                    commands.add(new CommandRunner.Command(arg, Set.of("user/*", "service-account/*"), Set.of(), () -> {
+                        Map<AccessIndex.Principal, String> access = loadedAccessIndex.get().whoCanAccess(value);
+                        logger.info(access.size() + " principals can access " + value);
+                        access.forEach((principal, permission) -> System.out.println(principal + ": " + permission));
+                    }));
                     break;
                 case "createUser":
                     // user creation is idempotent based on the email address
-                    idClient.createUser(client, user, Map.of(namespace, "admin"), "developer");
+                    // joining the async operation means commands that read user/* only start once the user exists
+                    commands.add(new CommandRunner.Command(arg, Set.of("namespace/" + namespace), Set.of("user/" + user), () ->
+                        logger.info("User created, async operation " + idClient.get().createUser(client.get(), user, Map.of(namespace, "admin"), "developer").join().getId() + " fulfilled")));
                     break;
                 case "createServiceAccount":
-                    idClient.createServiceAccount(client, svcAcct, Map.of(namespace, "admin"), "developer");
+                    commands.add(new CommandRunner.Command(arg, Set.of("namespace/" + namespace), Set.of("service-account/" + svcAcct), () ->
+                        logger.info("SA created, async operation " + idClient.get().createServiceAccount(client.get(), svcAcct, Map.of(namespace, "admin"), "developer").join().getId() + " fulfilled")));
+                    break;
+                case "importIdentities":
+                    if (value == null) {
+                        logger.error("importIdentities needs a file, e.g. importIdentities=users.csv");
+                        break;
+                    }
+                    commands.add(new CommandRunner.Command(arg, Set.of("namespace/*"), Set.of("user/*", "service-account/*"), () -> {
+                        try {
+                            // the journal next to the file lets a re-run after a crash skip what was already created
+                            idClient.get().importIdentities(client.get(), Paths.get(value), bulkMaxInFlight, Paths.get(value + ".journal"));
+                        } catch (IOException e) {
+                            logger.error("Unable to read " + value + ": " + e.getMessage());
+                        }
+                    }));
                     break;
                 case "createAPIKey":
-                    idClient.createAPIKey(client, apiKeyName, oId, uType, dName);
+                    commands.add(new CommandRunner.Command(arg, Set.of("service-account/*"), Set.of("api-key/*"), () ->
+                        logger.info("API key created, async operation " + idClient.get().createAPIKey(client.get(), apiKeyName, oId, uType, dName).join().getId() + " fulfilled")));
+                    break;
+                case "rotateExpiringAPIKeys":
+                    // e.g. rotateExpiringAPIKeys=14 replaces every key that expires in the next 14 days
+                    Duration window = Duration.ofDays(value == null ? 7 : Long.parseLong(value));
+                    commands.add(new CommandRunner.Command(arg, Set.of(), Set.of("api-key/*"), () ->
+                        idClient.get().rotateExpiringAPIKeys(client.get(), window)));
+                    break;
+                case "printMetrics":
+                    // writing everything makes this wait for all earlier commands, so their calls are included;
+                    // without a client no call was made, and there is nothing to print
+                    commands.add(new CommandRunner.Command(arg, Set.of(), Set.of("*"), () -> {
+                        if (metrics.get() != null) {
+                            System.out.print(metrics.get().toPrometheusText());
+                        }
+                    }));
                     break;
                 default:
                     logger.error("Unknown argument: " + arg);
                     break;
             }
         }
+
+        CommandRunner.Report report = new CommandRunner(concurrent).run(commands);
+        logger.info("Commands:\n" + report);
+
+        // per-method latency for this run, slowest p99 first
+        if (metrics.get() != null) {
+            logger.info("Cloud API call metrics:\n" + metrics.get().summary());
+        }
+        if (namespaceClient.get() != null) {
+            namespaceClient.get().close();
+        }
+        if (identityClient.get() != null) {
+            identityClient.get().close();
+        }
+        if (throttling.get() != null) {
+            logger.info("Cloud API throttling: " + throttling.get());
+            throttling.get().close();
+        }
+        if (hedging.get() != null) {
+            logger.info("Cloud API hedged reads: " + hedging.get());
+            hedging.get().close();
+        }
+        if (pool.get() != null) {
+            logger.info("Cloud API connections: " + pool.get());
+            pool.get().shutdown();
+        }
+        if (metricsServer.get() != null) {
+            metricsServer.get().stop(0);
+        }
     }
 }
@@ -1,8 +1,12 @@
 package org.example;
 
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Instant;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.time.Duration;
 
 import io.temporal.api.cloud.cloudservice.v1.CreateApiKeyRequest;
@@ -20,6 +24,7 @@ import io.temporal.api.cloud.identity.v1.ApiKeySpec;
 import io.temporal.api.cloud.identity.v1.NamespaceAccess;
 import io.temporal.api.cloud.identity.v1.ServiceAccountSpec;
 import io.temporal.api.cloud.identity.v1.UserSpec;
+import io.temporal.api.cloud.operation.v1.AsyncOperation;
 import io.temporal.api.cloud.cloudservice.v1.CreateUserResponse;
 import io.temporal.client.CloudOperationsClient;
 
@@ -28,10 +33,56 @@ import org.slf4j.LoggerFactory;
 
 import com.google.protobuf.Timestamp;
 
-public final class SimpleCloudApiIdentityClient {
+public final class SimpleCloudApiIdentityClient implements AutoCloseable {
 
     private static final Logger logger = LoggerFactory.getLogger(SimpleCloudApiIdentityClient.class);
 
+    // how long the API keys we create are valid; ApiKeyRotationScheduler gives replacements the same lifetime
+    static final Duration API_KEY_LIFETIME = Duration.ofDays(30);
+
+    // identities we create or change are invalidated here so later reads see the new resource version
+    private final CloudResourceCache cache;
+
+    // identities we create are added here too, so "who can touch namespace X" stays answerable without re-listing
+    private final AccessIndex accessIndex;
+
+    // waits for the async operations our creates return; shared so all of them poll on one scheduler
+    private AsyncOperationTracker tracker;
+
+    public SimpleCloudApiIdentityClient() {
+        this(new CloudResourceCache());
+    }
+
+    public SimpleCloudApiIdentityClient(CloudResourceCache cache) {
+        this(cache, new AccessIndex());
+    }
+
+    public SimpleCloudApiIdentityClient(CloudResourceCache cache, AccessIndex accessIndex) {
+        this.cache = cache;
+        this.accessIndex = accessIndex;
+    }
+
+    public AccessIndex getAccessIndex() {
+        return accessIndex;
+    }
+
+    // created on first use so read-only commands don't start its scheduler thread
+    synchronized AsyncOperationTracker tracker() {
+        if (tracker == null) {
+            tracker = new AsyncOperationTracker();
+        }
+        return tracker;
+    }
+
+    // stops the tracker's scheduler thread, if a create started it
+    @Override
+    public synchronized void close() {
+        if (tracker != null) {
+            tracker.close();
+            tracker = null;
+        }
+    }
+
     public void printUsers(CloudOperationsClient client) {
         logger.info("Starting to print a list of users");
         // List all Users
@@ -60,41 +111,39 @@ public final class SimpleCloudApiIdentityClient {
         System.out.println(sasResp);
     }
 
-    public void createUser(CloudOperationsClient client, String user, Map<String, String> nsStrPermissions, String accountRole) {
+    // Returns as soon as the create is accepted; the future completes once its async operation is fulfilled
+    public CompletableFuture<AsyncOperation> createUser(CloudOperationsClient client, String user, Map<String, String> nsStrPermissions, String accountRole) {
     // To create a user, you need to
     // 1. Create an Access object to specify a user's account role and namespace permissions
     // 2. Create a UserSpec object to specify the user's email and access
     // then create the user with the UserSpec
 
     // Step 1 - Create the User Spec
-    // First specify the user's desired account role and namespace permissions
-    Access.Builder accessBuilder = Access.newBuilder()
-        .setAccountAccess(AccountAccess.newBuilder().setRole(accountRole).build());
-
-    // Now we'll convert the namespace permissions to a map of NamespaceAccess messages
-    // We could avoid this by passing in the right Map as a parameter, but we wanted to show how to convert String into NamespaceAccess
-    nsStrPermissions.forEach((ns, perm) -> {
-        NamespaceAccess namespaceAccess = NamespaceAccess.newBuilder().setPermission(perm).build();
-        accessBuilder.putNamespaceAccesses(ns, namespaceAccess);
-    });
-    
-    // Then create the UserSpec message
-    UserSpec userSpec = UserSpec.newBuilder()
-        .setEmail(user)
-        .setAccess(accessBuilder.build())
-        .build();       
+    UserSpec userSpec = userSpec(user, nsStrPermissions, accountRole);
 
-    CreateUserResponse createUserResponse =
-        client
-            .getCloudServiceStubs()
-            .blockingStub()
-            .createUser(CreateUserRequest.newBuilder().setSpec(userSpec).build());
+    ProvisioningEvent timeToActive = ProvisioningEvent.begin(ProvisioningEvent.Phase.TIME_TO_ACTIVE, user);
+    CreateUserResponse createUserResponse;
+    try {
+        createUserResponse = ProvisioningEvent.timeBlocking(ProvisioningEvent.Phase.CREATE_RPC, user, () ->
+            client
+                .getCloudServiceStubs()
+                .blockingStub()
+                .createUser(CreateUserRequest.newBuilder().setSpec(userSpec).build()));
+    } catch (RuntimeException e) {
+        // the create was rejected, so it will never become active
+        timeToActive.end(e);
+        throw e;
+    }
+    cache.invalidateUser(createUserResponse.getUserId());
+    accessIndex.putUser(createUserResponse.getUserId(), userSpec);
 
-    // TODO: add polling for response
-    logger.info("User being created + ", createUserResponse.toString());
+    // Step 2 - Track the async operation until the user is actually created
+    logger.info("User being created: " + createUserResponse.toString());
+    return tracker().track(client, createUserResponse.getAsyncOperation())
+        .whenComplete((op, error) -> timeToActive.end(error));
     }
 
-    public void createAPIKey(CloudOperationsClient client, String apiKeyName, String oId, String uType, String dName) {
+    public CompletableFuture<AsyncOperation> createAPIKey(CloudOperationsClient client, String apiKeyName, String oId, String uType, String dName) {
     // To create an API key, you need to
     // 1. Create an ApiKeySpec object to specify the API key's name, namespace, and role
     // 2. Create the API key with the ApiKeySpec
@@ -102,7 +151,7 @@ public final class SimpleCloudApiIdentityClient {
     // Step 1 - Create the ApiKeySpec
     // Get the current time as an Instant
     
-    Instant expiraton = Instant.now().plus(Duration.ofDays(30));
+    Instant expiraton = Instant.now().plus(API_KEY_LIFETIME);
 
     // First specify the API key's desired name, namespace, and role
     ApiKeySpec apiKeySpec = ApiKeySpec.newBuilder()
@@ -117,49 +166,137 @@ public final class SimpleCloudApiIdentityClient {
         .build();
 
     // Step 2 - Create the API key
-    CreateApiKeyResponse createApiKeyResponse =
-        client
-            .getCloudServiceStubs()
-            .blockingStub()
-            .createApiKey(CreateApiKeyRequest.newBuilder().setSpec(apiKeySpec).build());
+    ProvisioningEvent timeToActive = ProvisioningEvent.begin(ProvisioningEvent.Phase.TIME_TO_ACTIVE, dName);
+    CreateApiKeyResponse createApiKeyResponse;
+    try {
+        createApiKeyResponse = ProvisioningEvent.timeBlocking(ProvisioningEvent.Phase.CREATE_RPC, dName, () ->
+            client
+                .getCloudServiceStubs()
+                .blockingStub()
+                .createApiKey(CreateApiKeyRequest.newBuilder().setSpec(apiKeySpec).build()));
+    } catch (RuntimeException e) {
+        // the create was rejected, so it will never become active
+        timeToActive.end(e);
+        throw e;
+    }
 
     // Log the response
     logger.info("API Key created with ID: " + createApiKeyResponse.getKeyId());
     System.out.println("API Key token (store securely): " + createApiKeyResponse.getToken());
     logger.info("Async operation: " + createApiKeyResponse.getAsyncOperation().toString());
+
+    // Step 3 - Track the async operation; the key can't be used until it is fulfilled
+    return tracker().track(client, createApiKeyResponse.getAsyncOperation())
+        .whenComplete((op, error) -> timeToActive.end(error));
 }
 
-public void createServiceAccount(CloudOperationsClient client, String svcAcct, Map<String, String> nsStrPermissions, String accountRole) {
+public CompletableFuture<AsyncOperation> createServiceAccount(CloudOperationsClient client, String svcAcct, Map<String, String> nsStrPermissions, String accountRole) {
     // Creating a Service Account is very similar to creating a User except a SA does not require an email
     // 1. Create an Access object to specify a SA's account role and namespace permissions
     // 2. Create a ServiceAccountSpec object to specify the SA's email and access
     // then create the SA with the ServiceAccountSpec
 
     // Step 1 - Create the SA Spec
-    // First specify the SA's desired account role and namespace permissions
-    Access.Builder accessBuilder = Access.newBuilder()
-        .setAccountAccess(AccountAccess.newBuilder().setRole(accountRole).build());
-
-    // Now we'll convert the namespace permissions to a map of NamespaceAccess messages
-    // We could avoid this by passing in the right Map as a parameter, but we wanted to show how to convert String into NamespaceAccess
-    nsStrPermissions.forEach((ns, perm) -> {
-        NamespaceAccess namespaceAccess = NamespaceAccess.newBuilder().setPermission(perm).build();
-        accessBuilder.putNamespaceAccesses(ns, namespaceAccess);
-    });
-    
-    // Then create the ServiceAccountSpec message
-    ServiceAccountSpec saSpec = ServiceAccountSpec.newBuilder()
-        .setName(svcAcct)
-        .setAccess(accessBuilder.build())
-        .build();
+    ServiceAccountSpec saSpec = serviceAccountSpec(svcAcct, nsStrPermissions, accountRole);
+
+    ProvisioningEvent timeToActive = ProvisioningEvent.begin(ProvisioningEvent.Phase.TIME_TO_ACTIVE, svcAcct);
+    CreateServiceAccountResponse createServiceAccountResponse;
+    try {
+        createServiceAccountResponse = ProvisioningEvent.timeBlocking(ProvisioningEvent.Phase.CREATE_RPC, svcAcct, () ->
+            client
+                .getCloudServiceStubs()
+                .blockingStub()
+                .createServiceAccount(CreateServiceAccountRequest.newBuilder().setSpec(saSpec).build()));
+    } catch (RuntimeException e) {
+        // the create was rejected, so it will never become active
+        timeToActive.end(e);
+        throw e;
+    }
+    cache.invalidateServiceAccount(createServiceAccountResponse.getServiceAccountId());
+    accessIndex.putServiceAccount(createServiceAccountResponse.getServiceAccountId(), saSpec);
 
-    CreateServiceAccountResponse createServiceAccountResponse =
-        client
-            .getCloudServiceStubs()
-            .blockingStub()
-            .createServiceAccount(CreateServiceAccountRequest.newBuilder().setSpec(saSpec).build());
+    // Step 2 - Track the async operation until the SA is actually created
+    logger.info("SA being created: " + createServiceAccountResponse.toString());
+    return tracker().track(client, createServiceAccountResponse.getAsyncOperation())
+        .whenComplete((op, error) -> timeToActive.end(error));
+    }
 
-    // TODO: add polling for response
-    logger.info("SA being created + ", createServiceAccountResponse.toString());
+    // Replace every API key that expires within the given window
+    // The keys are loaded onto a timing wheel and rotated in rate-limited batches; a long-running
+    // service would keep the ApiKeyRotationScheduler open instead and let it rotate keys as they come due
+    public long rotateExpiringAPIKeys(CloudOperationsClient client, Duration window) {
+        logger.info("Starting to rotate API keys that expire within " + window.toDays() + " days");
+        try (ApiKeyRotationScheduler rotation = new ApiKeyRotationScheduler(client, window, API_KEY_LIFETIME, 20, Duration.ofSeconds(1),
+                r -> {
+                    logger.info(r.toString());
+                    System.out.println("API Key token for " + r.getNewKeyId() + " (store securely): " + r.getToken());
+                })) {
+            rotation.load(SimpleCloudApiNamespaceClient.DEFAULT_PAGE_SIZE);
+            rotation.rotateDue().join();
+            logger.info(rotation.toString());
+            return rotation.rotatedCount();
+        }
     }
-}
\ No newline at end of file
+
+    // Import users and service accounts from a CSV or JSONL file
+    // Records are streamed from disk and submitted with at most maxInFlight creates outstanding
+    public IdentityImporter.Summary importIdentities(CloudOperationsClient client, Path file, int maxInFlight) throws IOException {
+        return importIdentities(client, file, maxInFlight, null);
+    }
+
+    // Same, but every create is written to journalFile before it is sent
+    // Running it again with the same journal after a crash only does the records that are left
+    // Once every journaled create is done the journal is deleted, so the next run imports the file from scratch
+    public IdentityImporter.Summary importIdentities(CloudOperationsClient client, Path file, int maxInFlight, Path journalFile) throws IOException {
+        logger.info("Starting to import identities from " + file);
+        IdentityImporter.Summary summary;
+        boolean finished;
+        try (MutationJournal journal = journalFile == null ? null : MutationJournal.open(journalFile)) {
+            IdentityImporter importer = new IdentityImporter(client, cache, accessIndex, tracker(), journal, maxInFlight);
+            summary = importer.importFile(file, result -> logger.info(result.toString()));
+            logger.info(summary.toString());
+            if (journal != null) {
+                logger.info(journal.toString());
+            }
+            finished = journal != null && journal.entries().values().stream()
+                .allMatch(e -> e.getState() == MutationJournal.State.DONE);
+        }
+        if (finished) {
+            Files.deleteIfExists(journalFile);
+            logger.info("Every record is done, deleted " + journalFile);
+        } else if (journalFile != null) {
+            logger.info("Kept " + journalFile + "; run the import again to retry the records that are not done");
+        }
+        return summary;
+    }
+
+    // helper to build the Access message shared by users and service accounts
+    static Access access(Map<String, String> nsStrPermissions, String accountRole) {
+        // First specify the desired account role and namespace permissions
+        Access.Builder accessBuilder = Access.newBuilder()
+            .setAccountAccess(AccountAccess.newBuilder().setRole(accountRole).build());
+
+        // Now we'll convert the namespace permissions to a map of NamespaceAccess messages
+        // We could avoid this by passing in the right Map as a parameter, but we wanted to show how to convert String into NamespaceAccess
+        nsStrPermissions.forEach((ns, perm) -> {
+            NamespaceAccess namespaceAccess = NamespaceAccess.newBuilder().setPermission(perm).build();
+            accessBuilder.putNamespaceAccesses(ns, namespaceAccess);
+        });
+        return accessBuilder.build();
+    }
+
+    static UserSpec userSpec(String email, Map<String, String> nsStrPermissions, String accountRole) {
+        return UserSpec.newBuilder()
+            .setEmail(email)
+            .setAccess(access(nsStrPermissions, accountRole))
+            .build();
+    }
+
+    static ServiceAccountSpec serviceAccountSpec(String name, Map<String, String> nsStrPermissions, String accountRole) {
+        // a SA does not require an email, just a name
+        return ServiceAccountSpec.newBuilder()
+            .setName(name)
+            .setAccess(access(nsStrPermissions, accountRole))
+            .build();
+    }
+}
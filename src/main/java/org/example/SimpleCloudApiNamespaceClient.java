@@ -2,62 +2,114 @@ package org.example;
 
 import io.temporal.api.cloud.cloudservice.v1.CreateNamespaceRequest;
 import io.temporal.api.cloud.cloudservice.v1.CreateNamespaceResponse;
-import io.temporal.api.cloud.cloudservice.v1.GetNamespaceRequest;
-import io.temporal.api.cloud.cloudservice.v1.GetNamespaceResponse;
-import io.temporal.api.cloud.cloudservice.v1.GetNamespacesRequest;
-import io.temporal.api.cloud.cloudservice.v1.GetNamespacesResponse;
-import io.temporal.api.cloud.cloudservice.v1.UpdateNamespaceRequest;
-import io.temporal.api.cloud.cloudservice.v1.UpdateNamespaceResponse;
 import io.temporal.api.cloud.namespace.v1.ApiKeyAuthSpec;
 import io.temporal.api.cloud.namespace.v1.MtlsAuthSpec;
 import io.temporal.api.cloud.namespace.v1.Namespace;
 import io.temporal.api.cloud.namespace.v1.NamespaceSpec;
 import io.temporal.client.CloudOperationsClient;
 
-import org.bouncycastle.asn1.x500.X500Name;
-import org.bouncycastle.asn1.x509.BasicConstraints;
-import org.bouncycastle.asn1.x509.Extension;
-import org.bouncycastle.asn1.x509.KeyUsage;
-import org.bouncycastle.asn1.x509.SubjectKeyIdentifier;
-import org.bouncycastle.cert.X509CertificateHolder;
-import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
-import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
-import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
-import org.bouncycastle.operator.ContentSigner;
-import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.util.JsonFormat;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.StringWriter;
-import java.math.BigInteger;
-import java.security.KeyPair;
-import java.security.KeyPairGenerator;
-import java.security.SecureRandom;
-import java.security.Security;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
 import java.security.cert.X509Certificate;
-import java.util.Date;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
 import java.util.Random;
-import java.util.Base64;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-public final class SimpleCloudApiNamespaceClient {
+public final class SimpleCloudApiNamespaceClient implements AutoCloseable {
 
     private static final Logger logger = LoggerFactory.getLogger(SimpleCloudApiNamespaceClient.class);
-  
+
+    // Page size used when walking GetNamespaces; the server caps this on its side as well
+    public static final int DEFAULT_PAGE_SIZE = 100;
+
+    // one poller is shared by every namespace this client creates; its threads are started by the first create
+    private NamespaceStatusPoller poller;
+
+    // namespace updates go through this, so changes made close together share one UpdateNamespace
+    private NamespaceUpdateCoalescer updates;
+
+    // existence checks and reads go through this cache; share one instance with the identity client
+    private final CloudResourceCache cache;
+
+    private CaCertFactory certFactory;
+
+    // last CA bundle written per namespace by rotateNamespaceMTLSCert
+    private final Map<String, CaBundle> caBundles = new ConcurrentHashMap<>();
+
+    public SimpleCloudApiNamespaceClient() {
+        this(new CloudResourceCache());
+    }
+
+    public SimpleCloudApiNamespaceClient(CloudResourceCache cache) {
+        this.cache = cache;
+    }
+
+    // use a dedicated cert factory, e.g. one generating ECDSA P-256 keys
+    public SimpleCloudApiNamespaceClient(CloudResourceCache cache, CaCertFactory certFactory) {
+        this.cache = cache;
+        this.certFactory = certFactory;
+    }
 
     public void printNamespaces(CloudOperationsClient client) {
         logger.info("Start - print a list of namespces");
 
-        // List all Namespaces
-        GetNamespacesResponse namespacesResp =
-            client
-                .getCloudServiceStubs()
-                .blockingStub()
-                .getNamespaces(GetNamespacesRequest.newBuilder().build());
-
-        // Print the response
+        // List all Namespaces one page at a time
+        // Each Namespace is logged as soon as it arrives, so only a couple of pages are ever held in memory
         logger.info("List of Namespaces:");
-        logger.info(namespacesResp.toString());
+        long count = 0;
+        Iterator<Namespace> namespaces = iterateNamespaces(client, DEFAULT_PAGE_SIZE);
+        while (namespaces.hasNext()) {
+            logger.info(namespaces.next().toString());
+            count++;
+        }
+        logger.info("Listed " + count + " namespaces");
+    }
+
+    public void printNamespacesAsNdjson(CloudOperationsClient client, int pageSize, PrintStream out) {
+        // Print every Namespace as a single line of JSON (NDJSON)
+        // This is the format to use when piping thousands of namespaces into other tools
+        JsonFormat.Printer printer = JsonFormat.printer().omittingInsignificantWhitespace();
+        try (Stream<Namespace> namespaces = streamNamespaces(client, pageSize)) {
+            namespaces.forEach(ns -> {
+                try {
+                    out.println(printer.print(ns));
+                } catch (InvalidProtocolBufferException e) {
+                    throw new IllegalStateException("Unable to print namespace " + ns.getNamespace(), e);
+                }
+            });
+        }
+        out.flush();
+    }
+
+    // Lazily walk all Namespaces in the account by following next_page_token
+    // Page N+1 is requested on the future stub while the caller is still consuming page N
+    // Close the stream to cancel the outstanding prefetch when stopping early
+    public Stream<Namespace> streamNamespaces(CloudOperationsClient client, int pageSize) {
+        return CloudPager.namespaces(client, pageSize).stream();
+    }
+
+    public Iterator<Namespace> iterateNamespaces(CloudOperationsClient client, int pageSize) {
+        return CloudPager.namespaces(client, pageSize);
     }
 
     public void createAPIKeyNamespace(CloudOperationsClient client, String nsName, String namespace) {
@@ -66,96 +118,91 @@ public final class SimpleCloudApiNamespaceClient {
         // We will fist check to ensure the Namespace does not exist using a GetNamespace Request and Response
 
         logger.info("Starting the attempt to create the API Key Namespace: " + namespace);
-        try {GetNamespaceResponse namespaceResp =
-            client
-                .getCloudServiceStubs()
-                .blockingStub()
-                .getNamespace(GetNamespaceRequest.newBuilder().setNamespace(namespace).build());
+        // The existence check is answered from the resource cache when we have seen this namespace recently
+        Optional<Namespace> existing;
+        ProvisioningEvent check = ProvisioningEvent.begin(ProvisioningEvent.Phase.EXISTENCE_CHECK, namespace);
+        try {
+            existing = cache.getNamespace(client, namespace);
+            check.end(existing.isPresent() ? "found" : "absent");
+        } catch (io.grpc.StatusRuntimeException e) {
+            check.end(e);
+            // Catch any real issues here
+            logger.error("Error getting namespace: " + e.getMessage());
+            e.printStackTrace();
+            return;
+        }
+        if (existing.isPresent()) {
+            logger.info("Namespace already exists: " + namespace);
+            return;
+        }
+
+        // If the Namespace doesn't already exists, we will create it
+        NamespaceSpec namespaceSpec = apiKeyNamespaceSpec(nsName);
+
+        // Now pass the message as a part of the CreateNamespace Request and return the Response
+        // You can use the blockingStub() to make a synchronous request
+        // use futureStub() to make an asynchronous request
+        ProvisioningEvent.timeBlocking(ProvisioningEvent.Phase.CREATE_RPC, namespace, () -> client
+            .getCloudServiceStubs()
+            .blockingStub()
+            .createNamespace(CreateNamespaceRequest.newBuilder().setSpec(namespaceSpec).build()));
+        // our own write makes the cached NOT_FOUND stale
+        cache.invalidateNamespace(namespace);
+
+        // We will now poll the Namespace to check if it has been created
+        pollNamespaceCreateStatus(client, namespace);
+    }
 
-                logger.info("Namespace %s already exists ");
-                logger.info(namespace);
+    public void createMTLSNamespace(CloudOperationsClient client, String nsName, String namespace) {
+        logger.info("Starting the attempt to create the MTLS Namespace: " + namespace);
+
+        Optional<Namespace> existing;
+        ProvisioningEvent check = ProvisioningEvent.begin(ProvisioningEvent.Phase.EXISTENCE_CHECK, namespace);
+        try {
+            existing = cache.getNamespace(client, namespace);
+            check.end(existing.isPresent() ? "found" : "absent");
         } catch (io.grpc.StatusRuntimeException e) {
+            check.end(e);
             // Catch any real issues here
-            if (!e.getMessage().contains("NOT_FOUND")) {
-                logger.error("Error getting namespace: " + e.getMessage());
-                e.printStackTrace();
-                return;
-            }
+            logger.error("Error getting namespace: " + e.getMessage());
+            e.printStackTrace();
+            return;
+        }
+        if (existing.isPresent()) {
+            logger.info("Namespace already exists: " + namespace);
+            return;
+        }
+
+        try {
             // If the Namespace doesn't already exists, we will create it
-            // First create the APIKeyAuthSpec Message and set the enable flag to true
-            ApiKeyAuthSpec apiKeyAuthSpec = ApiKeyAuthSpec.newBuilder()
+            // First create the mTLSSpec
+            // this will generate a new mtls cert using the createCACert helper method
+            MtlsAuthSpec mTLSSpec = MtlsAuthSpec.newBuilder()
                 .setEnabled(true)
+                .setAcceptedClientCa(createCACertAsString("newCA", namespace))
                 .build();
 
-            // Then create the Namespace Message and use APIKeyAuthSpec as a part of the Namespace
+            // Then create the Namespace Message and use MTLSSpec as a part of the Namespace
             NamespaceSpec namespaceSpec = NamespaceSpec.newBuilder()
                 .setName(nsName)
                 .addRegions("aws-us-east-1")
-                .setApiKeyAuth(apiKeyAuthSpec)
+                .setMtlsAuth(mTLSSpec)
                 .setRetentionDays(90)
                 .build();
 
-            // Now pass the message as a part of the CreateNamespace Request and return the Response
-            // You can use the blockingStub() to make a synchronous request
-            // use AsyncStub() to make an asynchronous request
-            client
+            // Now pass the message to the CreateNamespace Request and return the Response
+            CreateNamespaceResponse createNamespaceResponse = ProvisioningEvent.timeBlocking(ProvisioningEvent.Phase.CREATE_RPC, namespace, () -> client
                 .getCloudServiceStubs()
                 .blockingStub()
-                .createNamespace(CreateNamespaceRequest.newBuilder().setSpec(namespaceSpec).build());
-            
+                .createNamespace(CreateNamespaceRequest.newBuilder().setSpec(namespaceSpec).build()));
+            cache.invalidateNamespace(namespace);
+
             // We will now poll the Namespace to check if it has been created
             pollNamespaceCreateStatus(client, namespace);
-        }
-    }
 
-    public void createMTLSNamespace(CloudOperationsClient client, String nsName, String namespace) {
-        logger.info("Starting the attempt to create the MTLS Namespace: " + namespace);
-
-        try {GetNamespaceResponse namespaceResp =
-            client
-                .getCloudServiceStubs()
-                .blockingStub()
-                .getNamespace(GetNamespaceRequest.newBuilder().setNamespace(namespace).build());
-
-                logger.info("Namespace already exists: " + namespace);
-        } catch (io.grpc.StatusRuntimeException e) {
-            // Catch any real issues here
-            if (!e.getMessage().contains("NOT_FOUND")) {
-                logger.error("Error getting namespace: " + e.getMessage());
-                e.printStackTrace();
-                return;
-            }
-
-            try {
-                // If the Namespace doesn't already exists, we will create it
-                // First create the mTLSSpec
-                // this will generate a new mtls cert using the createCACert helper method
-                MtlsAuthSpec mTLSSpec = MtlsAuthSpec.newBuilder()
-                    .setEnabled(true)
-                    .setAcceptedClientCa(createCACertAsString("newCA"))
-                    .build();
-
-                // Then create the Namespace Message and use MTLSSpec as a part of the Namespace
-                NamespaceSpec namespaceSpec = NamespaceSpec.newBuilder()
-                    .setName(nsName)
-                    .addRegions("aws-us-east-1")
-                    .setMtlsAuth(mTLSSpec)
-                    .setRetentionDays(90)
-                    .build();
-
-                // Now pass the message to the CreateNamespace Request and return the Response
-                CreateNamespaceResponse createNamespaceResponse = client
-                    .getCloudServiceStubs()
-                    .blockingStub()
-                    .createNamespace(CreateNamespaceRequest.newBuilder().setSpec(namespaceSpec).build());
-
-                // We will now poll the Namespace to check if it has been created
-                pollNamespaceCreateStatus(client, namespace);
-
-            } catch (Exception cae) {
-                logger.error("Error creating CA Cert: " + cae.getMessage());
-                cae.printStackTrace();
-            }
+        } catch (Exception cae) {
+            logger.error("Error creating CA Cert: " + cae.getMessage());
+            cae.printStackTrace();
         }
     }
 
@@ -163,180 +210,210 @@ public final class SimpleCloudApiNamespaceClient {
         logger.info("Starting the attempt to rotate the MTLS cert on Namespace: " + namespace);
 
         try {
-            // First get the namespace
             // We will add a new CA cert to the existing chain to ensure old certs can still exist
             // Old CA Certs can be deleted after Worker end-entity certs have been rotated with the new CA
 
-            // First, get the existing Namespace's mTLS string
-            GetNamespaceResponse getNamespaceResponse = client
-                .getCloudServiceStubs()
-                .blockingStub()
-                .getNamespace(GetNamespaceRequest.newBuilder().setNamespace(namespace).build());
-
             // the CN of a new CA cert must be unique
             // for the purpose of this demo, we'll use a random int to generate a unique CN
             // this is definately hacky and should not be used in production
             Random random = new Random();
             int randomInt = random.nextInt(10000); // Generates a random integer between 0 and 9999
+            X509Certificate newCa = certFactory().issue("newCA" + String.valueOf(randomInt), namespace);
+
+            // The change is applied to whatever spec the namespace has when the update is sent,
+            // and applied again to the fresh spec if the resource version turns out to be stale
+            AtomicReference<CaBundle> written = new AtomicReference<>();
+            NamespaceUpdateCoalescer.Result result = updateNamespace(client, namespace, spec -> {
+                try {
+                    // Parse the existing chain so duplicates are detected and expired CAs are dropped instead of carried forward
+                    CaBundle bundle = caBundle(namespace, spec.getMtlsAuth().getAcceptedClientCa());
+                    int expired = bundle.removeExpired(Instant.now());
+
+                    // add the new CA cert to the bundle; only the new cert is encoded, the existing ones are not touched
+                    bundle.add(newCa);
+                    logger.info("New CA bundle (" + expired + " expired CAs removed): " + bundle);
+                    written.set(bundle);
+
+                    // Everything else (regions, retention, search attributes, ...) is kept exactly as the server has it
+                    return spec.toBuilder()
+                        .setMtlsAuth(spec.getMtlsAuth().toBuilder()
+                            .setEnabled(true)
+                            .setAcceptedClientCa(bundle.toBase64()))
+                        .build();
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException("Unable to parse the CA bundle of " + namespace, e);
+                }
+            }).join();
+            caBundles.put(namespace, written.get());
 
-            // create a nw CA cert string by concatenating the existing CA cert string with a new CA cert string
-            String caStr = concatCAString(getNamespaceResponse.getNamespace().getSpec().getMtlsAuth().getAcceptedClientCa(), createCACertAsString("newCA" + String.valueOf(randomInt)));
-            logger.info("New CA Cert String: " + caStr);
-            
-            // Now create the mTLSSpec with the new cert
-            MtlsAuthSpec mTLSSpec = MtlsAuthSpec.newBuilder()
-                .setEnabled(true)
-                .setAcceptedClientCa(caStr)
-                .build();
+            if (result.getOutcome() == NamespaceUpdateCoalescer.Outcome.UNCHANGED) {
+                logger.info("Namespace already up to date, no update sent: " + namespace);
+            } else {
+                logger.info("Namespace updated successfully: " + result);
+            }
 
-            // Then create the Namespace Message and append the new MTLSSpec to the existing MTLSSpec as a part of the Namespace
-            NamespaceSpec namespaceSpec = NamespaceSpec.newBuilder()
-                .setName(nsName)
-                .addRegions("aws-us-east-1")
-                .setMtlsAuth(mTLSSpec)
-                .setRetentionDays(90)
-                .build();
+        } catch (Exception cae) {
+            // the bundle no longer matches what the namespace has
+            caBundles.remove(namespace);
+            Throwable cause = CloudFutures.unwrap(cae);
+            logger.error("Error updating CA Cert: " + cause.getMessage());
+            cause.printStackTrace();
+        }
+    }
 
-            // We need the resource version to update the namespace
-            String rVersion = getNamespaceResponse.getNamespace().getResourceVersion();
+    // Apply a change to a namespace's spec, e.g. spec -> spec.toBuilder().setRetentionDays(30).build()
+    // Changes to the same namespace made within a short window are sent as one UpdateNamespace,
+    // and a change that leaves every field as it is sends nothing at all
+    public CompletableFuture<NamespaceUpdateCoalescer.Result> updateNamespace(CloudOperationsClient client, String namespace, UnaryOperator<NamespaceSpec> change) {
+        return updates().submit(client, namespace, change);
+    }
 
-            // Now pass the message to the UpdateNamespaceRequest Request and return the Response
-            UpdateNamespaceResponse updateNamespaceResponse = client
-                .getCloudServiceStubs()
-                .blockingStub()
-                .updateNamespace(UpdateNamespaceRequest.newBuilder().setNamespace(namespace).setSpec(namespaceSpec).setResourceVersion(rVersion).build());
+    // Add one new CA to many mTLS Namespaces at once, e.g. inside a maintenance window
+    // With no namespaces given, every namespace in the account that has mTLS enabled is rotated
+    // Version conflicts are retried per namespace, and namespaces that already trust the CA are left untouched
+    public FleetCertRotator.Summary rotateFleetMTLSCerts(CloudOperationsClient client, List<String> namespaces, String caCommonName, int maxInFlight) throws GeneralSecurityException {
+        List<String> targets = namespaces;
+        if (targets.isEmpty()) {
+            targets = streamNamespaces(client, DEFAULT_PAGE_SIZE)
+                .filter(ns -> ns.getSpec().getMtlsAuth().getEnabled())
+                .map(Namespace::getNamespace)
+                .collect(Collectors.toList());
+        }
+        logger.info("Starting the attempt to rotate the MTLS cert on " + targets.size() + " Namespaces");
+
+        // the whole fleet moves to the same new CA, so worker certs only need to be reissued once
+        // it belongs to no single namespace, so its provisioning events carry its common name
+        X509Certificate newCa = certFactory().issue(caCommonName);
+        logger.info("New CA " + caCommonName + " with SHA-256 fingerprint " + CaBundle.fingerprint(newCa));
+
+        FleetCertRotator rotator = new FleetCertRotator(client, maxInFlight, updates());
+        FleetCertRotator.Summary summary = rotator.rotate(targets, newCa, progress -> logger.info(progress.toString()))
+            .getSummary()
+            .join();
+        caBundles.clear();
+        logger.info(summary.toString());
+        return summary;
+    }
 
-            logger.info("Namespace updated successfully: " + namespace);
+    // Create many API Key Auth based Namespaces at once
+    // Unlike createAPIKeyNamespace, the namespaces are provisioned concurrently on the future stub,
+    // with at most maxInFlight RPCs outstanding at a time
+    public BulkNamespaceProvisioner.Summary bulkCreateAPIKeyNamespaces(CloudOperationsClient client, Map<String, String> nsNamesByNamespace, int maxInFlight) {
+        logger.info("Starting the attempt to create " + nsNamesByNamespace.size() + " API Key Namespaces");
+
+        List<BulkNamespaceProvisioner.Request> requests = new ArrayList<>();
+        nsNamesByNamespace.forEach((namespace, nsName) ->
+            requests.add(new BulkNamespaceProvisioner.Request(namespace, apiKeyNamespaceSpec(nsName))));
+
+        try (BulkNamespaceProvisioner provisioner = new BulkNamespaceProvisioner(client, maxInFlight, poller(), cache)) {
+            BulkNamespaceProvisioner.Summary summary = provisioner.provision(requests).getSummary().join();
+            summary.getResults().forEach(r -> logger.info(r.toString()));
+            logger.info(summary.toString());
+            return summary;
+        }
+    }
 
-        } catch (Exception cae) {
-            logger.error("Error updating CA Cert: " + cae.getMessage());
-            cae.printStackTrace();
+    // Bring namespaces, users, service accounts and API keys in line with a desired-state file
+    // The current state is read in parallel and only the creates and updates that are needed are sent,
+    // so running this again against an unchanged account only reads. With dryRun the plan is logged but not applied
+    public DesiredStateReconciler.Summary reconcile(CloudOperationsClient client, Path desiredStateFile, boolean dryRun, int maxInFlight) throws IOException {
+        DesiredStateReconciler.DesiredState desired = DesiredStateReconciler.DesiredState.load(desiredStateFile);
+        logger.info("Reconciling " + desired.size() + " resources from " + desiredStateFile);
+
+        try (DesiredStateReconciler reconciler = new DesiredStateReconciler(client, maxInFlight, poller(), cache, updates())) {
+            DesiredStateReconciler.Plan plan = reconciler.plan(desired).join();
+            logger.info(plan.toString());
+            if (dryRun) {
+                return null;
+            }
+            DesiredStateReconciler.Summary summary = reconciler.apply(plan).join();
+            summary.getResults().forEach(r -> logger.info(r.toString()));
+            logger.info(summary.toString());
+            return summary;
         }
     }
 
+    // helper to build the spec for an API Key Auth based Namespace
+    static NamespaceSpec apiKeyNamespaceSpec(String nsName) {
+        // First create the APIKeyAuthSpec Message and set the enable flag to true
+        ApiKeyAuthSpec apiKeyAuthSpec = ApiKeyAuthSpec.newBuilder()
+            .setEnabled(true)
+            .build();
+
+        // Then create the Namespace Message and use APIKeyAuthSpec as a part of the Namespace
+        return NamespaceSpec.newBuilder()
+            .setName(nsName)
+            .addRegions("aws-us-east-1")
+            .setApiKeyAuth(apiKeyAuthSpec)
+            .setRetentionDays(90)
+            .build();
+    }
+
     // helper method to poll for the namespace
     private void pollNamespaceCreateStatus (CloudOperationsClient client, String namespace) {
         // We will now poll the Namespace to check if it has been created
-        System.out.println("Polling for Namespace creation...");
-        boolean namespaceCreated = false;
-
-        while (!namespaceCreated) {
-            try {
-                // Sleep for a while before polling again
-                Thread.sleep(5000); // 5 seconds
-
-                // Check the namespace status
-                GetNamespaceResponse namespaceResp = client
-                    .getCloudServiceStubs()
-                    .blockingStub()
-                    .getNamespace(GetNamespaceRequest.newBuilder().setNamespace(namespace).build());
-
-                Namespace ns = namespaceResp.getNamespace();
-                    
-                // Check if the namespace is created    
-                if(ns.getState().equals("active")) {
-                    logger.info("Namespace created successfully" + namespace);
-                    // Set this to true to break the loop    
-                    namespaceCreated = true; 
-                }
-
-                // Print the namespace status
-                logger.info("Namespace: " + namespace + " is in State: " + ns.getState());
-                
-            } catch (io.grpc.StatusRuntimeException sre) {
-                if (sre.getStatus().getCode() == io.grpc.Status.Code.NOT_FOUND) {
-                    // Namespace not found, continue polling
-                    logger.info("Namespace not found, continuing to poll...");
-                } else {
-                    // Handle other exceptions
-                    logger.error("Error: " + sre.getStatus().getDescription());
-                    sre.printStackTrace();
-                    break;
-                }
-            } catch (InterruptedException ie) {
-                // Handle interrupted exception
-                logger.error("Polling interrupted: " + ie.getMessage());
-                ie.printStackTrace();
-                break;
-            }
-        }  
-
+        // The shared poller checks quickly at first and then backs off, so this thread only waits on the result
+        logger.info("Polling for Namespace creation...");
+        try {
+            cache.putNamespace(poller().awaitActive(client, namespace).join());
+            logger.info("Namespace created successfully: " + namespace);
+        } catch (CompletionException | CancellationException e) {
+            logger.error("Error polling namespace " + namespace + ": " + CloudFutures.unwrap(e).getMessage());
+        }
     }
 
     // helper method to generate a new CA String
-    private String createCACertAsString(String cn) throws Exception {
-        // Add BouncyCastle as a Security Provider
-        Security.addProvider(new BouncyCastleProvider());
-
-        // Generate Key Pair
-        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA", "BC");
-        keyPairGenerator.initialize(2048, new SecureRandom());
-        KeyPair keyPair = keyPairGenerator.generateKeyPair();
-
-        // Create X500Name for the issuer and subject
-        X500Name issuer = new X500Name("CN=" + cn + ", O=My Organization");
-        X500Name subject = issuer;
-
-        // Validity period
-        Date notBefore = new Date();
-        Date notAfter = new Date(notBefore.getTime() + (365 * 24 * 60 * 60 * 1000L)); // 1 year validity
-
-        // Serial number
-        BigInteger serialNumber = BigInteger.valueOf(System.currentTimeMillis());
-
-        // Create the certificate builder
-        JcaX509v3CertificateBuilder certBuilder = new JcaX509v3CertificateBuilder(
-                issuer,
-                serialNumber,
-                notBefore,
-                notAfter,
-                subject,
-                keyPair.getPublic()
-        );
-
-        // Add extensions
-        certBuilder.addExtension(Extension.basicConstraints, true, new BasicConstraints(true)); // CA: true
-        certBuilder.addExtension(Extension.keyUsage, true, new KeyUsage(KeyUsage.keyCertSign | KeyUsage.cRLSign));
-        certBuilder.addExtension(Extension.subjectKeyIdentifier, false, new SubjectKeyIdentifier(keyPair.getPublic().getEncoded()));
-
-        // Create the content signer
-        ContentSigner contentSigner = new JcaContentSignerBuilder("SHA256WithRSAEncryption").build(keyPair.getPrivate());
-
-        // Build the certificate
-        X509CertificateHolder certHolder = certBuilder.build(contentSigner);
-        X509Certificate certificate = new JcaX509CertificateConverter().setProvider("BC").getCertificate(certHolder);
-
-        // Output the certificate in PEM format
-        StringWriter stringWriter = new StringWriter();
-        
-         try (JcaPEMWriter pemWriter = new JcaPEMWriter(stringWriter)) {
-            pemWriter.writeObject(certificate);
-        }
-
-        // convert to a string so we can encode it as base64
-        String pemCert = stringWriter.toString();
-
-        // Encode the PEM certificate string in Base64
-        String base64PemCert = Base64.getEncoder().encodeToString(pemCert.getBytes());
+    // Key pairs come from the CaCertFactory's pre-generated pool, so this is mostly a signing step
+    private String createCACertAsString(String cn, String namespace) throws Exception {
+        String base64PemCert = certFactory().issueBase64Pem(cn, namespace);
         logger.info("Base64-encoded PEM Certificate: ");
         logger.info(base64PemCert);
 
         return base64PemCert;
     }
 
-    // helper to concatenate 2 base64 encoded strings
-    private String concatCAString (String caStr1, String csStr2){
-        // Decode the Base64-encoded strings into byte arrays
-        byte[] decodedBytes1 = Base64.getDecoder().decode(caStr1);
-        byte[] decodedBytes2 = Base64.getDecoder().decode(csStr2);
+    private synchronized NamespaceUpdateCoalescer updates() {
+        if (updates == null) {
+            updates = new NamespaceUpdateCoalescer(cache);
+        }
+        return updates;
+    }
+
+    private synchronized NamespaceStatusPoller poller() {
+        if (poller == null) {
+            poller = new NamespaceStatusPoller();
+        }
+        return poller;
+    }
+
+    // stops the poller and coalescer threads, if a command started them; the shared cert factory stays up
+    @Override
+    public synchronized void close() {
+        if (poller != null) {
+            poller.close();
+            poller = null;
+        }
+        if (updates != null) {
+            updates.close();
+            updates = null;
+        }
+    }
 
-        // Concatenate the byte arrays
-        byte[] concatenatedBytes = new byte[decodedBytes1.length + decodedBytes2.length];
-        System.arraycopy(decodedBytes1, 0, concatenatedBytes, 0, decodedBytes1.length);
-        System.arraycopy(decodedBytes2, 0, concatenatedBytes, decodedBytes1.length, decodedBytes2.length);
+    // the cert factory starts a key pre-generation thread, so only create it once a cert is actually needed
+    private synchronized CaCertFactory certFactory() {
+        if (certFactory == null) {
+            certFactory = CaCertFactory.shared();
+        }
+        return certFactory;
+    }
 
-        // Encode the concatenated byte array back into a Base64 string
-        return Base64.getEncoder().encodeToString(concatenatedBytes);
+    // helper to get the parsed CA bundle for a namespace
+    // the bundle we wrote on the previous rotation is reused while the namespace still has it, so repeated rotations skip re-parsing
+    private CaBundle caBundle(String namespace, String acceptedClientCa) throws GeneralSecurityException {
+        CaBundle known = caBundles.get(namespace);
+        if (known != null && known.toBase64().equals(acceptedClientCa)) {
+            return known;
+        }
+        return CaBundle.parse(acceptedClientCa);
     }
-    
 }
@@ -0,0 +1,345 @@
+package org.example;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.protobuf.Any;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Message;
+import com.google.rpc.RetryInfo;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.Deadline;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.grpc.protobuf.StatusProto;
+
+/**
+ * Client interceptor that keeps Cloud API callers under the server's rate limits without any
+ * tuning by hand.
+ *
+ * <p>Every unary call first takes a token from its method's {@link TokenBucket}, then a permit
+ * from one {@link AimdLimiter} shared by all methods. Both adapt: a rate-limit answer cuts the
+ * method's rate and halves the concurrency limit, and successful calls grow them back. Other
+ * failures, such as cancelled calls, leave both as they are.
+ *
+ * <p>A rate-limit answer is a {@code RESOURCE_EXHAUSTED} whose trailers carry a
+ * {@code google.rpc.RetryInfo}, or whose description mentions a rate limit. Other
+ * {@code RESOURCE_EXHAUSTED} errors, such as reaching the account's namespace quota or a message
+ * that is too large, won't go away by waiting and go straight to the caller.
+ *
+ * <p>A rate-limited call is replayed with jittered exponential backoff until it succeeds, runs
+ * out of attempts or would overrun its deadline, but only when sending it twice can't do anything
+ * twice: reads ({@code Get*}), and mutations that carry an {@code async_operation_id}, which the
+ * server uses to recognise a repeat. Any other call is returned to the caller as it was answered.
+ *
+ * <p>Waiting happens on a scheduler and never parks the caller's thread, so the interceptor
+ * works the same for blocking and future stubs.
+ */
+public final class ThrottlingClientInterceptor implements ClientInterceptor, AutoCloseable {
+
+    // high enough to never be the bottleneck on its own; the adapted rate is what matters
+    private static final double DEFAULT_RATE_PER_METHOD = 1000;
+    private static final double DEFAULT_BURST = 10;
+    private static final int DEFAULT_INITIAL_CONCURRENCY = 8;
+    private static final int DEFAULT_MAX_CONCURRENCY = 256;
+    private static final int DEFAULT_MAX_ATTEMPTS = 10;
+    private static final long INITIAL_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 10_000;
+
+    private final double ratePerMethod;
+    private final double burst;
+    private final int maxAttempts;
+    private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final AimdLimiter concurrency;
+    private final ScheduledExecutorService scheduler;
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+
+    public ThrottlingClientInterceptor() {
+        this(DEFAULT_RATE_PER_METHOD, DEFAULT_BURST, DEFAULT_INITIAL_CONCURRENCY, DEFAULT_MAX_CONCURRENCY, DEFAULT_MAX_ATTEMPTS);
+    }
+
+    /**
+     * @param ratePerMethod highest calls per second allowed for any one method
+     * @param burst calls per method that may start back to back before the rate applies
+     * @param initialConcurrency starting limit on calls in flight across all methods
+     * @param maxConcurrency ceiling the concurrency limit can grow to
+     * @param maxAttempts attempts per call, including the first, before a rate-limit error is returned
+     */
+    public ThrottlingClientInterceptor(double ratePerMethod, double burst, int initialConcurrency, int maxConcurrency, int maxAttempts) {
+        this.ratePerMethod = ratePerMethod;
+        this.burst = burst;
+        this.maxAttempts = maxAttempts;
+        this.concurrency = new AimdLimiter(initialConcurrency, 1, maxConcurrency, 0.5);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "cloud-api-throttle");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+        if (method.getType() != MethodDescriptor.MethodType.UNARY) {
+            return next.newCall(method, callOptions);
+        }
+        TokenBucket bucket = buckets.computeIfAbsent(method.getBareMethodName(), m -> new TokenBucket(ratePerMethod, burst));
+        return new ThrottledCall<>(method, callOptions, next, bucket);
+    }
+
+    public int concurrencyLimit() {
+        return concurrency.limit();
+    }
+
+    public int queued() {
+        return concurrency.queued();
+    }
+
+    public long throttledCount() {
+        return throttled.sum();
+    }
+
+    public long retriedCount() {
+        return retried.sum();
+    }
+
+    /** Current adapted rate of {@code method} in calls per second, or the configured maximum if it has not been called. */
+    public double rate(String method) {
+        TokenBucket bucket = buckets.get(method);
+        return bucket == null ? ratePerMethod : bucket.rate();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder rates = new StringBuilder();
+        buckets.forEach((method, bucket) -> rates.append(rates.length() == 0 ? "" : ", ")
+            .append(method).append(String.format("=%.1f/s", bucket.rate())));
+        return "concurrencyLimit=" + concurrency.limit() + ", inFlight=" + concurrency.inFlight() + ", queued=" + concurrency.queued()
+            + ", throttled=" + throttled.sum() + ", retried=" + retried.sum() + ", rates={" + rates + "}";
+    }
+
+    static boolean isRateLimited(Status status, Metadata trailers) {
+        if (status.getCode() != Status.Code.RESOURCE_EXHAUSTED) {
+            return false;
+        }
+        com.google.rpc.Status details = StatusProto.fromStatusAndTrailers(status, trailers);
+        for (Any detail : details.getDetailsList()) {
+            if (detail.is(RetryInfo.class)) {
+                return true;
+            }
+        }
+        String description = status.getDescription();
+        return description != null && description.toLowerCase(Locale.ROOT).contains("rate limit");
+    }
+
+    // true for a Cloud API request with a non-empty async_operation_id
+    static boolean hasAsyncOperationId(Object request) {
+        if (!(request instanceof Message)) {
+            return false;
+        }
+        Message message = (Message) request;
+        Descriptors.FieldDescriptor field = message.getDescriptorForType().findFieldByName("async_operation_id");
+        return field != null && !message.getField(field).toString().isEmpty();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    // A unary call that is only sent once halfClose() has delivered the complete request. Each
+    // attempt is a fresh call on the underlying channel. The response is buffered until we know
+    // whether this attempt will be retried, so the caller only ever sees the final one.
+    private final class ThrottledCall<ReqT, RespT> extends ClientCall<ReqT, RespT> {
+        private final MethodDescriptor<ReqT, RespT> method;
+        private final CallOptions callOptions;
+        private final Channel next;
+        private final TokenBucket bucket;
+
+        private Listener<RespT> listener;
+        private Metadata headers;
+        private ReqT message;
+        private int requested;
+        private ClientCall<ReqT, RespT> current;
+        private boolean cancelled;
+        private boolean closed;
+
+        ThrottledCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next, TokenBucket bucket) {
+            this.method = method;
+            this.callOptions = callOptions;
+            this.next = next;
+            this.bucket = bucket;
+        }
+
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+            this.listener = responseListener;
+            this.headers = headers;
+        }
+
+        @Override
+        public synchronized void request(int numMessages) {
+            requested += numMessages;
+            if (current != null) {
+                current.request(numMessages);
+            }
+        }
+
+        @Override
+        public void sendMessage(ReqT message) {
+            this.message = message;
+        }
+
+        @Override
+        public void halfClose() {
+            attempt(1);
+        }
+
+        private boolean isRetrySafe() {
+            return method.getBareMethodName().startsWith("Get") || hasAsyncOperationId(message);
+        }
+
+        @Override
+        public void cancel(String reason, Throwable cause) {
+            ClientCall<ReqT, RespT> call;
+            synchronized (this) {
+                if (cancelled || closed) {
+                    return;
+                }
+                cancelled = true;
+                call = current;
+            }
+            if (call != null) {
+                call.cancel(reason, cause);
+            } else {
+                // still waiting for a token, a permit or the next attempt
+                finish(Status.CANCELLED.withDescription(reason).withCause(cause), new Metadata(), null, null);
+            }
+        }
+
+        @Override
+        public synchronized boolean isReady() {
+            return current != null && current.isReady();
+        }
+
+        private void attempt(int attempt) {
+            long waitNanos = bucket.reserve();
+            if (waitNanos == 0) {
+                concurrency.acquire(() -> dispatch(attempt));
+            } else {
+                scheduler.schedule(() -> concurrency.acquire(() -> dispatch(attempt)), waitNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private void dispatch(int attempt) {
+            ClientCall<ReqT, RespT> call;
+            int toRequest;
+            synchronized (this) {
+                if (cancelled) {
+                    concurrency.release();
+                    call = null;
+                } else {
+                    call = next.newCall(method, callOptions);
+                    current = call;
+                }
+                toRequest = requested;
+            }
+            if (call == null) {
+                // cancel() has normally closed the call already, and then this does nothing
+                finish(Status.CANCELLED.withDescription("Call cancelled before it was sent"), new Metadata(), null, null);
+                return;
+            }
+            Metadata attemptHeaders = new Metadata();
+            attemptHeaders.merge(headers);
+            call.start(new AttemptListener(attempt), attemptHeaders);
+            call.request(Math.max(1, toRequest));
+            call.sendMessage(message);
+            call.halfClose();
+        }
+
+        private void finish(Status status, Metadata trailers, Metadata responseHeaders, RespT response) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            if (responseHeaders != null) {
+                listener.onHeaders(responseHeaders);
+            }
+            if (response != null) {
+                listener.onMessage(response);
+            }
+            listener.onClose(status, trailers);
+        }
+
+        private final class AttemptListener extends ClientCall.Listener<RespT> {
+            private final int attempt;
+            private Metadata responseHeaders;
+            private RespT response;
+
+            AttemptListener(int attempt) {
+                this.attempt = attempt;
+            }
+
+            @Override
+            public void onHeaders(Metadata headers) {
+                responseHeaders = headers;
+            }
+
+            @Override
+            public void onMessage(RespT message) {
+                response = message;
+            }
+
+            @Override
+            public void onClose(Status status, Metadata trailers) {
+                boolean wasThrottled = isRateLimited(status, trailers);
+                // only answers from the server say anything about its capacity; a cancelled hedge,
+                // a missed deadline or a dropped connection leaves the limit where it is
+                if (wasThrottled || status.isOk()) {
+                    concurrency.release(wasThrottled);
+                } else {
+                    concurrency.release();
+                }
+                if (wasThrottled) {
+                    throttled.increment();
+                    bucket.onThrottled();
+                    long delayMillis = Backoff.equalJitter(INITIAL_BACKOFF_MILLIS, MAX_BACKOFF_MILLIS, attempt - 1);
+                    if (attempt < maxAttempts && isRetrySafe() && fitsDeadline(delayMillis) && betweenAttempts()) {
+                        retried.increment();
+                        scheduler.schedule(() -> attempt(attempt + 1), delayMillis, TimeUnit.MILLISECONDS);
+                        return;
+                    }
+                } else if (status.isOk()) {
+                    bucket.onSuccess();
+                }
+                finish(status, trailers, responseHeaders, response);
+            }
+        }
+
+        // forgets the attempt that just closed, so a cancel during the backoff closes the call itself;
+        // false if the call was cancelled already
+        private synchronized boolean betweenAttempts() {
+            if (cancelled) {
+                return false;
+            }
+            current = null;
+            return true;
+        }
+
+        private boolean fitsDeadline(long delayMillis) {
+            Deadline deadline = callOptions.getDeadline();
+            return deadline == null || deadline.timeRemaining(TimeUnit.MILLISECONDS) > delayMillis;
+        }
+    }
+}
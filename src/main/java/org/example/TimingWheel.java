@@ -0,0 +1,140 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hashed timing wheel: deadlines are dropped into one of a fixed number of buckets by the tick
+ * they fall in, so adding and cancelling a deadline is O(1) however many are tracked.
+ * {@link #advance} only looks at the buckets of the ticks that have passed, and in each bucket
+ * only expires the entries whose tick has come. The others are one or more turns of the wheel
+ * further out.
+ *
+ * <p>The wheel has no thread of its own. The owner calls {@link #advance} from its own timer,
+ * typically once per tick, and a tick with an empty bucket costs next to nothing. Deadlines are
+ * only as precise as the tick. Not thread-safe; the owner synchronizes.
+ */
+final class TimingWheel<T> {
+
+    /** A scheduled value; {@link #cancel} takes it off the wheel. */
+    static final class Timeout<T> {
+        private final T value;
+        private final long deadlineMillis;
+        private final long tick;
+        // links within the bucket, so cancel is O(1)
+        private Timeout<T> prev;
+        private Timeout<T> next;
+        private TimingWheel<T> wheel;
+
+        private Timeout(T value, long deadlineMillis, long tick) {
+            this.value = value;
+            this.deadlineMillis = deadlineMillis;
+            this.tick = tick;
+        }
+
+        T value() {
+            return value;
+        }
+
+        long deadlineMillis() {
+            return deadlineMillis;
+        }
+
+        /** Returns false if the timeout already expired or was cancelled. */
+        boolean cancel() {
+            if (wheel == null) {
+                return false;
+            }
+            wheel.unlink(this);
+            return true;
+        }
+    }
+
+    private final long tickMillis;
+    private final Timeout<T>[] heads;
+    private final int mask;
+    private final long startMillis;
+    // the last tick advance() has processed
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    TimingWheel(Duration tick, int buckets, long startMillis) {
+        if (Integer.bitCount(buckets) != 1) {
+            throw new IllegalArgumentException("buckets must be a power of two: " + buckets);
+        }
+        this.tickMillis = Math.max(1, tick.toMillis());
+        this.heads = (Timeout<T>[]) new Timeout<?>[buckets];
+        this.mask = buckets - 1;
+        this.startMillis = startMillis;
+    }
+
+    /** Schedules {@code value} for {@code deadlineMillis}; a deadline already past expires on the next advance. */
+    Timeout<T> schedule(T value, long deadlineMillis) {
+        long tick = Math.max(currentTick + 1, ceilDiv(deadlineMillis - startMillis, tickMillis));
+        Timeout<T> timeout = new Timeout<>(value, deadlineMillis, tick);
+        int bucket = (int) (tick & mask);
+        timeout.next = heads[bucket];
+        if (heads[bucket] != null) {
+            heads[bucket].prev = timeout;
+        }
+        heads[bucket] = timeout;
+        timeout.wheel = this;
+        size++;
+        return timeout;
+    }
+
+    /** Moves the wheel up to {@code nowMillis} and returns everything that expired, in no particular order. */
+    List<T> advance(long nowMillis) {
+        long nowTick = Math.floorDiv(nowMillis - startMillis, tickMillis);
+        if (nowTick <= currentTick) {
+            return List.of();
+        }
+        List<T> expired = new ArrayList<>();
+        // after a long pause one pass over every bucket catches up, rather than one pass per missed tick
+        long ticks = Math.min(nowTick - currentTick, heads.length);
+        for (long t = currentTick + 1; t <= currentTick + ticks; t++) {
+            Timeout<T> timeout = heads[(int) (t & mask)];
+            while (timeout != null) {
+                Timeout<T> next = timeout.next;
+                if (timeout.tick <= nowTick) {
+                    unlink(timeout);
+                    expired.add(timeout.value);
+                }
+                timeout = next;
+            }
+        }
+        currentTick = nowTick;
+        return expired;
+    }
+
+    /** The time at which the next tick should be processed. */
+    long nextTickMillis() {
+        return startMillis + (currentTick + 1) * tickMillis;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void unlink(Timeout<T> timeout) {
+        int bucket = (int) (timeout.tick & mask);
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            heads[bucket] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.wheel = null;
+        size--;
+    }
+
+    private static long ceilDiv(long x, long y) {
+        return -Math.floorDiv(-x, y);
+    }
+}
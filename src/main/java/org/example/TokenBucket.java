@@ -0,0 +1,79 @@
+package org.example;
+
+/**
+ * Token bucket whose refill rate adapts the way {@link AimdLimiter} does: it drops by a fifth when the
+ * server throttles, and it creeps back up towards {@code maxRate} on success.
+ *
+ * <p>{@link #reserve()} never blocks. It takes a token, going into debt if it has to, and returns
+ * how long the caller must wait before using it, which lets callers schedule the work instead of
+ * sleeping.
+ *
+ * <p>Calls that are in flight together tend to be throttled together, so the rate is reduced at
+ * most once per {@link #DECREASE_WINDOW_NANOS}. One burst of rejections counts as one signal.
+ */
+final class TokenBucket {
+
+    static final long DECREASE_WINDOW_NANOS = 250_000_000L;
+    private static final double ADDITIVE_STEP = 0.1;
+    // gentler than halving: a rate limit is a hard line, so a small step back is usually enough
+    private static final double DECREASE_RATIO = 0.8;
+
+    private final double maxRate;
+    private final double minRate;
+    private final double burst;
+    private double rate;
+    private double tokens;
+    private long lastRefillNanos;
+    private long lastDecreaseNanos;
+
+    TokenBucket(double maxRatePerSecond, double burst) {
+        this.maxRate = maxRatePerSecond;
+        this.minRate = Math.min(1.0, maxRatePerSecond);
+        this.burst = burst;
+        this.rate = maxRatePerSecond;
+        this.tokens = burst;
+        this.lastRefillNanos = System.nanoTime();
+        this.lastDecreaseNanos = lastRefillNanos - DECREASE_WINDOW_NANOS;
+    }
+
+    /** Takes one token and returns the nanoseconds to wait before it may be used (0 if available now). */
+    synchronized long reserve() {
+        refill();
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) (-tokens / rate * 1e9);
+    }
+
+    /** Takes a token only if one is available now, without going into debt. */
+    synchronized boolean tryAcquire() {
+        refill();
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    synchronized void onThrottled() {
+        refill();
+        if (lastRefillNanos - lastDecreaseNanos >= DECREASE_WINDOW_NANOS) {
+            rate = Math.max(minRate, rate * DECREASE_RATIO);
+            lastDecreaseNanos = lastRefillNanos;
+        }
+    }
+
+    synchronized void onSuccess() {
+        refill();
+        // +0.1 calls/s per success: at 50 calls/s the rate climbs by about 5/s every second
+        rate = Math.min(maxRate, rate + ADDITIVE_STEP);
+    }
+
+    synchronized double rate() {
+        return rate;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefillNanos) / 1e9 * rate);
+        lastRefillNanos = now;
+    }
+}
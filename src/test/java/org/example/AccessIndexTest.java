@@ -0,0 +1,58 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import io.temporal.api.cloud.cloudservice.v1.CloudServiceGrpc;
+import io.temporal.api.cloud.cloudservice.v1.CreateServiceAccountRequest;
+import io.temporal.api.cloud.cloudservice.v1.CreateUserRequest;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccessIndexTest {
+    @Test void answersWhoCanAccessANamespaceAndFollowsOwnCreatesAndChanges() {
+        try (FakeCloudServer server = new FakeCloudServer(new InMemoryCloudService("acct", Duration.ZERO))) {
+            CloudServiceGrpc.CloudServiceBlockingStub stub = server.getClient().getCloudServiceStubs().blockingStub();
+            for (int i = 0; i < 30; i++) {
+                stub.createUser(CreateUserRequest.newBuilder().setSpec(SimpleCloudApiIdentityClient.userSpec("user" + i + "@example.com",
+                    Map.of("ns" + (i % 3) + ".acct", i % 2 == 0 ? "write" : "read"), i < 2 ? "admin" : "developer")).build());
+            }
+            stub.createServiceAccount(CreateServiceAccountRequest.newBuilder().setSpec(SimpleCloudApiIdentityClient.serviceAccountSpec("ci",
+                Map.of("ns0.acct", "admin", "ns1.acct", "write"), "read")).build());
+
+            // a small page size streams the lists over several pages
+            AccessIndex index = AccessIndex.build(server.getClient(), 7);
+            assertEquals(31, index.principalCount());
+            Map<AccessIndex.Principal, String> ns0 = index.whoCanAccess("ns0.acct");
+            assertEquals(11, ns0.size());
+            assertEquals("admin", ns0.entrySet().stream().filter(e -> e.getKey().getName().equals("ci")).findFirst().orElseThrow().getValue());
+            assertEquals(List.of("ci"), names(index.withPermission("ns0.acct", "admin")));
+            assertEquals(List.of("user0@example.com", "user1@example.com"), names(index.withRole("admin")));
+            assertTrue(index.whoCanAccess("unknown.acct").isEmpty());
+            assertTrue(index.withPermission("ns0.acct", "owner").isEmpty());
+
+            // identities created through the client are indexed right away
+            SimpleCloudApiIdentityClient idClient = new SimpleCloudApiIdentityClient(new CloudResourceCache(), index);
+            idClient.createUser(server.getClient(), "new@example.com", Map.of("ns2.acct", "admin"), "read");
+            assertEquals(List.of("new@example.com"), names(index.withPermission("ns2.acct", "admin")));
+
+            // a changed identity loses its old grants
+            AccessIndex.Principal ci = index.withRole("read").stream().filter(p -> p.getName().equals("ci")).findFirst().orElseThrow();
+            index.putServiceAccount(ci.getId(), SimpleCloudApiIdentityClient.serviceAccountSpec("ci", Map.of("ns2.acct", "read"), "admin"));
+            assertTrue(index.withPermission("ns0.acct", "admin").isEmpty());
+            assertFalse(index.whoCanAccess("ns1.acct").containsKey(ci));
+            assertEquals(Map.of("ns2.acct", "read"), index.namespacesOf(AccessIndex.PrincipalKind.SERVICE_ACCOUNT, ci.getId()));
+            assertTrue(names(index.withRole("admin")).contains("ci"));
+
+            index.removeServiceAccount(ci.getId());
+            assertFalse(index.whoCanAccess("ns2.acct").containsKey(ci));
+            assertEquals(31, index.principalCount());
+        }
+    }
+
+    private static List<String> names(List<AccessIndex.Principal> principals) {
+        return principals.stream().map(AccessIndex.Principal::getName).sorted().collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,121 @@
+package org.example;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import com.google.protobuf.Timestamp;
+
+import io.temporal.api.cloud.cloudservice.v1.CloudServiceGrpc;
+import io.temporal.api.cloud.cloudservice.v1.CreateApiKeyRequest;
+import io.temporal.api.cloud.identity.v1.ApiKey;
+import io.temporal.api.cloud.identity.v1.ApiKeySpec;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ApiKeyRotationSchedulerTest {
+    @Test void timingWheelExpiresByTickAndCatchesUpAfterAPause() {
+        TimingWheel<String> wheel = new TimingWheel<>(Duration.ofMillis(10), 8, 0);
+        wheel.schedule("a", 25);
+        TimingWheel.Timeout<String> b = wheel.schedule("b", 25);
+        // a full turn of the wheel later, in the same bucket as "a"
+        wheel.schedule("c", 25 + 80);
+        wheel.schedule("late", -5);
+        assertEquals(List.of("late"), wheel.advance(10));
+        assertTrue(b.cancel());
+        assertFalse(b.cancel());
+        assertEquals(List.of(), wheel.advance(29));
+        assertEquals(List.of("a"), wheel.advance(30));
+        assertEquals(1, wheel.size());
+        // far past every bucket: one sweep finds it
+        assertEquals(List.of("c"), wheel.advance(10_000));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test void replacesKeysNearExpiryInRateLimitedBatches() throws Exception {
+        try (FakeCloudServer server = new FakeCloudServer(new InMemoryCloudService("acct", Duration.ZERO))) {
+            CloudServiceGrpc.CloudServiceBlockingStub stub = server.getClient().getCloudServiceStubs().blockingStub();
+            for (int i = 0; i < 20; i++) {
+                createKey(stub, "soon" + i, Duration.ofDays(1));
+            }
+            for (int i = 0; i < 5; i++) {
+                createKey(stub, "later" + i, Duration.ofDays(30));
+            }
+            createKey(stub, "next", Duration.ofDays(2).plusSeconds(1));
+
+            List<ApiKeyRotationScheduler.Rotation> rotations = Collections.synchronizedList(new ArrayList<>());
+            try (ApiKeyRotationScheduler scheduler = new ApiKeyRotationScheduler(server.getClient(), Duration.ofDays(2), Duration.ofDays(30),
+                    5, Duration.ofMillis(50), Duration.ofMillis(20), rotations::add)) {
+                // keys already past their rotation time wait until the rest have loaded
+                long start = System.nanoTime();
+                assertEquals(26, scheduler.load(7));
+                scheduler.rotateDue().join();
+                // 20 keys in batches of 5 are 4 batches, 50ms apart
+                assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() >= 150);
+                assertEquals(20, scheduler.rotatedCount());
+                assertTrue(rotations.stream().allMatch(r -> r.getOldKey().getSpec().getDisplayName().startsWith("soon")));
+                assertTrue(rotations.stream().noneMatch(r -> r.getToken().isEmpty()));
+                // the replacements are tracked in place of the old keys
+                assertEquals(26, scheduler.trackedCount());
+
+                // the tick picks up the next key on its own once it comes due
+                long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+                while (scheduler.rotatedCount() < 21 && System.nanoTime() < deadline) {
+                    Thread.sleep(20);
+                }
+                assertEquals(21, scheduler.rotatedCount());
+                assertEquals("next", rotations.get(20).getOldKey().getSpec().getDisplayName());
+            }
+            int keys = 0;
+            for (Iterator<ApiKey> it = CloudPager.apiKeys(server.getClient(), 10); it.hasNext(); it.next()) {
+                keys++;
+            }
+            assertEquals(47, keys);
+        }
+    }
+
+    @Test void loadingAgainDoesNotReplaceAKeyTwice() throws Exception {
+        InMemoryCloudService service = new InMemoryCloudService("acct", Duration.ZERO);
+        try (FakeCloudServer server = new FakeCloudServer(service)) {
+            CloudServiceGrpc.CloudServiceBlockingStub stub = server.getClient().getCloudServiceStubs().blockingStub();
+            createKey(stub, "soon", Duration.ofDays(1));
+            createKey(stub, "later", Duration.ofDays(30));
+            try (ApiKeyRotationScheduler scheduler = new ApiKeyRotationScheduler(server.getClient(), Duration.ofDays(2), Duration.ofDays(30),
+                    5, Duration.ofMillis(10), Duration.ofMillis(20), r -> { })) {
+                scheduler.load(10);
+                scheduler.rotateDue().join();
+                assertEquals(1, scheduler.rotatedCount());
+                // the old key is still active and still due, but its replacement is listed too
+                scheduler.load(10);
+                scheduler.rotateDue().join();
+                // the first rotateDue already advanced past this tick, so the old key comes due on the next one
+                long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+                while (scheduler.supersededCount() == 0 && System.nanoTime() < deadline) {
+                    Thread.sleep(20);
+                }
+                scheduler.rotateDue().join();
+                assertEquals(1, scheduler.rotatedCount());
+                assertEquals(1, scheduler.supersededCount());
+            }
+            // a scheduler that starts fresh only learns about the replacement from the listing
+            try (ApiKeyRotationScheduler scheduler = new ApiKeyRotationScheduler(server.getClient(), Duration.ofDays(2), Duration.ofDays(30),
+                    5, Duration.ofMillis(10), Duration.ofMillis(20), r -> { })) {
+                scheduler.load(1);
+                scheduler.rotateDue().join();
+                assertEquals(0, scheduler.rotatedCount());
+                assertEquals(1, scheduler.supersededCount());
+            }
+            assertEquals(3, service.apiKeyCount());
+        }
+    }
+
+    private static void createKey(CloudServiceGrpc.CloudServiceBlockingStub stub, String name, Duration expiresIn) {
+        Instant expiry = Instant.now().plus(expiresIn);
+        stub.createApiKey(CreateApiKeyRequest.newBuilder().setSpec(ApiKeySpec.newBuilder()
+            .setOwnerId("sa-1").setOwnerType("service-account").setDisplayName(name)
+            .setExpiryTime(Timestamp.newBuilder().setSeconds(expiry.getEpochSecond()).setNanos(expiry.getNano()))).build());
+    }
+}
@@ -0,0 +1,75 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncLimiterTest {
+    @Test void startsQueuedCallsInOrderWithinTheLimit() {
+        AsyncLimiter limiter = new AsyncLimiter(2);
+        List<CompletableFuture<Integer>> pending = new ArrayList<>();
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            CompletableFuture<Integer> call = new CompletableFuture<>();
+            pending.add(call);
+            results.add(limiter.submit(() -> call));
+        }
+        assertEquals(2, limiter.inFlight());
+        assertEquals(3, limiter.queued());
+
+        pending.get(1).complete(1);
+        assertEquals(1, results.get(1).join());
+        assertEquals(2, limiter.inFlight());
+        assertEquals(2, limiter.queued());
+
+        pending.get(0).completeExceptionally(new IllegalStateException("boom"));
+        assertTrue(results.get(0).isCompletedExceptionally());
+        for (int i = 2; i < 5; i++) {
+            pending.get(i).complete(i);
+        }
+        for (int i = 2; i < 5; i++) {
+            assertEquals(i, results.get(i).join());
+        }
+        assertEquals(0, limiter.inFlight());
+        assertEquals(0, limiter.queued());
+    }
+
+    @Test void callsThatCompleteAtOnceDoNotNest() {
+        AsyncLimiter limiter = new AsyncLimiter(1);
+        CompletableFuture<Integer> first = new CompletableFuture<>();
+        limiter.submit(() -> first);
+        // enough calls that starting each inside the previous one's completion would overflow the stack
+        List<Integer> started = new ArrayList<>();
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            int n = i;
+            results.add(limiter.submit(() -> {
+                started.add(n);
+                return CompletableFuture.completedFuture(n);
+            }));
+        }
+        assertEquals(100_000, limiter.queued());
+
+        first.complete(-1);
+        assertEquals(100_000, started.size());
+        for (int i = 0; i < started.size(); i++) {
+            assertEquals(i, started.get(i));
+        }
+        assertTrue(results.stream().allMatch(CompletableFuture::isDone));
+        assertEquals(0, limiter.inFlight());
+        assertEquals(0, limiter.queued());
+    }
+
+    @Test void aCallThatThrowsReturnsItsPermit() {
+        AsyncLimiter limiter = new AsyncLimiter(1);
+        CompletableFuture<Object> failed = limiter.submit(() -> {
+            throw new IllegalArgumentException("bad request");
+        });
+        assertTrue(failed.isCompletedExceptionally());
+        assertEquals(0, limiter.inFlight());
+        assertEquals("ok", limiter.submit(() -> CompletableFuture.completedFuture("ok")).join());
+    }
+}
@@ -0,0 +1,53 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import io.temporal.api.cloud.cloudservice.v1.CloudServiceGrpc;
+import io.temporal.api.cloud.cloudservice.v1.CreateUserRequest;
+import io.temporal.api.cloud.operation.v1.AsyncOperation;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncOperationTrackerTest {
+    @Test void completesEveryPipelinedCreateOnceItsOperationIsFulfilled() {
+        try (FakeCloudServer server = new FakeCloudServer(new InMemoryCloudService("acct", Duration.ZERO, Duration.ofMillis(200)));
+             AsyncOperationTracker tracker = new AsyncOperationTracker(8, Duration.ofMillis(20), Duration.ofMillis(500), Duration.ofSeconds(10))) {
+            CloudServiceGrpc.CloudServiceBlockingStub stub = server.getClient().getCloudServiceStubs().blockingStub();
+            List<CompletableFuture<AsyncOperation>> futures = new ArrayList<>();
+            String firstId = null;
+            for (int i = 0; i < 50; i++) {
+                AsyncOperation started = stub.createUser(CreateUserRequest.newBuilder()
+                    .setSpec(SimpleCloudApiIdentityClient.userSpec("user" + i + "@example.com", Map.of(), "read")).build()).getAsyncOperation();
+                assertNotEquals("fulfilled", started.getState());
+                futures.add(tracker.track(server.getClient(), started));
+                firstId = firstId == null ? started.getId() : firstId;
+            }
+            // the same operation is tracked once
+            assertSame(futures.get(0), tracker.track(server.getClient(), firstId));
+
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+            futures.forEach(f -> assertEquals("fulfilled", f.join().getState()));
+            assertEquals(0, tracker.pendingCount());
+
+            // an already finished operation completes right away, one without an id fails
+            AsyncOperation done = futures.get(0).join();
+            assertSame(done, tracker.track(server.getClient(), done).join());
+            assertThrows(CompletionException.class, () -> tracker.track(server.getClient(), AsyncOperation.newBuilder().build()).join());
+        }
+    }
+
+    @Test void identityClientReturnsAFutureForItsCreates() {
+        try (FakeCloudServer server = new FakeCloudServer(new InMemoryCloudService("acct", Duration.ZERO, Duration.ofMillis(100)));
+             SimpleCloudApiIdentityClient idClient = new SimpleCloudApiIdentityClient()) {
+            CompletableFuture<AsyncOperation> user = idClient.createUser(server.getClient(), "a@example.com", Map.of(), "read");
+            CompletableFuture<AsyncOperation> sa = idClient.createServiceAccount(server.getClient(), "ci", Map.of(), "read");
+            assertEquals("create-user", user.join().getOperationType());
+            assertEquals("create-service-account", sa.join().getOperationType());
+        }
+    }
+}
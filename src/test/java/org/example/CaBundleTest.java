@@ -0,0 +1,46 @@
+package org.example;
+
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.Base64;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CaBundleTest {
+    @Test void parsesDedupsAndSerializesIncrementally() throws Exception {
+        try (CaCertFactory factory = new CaCertFactory(CaCertFactory.KeyAlgorithm.EC_P256, 2)) {
+            X509Certificate a = factory.issue("a");
+            X509Certificate b = factory.issue("b");
+            X509Certificate c = factory.issue("c");
+            String pemA = CaCertFactory.toBase64Pem(a);
+            String pemB = CaCertFactory.toBase64Pem(b);
+
+            // a bundle in the original concatenated form, with a duplicate
+            String concatenated = Base64.getEncoder().encodeToString(
+                (new String(Base64.getDecoder().decode(pemA)) + new String(Base64.getDecoder().decode(pemB))
+                    + new String(Base64.getDecoder().decode(pemA))).getBytes());
+            CaBundle bundle = CaBundle.parse(concatenated);
+            assertEquals(2, bundle.size());
+            assertFalse(bundle.add(a));
+            assertTrue(bundle.contains(CaBundle.fingerprint(b)));
+            assertEquals(1, bundle.bySubject(b.getSubjectX500Principal().getName()).size());
+
+            // appending must produce exactly what encoding the whole bundle from scratch does
+            assertTrue(bundle.add(c));
+            String expected = Base64.getEncoder().encodeToString((new String(Base64.getDecoder().decode(pemA))
+                + new String(Base64.getDecoder().decode(pemB))
+                + new String(Base64.getDecoder().decode(CaCertFactory.toBase64Pem(c)))).getBytes());
+            assertEquals(expected, bundle.toBase64());
+            CaBundle reparsed = CaBundle.parse(bundle.toBase64());
+            assertEquals(3, reparsed.size());
+            assertTrue(reparsed.contains(c));
+
+            assertTrue(bundle.remove(CaBundle.fingerprint(a)));
+            assertEquals(2, CaBundle.parse(bundle.toBase64()).size());
+            assertEquals(0, bundle.removeExpired(Instant.now()));
+            assertEquals(2, bundle.removeExpired(Instant.now().plusSeconds(400L * 24 * 3600)));
+            assertEquals("", bundle.toBase64());
+        }
+    }
+}
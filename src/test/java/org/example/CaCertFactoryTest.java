@@ -0,0 +1,39 @@
+package org.example;
+
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CaCertFactoryTest {
+    @Test void issuesSelfSignedCaWithPooledEcKeys() throws Exception {
+        try (CaCertFactory factory = new CaCertFactory(CaCertFactory.KeyAlgorithm.EC_P256, 2)) {
+            X509Certificate cert = factory.issue("testCA");
+            assertTrue(cert.getSubjectX500Principal().getName().contains("CN=testCA"));
+            assertTrue(cert.getBasicConstraints() >= 0, "certificate should be a CA");
+            cert.verify(cert.getPublicKey());
+        }
+    }
+
+    @Test void issuesBase64PemBundlesInParallel() {
+        try (CaCertFactory factory = new CaCertFactory(CaCertFactory.KeyAlgorithm.EC_P256, 4)) {
+            List<String> pems = factory.issueBase64Pems(List.of("a", "b", "c"));
+            assertEquals(3, pems.size());
+            for (String pem : pems) {
+                assertTrue(new String(Base64.getDecoder().decode(pem)).startsWith("-----BEGIN CERTIFICATE-----"));
+            }
+        }
+    }
+
+    @Test void withoutAPoolEveryCaGetsAFreshKeyPair() throws Exception {
+        try (CaCertFactory factory = new CaCertFactory(CaCertFactory.KeyAlgorithm.EC_P256, 0)) {
+            X509Certificate first = factory.issue("a");
+            X509Certificate second = factory.issue("b");
+            assertEquals(0, factory.available());
+            assertNotEquals(first.getPublicKey(), second.getPublicKey());
+        }
+        assertThrows(IllegalArgumentException.class, () -> new CaCertFactory(CaCertFactory.KeyAlgorithm.EC_P256, -1));
+    }
+}
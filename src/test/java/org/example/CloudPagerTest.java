@@ -0,0 +1,122 @@
+package org.example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.protobuf.util.JsonFormat;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.temporal.api.cloud.cloudservice.v1.CreateNamespaceRequest;
+import io.temporal.api.cloud.namespace.v1.Namespace;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CloudPagerTest {
+    @Test void prefetchesTheNextPageBeforeHandingOutTheCurrentOne() {
+        Pages pages = new Pages();
+        CloudPager<String> pager = new CloudPager<>(pages);
+        // the first page is requested before anyone asks for an item
+        assertEquals(List.of(""), pages.requested);
+
+        pages.complete("", List.of("a", "b"), "t1");
+        assertTrue(pager.hasNext());
+        assertEquals(List.of("", "t1"), pages.requested);
+        assertEquals("a", pager.next());
+        assertEquals("b", pager.next());
+        // nothing more is requested while page t1 is still in flight
+        assertEquals(List.of("", "t1"), pages.requested);
+
+        // an empty page in the middle is skipped over
+        pages.complete("t1", List.of(), "t2");
+        pages.complete("t2", List.of("c"), "");
+        assertEquals("c", pager.next());
+        assertFalse(pager.hasNext());
+        assertEquals(List.of("", "t1", "t2"), pages.requested);
+        assertThrows(NoSuchElementException.class, pager::next);
+    }
+
+    @Test void closingTheStreamCancelsThePrefetch() {
+        Pages pages = new Pages();
+        CloudPager<String> pager = new CloudPager<>(pages);
+        pages.complete("", List.of("a", "b"), "t1");
+        try (Stream<String> stream = pager.stream()) {
+            assertEquals(List.of("a"), stream.limit(1).collect(Collectors.toList()));
+        }
+        assertTrue(pages.futures.get("t1").isCancelled());
+        assertFalse(pager.hasNext());
+    }
+
+    @Test void collectsAsyncAndSurfacesErrorsLikeTheBlockingStub() {
+        Pages pages = new Pages();
+        CloudPager<String> pager = new CloudPager<>(pages);
+        pages.complete("", List.of("a", "b"), "t1");
+        assertEquals("a", pager.next());
+        CompletableFuture<List<String>> all = pager.toListAsync();
+        assertFalse(all.isDone());
+        pages.complete("t1", List.of("c"), "");
+        assertEquals(List.of("b", "c"), all.join());
+
+        Pages failing = new Pages();
+        CloudPager<String> failingPager = new CloudPager<>(failing);
+        failing.futures.get("").setException(Status.PERMISSION_DENIED.asRuntimeException());
+        StatusRuntimeException e = assertThrows(StatusRuntimeException.class, failingPager::hasNext);
+        assertEquals(Status.Code.PERMISSION_DENIED, e.getStatus().getCode());
+    }
+
+    @Test void printsOneJsonNamespacePerLine() throws Exception {
+        try (FakeCloudServer server = new FakeCloudServer(new InMemoryCloudService("acct", Duration.ZERO));
+             SimpleCloudApiNamespaceClient nsClient = new SimpleCloudApiNamespaceClient()) {
+            for (int i = 0; i < 8; i++) {
+                server.getClient().getCloudServiceStubs().blockingStub().createNamespace(CreateNamespaceRequest.newBuilder()
+                    .setSpec(SimpleCloudApiNamespaceClient.apiKeyNamespaceSpec("ns-" + i)).build());
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            nsClient.printNamespacesAsNdjson(server.getClient(), 3, new PrintStream(bytes, true, StandardCharsets.UTF_8));
+
+            List<String> names = new ArrayList<>();
+            for (String line : bytes.toString(StandardCharsets.UTF_8).split("\n")) {
+                assertFalse(line.isBlank());
+                Namespace.Builder ns = Namespace.newBuilder();
+                JsonFormat.parser().merge(line, ns);
+                names.add(ns.getNamespace());
+            }
+            assertEquals(8, names.size());
+            for (int i = 0; i < 8; i++) {
+                assertTrue(names.contains("ns-" + i + ".acct"));
+            }
+        }
+    }
+
+    // pages completed by hand, keyed by the page token they were requested with
+    private static final class Pages implements CloudPager.PageFetcher<String> {
+        final List<String> requested = new ArrayList<>();
+        final Map<String, SettableFuture<CloudPager.Page<String>>> futures = new HashMap<>();
+
+        @Override
+        public SettableFuture<CloudPager.Page<String>> fetch(String pageToken) {
+            requested.add(pageToken);
+            return future(pageToken);
+        }
+
+        // a page can be completed before the pager asks for it
+        void complete(String pageToken, List<String> items, String nextPageToken) {
+            future(pageToken).set(new CloudPager.Page<>(items, nextPageToken));
+        }
+
+        private SettableFuture<CloudPager.Page<String>> future(String pageToken) {
+            return futures.computeIfAbsent(pageToken, t -> SettableFuture.create());
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import io.temporal.api.cloud.cloudservice.v1.CloudServiceGrpc;
+import io.temporal.api.cloud.cloudservice.v1.CreateNamespaceRequest;
+import io.temporal.api.cloud.cloudservice.v1.CreateUserRequest;
+import io.temporal.api.cloud.identity.v1.Access;
+import io.temporal.api.cloud.identity.v1.AccountAccess;
+import io.temporal.api.cloud.identity.v1.User;
+import io.temporal.api.cloud.identity.v1.UserSpec;
+import io.temporal.api.cloud.namespace.v1.Namespace;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CloudResourceCacheTest {
+    @Test void servesReadsUntilTheTtlRunsOut() throws Exception {
+        CloudRpcMetrics metrics = new CloudRpcMetrics();
+        try (FakeCloudServer server = new FakeCloudServer(new InMemoryCloudService("acct", Duration.ZERO), List.of(new MetricsClientInterceptor(metrics)))) {
+            createNamespace(server, "ns");
+            CloudResourceCache cache = new CloudResourceCache(100, Duration.ofMillis(200), Duration.ofMillis(200));
+            Namespace first = cache.getNamespace(server.getClient(), "ns.acct").orElseThrow();
+            assertSame(first, cache.getNamespace(server.getClient(), "ns.acct").orElseThrow());
+            assertEquals(1, metrics.method("GetNamespace").getCount());
+
+            Thread.sleep(300);
+            assertEquals(first, cache.getNamespace(server.getClient(), "ns.acct").orElseThrow());
+            assertEquals(2, metrics.method("GetNamespace").getCount());
+        }
+    }
+
+    @Test void cachesNotFoundForTheShorterNegativeTtl() throws Exception {
+        CloudRpcMetrics metrics = new CloudRpcMetrics();
+        try (FakeCloudServer server = new FakeCloudServer(new InMemoryCloudService("acct", Duration.ZERO), List.of(new MetricsClientInterceptor(metrics)))) {
+            CloudResourceCache cache = new CloudResourceCache(100, Duration.ofMinutes(5), Duration.ofMillis(200));
+            assertFalse(cache.namespaceExists(server.getClient(), "ns.acct"));
+            assertFalse(cache.namespaceExists(server.getClient(), "ns.acct"));
+            assertEquals(1, metrics.method("GetNamespace").getCount());
+
+            // created behind the cache's back: still absent until the negative entry expires
+            createNamespace(server, "ns");
+            assertFalse(cache.namespaceExists(server.getClient(), "ns.acct"));
+            Thread.sleep(300);
+            assertTrue(cache.namespaceExists(server.getClient(), "ns.acct"));
+            assertEquals(2, metrics.method("GetNamespace").getCount());
+        }
+    }
+
+    @Test void invalidationForcesTheNextRead() {
+        CloudRpcMetrics metrics = new CloudRpcMetrics();
+        try (FakeCloudServer server = new FakeCloudServer(new InMemoryCloudService("acct", Duration.ZERO), List.of(new MetricsClientInterceptor(metrics)))) {
+            CloudResourceCache cache = new CloudResourceCache();
+            assertFalse(cache.namespaceExists(server.getClient(), "ns.acct"));
+            createNamespace(server, "ns");
+            cache.invalidateNamespace("ns.acct");
+            assertTrue(cache.namespaceExists(server.getClient(), "ns.acct"));
+            assertEquals(2, metrics.method("GetNamespace").getCount());
+        }
+    }
+
+    @Test void putKeepsTheEntryWhenTheVersionIsUnchanged() {
+        CloudResourceCache cache = new CloudResourceCache();
+        Namespace v1 = Namespace.newBuilder().setNamespace("ns.acct").setResourceVersion("1").build();
+        cache.putNamespace(v1);
+        // no client is needed while the entry is live
+        assertSame(v1, cache.getNamespace(null, "ns.acct").orElseThrow());
+
+        cache.putNamespace(v1.toBuilder().build());
+        assertSame(v1, cache.getNamespace(null, "ns.acct").orElseThrow());
+
+        Namespace v2 = v1.toBuilder().setResourceVersion("2").build();
+        cache.putNamespace(v2);
+        assertSame(v2, cache.getNamespace(null, "ns.acct").orElseThrow());
+    }
+
+    @Test void looksUpUsersByEmailIgnoringCaseAndForgetsTheEmailOnInvalidate() {
+        CloudRpcMetrics metrics = new CloudRpcMetrics();
+        try (FakeCloudServer server = new FakeCloudServer(new InMemoryCloudService("acct", Duration.ZERO), List.of(new MetricsClientInterceptor(metrics)))) {
+            CloudServiceGrpc.CloudServiceBlockingStub stub = server.getClient().getCloudServiceStubs().blockingStub();
+            String userId = stub.createUser(CreateUserRequest.newBuilder().setSpec(UserSpec.newBuilder()
+                .setEmail("Alice@Example.com")
+                .setAccess(Access.newBuilder().setAccountAccess(AccountAccess.newBuilder().setRole("read")))).build()).getUserId();
+
+            CloudResourceCache cache = new CloudResourceCache();
+            Optional<User> found = cache.getUserByEmail(server.getClient(), "alice@example.com");
+            assertEquals(userId, found.orElseThrow().getId());
+            assertEquals(found, cache.getUserByEmail(server.getClient(), "ALICE@example.com"));
+            assertEquals(1, metrics.method("GetUsers").getCount());
+
+            cache.invalidateUser(userId);
+            assertEquals(found, cache.getUserByEmail(server.getClient(), "alice@example.com"));
+            assertEquals(2, metrics.method("GetUsers").getCount());
+        }
+    }
+
+    private static void createNamespace(FakeCloudServer server, String name) {
+        server.getClient().getCloudServiceStubs().blockingStub().createNamespace(CreateNamespaceRequest.newBuilder()
+            .setSpec(SimpleCloudApiNamespaceClient.apiKeyNamespaceSpec(name)).build());
+    }
+}
@@ -0,0 +1,28 @@
+package org.example;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CloudRpcMetricsTest {
+    @Test void recordsLatencyAndStatusPerMethod() {
+        CloudRpcMetrics metrics = new CloudRpcMetrics();
+        try (FakeCloudServer server = new FakeCloudServer(new InMemoryCloudService(), List.of(new MetricsClientInterceptor(metrics)))) {
+            SimpleCloudApiNamespaceClient nsClient = new SimpleCloudApiNamespaceClient();
+            nsClient.createAPIKeyNamespace(server.getClient(), "metrics", "metrics.ksfop");
+
+            CloudRpcMetrics.MethodMetrics create = metrics.method("CreateNamespace");
+            assertEquals(1, create.getCount());
+            assertEquals(0, create.getInFlight());
+            assertTrue(create.getRequestBytes() > 0);
+            assertTrue(create.getResponseBytes() > 0);
+            // the existence check misses, then the poller sees the namespace
+            assertEquals(1L, metrics.method("GetNamespace").getStatusCounts().get("NOT_FOUND"));
+
+            String text = metrics.toPrometheusText();
+            assertTrue(text.contains("cloud_rpc_latency_seconds_count{method=\"CreateNamespace\"} 1"));
+            assertTrue(text.contains("cloud_rpc_completed_total{method=\"GetNamespace\",code=\"NOT_FOUND\"} 1"));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import io.temporal.api.cloud.cloudservice.v1.GetNamespacesRequest;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandRunnerTest {
+    @Test void runsIndependentCommandsTogetherAndKeepsDependentOnesInOrder() {
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        List<CommandRunner.Command> commands = List.of(
+            command("printUsers", Set.of("user/*"), Set.of(), events),
+            command("printServiceAccounts", Set.of("service-account/*"), Set.of(), events),
+            command("createMTLSNamespace", Set.of(), Set.of("namespace/mtls.acct"), events),
+            command("rotateNamespaceMTLSCert", Set.of(), Set.of("namespace/mtls.acct"), events),
+            command("printNamespaces", Set.of("namespace/*"), Set.of(), events));
+
+        CommandRunner.Report report = new CommandRunner(true).run(commands);
+
+        // create, rotate and print namespaces are a chain of three; the identity listings overlap with it
+        assertTrue(report.getWallClock().toMillis() < 3 * 150 + 140, report.toString());
+        assertTrue(report.getSummed().toMillis() >= 5 * 150, report.toString());
+        assertTrue(events.indexOf("end createMTLSNamespace") < events.indexOf("start rotateNamespaceMTLSCert"));
+        assertTrue(events.indexOf("end rotateNamespaceMTLSCert") < events.indexOf("start printNamespaces"));
+        assertEquals(0, report.failures());
+    }
+
+    @Test void prefixesOutputWithTheCommandName() {
+        PrintStream original = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured, true, StandardCharsets.UTF_8));
+        try {
+            new CommandRunner(true).run(List.of(
+                new CommandRunner.Command("a", Set.of(), Set.of(), () -> System.out.println("from a")),
+                new CommandRunner.Command("b", Set.of(), Set.of(), () -> { throw new IllegalStateException("boom"); })));
+        } finally {
+            System.setOut(original);
+        }
+        String output = captured.toString(StandardCharsets.UTF_8);
+        assertTrue(output.contains("[a] from a" + System.lineSeparator()), output);
+        // log lines are tagged by the logging pattern and not tagged a second time
+        assertTrue(output.contains("CommandRunner [b] - Command b failed: boom"), output);
+        assertFalse(output.contains("[b] [b]") || output.startsWith("[b]") || output.contains("\n[b] "), output);
+    }
+
+    @Test void tagsPrintedLinesThatLookLikeLogLinesAndFlushesTheLastLine() {
+        PrintStream original = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured, true, StandardCharsets.UTF_8));
+        try {
+            new CommandRunner(true).run(List.of(
+                new CommandRunner.Command("a", Set.of(), Set.of(), () -> {
+                    System.out.println("quoting [a] is not a log line");
+                    System.out.print("no newline");
+                })));
+        } finally {
+            System.setOut(original);
+        }
+        String output = captured.toString(StandardCharsets.UTF_8);
+        assertTrue(output.contains("[a] quoting [a] is not a log line"), output);
+        assertTrue(output.contains("[a] no newline"), output);
+    }
+
+    @Test void carriesTheCommandToTheThreadThatCompletesACall() {
+        // the latency makes sure the call is still in flight when the callback is added
+        try (FaultInjectionInterceptor latency = new FaultInjectionInterceptor(FaultInjectionInterceptor.LatencyModel.fixed(Duration.ofMillis(50)));
+             FakeCloudServer server = new FakeCloudServer(new InMemoryCloudService(), List.of(new MdcClientInterceptor()), latency)) {
+            List<String> seen = Collections.synchronizedList(new ArrayList<>());
+            new CommandRunner(true).run(List.of(
+                new CommandRunner.Command("list", Set.of(), Set.of(), () -> CloudFutures.toCompletable(server.getClient()
+                        .getCloudServiceStubs().futureStub().getNamespaces(GetNamespacesRequest.getDefaultInstance()))
+                    .thenRun(() -> seen.add(Thread.currentThread().getName() + " " + MDC.get(CommandRunner.MDC_KEY)))
+                    .join())));
+            assertEquals(1, seen.size());
+            assertTrue(seen.get(0).endsWith(" list"), seen.toString());
+            assertFalse(seen.get(0).startsWith("command-"), seen.toString());
+            assertNull(MDC.get(CommandRunner.MDC_KEY));
+        }
+    }
+
+    private static CommandRunner.Command command(String name, Set<String> reads, Set<String> writes, List<String> events) {
+        return new CommandRunner.Command(name, reads, writes, () -> {
+            events.add("start " + name);
+            try {
+                Thread.sleep(150);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            events.add("end " + name);
+        });
+    }
+}
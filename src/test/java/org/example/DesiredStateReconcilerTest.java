@@ -0,0 +1,126 @@
+package org.example;
+
+import java.io.StringReader;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.grpc.stub.StreamObserver;
+import io.temporal.api.cloud.cloudservice.v1.CloudServiceGrpc;
+import io.temporal.api.cloud.cloudservice.v1.CreateApiKeyRequest;
+import io.temporal.api.cloud.cloudservice.v1.CreateApiKeyResponse;
+import io.temporal.api.cloud.cloudservice.v1.CreateServiceAccountRequest;
+import io.temporal.api.cloud.cloudservice.v1.CreateServiceAccountResponse;
+import io.temporal.api.cloud.cloudservice.v1.CreateUserRequest;
+import io.temporal.api.cloud.cloudservice.v1.GetApiKeysRequest;
+import io.temporal.api.cloud.cloudservice.v1.GetServiceAccountsRequest;
+import io.temporal.api.cloud.cloudservice.v1.GetUsersRequest;
+import io.temporal.api.cloud.identity.v1.AccountAccess;
+import io.temporal.api.cloud.identity.v1.Access;
+import io.temporal.api.cloud.identity.v1.UserSpec;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class DesiredStateReconcilerTest {
+    private static final String DESIRED = "{"
+        + "\"namespaces\":[{\"namespace\":\"ns1.acct\",\"spec\":{\"regions\":[\"aws-us-east-1\"],\"retentionDays\":30,\"apiKeyAuth\":{\"enabled\":true}}},"
+        + "               {\"namespace\":\"ns2.acct\",\"spec\":{\"regions\":[\"aws-us-east-1\"],\"retentionDays\":7,\"apiKeyAuth\":{\"enabled\":true}}}],"
+        + "\"users\":[{\"email\":\"a@example.com\",\"access\":{\"accountAccess\":{\"role\":\"developer\"},\"namespaceAccesses\":{\"ns1.acct\":{\"permission\":\"admin\"}}}},"
+        + "          {\"email\":\"B@example.com\",\"access\":{\"accountAccess\":{\"role\":\"developer\"}}}],"
+        + "\"serviceAccounts\":[{\"name\":\"ci\",\"access\":{\"accountAccess\":{\"role\":\"read\"},\"namespaceAccesses\":{\"ns2.acct\":{\"permission\":\"write\"}}}}],"
+        + "\"apiKeys\":[{\"ownerServiceAccount\":\"ci\",\"displayName\":\"ci-key\",\"expiryTime\":\"2030-01-01T00:00:00Z\"}]"
+        + "}";
+
+    @Test void createsInDependencyOrderAndOnlyReadsWhenNothingChanged() throws Exception {
+        CloudRpcMetrics metrics = new CloudRpcMetrics();
+        try (FakeCloudServer server = new FakeCloudServer(new InMemoryCloudService("acct", Duration.ZERO), List.of(new MetricsClientInterceptor(metrics)));
+             DesiredStateReconciler reconciler = new DesiredStateReconciler(server.getClient(), 4,
+                 new NamespaceStatusPoller(1, Duration.ofMillis(10), Duration.ofMillis(50), Duration.ofSeconds(10)), new CloudResourceCache())) {
+            CloudServiceGrpc.CloudServiceBlockingStub stub = server.getClient().getCloudServiceStubs().blockingStub();
+            // b@example.com already exists with a different role, so it is updated rather than created
+            stub.createUser(CreateUserRequest.newBuilder().setSpec(UserSpec.newBuilder()
+                .setEmail("b@example.com")
+                .setAccess(Access.newBuilder().setAccountAccess(AccountAccess.newBuilder().setRole("read")))).build());
+
+            DesiredStateReconciler.DesiredState desired = DesiredStateReconciler.DesiredState.parse(new StringReader(DESIRED));
+            DesiredStateReconciler.Plan plan = reconciler.plan(desired).join();
+            assertEquals(5, plan.count(DesiredStateReconciler.Action.CREATE));
+            assertEquals(1, plan.count(DesiredStateReconciler.Action.UPDATE));
+            DesiredStateReconciler.Operation userCreate = plan.getOperations().stream()
+                .filter(o -> o.getKey().equals("a@example.com")).findFirst().orElseThrow();
+            assertEquals("ns1.acct", userCreate.getDependencies().get(0).getKey());
+            DesiredStateReconciler.Operation userUpdate = plan.getOperations().stream()
+                .filter(o -> o.getKey().equals("b@example.com")).findFirst().orElseThrow();
+            assertEquals(List.of("access"), userUpdate.getChangedFields());
+
+            DesiredStateReconciler.Summary summary = reconciler.apply(plan).join();
+            assertEquals(6, summary.count(DesiredStateReconciler.Outcome.APPLIED));
+            assertEquals(2, server.getService().namespaceCount());
+            String serviceAccountId = stub.getServiceAccounts(GetServiceAccountsRequest.getDefaultInstance()).getServiceAccount(0).getId();
+            assertEquals(serviceAccountId, stub.getApiKeys(GetApiKeysRequest.getDefaultInstance()).getApiKeys(0).getSpec().getOwnerId());
+            assertEquals("developer", stub.getUsers(GetUsersRequest.newBuilder().setEmail("b@example.com").build())
+                .getUsers(0).getSpec().getAccess().getAccountAccess().getRole());
+
+            // the account now matches the file, so a second run plans nothing and sends nothing but reads
+            Map<String, Long> before = counts(metrics);
+            DesiredStateReconciler.Summary again = reconciler.reconcile(desired).join();
+            assertTrue(again.getPlan().isEmpty(), again.getPlan().toString());
+            counts(metrics).forEach((method, count) -> {
+                if (count > before.getOrDefault(method, 0L)) {
+                    assertTrue(method.startsWith("Get"), method + " was called on an unchanged account");
+                }
+            });
+        }
+    }
+
+    @Test void apiKeysWaitUntilTheirServiceAccountIsCreated() throws Exception {
+        String desiredJson = "{\"serviceAccounts\":[{\"name\":\"ci\",\"access\":{\"accountAccess\":{\"role\":\"read\"}}}],"
+            + "\"apiKeys\":[{\"ownerServiceAccount\":\"ci\",\"displayName\":\"ci-key\",\"expiryTime\":\"2030-01-01T00:00:00Z\"}]}";
+        List<String> operationIds = Collections.synchronizedList(new ArrayList<>());
+        AtomicLong serviceAccountCreated = new AtomicLong();
+        AtomicLong apiKeyCreated = new AtomicLong();
+        // every create takes 200ms to finish after the RPC has returned
+        InMemoryCloudService service = new InMemoryCloudService("acct", Duration.ZERO, Duration.ofMillis(200)) {
+            @Override
+            public void createServiceAccount(CreateServiceAccountRequest request, StreamObserver<CreateServiceAccountResponse> responseObserver) {
+                serviceAccountCreated.set(System.nanoTime());
+                operationIds.add(request.getAsyncOperationId());
+                super.createServiceAccount(request, responseObserver);
+            }
+
+            @Override
+            public void createApiKey(CreateApiKeyRequest request, StreamObserver<CreateApiKeyResponse> responseObserver) {
+                apiKeyCreated.set(System.nanoTime());
+                operationIds.add(request.getAsyncOperationId());
+                super.createApiKey(request, responseObserver);
+            }
+        };
+        try (FakeCloudServer server = new FakeCloudServer(service);
+             DesiredStateReconciler reconciler = new DesiredStateReconciler(server.getClient(), 4)) {
+            DesiredStateReconciler.Summary summary = reconciler.reconcile(
+                DesiredStateReconciler.DesiredState.parse(new StringReader(desiredJson))).join();
+            assertEquals(2, summary.count(DesiredStateReconciler.Outcome.APPLIED));
+            assertTrue(apiKeyCreated.get() - serviceAccountCreated.get() >= Duration.ofMillis(200).toNanos());
+            assertEquals(2, operationIds.size());
+            assertTrue(operationIds.stream().noneMatch(String::isEmpty), operationIds.toString());
+        }
+    }
+
+    @Test void unchangedFieldsAreLeftAlone() {
+        UserSpec current = UserSpec.newBuilder().setEmail("a@example.com")
+            .setAccess(Access.newBuilder().setAccountAccess(AccountAccess.newBuilder().setRole("read"))).build();
+        UserSpec desired = UserSpec.newBuilder().setEmail("a@example.com").build();
+        assertEquals(current, ProtoDiff.overlay(current, desired));
+        assertTrue(ProtoDiff.changedFields(current, ProtoDiff.overlay(current, desired)).isEmpty());
+    }
+
+    private static Map<String, Long> counts(CloudRpcMetrics metrics) {
+        Map<String, Long> counts = new HashMap<>();
+        metrics.methods().forEach(m -> counts.put(m.getMethod(), m.getCount()));
+        return counts;
+    }
+}
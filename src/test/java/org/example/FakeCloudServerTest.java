@@ -0,0 +1,64 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.temporal.api.cloud.cloudservice.v1.CloudServiceGrpc;
+import io.temporal.api.cloud.cloudservice.v1.CreateUserRequest;
+import io.temporal.api.cloud.cloudservice.v1.CreateUserResponse;
+import io.temporal.api.cloud.cloudservice.v1.GetAsyncOperationRequest;
+import io.temporal.api.cloud.cloudservice.v1.GetNamespacesRequest;
+import io.temporal.api.cloud.cloudservice.v1.GetUserRequest;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class FakeCloudServerTest {
+    @Test void createsAndPagesThroughNamespaces() {
+        try (FakeCloudServer server = new FakeCloudServer(new InMemoryCloudService("acct", Duration.ofMillis(50)))) {
+            SimpleCloudApiNamespaceClient nsClient = new SimpleCloudApiNamespaceClient();
+            Map<String, String> namespaces = new LinkedHashMap<>();
+            for (int i = 0; i < 25; i++) {
+                namespaces.put("ns-" + i + ".acct", "ns-" + i);
+            }
+
+            BulkNamespaceProvisioner.Summary summary = nsClient.bulkCreateAPIKeyNamespaces(server.getClient(), namespaces, 4);
+            assertEquals(25, summary.count(BulkNamespaceProvisioner.Outcome.CREATED));
+
+            // a small page size forces the pager to follow next_page_token several times
+            assertEquals(namespaces.keySet(), nsClient.streamNamespaces(server.getClient(), 7)
+                .map(ns -> ns.getNamespace())
+                .collect(Collectors.toSet()));
+            assertTrue(nsClient.streamNamespaces(server.getClient(), 7).allMatch(ns -> ns.getState().equals("active")));
+        }
+    }
+
+    @Test void userCreateMovesThroughAsyncStates() throws InterruptedException {
+        try (FakeCloudServer server = new FakeCloudServer(new InMemoryCloudService("acct", Duration.ZERO, Duration.ofMillis(200)))) {
+            CloudServiceGrpc.CloudServiceBlockingStub stub = server.getClient().getCloudServiceStubs().blockingStub();
+            CreateUserResponse created = stub.createUser(CreateUserRequest.newBuilder()
+                .setSpec(SimpleCloudApiIdentityClient.userSpec("a@example.com", Map.of(), "developer"))
+                .build());
+            assertEquals("pending", created.getAsyncOperation().getState());
+            assertEquals("activating", stub.getUser(GetUserRequest.newBuilder().setUserId(created.getUserId()).build()).getUser().getState());
+
+            Thread.sleep(250);
+            GetAsyncOperationRequest poll = GetAsyncOperationRequest.newBuilder().setAsyncOperationId(created.getAsyncOperation().getId()).build();
+            assertEquals("fulfilled", stub.getAsyncOperation(poll).getAsyncOperation().getState());
+            assertEquals("active", stub.getUser(GetUserRequest.newBuilder().setUserId(created.getUserId()).build()).getUser().getState());
+        }
+    }
+
+    @Test void injectsFaults() {
+        try (FaultInjectionInterceptor faults = new FaultInjectionInterceptor(
+                 FaultInjectionInterceptor.LatencyModel.fixed(Duration.ofMillis(5)), 1.0, 0);
+             FakeCloudServer server = new FakeCloudServer(new InMemoryCloudService(), faults)) {
+            StatusRuntimeException e = assertThrows(StatusRuntimeException.class, () -> server.getClient()
+                .getCloudServiceStubs().blockingStub().getNamespaces(GetNamespacesRequest.getDefaultInstance()));
+            assertEquals(Status.Code.RESOURCE_EXHAUSTED, e.getStatus().getCode());
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.example;
+
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.temporal.api.cloud.cloudservice.v1.CloudServiceGrpc;
+import io.temporal.api.cloud.cloudservice.v1.CreateNamespaceRequest;
+import io.temporal.api.cloud.cloudservice.v1.GetNamespaceRequest;
+import io.temporal.api.cloud.cloudservice.v1.UpdateNamespaceRequest;
+import io.temporal.api.cloud.namespace.v1.MtlsAuthSpec;
+import io.temporal.api.cloud.namespace.v1.Namespace;
+import io.temporal.api.cloud.namespace.v1.NamespaceSpec;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class FleetCertRotatorTest {
+    @Test void rotatesKeepingSpecsAndRetriesVersionConflicts() throws Exception {
+        try (FakeCloudServer server = new FakeCloudServer(new InMemoryCloudService("acct", Duration.ZERO));
+             CaCertFactory factory = new CaCertFactory(CaCertFactory.KeyAlgorithm.EC_P256, 4)) {
+            CloudServiceGrpc.CloudServiceBlockingStub stub = server.getClient().getCloudServiceStubs().blockingStub();
+            String oldCa = factory.issueBase64Pem("oldCA");
+            List<String> namespaces = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                stub.createNamespace(CreateNamespaceRequest.newBuilder().setSpec(NamespaceSpec.newBuilder()
+                    .setName("mtls-" + i)
+                    .addRegions("gcp-us-central1")
+                    .setRetentionDays(30)
+                    .setMtlsAuth(MtlsAuthSpec.newBuilder().setEnabled(true).setAcceptedClientCa(oldCa)))
+                    .build());
+                namespaces.add("mtls-" + i + ".acct");
+            }
+            stub.createNamespace(CreateNamespaceRequest.newBuilder()
+                .setSpec(SimpleCloudApiNamespaceClient.apiKeyNamespaceSpec("apikey")).build());
+            namespaces.add("apikey.acct");
+
+            // cache mtls-0, then change it behind the cache's back so the first update hits a version conflict
+            CloudResourceCache cache = new CloudResourceCache();
+            Namespace stale = cache.getNamespace(server.getClient(), "mtls-0.acct").orElseThrow();
+            stub.updateNamespace(UpdateNamespaceRequest.newBuilder().setNamespace("mtls-0.acct")
+                .setSpec(stale.getSpec().toBuilder().setRetentionDays(31)).setResourceVersion(stale.getResourceVersion()).build());
+
+            X509Certificate newCa = factory.issue("newCA");
+            NamespaceUpdateCoalescer updates = new NamespaceUpdateCoalescer(cache, Duration.ofMillis(10), 5);
+            FleetCertRotator rotator = new FleetCertRotator(server.getClient(), 4, updates);
+            List<FleetCertRotator.Progress> progress = new ArrayList<>();
+            FleetCertRotator.Summary summary = rotator.rotate(namespaces, newCa, p -> { synchronized (progress) { progress.add(p); } })
+                .getSummary().join();
+
+            assertEquals(10, summary.count(FleetCertRotator.Outcome.ROTATED));
+            assertEquals(1, summary.count(FleetCertRotator.Outcome.SKIPPED));
+            assertEquals(11, progress.size());
+            assertEquals(2, summary.getResults().get(0).getAttempts());
+
+            NamespaceSpec rotated = stub.getNamespace(GetNamespaceRequest.newBuilder().setNamespace("mtls-0.acct").build())
+                .getNamespace().getSpec();
+            assertEquals(List.of("gcp-us-central1"), rotated.getRegionsList());
+            assertEquals(31, rotated.getRetentionDays());
+            assertEquals(2, CaBundle.parse(rotated.getMtlsAuth().getAcceptedClientCa()).size());
+
+            // running it again is a no-op
+            FleetCertRotator.Summary again = rotator.rotate(namespaces, newCa, p -> { }).getSummary().join();
+            assertEquals(10, again.count(FleetCertRotator.Outcome.UNCHANGED));
+            updates.close();
+        }
+    }
+}
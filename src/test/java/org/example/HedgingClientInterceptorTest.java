@@ -0,0 +1,65 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.temporal.api.cloud.cloudservice.v1.CloudServiceGrpc;
+import io.temporal.api.cloud.cloudservice.v1.CreateNamespaceRequest;
+import io.temporal.api.cloud.cloudservice.v1.CreateServiceAccountRequest;
+import io.temporal.api.cloud.cloudservice.v1.GetNamespaceRequest;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class HedgingClientInterceptorTest {
+    @Test void hedgesSlowReadsWithinBudgetButNeverMutations() {
+        InMemoryCloudService service = new InMemoryCloudService("acct", Duration.ZERO);
+        // one call in ten is stuck for 300ms
+        FaultInjectionInterceptor.LatencyModel latency = () -> ThreadLocalRandom.current().nextDouble() < 0.1
+            ? Duration.ofMillis(300).toNanos() : Duration.ofMillis(1).toNanos();
+        try (HedgingClientInterceptor hedging = new HedgingClientInterceptor(Duration.ofSeconds(5), Map.of(), 0.8, 0.5);
+             FaultInjectionInterceptor faults = new FaultInjectionInterceptor(latency);
+             FakeCloudServer server = new FakeCloudServer(service, List.of(hedging), faults)) {
+            CloudServiceGrpc.CloudServiceBlockingStub stub = server.getClient().getCloudServiceStubs().blockingStub();
+            stub.createNamespace(CreateNamespaceRequest.newBuilder()
+                .setSpec(SimpleCloudApiNamespaceClient.apiKeyNamespaceSpec("ns")).build());
+            for (int i = 0; i < 200; i++) {
+                assertEquals("ns.acct", stub.getNamespace(GetNamespaceRequest.newBuilder().setNamespace("ns.acct").build())
+                    .getNamespace().getNamespace());
+            }
+            assertEquals(200, hedging.readCount());
+            assertNotNull(hedging.hedgeDelay("GetNamespace"));
+            assertTrue(hedging.hedgeCount() > 0);
+            assertTrue(hedging.hedgeWonCount() > 0);
+            // half a token per read plus the initial burst
+            assertTrue(hedging.hedgeCount() <= 200 * 0.5 + 10);
+
+            for (int i = 0; i < 40; i++) {
+                stub.createServiceAccount(CreateServiceAccountRequest.newBuilder()
+                    .setSpec(SimpleCloudApiIdentityClient.serviceAccountSpec("sa-" + i, Map.of(), "read"))
+                    .build());
+            }
+            // every create is a new service account, so a hedged create would show up here
+            assertEquals(40, service.serviceAccountCount());
+            assertEquals(200, hedging.readCount());
+        }
+    }
+
+    @Test void readsGetTheirMethodsDeadline() {
+        try (HedgingClientInterceptor hedging = new HedgingClientInterceptor(Duration.ofSeconds(5), Map.of("GetNamespace", Duration.ofMillis(100)), 0.95, 0.1);
+             FaultInjectionInterceptor faults = new FaultInjectionInterceptor(FaultInjectionInterceptor.LatencyModel.fixed(Duration.ofSeconds(2)));
+             FakeCloudServer server = new FakeCloudServer(new InMemoryCloudService("acct", Duration.ZERO), List.of(hedging), faults)) {
+            CloudServiceGrpc.CloudServiceBlockingStub stub = server.getClient().getCloudServiceStubs().blockingStub();
+            stub.createNamespace(CreateNamespaceRequest.newBuilder()
+                .setSpec(SimpleCloudApiNamespaceClient.apiKeyNamespaceSpec("ns")).build());
+            long start = System.nanoTime();
+            StatusRuntimeException e = assertThrows(StatusRuntimeException.class,
+                () -> stub.getNamespace(GetNamespaceRequest.newBuilder().setNamespace("ns.acct").build()));
+            assertEquals(Status.Code.DEADLINE_EXCEEDED, e.getStatus().getCode());
+            assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 1_000);
+        }
+    }
+}
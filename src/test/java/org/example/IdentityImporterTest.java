@@ -0,0 +1,130 @@
+package org.example;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import io.temporal.api.cloud.cloudservice.v1.CreateServiceAccountRequest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdentityImporterTest {
+    @Test void parsesQuotedCsvRecords() {
+        List<String> header = IdentityImporter.splitCsv("type,identity,account_role,namespace_permissions");
+        IdentityImporter.IdentityRecord record = IdentityImporter.parseCsv(header,
+            "user,Alice@Example.com,developer,\"ns1.acct=admin;ns2.acct=read\"");
+        assertEquals(IdentityImporter.Kind.USER, record.kind);
+        assertEquals(Map.of("ns1.acct", "admin", "ns2.acct", "read"), record.namespacePermissions);
+        assertEquals("user:alice@example.com", record.dedupKey());
+    }
+
+    @Test void parsesJsonlServiceAccounts() {
+        IdentityImporter.IdentityRecord record = IdentityImporter.parseJson(
+            "{\"type\":\"service-account\",\"name\":\"ci-bot\",\"accountRole\":\"read\",\"namespaceAccesses\":{\"ns1.acct\":\"write\"}}");
+        assertEquals(IdentityImporter.Kind.SERVICE_ACCOUNT, record.kind);
+        assertEquals("ci-bot", record.identity);
+        assertEquals(Map.of("ns1.acct", "write"), record.namespacePermissions);
+    }
+
+    @Test void rejectsRecordsWithoutRole() {
+        assertThrows(IllegalArgumentException.class,
+            () -> IdentityImporter.parseJson("{\"type\":\"user\",\"email\":\"a@b.com\"}"));
+    }
+
+    @Test void importsAgainstTheFakeServerSkippingDuplicatesAndReportingFailures() throws Exception {
+        String csv = "type,identity,account_role,namespace_permissions\n"
+            + "user,alice@example.com,developer,ns1.acct=admin\n"
+            + "user,bob@example.com,read,\n"
+            + "user,Alice@Example.com,read,\n"
+            + "service-account,ci,read,ns1.acct=write\n"
+            + "service-account,rejected,read,\n"
+            + "robot,r2,read,\n";
+        InMemoryCloudService service = new InMemoryCloudService("acct", Duration.ZERO);
+        try (FakeCloudServer server = new FakeCloudServer(service, List.of(), rejectServiceAccount("rejected"))) {
+            IdentityImporter importer = new IdentityImporter(server.getClient(), new CloudResourceCache(), 2);
+            List<IdentityImporter.RecordResult> results = Collections.synchronizedList(new ArrayList<>());
+            IdentityImporter.Summary summary = importer.importRecords(new BufferedReader(new StringReader(csv)), false, results::add);
+
+            assertEquals(3, summary.count(IdentityImporter.Status.CREATED));
+            assertEquals(1, summary.count(IdentityImporter.Status.DUPLICATE));
+            assertEquals(1, summary.count(IdentityImporter.Status.FAILED));
+            assertEquals(1, summary.count(IdentityImporter.Status.INVALID));
+            assertEquals(6, results.size());
+            assertEquals(2, service.userCount());
+            assertEquals(1, service.serviceAccountCount());
+            IdentityImporter.RecordResult failed = results.stream()
+                .filter(r -> r.getStatus() == IdentityImporter.Status.FAILED).findFirst().orElseThrow();
+            assertEquals("rejected", failed.getIdentity());
+            assertTrue(failed.getError().contains("name not allowed"));
+        }
+    }
+
+    @Test void deletesTheJournalOnlyOnceEveryRecordIsDone(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("identities.csv");
+        Path journal = dir.resolve("identities.csv.journal");
+        Files.writeString(file, "type,identity,account_role,namespace_permissions\n"
+            + "user,alice@example.com,developer,\n"
+            + "service-account,ci,read,\n");
+        InMemoryCloudService service = new InMemoryCloudService("acct", Duration.ZERO);
+        try (SimpleCloudApiIdentityClient idClient = new SimpleCloudApiIdentityClient()) {
+            try (FakeCloudServer server = new FakeCloudServer(service, List.of(), rejectServiceAccount("ci"))) {
+                IdentityImporter.Summary first = idClient.importIdentities(server.getClient(), file, 2, journal);
+                assertEquals(1, first.count(IdentityImporter.Status.FAILED));
+                // the rejected record is journaled as failed, so the journal stays for a retry
+                assertTrue(Files.exists(journal));
+            }
+            try (FakeCloudServer server = new FakeCloudServer(service)) {
+                IdentityImporter.Summary second = idClient.importIdentities(server.getClient(), file, 2, journal);
+                assertEquals(1, second.count(IdentityImporter.Status.RESUMED));
+                assertEquals(1, second.count(IdentityImporter.Status.CREATED));
+                assertFalse(Files.exists(journal));
+                assertEquals(1, service.userCount());
+            }
+        }
+    }
+
+    // fails CreateServiceAccount for the service account called name, and lets every other call through
+    private static ServerInterceptor rejectServiceAccount(String name) {
+        return new ServerInterceptor() {
+            @Override
+            public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+                ServerCall.Listener<ReqT> delegate = next.startCall(call, headers);
+                return new ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT>(delegate) {
+                    private boolean rejected;
+
+                    @Override
+                    public void onMessage(ReqT message) {
+                        if (message instanceof CreateServiceAccountRequest
+                                && ((CreateServiceAccountRequest) message).getSpec().getName().equals(name)) {
+                            rejected = true;
+                            call.close(Status.INVALID_ARGUMENT.withDescription("name not allowed"), new Metadata());
+                            return;
+                        }
+                        super.onMessage(message);
+                    }
+
+                    @Override
+                    public void onHalfClose() {
+                        if (!rejected) {
+                            super.onHalfClose();
+                        }
+                    }
+                };
+            }
+        };
+    }
+}
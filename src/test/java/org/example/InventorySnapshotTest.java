@@ -0,0 +1,95 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.temporal.api.cloud.cloudservice.v1.CloudServiceGrpc;
+import io.temporal.api.cloud.cloudservice.v1.CreateServiceAccountRequest;
+import io.temporal.api.cloud.cloudservice.v1.CreateUserRequest;
+import io.temporal.api.cloud.cloudservice.v1.GetUsersRequest;
+import io.temporal.api.cloud.cloudservice.v1.UpdateUserRequest;
+import io.temporal.api.cloud.identity.v1.AccountAccess;
+import io.temporal.api.cloud.identity.v1.Access;
+import io.temporal.api.cloud.identity.v1.ServiceAccountSpec;
+import io.temporal.api.cloud.identity.v1.User;
+import io.temporal.api.cloud.identity.v1.UserSpec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+class InventorySnapshotTest {
+    @Test void syncsOnlyChangedRecordsAndAnswersOffline(@TempDir Path dir) throws Exception {
+        try (FakeCloudServer server = new FakeCloudServer(new InMemoryCloudService("acct", Duration.ZERO))) {
+            CloudServiceGrpc.CloudServiceBlockingStub stub = server.getClient().getCloudServiceStubs().blockingStub();
+            Map<String, String> namespaces = new LinkedHashMap<>();
+            for (int i = 0; i < 5; i++) {
+                namespaces.put("ns-" + i + ".acct", "ns-" + i);
+            }
+            new SimpleCloudApiNamespaceClient().bulkCreateAPIKeyNamespaces(server.getClient(), namespaces, 4);
+            for (int i = 0; i < 20; i++) {
+                stub.createUser(CreateUserRequest.newBuilder().setSpec(userSpec("user" + i + "@example.com", "read")).build());
+            }
+            stub.createServiceAccount(CreateServiceAccountRequest.newBuilder().setSpec(ServiceAccountSpec.newBuilder()
+                .setName("ci").setAccess(Access.newBuilder().setAccountAccess(AccountAccess.newBuilder().setRole("read")))).build());
+
+            Path file = dir.resolve("inventory.bin");
+            InventorySnapshot.SyncResult first = InventorySnapshot.sync(server.getClient(), file, 7);
+            assertEquals(26, first.getWritten());
+            assertEquals(Files.size(file), first.getBytesWritten());
+
+            // nothing changed: the file is left alone
+            assertEquals(0, InventorySnapshot.sync(server.getClient(), file, 7).getBytesWritten());
+
+            // one user changes and one is added: only those two records are appended
+            User changed = stub.getUsers(GetUsersRequest.newBuilder().setEmail("user3@example.com").build()).getUsers(0);
+            stub.updateUser(UpdateUserRequest.newBuilder().setUserId(changed.getId()).setResourceVersion(changed.getResourceVersion())
+                .setSpec(userSpec("user3@example.com", "developer")).build());
+            stub.createUser(CreateUserRequest.newBuilder().setSpec(userSpec("new@example.com", "read")).build());
+            long before = Files.size(file);
+            InventorySnapshot.SyncResult second = InventorySnapshot.sync(server.getClient(), file, 7);
+            assertEquals(25, second.getUnchanged());
+            assertEquals(2, second.getWritten());
+            assertFalse(second.isCompacted());
+            assertEquals(before + second.getBytesWritten(), Files.size(file));
+
+            InventorySnapshot snapshot = InventorySnapshot.open(file);
+            assertEquals(27, snapshot.size());
+            assertEquals(5, snapshot.entries(InventorySnapshot.Kind.NAMESPACE).size());
+            assertEquals("developer", snapshot.userByEmail("USER3@example.com").orElseThrow().getSpec().getAccess().getAccountAccess().getRole());
+            assertEquals("read", snapshot.user(snapshot.userByEmail("new@example.com").orElseThrow().getId()).orElseThrow()
+                .getSpec().getAccess().getAccountAccess().getRole());
+            assertEquals("ns-2.acct", snapshot.namespace("ns-2.acct").orElseThrow().getNamespace());
+            assertTrue(snapshot.serviceAccountByName("ci").isPresent());
+            assertFalse(snapshot.namespace("missing.acct").isPresent());
+        }
+    }
+
+    @Test void compactsOnceMostRecordsAreSupersededAndRewritesATruncatedFile(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("inventory.bin");
+        User user = User.newBuilder().setId("u1").setResourceVersion("1").setSpec(userSpec("a@example.com", "read")).build();
+        InventorySnapshot.sync(file, List.of(), List.of(user), List.of());
+        InventorySnapshot.sync(file, List.of(), List.of(user.toBuilder().setResourceVersion("2").build()), List.of());
+        InventorySnapshot.SyncResult third = InventorySnapshot.sync(file, List.of(),
+            List.of(user.toBuilder().setResourceVersion("3").build()), List.of());
+        assertTrue(third.isCompacted());
+        assertEquals(third.getBytesWritten(), Files.size(file));
+        assertEquals("3", InventorySnapshot.open(file).user("u1").orElseThrow().getResourceVersion());
+
+        // an interrupted sync leaves no valid footer; the next sync starts over
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+        assertThrows(IOException.class, () -> InventorySnapshot.open(file));
+        assertEquals(1, InventorySnapshot.sync(file, List.of(), List.of(user), List.of()).getWritten());
+        assertEquals("1", InventorySnapshot.open(file).user("u1").orElseThrow().getResourceVersion());
+    }
+
+    private static UserSpec userSpec(String email, String role) {
+        return UserSpec.newBuilder().setEmail(email).setAccess(Access.newBuilder().setAccountAccess(AccountAccess.newBuilder().setRole(role))).build();
+    }
+}
@@ -0,0 +1,68 @@
+package org.example;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import io.temporal.api.cloud.cloudservice.v1.CreateServiceAccountRequest;
+import io.temporal.api.cloud.cloudservice.v1.GetAsyncOperationRequest;
+import io.temporal.api.cloud.identity.v1.ServiceAccount;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MutationJournalTest {
+    @Test void resumedImportOnlyCreatesWhatAnInterruptedRunLeft(@TempDir Path dir) throws Exception {
+        try (FakeCloudServer server = new FakeCloudServer(new InMemoryCloudService("acct", Duration.ZERO, Duration.ofMillis(20)));
+             AsyncOperationTracker tracker = new AsyncOperationTracker(8, Duration.ofMillis(5), Duration.ofMillis(100), Duration.ofSeconds(10))) {
+            // service accounts, because the fake creates a new one on every call
+            List<String> lines = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                lines.add("{\"type\":\"service-account\",\"name\":\"sa" + i + "\",\"accountRole\":\"read\"}");
+            }
+            Path partial = Files.write(dir.resolve("partial.jsonl"), lines.subList(0, 60));
+            Path full = Files.write(dir.resolve("full.jsonl"), lines);
+            Path journalFile = dir.resolve("import.journal");
+
+            // the first run gets through 60 records
+            try (MutationJournal journal = MutationJournal.open(journalFile)) {
+                IdentityImporter.Summary first = new IdentityImporter(server.getClient(), new CloudResourceCache(), new AccessIndex(), tracker, journal, 8)
+                    .importFile(partial, r -> { });
+                assertEquals(60, first.count(IdentityImporter.Status.CREATED));
+            }
+            // then it dies: sa60 was sent but its response was lost, sa61 was about to be sent, and the last record is torn
+            try (MutationJournal journal = MutationJournal.open(journalFile)) {
+                journal.intend("sa:sa60", "op-60").join();
+                server.getClient().getCloudServiceStubs().blockingStub().createServiceAccount(CreateServiceAccountRequest.newBuilder()
+                    .setSpec(SimpleCloudApiIdentityClient.serviceAccountSpec("sa60", Map.of(), "read")).setAsyncOperationId("op-60").build());
+                journal.intend("sa:sa61", "op-61").join();
+            }
+            Files.write(journalFile, new byte[] {0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+            try (MutationJournal journal = MutationJournal.open(journalFile)) {
+                assertEquals(MutationJournal.State.DONE, journal.get("sa:sa59").getState());
+                assertEquals(MutationJournal.State.INTENDED, journal.get("sa:sa61").getState());
+                IdentityImporter.Summary second = new IdentityImporter(server.getClient(), new CloudResourceCache(), new AccessIndex(), tracker, journal, 8)
+                    .importFile(full, r -> { });
+                assertEquals(61, second.count(IdentityImporter.Status.RESUMED));
+                assertEquals(39, second.count(IdentityImporter.Status.CREATED));
+                assertEquals(0, second.count(IdentityImporter.Status.FAILED));
+                assertEquals(MutationJournal.State.DONE, journal.get("sa:sa99").getState());
+            }
+
+            // every service account exists exactly once, and sa61 went out with the operation id journaled before the crash
+            int count = 0;
+            for (Iterator<ServiceAccount> it = CloudPager.serviceAccounts(server.getClient(), 50); it.hasNext(); it.next()) {
+                count++;
+            }
+            assertEquals(100, count);
+            assertEquals("create-service-account", server.getClient().getCloudServiceStubs().blockingStub()
+                .getAsyncOperation(GetAsyncOperationRequest.newBuilder().setAsyncOperationId("op-61").build()).getAsyncOperation().getOperationType());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+import io.temporal.api.cloud.cloudservice.v1.GetNamespaceRequest;
+import io.temporal.api.cloud.cloudservice.v1.GetNamespaceResponse;
+import io.temporal.api.cloud.namespace.v1.Namespace;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class NamespaceStatusPollerTest {
+    @Test void backoffDoublesWithEqualJitterUpToTheMaximum() {
+        try (NamespaceStatusPoller poller = new NamespaceStatusPoller(1, Duration.ofMillis(100), Duration.ofMillis(1000), Duration.ofMinutes(1))) {
+            for (int i = 0; i < 100; i++) {
+                assertInRange(50, 100, poller.nextDelayMillis(0));
+                assertInRange(100, 200, poller.nextDelayMillis(1));
+                assertInRange(400, 800, poller.nextDelayMillis(3));
+                assertInRange(500, 1000, poller.nextDelayMillis(4));
+                assertInRange(500, 1000, poller.nextDelayMillis(1000));
+            }
+        }
+    }
+
+    @Test void retriesRetryableCodesUntilActive() {
+        ScriptedService service = new ScriptedService(Status.NOT_FOUND, Status.UNAVAILABLE, Status.DEADLINE_EXCEEDED,
+            Status.RESOURCE_EXHAUSTED, "activating", "active");
+        try (FakeCloudServer server = new FakeCloudServer(service);
+             NamespaceStatusPoller poller = poller(Duration.ofSeconds(10))) {
+            Namespace ns = poller.awaitActive(server.getClient(), "ns.acct").join();
+            assertEquals("active", ns.getState());
+            assertEquals(6, service.calls.get());
+            assertEquals(0, poller.pendingCount());
+        }
+    }
+
+    @Test void stopsOnOtherCodesAndOnFailedStates() {
+        ScriptedService denied = new ScriptedService(Status.PERMISSION_DENIED);
+        try (FakeCloudServer server = new FakeCloudServer(denied);
+             NamespaceStatusPoller poller = poller(Duration.ofSeconds(10))) {
+            CompletionException e = assertThrows(CompletionException.class, () -> poller.awaitActive(server.getClient(), "ns.acct").join());
+            assertEquals(Status.Code.PERMISSION_DENIED, ((StatusRuntimeException) e.getCause()).getStatus().getCode());
+            assertEquals(1, denied.calls.get());
+        }
+        ScriptedService failed = new ScriptedService("activating", "Create_Failed");
+        try (FakeCloudServer server = new FakeCloudServer(failed);
+             NamespaceStatusPoller poller = poller(Duration.ofSeconds(10))) {
+            CompletionException e = assertThrows(CompletionException.class, () -> poller.awaitActive(server.getClient(), "ns.acct").join());
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            assertTrue(e.getCause().getMessage().contains("Create_Failed"));
+            assertEquals(2, failed.calls.get());
+        }
+    }
+
+    @Test void givesUpAfterTheTimeout() {
+        ScriptedService service = new ScriptedService("activating");
+        try (FakeCloudServer server = new FakeCloudServer(service);
+             NamespaceStatusPoller poller = poller(Duration.ofMillis(200))) {
+            CompletionException e = assertThrows(CompletionException.class, () -> poller.awaitActive(server.getClient(), "ns.acct").join());
+            assertTrue(e.getCause() instanceof TimeoutException);
+            assertTrue(service.calls.get() > 1);
+        }
+    }
+
+    @Test void sharesAPollOnlyForTheSameClientAndNamespace() {
+        try (FakeCloudServer activeServer = new FakeCloudServer(new ScriptedService("active"));
+             FakeCloudServer deniedServer = new FakeCloudServer(new ScriptedService(Status.PERMISSION_DENIED));
+             NamespaceStatusPoller poller = poller(Duration.ofSeconds(10))) {
+            CompletableFuture<Namespace> first = poller.awaitActive(activeServer.getClient(), "ns.acct");
+            assertSame(first, poller.awaitActive(activeServer.getClient(), "ns.acct"));
+            // the same name in another account is another namespace
+            CompletableFuture<Namespace> other = poller.awaitActive(deniedServer.getClient(), "ns.acct");
+            assertNotSame(first, other);
+            assertEquals(2, poller.pendingCount());
+            assertEquals("active", first.join().getState());
+            assertThrows(CompletionException.class, other::join);
+        }
+    }
+
+    private static NamespaceStatusPoller poller(Duration timeout) {
+        return new NamespaceStatusPoller(1, Duration.ofMillis(10), Duration.ofMillis(40), timeout);
+    }
+
+    private static void assertInRange(long min, long max, long actual) {
+        assertTrue(actual >= min && actual <= max, actual + " not in [" + min + ", " + max + "]");
+    }
+
+    // answers GetNamespace from a script of error statuses and states; the last entry repeats
+    private static final class ScriptedService extends InMemoryCloudService {
+        final AtomicInteger calls = new AtomicInteger();
+        private final Deque<Object> script = new ArrayDeque<>();
+
+        ScriptedService(Object... script) {
+            super("acct", Duration.ZERO);
+            this.script.addAll(List.of(script));
+        }
+
+        @Override
+        public void getNamespace(GetNamespaceRequest request, StreamObserver<GetNamespaceResponse> responseObserver) {
+            calls.incrementAndGet();
+            Object next;
+            synchronized (script) {
+                next = script.size() > 1 ? script.poll() : script.peek();
+            }
+            if (next instanceof Status) {
+                responseObserver.onError(((Status) next).asRuntimeException());
+                return;
+            }
+            responseObserver.onNext(GetNamespaceResponse.newBuilder()
+                .setNamespace(Namespace.newBuilder().setNamespace(request.getNamespace()).setState((String) next))
+                .build());
+            responseObserver.onCompleted();
+        }
+    }
+}
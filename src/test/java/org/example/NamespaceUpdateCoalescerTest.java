@@ -0,0 +1,135 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import io.temporal.api.cloud.cloudservice.v1.CloudServiceGrpc;
+import io.temporal.api.cloud.cloudservice.v1.CreateNamespaceRequest;
+import io.temporal.api.cloud.cloudservice.v1.GetNamespaceRequest;
+import io.temporal.api.cloud.cloudservice.v1.UpdateNamespaceRequest;
+import io.temporal.api.cloud.namespace.v1.Namespace;
+import io.temporal.api.cloud.namespace.v1.NamespaceSpec;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class NamespaceUpdateCoalescerTest {
+    @Test void mergesChangesIntoOneUpdateAndDropsNoOps() throws Exception {
+        try (FakeCloudServer server = new FakeCloudServer(new InMemoryCloudService("acct", Duration.ZERO));
+             NamespaceUpdateCoalescer coalescer = new NamespaceUpdateCoalescer(new CloudResourceCache(), Duration.ofMillis(100), 5)) {
+            CloudServiceGrpc.CloudServiceBlockingStub stub = server.getClient().getCloudServiceStubs().blockingStub();
+            stub.createNamespace(CreateNamespaceRequest.newBuilder()
+                .setSpec(SimpleCloudApiNamespaceClient.apiKeyNamespaceSpec("ns")).build());
+
+            // ten changes in one window: one update carrying all of them
+            List<CompletableFuture<NamespaceUpdateCoalescer.Result>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                int days = 30 + i;
+                futures.add(coalescer.submit(server.getClient(), "ns.acct", spec -> spec.toBuilder().setRetentionDays(days).build()));
+            }
+            futures.add(coalescer.submit(server.getClient(), "ns.acct", spec -> spec.toBuilder().addRegions("aws-us-west-2").build()));
+            NamespaceUpdateCoalescer.Result result = futures.get(0).join();
+            for (CompletableFuture<NamespaceUpdateCoalescer.Result> f : futures) {
+                assertSame(result, f.join());
+            }
+            assertEquals(NamespaceUpdateCoalescer.Outcome.UPDATED, result.getOutcome());
+            assertEquals(11, result.getChanges());
+            assertEquals(List.of("regions", "retention_days"), result.getChangedFields());
+            assertEquals(1, coalescer.updateCount());
+
+            NamespaceSpec updated = getSpec(stub, "ns.acct");
+            assertEquals(39, updated.getRetentionDays());
+            assertEquals(List.of("aws-us-east-1", "aws-us-west-2"), updated.getRegionsList());
+
+            // setting what is already there sends nothing
+            NamespaceUpdateCoalescer.Result noop = coalescer.submit(server.getClient(), "ns.acct",
+                spec -> spec.toBuilder().setRetentionDays(39).build()).join();
+            assertEquals(NamespaceUpdateCoalescer.Outcome.UNCHANGED, noop.getOutcome());
+            assertTrue(noop.getChangedFields().isEmpty());
+            assertEquals(1, coalescer.updateCount());
+            assertEquals(1, coalescer.unchangedCount());
+        }
+    }
+
+    @Test void reappliesChangesAfterAVersionConflict() throws Exception {
+        try (FakeCloudServer server = new FakeCloudServer(new InMemoryCloudService("acct", Duration.ZERO))) {
+            CloudServiceGrpc.CloudServiceBlockingStub stub = server.getClient().getCloudServiceStubs().blockingStub();
+            stub.createNamespace(CreateNamespaceRequest.newBuilder()
+                .setSpec(SimpleCloudApiNamespaceClient.apiKeyNamespaceSpec("ns")).build());
+
+            // cache the namespace, then change it behind the cache's back
+            CloudResourceCache cache = new CloudResourceCache();
+            Namespace stale = cache.getNamespace(server.getClient(), "ns.acct").orElseThrow();
+            stub.updateNamespace(UpdateNamespaceRequest.newBuilder().setNamespace("ns.acct")
+                .setSpec(stale.getSpec().toBuilder().setRetentionDays(60)).setResourceVersion(stale.getResourceVersion()).build());
+
+            try (NamespaceUpdateCoalescer coalescer = new NamespaceUpdateCoalescer(cache, Duration.ofMillis(10), 5)) {
+                NamespaceUpdateCoalescer.Result result = coalescer.submit(server.getClient(), "ns.acct",
+                    spec -> spec.toBuilder().addRegions("aws-us-west-2").build()).join();
+                assertEquals(2, result.getAttempts());
+                assertEquals(1, coalescer.conflictCount());
+            }
+            // the other writer's change survives
+            NamespaceSpec updated = getSpec(stub, "ns.acct");
+            assertEquals(60, updated.getRetentionDays());
+            assertEquals(List.of("aws-us-east-1", "aws-us-west-2"), updated.getRegionsList());
+        }
+    }
+
+    @Test void aChangeThatThrowsFailsOnlyItsOwnSubmitter() throws Exception {
+        try (FakeCloudServer server = new FakeCloudServer(new InMemoryCloudService("acct", Duration.ZERO));
+             NamespaceUpdateCoalescer coalescer = new NamespaceUpdateCoalescer(new CloudResourceCache(), Duration.ofMillis(100), 5)) {
+            CloudServiceGrpc.CloudServiceBlockingStub stub = server.getClient().getCloudServiceStubs().blockingStub();
+            stub.createNamespace(CreateNamespaceRequest.newBuilder()
+                .setSpec(SimpleCloudApiNamespaceClient.apiKeyNamespaceSpec("ns")).build());
+
+            CompletableFuture<NamespaceUpdateCoalescer.Result> before = coalescer.submit(server.getClient(), "ns.acct",
+                spec -> spec.toBuilder().setRetentionDays(45).build());
+            CompletableFuture<NamespaceUpdateCoalescer.Result> broken = coalescer.submit(server.getClient(), "ns.acct", spec -> {
+                throw new IllegalArgumentException("bad CA bundle");
+            });
+            CompletableFuture<NamespaceUpdateCoalescer.Result> after = coalescer.submit(server.getClient(), "ns.acct",
+                spec -> spec.toBuilder().addRegions("aws-us-west-2").build());
+
+            CompletionException e = assertThrows(CompletionException.class, broken::join);
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+            NamespaceUpdateCoalescer.Result result = before.join();
+            assertSame(result, after.join());
+            assertEquals(2, result.getChanges());
+            assertEquals(1, coalescer.updateCount());
+            NamespaceSpec updated = getSpec(stub, "ns.acct");
+            assertEquals(45, updated.getRetentionDays());
+            assertEquals(List.of("aws-us-east-1", "aws-us-west-2"), updated.getRegionsList());
+        }
+    }
+
+    @Test void changesFromDifferentClientsAreSentByTheirOwnClient() throws Exception {
+        CloudRpcMetrics first = new CloudRpcMetrics();
+        CloudRpcMetrics second = new CloudRpcMetrics();
+        try (FakeCloudServer server = new FakeCloudServer(new InMemoryCloudService("acct", Duration.ZERO), List.of(new MetricsClientInterceptor(first)));
+             FakeCloudServer other = new FakeCloudServer(new InMemoryCloudService("acct", Duration.ZERO), List.of(new MetricsClientInterceptor(second)));
+             NamespaceUpdateCoalescer coalescer = new NamespaceUpdateCoalescer(new CloudResourceCache(), Duration.ofMillis(100), 5)) {
+            for (FakeCloudServer s : List.of(server, other)) {
+                s.getClient().getCloudServiceStubs().blockingStub().createNamespace(CreateNamespaceRequest.newBuilder()
+                    .setSpec(SimpleCloudApiNamespaceClient.apiKeyNamespaceSpec("ns")).build());
+            }
+            CompletableFuture<NamespaceUpdateCoalescer.Result> a = coalescer.submit(server.getClient(), "ns.acct",
+                spec -> spec.toBuilder().setRetentionDays(40).build());
+            CompletableFuture<NamespaceUpdateCoalescer.Result> b = coalescer.submit(other.getClient(), "ns.acct",
+                spec -> spec.toBuilder().setRetentionDays(50).build());
+            assertNotSame(a.join(), b.join());
+            // the cache is keyed by name, as it serves one account, so one batch may first read the other account's
+            // ns.acct and lose a version race; its retry still goes out through its own client
+            assertTrue(first.method("UpdateNamespace").getCount() >= 1);
+            assertTrue(second.method("UpdateNamespace").getCount() >= 1);
+            assertEquals(40, getSpec(server.getClient().getCloudServiceStubs().blockingStub(), "ns.acct").getRetentionDays());
+            assertEquals(50, getSpec(other.getClient().getCloudServiceStubs().blockingStub(), "ns.acct").getRetentionDays());
+        }
+    }
+
+    private static NamespaceSpec getSpec(CloudServiceGrpc.CloudServiceBlockingStub stub, String namespace) {
+        return stub.getNamespace(GetNamespaceRequest.newBuilder().setNamespace(namespace).build()).getNamespace().getSpec();
+    }
+}
@@ -0,0 +1,47 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import io.grpc.ConnectivityState;
+import io.temporal.api.cloud.cloudservice.v1.CloudServiceGrpc;
+import io.temporal.api.cloud.cloudservice.v1.GetNamespacesRequest;
+import io.temporal.client.CloudOperationsClient;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PooledChannelTest {
+    @Test void spreadsCallsOverWarmConnectionsPastTheStreamLimit() {
+        // 2 streams per connection and 100ms per call: 16 calls take ~800ms on one connection, ~200ms on four
+        try (FakeCloudServer server = FakeCloudServer.onLocalPort(new InMemoryCloudService(), 2, List.of(),
+                 new FaultInjectionInterceptor(FaultInjectionInterceptor.LatencyModel.fixed(Duration.ofMillis(100))))) {
+            PooledChannel pool = new PooledChannel(4, PooledChannel.Selection.LEAST_LOADED, () -> PooledChannel.newNettyChannel(
+                server.getTarget(), true, PooledChannel.DEFAULT_KEEPALIVE_TIME, PooledChannel.DEFAULT_KEEPALIVE_TIMEOUT));
+            try {
+                assertEquals(4, pool.warmUp(Duration.ofSeconds(5)));
+                assertEquals(ConnectivityState.READY, pool.getState(false));
+
+                CloudOperationsClient client = server.newClient(pool);
+                CloudServiceGrpc.CloudServiceFutureStub stub = client.getCloudServiceStubs().futureStub();
+                long start = System.nanoTime();
+                List<CompletableFuture<?>> calls = new ArrayList<>();
+                for (int i = 0; i < 16; i++) {
+                    calls.add(CloudFutures.toCompletable(stub.getNamespaces(GetNamespacesRequest.getDefaultInstance())));
+                }
+                CompletableFuture.allOf(calls.toArray(new CompletableFuture<?>[0])).join();
+                long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+                assertTrue(elapsedMillis < 600, "16 calls took " + elapsedMillis + "ms: " + pool);
+                for (int i = 0; i < 4; i++) {
+                    assertEquals(4, pool.calls(i), pool.toString());
+                    assertEquals(0, pool.inFlight(i));
+                }
+                client.getCloudServiceStubs().shutdownNow();
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.example;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProvisioningEventTest {
+    @Test void recordsEachPhaseOfANamespaceCreateAndSummarizesIt() throws Exception {
+        Path file = Files.createTempFile("provisioning", ".jfr");
+        try (FakeCloudServer server = new FakeCloudServer(new InMemoryCloudService("acct", Duration.ofMillis(300)));
+             Recording recording = new Recording()) {
+            recording.enable(ProvisioningEvent.NAME);
+            recording.start();
+            SimpleCloudApiNamespaceClient nsClient = new SimpleCloudApiNamespaceClient(new CloudResourceCache());
+            nsClient.createAPIKeyNamespace(server.getClient(), "ns", "ns.acct");
+            recording.stop();
+            recording.dump(file);
+
+            List<ProvisioningProfile.Sample> samples = ProvisioningProfile.read(file, "ns.acct");
+            Map<ProvisioningEvent.Phase, ProvisioningProfile.PhaseStats> byPhase = ProvisioningProfile.summarize(samples).stream()
+                .collect(Collectors.toMap(ProvisioningProfile.PhaseStats::getPhase, s -> s));
+            assertEquals(Map.of("absent", 1L), byPhase.get(ProvisioningEvent.Phase.EXISTENCE_CHECK).getOutcomes());
+            assertEquals(Map.of("ok", 1L), byPhase.get(ProvisioningEvent.Phase.CREATE_RPC).getOutcomes());
+            assertEquals(1, byPhase.get(ProvisioningEvent.Phase.TIME_TO_ACTIVE).getCount());
+            // the namespace only turns active after 300ms, so the poller had to look more than once
+            ProvisioningProfile.PhaseStats polls = byPhase.get(ProvisioningEvent.Phase.POLL_ATTEMPT);
+            assertTrue(polls.getCount() >= 2);
+            assertTrue(byPhase.get(ProvisioningEvent.Phase.TIME_TO_ACTIVE).getMax().toMillis() >= 300);
+            assertTrue(polls.percentile(50).compareTo(polls.getMax()) <= 0);
+            assertEquals(ProvisioningEvent.Phase.TIME_TO_ACTIVE, ProvisioningProfile.slowest(samples, 1).get(0).getPhase());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test void labelsCertificatePhasesWithTheNamespace() throws Exception {
+        Path file = Files.createTempFile("provisioning", ".jfr");
+        try (FakeCloudServer server = new FakeCloudServer(new InMemoryCloudService("acct", Duration.ZERO));
+             Recording recording = new Recording()) {
+            recording.enable(ProvisioningEvent.NAME);
+            recording.start();
+            SimpleCloudApiNamespaceClient nsClient = new SimpleCloudApiNamespaceClient(new CloudResourceCache());
+            nsClient.createMTLSNamespace(server.getClient(), "mtls", "mtls.acct");
+            recording.stop();
+            recording.dump(file);
+
+            List<RecordedEvent> pem = RecordingFile.readAllEvents(file).stream()
+                .filter(e -> e.getEventType().getName().equals(ProvisioningEvent.NAME))
+                .filter(e -> e.getString("phase").equals(ProvisioningEvent.Phase.PEM_ENCODING.name()))
+                .collect(Collectors.toList());
+            assertEquals(1, pem.size());
+            assertEquals("mtls.acct", pem.get(0).getString("resource"));
+            assertEquals("newCA", pem.get(0).getString("commonName"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test void endsTimeToActiveWhenTheCreateIsRejected() throws Exception {
+        Path file = Files.createTempFile("provisioning", ".jfr");
+        ServerInterceptor reject = new ServerInterceptor() {
+            @Override
+            public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+                call.close(Status.PERMISSION_DENIED.withDescription("not allowed"), new Metadata());
+                return new ServerCall.Listener<ReqT>() {};
+            }
+        };
+        try (FakeCloudServer server = new FakeCloudServer(new InMemoryCloudService("acct", Duration.ZERO), List.of(), reject);
+             Recording recording = new Recording();
+             SimpleCloudApiIdentityClient identityClient = new SimpleCloudApiIdentityClient(new CloudResourceCache())) {
+            recording.enable(ProvisioningEvent.NAME);
+            recording.start();
+            assertThrows(StatusRuntimeException.class, () -> identityClient.createUser(server.getClient(), "a@example.com", Map.of(), "read"));
+            recording.stop();
+            recording.dump(file);
+
+            Map<ProvisioningEvent.Phase, ProvisioningProfile.PhaseStats> byPhase = ProvisioningProfile.summarize(
+                    ProvisioningProfile.read(file, "a@example.com")).stream()
+                .collect(Collectors.toMap(ProvisioningProfile.PhaseStats::getPhase, s -> s));
+            assertEquals(Map.of("PERMISSION_DENIED", 1L), byPhase.get(ProvisioningEvent.Phase.CREATE_RPC).getOutcomes());
+            assertEquals(Map.of("PERMISSION_DENIED", 1L), byPhase.get(ProvisioningEvent.Phase.TIME_TO_ACTIVE).getOutcomes());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.temporal.api.cloud.cloudservice.v1.CloudServiceGrpc;
+import io.temporal.api.cloud.cloudservice.v1.CreateServiceAccountRequest;
+import io.temporal.api.cloud.cloudservice.v1.CreateServiceAccountResponse;
+import io.temporal.api.cloud.cloudservice.v1.GetServiceAccountsRequest;
+import io.temporal.api.cloud.cloudservice.v1.GetServiceAccountsResponse;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ThrottlingClientInterceptorTest {
+    @Test void retriesThrottledCallsUntilTheyFit() {
+        InMemoryCloudService service = new InMemoryCloudService();
+        try (ThrottlingClientInterceptor throttling = new ThrottlingClientInterceptor();
+             FaultInjectionInterceptor faults = new FaultInjectionInterceptor(
+                 FaultInjectionInterceptor.LatencyModel.fixed(Duration.ofMillis(2)), 0, 0, 20);
+             FakeCloudServer server = new FakeCloudServer(service, List.of(throttling), faults)) {
+            CloudServiceGrpc.CloudServiceBlockingStub stub = server.getClient().getCloudServiceStubs().blockingStub();
+            // the fake accepts 20 calls/s with a burst of 20, so some of these are throttled and replayed
+            for (int i = 0; i < 40; i++) {
+                stub.createServiceAccount(CreateServiceAccountRequest.newBuilder()
+                    .setSpec(SimpleCloudApiIdentityClient.serviceAccountSpec("sa-" + i, java.util.Map.of(), "read"))
+                    .setAsyncOperationId("op-" + i)
+                    .build());
+            }
+            assertEquals(40, service.serviceAccountCount());
+            assertTrue(throttling.throttledCount() > 0);
+            assertEquals(throttling.throttledCount(), throttling.retriedCount());
+            assertTrue(throttling.rate("CreateServiceAccount") < 1000);
+        }
+    }
+
+    @Test void mutationsWithoutAnOperationIdAreNotReplayed() {
+        InMemoryCloudService service = new InMemoryCloudService();
+        AtomicInteger calls = new AtomicInteger();
+        try (ThrottlingClientInterceptor throttling = new ThrottlingClientInterceptor();
+             FakeCloudServer server = new FakeCloudServer(service, List.of(throttling),
+                 reject(calls, Status.RESOURCE_EXHAUSTED.withDescription("request rate limit exceeded")))) {
+            CloudServiceGrpc.CloudServiceBlockingStub stub = server.getClient().getCloudServiceStubs().blockingStub();
+            StatusRuntimeException e = assertThrows(StatusRuntimeException.class, () ->
+                stub.createServiceAccount(CreateServiceAccountRequest.newBuilder()
+                    .setSpec(SimpleCloudApiIdentityClient.serviceAccountSpec("sa", java.util.Map.of(), "read"))
+                    .build()));
+            assertEquals(Status.Code.RESOURCE_EXHAUSTED, e.getStatus().getCode());
+            // the create may already have been applied, so it is sent once and the rate still backs off
+            assertEquals(1, calls.get());
+            assertEquals(0, throttling.retriedCount());
+            assertTrue(throttling.rate("CreateServiceAccount") < 1000);
+        }
+    }
+
+    @Test void quotaErrorsAreNotReplayedAndLeaveTheRateAlone() {
+        InMemoryCloudService service = new InMemoryCloudService();
+        AtomicInteger calls = new AtomicInteger();
+        try (ThrottlingClientInterceptor throttling = new ThrottlingClientInterceptor();
+             FakeCloudServer server = new FakeCloudServer(service, List.of(throttling),
+                 reject(calls, Status.RESOURCE_EXHAUSTED.withDescription("service account limit reached")))) {
+            CloudServiceGrpc.CloudServiceBlockingStub stub = server.getClient().getCloudServiceStubs().blockingStub();
+            assertThrows(StatusRuntimeException.class, () ->
+                stub.getServiceAccounts(GetServiceAccountsRequest.getDefaultInstance()));
+            assertEquals(1, calls.get());
+            assertEquals(0, throttling.throttledCount());
+            assertEquals(1000, throttling.rate("GetServiceAccounts"));
+        }
+    }
+
+    @Test void rateLimitsAreRecognisedByRetryInfoOrDescription() {
+        assertTrue(ThrottlingClientInterceptor.isRateLimited(
+            Status.RESOURCE_EXHAUSTED.withDescription("Rate limit exceeded"), new Metadata()));
+        assertFalse(ThrottlingClientInterceptor.isRateLimited(
+            Status.RESOURCE_EXHAUSTED.withDescription("namespace limit reached"), new Metadata()));
+        assertFalse(ThrottlingClientInterceptor.isRateLimited(Status.UNAVAILABLE.withDescription("rate limit"), new Metadata()));
+        com.google.rpc.Status withRetryInfo = com.google.rpc.Status.newBuilder()
+            .setCode(Status.Code.RESOURCE_EXHAUSTED.value())
+            .setMessage("try again later")
+            .addDetails(com.google.protobuf.Any.pack(com.google.rpc.RetryInfo.newBuilder()
+                .setRetryDelay(com.google.protobuf.Duration.newBuilder().setSeconds(1))
+                .build()))
+            .build();
+        StatusRuntimeException e = io.grpc.protobuf.StatusProto.toStatusRuntimeException(withRetryInfo);
+        assertTrue(ThrottlingClientInterceptor.isRateLimited(e.getStatus(), e.getTrailers()));
+    }
+
+    @Test void aCallCancelledDuringTheBackoffCloses() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        try (ThrottlingClientInterceptor throttling = new ThrottlingClientInterceptor();
+             FakeCloudServer server = new FakeCloudServer(new InMemoryCloudService(), List.of(throttling),
+                 reject(calls, Status.RESOURCE_EXHAUSTED.withDescription("request rate limit exceeded")))) {
+            Channel channel = server.getClient().getCloudServiceStubs().futureStub().getChannel();
+            ClientCall<GetServiceAccountsRequest, GetServiceAccountsResponse> call =
+                channel.newCall(CloudServiceGrpc.getGetServiceAccountsMethod(), CallOptions.DEFAULT);
+            CompletableFuture<Status> closed = new CompletableFuture<>();
+            call.start(new ClientCall.Listener<GetServiceAccountsResponse>() {
+                @Override
+                public void onClose(Status status, Metadata trailers) {
+                    closed.complete(status);
+                }
+            }, new Metadata());
+            call.request(1);
+            call.sendMessage(GetServiceAccountsRequest.getDefaultInstance());
+            call.halfClose();
+
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (throttling.retriedCount() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            // the first attempt was throttled and the retry waits at least 50ms, so this lands in between
+            call.cancel("caller gave up", null);
+            assertEquals(Status.Code.CANCELLED, closed.get(5, TimeUnit.SECONDS).getCode());
+            Thread.sleep(200);
+            assertEquals(1, calls.get());
+            assertEquals(0, throttling.queued());
+        }
+    }
+
+    // answers every call with status, counting how many arrive
+    private static ServerInterceptor reject(AtomicInteger calls, Status status) {
+        return new ServerInterceptor() {
+            @Override
+            public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+                calls.incrementAndGet();
+                call.close(status, new Metadata());
+                return new ServerCall.Listener<ReqT>() {};
+            }
+        };
+    }
+
+    @Test void aimdLimitShrinksOnThrottleAndGrowsOnSuccess() {
+        AimdLimiter limiter = new AimdLimiter(8, 1, 16, 0.5);
+        limiter.acquire(() -> { });
+        limiter.release(true);
+        assertEquals(4, limiter.limit());
+        for (int i = 0; i < 40; i++) {
+            limiter.acquire(() -> { });
+            limiter.release(false);
+        }
+        assertTrue(limiter.limit() > 4);
+    }
+
+    @Test void failedAndCancelledCallsDoNotGrowTheLimit() throws Exception {
+        AimdLimiter limiter = new AimdLimiter(4, 1, 16, 0.5);
+        for (int i = 0; i < 40; i++) {
+            limiter.acquire(() -> { });
+            limiter.release();
+        }
+        assertEquals(4, limiter.limit());
+
+        InMemoryCloudService service = new InMemoryCloudService();
+        try (ThrottlingClientInterceptor throttling = new ThrottlingClientInterceptor(1000, 100, 1, 16, 10);
+             FaultInjectionInterceptor faults = new FaultInjectionInterceptor(
+                 FaultInjectionInterceptor.LatencyModel.fixed(Duration.ofMillis(50)), 0, 0, 0);
+             FakeCloudServer server = new FakeCloudServer(service, List.of(throttling), faults)) {
+            CloudServiceGrpc.CloudServiceFutureStub stub = server.getClient().getCloudServiceStubs().futureStub();
+            // with a limit of one, the first call holds the only permit and the rest wait for it
+            List<ListenableFuture<CreateServiceAccountResponse>> calls = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                calls.add(stub.createServiceAccount(CreateServiceAccountRequest.newBuilder()
+                    .setSpec(SimpleCloudApiIdentityClient.serviceAccountSpec("sa-" + i, java.util.Map.of(), "read"))
+                    .build()));
+            }
+            for (ListenableFuture<CreateServiceAccountResponse> queued : calls.subList(1, calls.size())) {
+                queued.cancel(true);
+            }
+            calls.get(0).get();
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (throttling.queued() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            // one success grows the limit from 1 to 2; the five cancelled calls leave it there
+            assertEquals(0, throttling.queued());
+            assertEquals(2, throttling.concurrencyLimit());
+            assertEquals(1, service.serviceAccountCount());
+        }
+    }
+}